@@ -0,0 +1,55 @@
+package com.xkrexchange.common.dto;
+
+/**
+ * Data Transfer Object for mass-cancel requests
+ * Every filter is optional: an empty request cancels all of the caller's live orders on every asset
+ */
+public class MassCancelRequestDto {
+
+    private Long userId; // whose orders to cancel; null = the caller (other users require ADMIN)
+    private Long assetId; // null = every asset
+    private String side; // "BUY", "SELL" or null for both sides
+
+    // Default constructor for JSON deserialization
+    public MassCancelRequestDto() {}
+
+    public MassCancelRequestDto(Long userId, Long assetId, String side) {
+        this.userId = userId;
+        this.assetId = assetId;
+        this.side = side;
+    }
+
+    // Getters and Setters
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public Long getAssetId() { return assetId; }
+    public void setAssetId(Long assetId) { this.assetId = assetId; }
+
+    public String getSide() { return side; }
+    public void setSide(String side) { this.side = side; }
+
+    /**
+     * @return true for buy orders only, false for sell orders only, null for both sides
+     * REQUIRES validate() to have passed
+     */
+    public Boolean bidFilter() {
+        return side == null ? null : side.equals("BUY");
+    }
+
+    /**
+     * Basic validation of mass-cancel request data
+     * @return Validation error message, or null if valid
+     */
+    public String validate() {
+        if (side != null && !side.equals("BUY") && !side.equals("SELL")) {
+            return "Side must be BUY or SELL";
+        }
+        return null; // Valid
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MassCancelRequest{user=%s, asset=%s, side=%s}", userId, assetId, side == null ? "BOTH" : side);
+    }
+}
@@ -10,6 +10,8 @@ import com.xkrexchange.common.model.OrderType;
  */
 public class OrderRequestDto {
     
+    public static final int MAX_CLIENT_ORDER_ID_LENGTH = 64;
+    
     private OrderType orderType; // "MARKET", "LIMIT", "STOP", "STOP_LIMIT"
     private boolean isBuyOrder; // true for BUY, false for SELL
     private String assetTicker; // e.g., "AAPL", "TSLA"
@@ -17,6 +19,7 @@ public class OrderRequestDto {
     private int quantity; // Number of shares
     private BigDecimal limitPrice; // For LIMIT and STOP_LIMIT orders
     private BigDecimal triggerPrice; // For STOP and STOP_LIMIT orders
+    private String clientOrderId; // Client chosen id, lets the engine drop duplicate submissions of the same order
     
     // Default constructor for JSON deserialization
     public OrderRequestDto() {}
@@ -55,6 +58,9 @@ public class OrderRequestDto {
     public BigDecimal getTriggerPrice() { return triggerPrice; }
     public void setTriggerPrice(BigDecimal triggerPrice) { this.triggerPrice = triggerPrice; }
     
+    public String getClientOrderId() { return clientOrderId; }
+    public void setClientOrderId(String clientOrderId) { this.clientOrderId = clientOrderId; }
+    
     // Validation helper methods
     public boolean isMarketOrder() {
         return orderType == OrderType.MARKET;
@@ -89,6 +95,10 @@ public class OrderRequestDto {
             return "Asset ID is required";
         }
         
+        if (clientOrderId != null && (clientOrderId.isEmpty() || clientOrderId.length() > MAX_CLIENT_ORDER_ID_LENGTH)) {
+            return "Client order ID must be between 1 and " + MAX_CLIENT_ORDER_ID_LENGTH + " characters";
+        }
+        
         // Validate price requirements based on order type
         if (isLimitOrder() || isStopLimitOrder()) {
             if (limitPrice == null || limitPrice.compareTo(BigDecimal.ZERO) <= 0) {
@@ -107,7 +117,7 @@ public class OrderRequestDto {
     
     @Override
     public String toString() {
-        return String.format("OrderRequest{type=%s, side=%s, asset=%s, qty=%d, limit=%s, trigger=%s}", 
-                           orderType, isBuyOrder ? "BUY" : "SELL", assetTicker, quantity, limitPrice, triggerPrice);
+        return String.format("OrderRequest{type=%s, side=%s, asset=%s, qty=%d, limit=%s, trigger=%s, clOrdId=%s}", 
+                           orderType, isBuyOrder ? "BUY" : "SELL", assetTicker, quantity, limitPrice, triggerPrice, clientOrderId);
     }
 } 
\ No newline at end of file
@@ -12,7 +12,7 @@ public class OrderResponseDto {
     private boolean success;
     private String message;
     private Long orderId;
-    private String orderStatus; // "PENDING", "FILLED", "PARTIALLY_FILLED", "REJECTED", "CANCELLED"
+    private String orderStatus; // "PENDING", "FILLED", "PARTIALLY_FILLED", "REJECTED", "CANCELLED", "RATE_LIMITED"
     private LocalDateTime timestamp;
     
     // For successful orders - execution details
@@ -58,6 +58,16 @@ public class OrderResponseDto {
         return response;
     }
     
+    public static OrderResponseDto rateLimited(String errorMessage) {
+        OrderResponseDto response = error(errorMessage);
+        response.orderStatus = "RATE_LIMITED";
+        return response;
+    }
+    
+    public boolean isRateLimited() {
+        return "RATE_LIMITED".equals(orderStatus);
+    }
+    
     public static OrderResponseDto executionUpdate(Long orderId, BigDecimal executedPrice, 
                                                   int executedQuantity, String status) {
         OrderResponseDto response = new OrderResponseDto();
@@ -5,6 +5,8 @@ import java.math.BigDecimal;
 
 /**
  * Asset class that tracks trade-able asssets with unqiue ids. Each asset has its own dedicated OrderBook which is
+ * registered with the MatchingEngine's AssetRegistry. Every price entering the system for this asset goes through
+ * priceOf(), which enforces the tick size
  */
 
 public class Asset extends Identifiable<Asset>{
@@ -18,18 +20,29 @@ public class Asset extends Identifiable<Asset>{
     private OrderBook orderBook;
     private BigDecimal tick; 
 
+    public static final BigDecimal DEFAULT_TICK_SIZE = new BigDecimal("0.01");
+
     public Asset (String corporateName, String t, int initialPublicOffering, int sharesOut){
+        this(corporateName, t, initialPublicOffering, sharesOut, DEFAULT_TICK_SIZE);
+    }
+
+    public Asset(String n, String t, int initialPublicOffering, int sharesOut, BigDecimal tickIncrement){
         super();
-        orderBook = new OrderBook(this);
+        init(n, t, initialPublicOffering, sharesOut, tickIncrement);
+    }
 
-        name = corporateName; 
-        ticker = t; 
-        currentPrice = initialPublicOffering; 
-        sharesOutstanding = sharesOut; 
-        marketCap = sharesOutstanding*marketCap;  
+    /**
+     * Asset with a fixed id, so every node (gateway, engine, settlement) agrees on it; used for configured listings
+     */
+    public Asset(long assetId, String n, String t, int initialPublicOffering, int sharesOut, BigDecimal tickIncrement){
+        super(assetId);
+        init(n, t, initialPublicOffering, sharesOut, tickIncrement);
     }
 
-    public Asset(String n, String t, int initialPublicOffering, int sharesOut, BigDecimal tickIncrement){
+    private void init(String n, String t, int initialPublicOffering, int sharesOut, BigDecimal tickIncrement){
+        if (tickIncrement == null || tickIncrement.signum() <= 0) {
+            throw new IllegalArgumentException("Tick size must be positive for " + t);
+        }
         tick = tickIncrement; 
         orderBook = new OrderBook(this);
 
@@ -53,6 +66,14 @@ public class Asset extends Identifiable<Asset>{
         return tick;
     }
     
+    /**
+     * Price of this asset, enforcing Price's tick-multiple invariant
+     * @throws IllegalArgumentException if value is not a positive multiple of the tick size
+     */
+    public Price priceOf(BigDecimal value) {
+        return Price.onTick(value, tick);
+    }
+    
     public String getTicker() {
         return ticker;
     }
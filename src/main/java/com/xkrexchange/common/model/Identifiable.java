@@ -1,6 +1,12 @@
 package com.xkrexchange.common.model;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong; //threadsafe counter that atomically increments its value
 import java.util.concurrent.ConcurrentHashMap; //threadsafe HashMap object that stores all idTypes
 
@@ -10,6 +16,7 @@ import java.util.concurrent.ConcurrentHashMap; //threadsafe HashMap object that
 public abstract class Identifiable<T> {
 
     private static final Map<Class<?>, AtomicLong> counters = new ConcurrentHashMap<>(); //aggreates all counters together
+    private static final Map<Class<?>, IdBlocks> reservations = new ConcurrentHashMap<>(); //classes whose ids must survive a restart
     private final long id; //assigns a unique id to each instance of Identifiable objects (note all Classes requiring an Id will extend Identifiable)
 
     protected Identifiable(){
@@ -18,9 +25,120 @@ public abstract class Identifiable<T> {
         counters.putIfAbsent(cls, new AtomicLong(0)); //inserts a new pair counters.containsKey(cls) is false
         AtomicLong counter = counters.get(cls);
         this.id = counter.incrementAndGet();
+        IdBlocks blocks = reservations.get(cls);
+        if (blocks != null) {
+            blocks.cover(id);
+        }
+    }
+
+    /**
+     * Rebuilds an object that was already assigned an id elsewhere (another JVM, the database, ...)
+     * The class counter is advanced past existingId so freshly created objects can never collide with it
+     */
+    protected Identifiable(long existingId){
+        Class<?> cls = this.getClass();
+
+        counters.putIfAbsent(cls, new AtomicLong(0));
+        counters.get(cls).accumulateAndGet(existingId, Math::max);
+        this.id = existingId;
+    }
+
+    /**
+     * Advance the counter of cls past an id it handed out before a restart (e.g. the highest id in the database),
+     * so objects created from now on can't reuse it
+     */
+    public static void advanceCounter(Class<? extends Identifiable<?>> cls, long existingId){
+        counters.putIfAbsent(cls, new AtomicLong(0));
+        counters.get(cls).accumulateAndGet(existingId, Math::max);
+    }
+
+    /**
+     * Persist a high-water mark of cls's ids ahead of handing them out, a block at a time, so a restart can resume
+     * past every id the previous run used (even ids that never reached their table). The next block is reserved in
+     * the background once half of the current one is used; a new id only waits for the store if it runs out
+     *
+     * @param store - persists a mark covering at least the given id, null to stop reserving
+     */
+    public static void reserveIdsInBlocks(Class<? extends Identifiable<?>> cls, long blockSize, IdHighWaterMark store){
+        if (store == null) {
+            reservations.remove(cls);
+            return;
+        }
+        counters.putIfAbsent(cls, new AtomicLong(0));
+        IdBlocks blocks = new IdBlocks(cls, blockSize, store);
+        blocks.extend(counters.get(cls).get() + 1);
+        reservations.put(cls, blocks);
     }
 
     public long getId(){
         return this.id;
     }
+
+    /**
+     * Durable store of the highest id a class may hand out
+     */
+    @FunctionalInterface
+    public interface IdHighWaterMark {
+        /**
+         * Raise the persisted mark to at least id (never lowers it)
+         */
+        void raiseTo(long id);
+    }
+
+    private static final class IdBlocks {
+        private static final Logger logger = LoggerFactory.getLogger(Identifiable.class);
+        private static final ExecutorService reserver = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "IdBlockReserver");
+            t.setDaemon(true);
+            return t;
+        });
+
+        private final Class<?> cls;
+        private final long blockSize;
+        private final IdHighWaterMark store;
+        private final AtomicBoolean reserving = new AtomicBoolean();
+        private volatile long ceiling; // every id up to here is covered by the persisted mark
+
+        private IdBlocks(Class<?> cls, long blockSize, IdHighWaterMark store){
+            this.cls = cls;
+            this.blockSize = blockSize;
+            this.store = store;
+        }
+
+        void cover(long id){
+            long covered = ceiling;
+            if (id <= covered - blockSize / 2) {
+                return;
+            }
+            if (id <= covered) { // half used: reserve the next block before anyone has to wait for it
+                if (reserving.compareAndSet(false, true)) {
+                    reserver.execute(() -> {
+                        try {
+                            extend(id);
+                        } catch (RuntimeException e) {
+                            logger.error("Could not reserve ids of {}", cls.getSimpleName(), e);
+                        } finally {
+                            reserving.set(false);
+                        }
+                    });
+                }
+                return;
+            }
+            try {
+                extend(id);
+            } catch (RuntimeException e) {
+                // never fail the caller (a trade being matched): the next id tries again
+                logger.error("{} id {} handed out past the persisted mark", cls.getSimpleName(), id, e);
+            }
+        }
+
+        synchronized void extend(long id){
+            if (id <= ceiling - blockSize / 2) {
+                return; // reserved meanwhile
+            }
+            long mark = id + blockSize;
+            store.raiseTo(mark);
+            ceiling = mark;
+        }
+    }
 }
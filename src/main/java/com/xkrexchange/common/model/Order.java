@@ -16,9 +16,13 @@ public class Order extends Identifiable<Order> implements Comparable<Order>{
 
     private int remaining; 
     private boolean isCompleted = false; 
+    private boolean isCancelled = false;
     
     // NEW: Link to database record
     private Long databaseId; // Set after order is saved to database
+    
+    // Client supplied id used by the engine to drop retried / redelivered duplicates (may be null)
+    private String clientOrderId;
 
     /**
      * Overloaded Order constructor to initialize a LIMIT order
@@ -44,6 +48,29 @@ public class Order extends Identifiable<Order> implements Comparable<Order>{
         this.remaining = shares; 
     }
 
+    //REHYDRATION CONSTRUCTOR (keeps an id assigned by another process)
+    private Order (long orderId, long cId, OrderType oT, boolean iB, int shares, Asset a, Price eP, Price tP){
+        super(orderId);
+        this.clientId = cId;
+        this.orderType = oT;
+        this.isBid= iB;
+        this.quantity = shares;
+        this.asset = a;
+        this.executionPrice =eP;
+        this.triggerPrice = tP;
+        this.remaining = shares;
+    }
+
+    /**
+     * Rebuild an order that was created (and assigned its id) by the gateway, e.g. after it crossed the message queue
+     * @param orderId - id assigned when the order was first created
+     * @param eP - limit price, null unless LIMIT/STOP_LIMIT
+     * @param tP - trigger price, null unless STOP/STOP_LIMIT
+     */
+    public static Order restore(long orderId, long cId, OrderType oT, boolean iB, int shares, Asset a, Price eP, Price tP){
+        return new Order(orderId, cId, oT, iB, shares, a, eP, tP);
+    }
+
     //LIMIT ORDER
     public static Order newLimitOrder(long cId, OrderType oT, boolean iB, int shares, Asset a, Price eP){
         assert  oT == OrderType.LIMIT;
@@ -80,6 +107,18 @@ public class Order extends Identifiable<Order> implements Comparable<Order>{
         isCompleted = true; 
     }
 
+    public boolean isCancelled(){
+        return isCancelled;
+    }
+
+    /**
+     * Cancel the unfilled remainder of this order; the order is completed and never matches again
+     */
+    public void cancelOrder(){
+        isCancelled = true;
+        completeOrder();
+    }
+
     /**
      * Update order after partial fill
      * @param filledQuantity - quantity that was filled
@@ -178,6 +217,22 @@ public class Order extends Identifiable<Order> implements Comparable<Order>{
         this.databaseId = databaseId;
     }
 
+    /**
+     * Get the client supplied order id
+     * @return client order id or null if the client didn't supply one
+     */
+    public String getClientOrderId() {
+        return clientOrderId;
+    }
+    
+    /**
+     * Set the client supplied order id (called by the gateway before the order is routed)
+     * @param clientOrderId id chosen by the client, unique per client within the deduplication window
+     */
+    public void setClientOrderId(String clientOrderId) {
+        this.clientOrderId = clientOrderId;
+    }
+
     /**
      * Implementation of Comparable interface for time-based ordering
      * Orders are compared by their ID (which represents time of creation)
@@ -13,6 +13,22 @@ public class Price implements Comparable<Price>{
         this.value = p;
     }
 
+    /**
+     * Price that honours the class invariant
+     * @param tickSize - smallest price increment of the asset
+     * @throws IllegalArgumentException if p is not positive or not a multiple of tickSize
+     */
+    public static Price onTick(BigDecimal p, BigDecimal tickSize){
+        if (p == null || p.signum() <= 0) {
+            throw new IllegalArgumentException("Price must be positive: " + p);
+        }
+        if (p.remainder(tickSize).signum() != 0) {
+            throw new IllegalArgumentException("Price " + p.toPlainString() + " is not a multiple of the tick size "
+                                               + tickSize.toPlainString());
+        }
+        return new Price(p);
+    }
+
     public BigDecimal getValue(){
         return this.value;
     }
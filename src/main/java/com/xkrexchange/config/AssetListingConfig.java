@@ -0,0 +1,79 @@
+package com.xkrexchange.config;
+
+import com.xkrexchange.common.model.Asset;
+import com.xkrexchange.matching.MatchingEngine;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lists the assets configured under {@code trading.assets} on the MatchingEngine at startup
+ *
+ * Ids are fixed in configuration rather than taken from the in-memory counter, so the gateway, the matching
+ * engine and settlement agree on them when they run as separate processes.
+ */
+@Configuration
+@EnableConfigurationProperties(AssetListingConfig.Listing.class)
+public class AssetListingConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(AssetListingConfig.class);
+
+    private final MatchingEngine matchingEngine;
+    private final Listing listing;
+
+    public AssetListingConfig(MatchingEngine matchingEngine, Listing listing) {
+        this.matchingEngine = matchingEngine;
+        this.listing = listing;
+    }
+
+    @PostConstruct
+    public void listConfiguredAssets() {
+        List<Asset> assets = new ArrayList<>();
+        for (AssetProperties properties : listing.getAssets()) {
+            assets.add(properties.toAsset());
+        }
+        matchingEngine.reloadAssets(assets);
+        logger.info("Listed {} configured assets", assets.size());
+    }
+
+    @ConfigurationProperties(prefix = "trading")
+    public static class Listing {
+        private List<AssetProperties> assets = new ArrayList<>();
+
+        public List<AssetProperties> getAssets() { return assets; }
+        public void setAssets(List<AssetProperties> assets) { this.assets = assets; }
+    }
+
+    public static class AssetProperties {
+        private long id;
+        private String ticker;
+        private String name;
+        private BigDecimal tickSize = Asset.DEFAULT_TICK_SIZE;
+        private int ipoPrice;
+        private int sharesOutstanding;
+
+        Asset toAsset() {
+            return new Asset(id, name == null ? ticker : name, ticker, ipoPrice, sharesOutstanding, tickSize);
+        }
+
+        public long getId() { return id; }
+        public void setId(long id) { this.id = id; }
+        public String getTicker() { return ticker; }
+        public void setTicker(String ticker) { this.ticker = ticker; }
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+        public BigDecimal getTickSize() { return tickSize; }
+        public void setTickSize(BigDecimal tickSize) { this.tickSize = tickSize; }
+        public int getIpoPrice() { return ipoPrice; }
+        public void setIpoPrice(int ipoPrice) { this.ipoPrice = ipoPrice; }
+        public int getSharesOutstanding() { return sharesOutstanding; }
+        public void setSharesOutstanding(int sharesOutstanding) { this.sharesOutstanding = sharesOutstanding; }
+    }
+}
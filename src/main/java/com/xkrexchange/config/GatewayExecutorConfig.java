@@ -0,0 +1,83 @@
+package com.xkrexchange.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor behind the order gateway pipeline, selected by {@code trading.order-gateway.execution-model}
+ *
+ * - virtual: one virtual thread per pipeline stage (Java 21+, build with -Pjava21). Blocking calls into the wallet,
+ *   database or broker park the virtual thread instead of pinning a platform thread, so concurrent orders are
+ *   bounded by memory rather than by a thread pool
+ * - platform: bounded platform thread pool; a full queue rejects new orders instead of queueing without limit
+ *
+ * On a Java 17 runtime the virtual model falls back to the platform pool (with a warning) so the same
+ * configuration can be deployed before the runtime upgrade.
+ */
+@Configuration
+public class GatewayExecutorConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(GatewayExecutorConfig.class);
+
+    public static final String VIRTUAL = "virtual";
+    public static final String PLATFORM = "platform";
+
+    @Value("${trading.order-gateway.execution-model:platform}")
+    private String executionModel;
+
+    @Value("${trading.order-gateway.platform-threads:200}")
+    private int platformThreads;
+
+    @Value("${trading.order-gateway.platform-queue-capacity:10000}")
+    private int platformQueueCapacity;
+
+    @Bean(name = "orderGatewayExecutor", destroyMethod = "shutdown")
+    public ExecutorService orderGatewayExecutor() {
+        if (VIRTUAL.equals(executionModel)) {
+            ExecutorService virtualExecutor = newVirtualThreadExecutor();
+            if (virtualExecutor != null) {
+                logger.info("Order gateway running on virtual threads");
+                return virtualExecutor;
+            }
+            logger.warn("Virtual threads need Java 21+ (running {}), falling back to the platform pool",
+                        Runtime.version());
+        } else if (!PLATFORM.equals(executionModel)) {
+            throw new IllegalArgumentException("Unknown trading.order-gateway.execution-model: " + executionModel);
+        }
+
+        logger.info("Order gateway running on {} platform threads", platformThreads);
+        AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(platformThreads, platformThreads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(platformQueueCapacity),
+            r -> {
+                Thread t = new Thread(r, "OrderGateway-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    // helpers
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() looked up reflectively so the default build still targets Java 17
+     * @return null if the running JVM has no virtual threads
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.xkrexchange.config;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataAccessException;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import com.xkrexchange.gateway.OrderGatewayService;
+import com.xkrexchange.gateway.RateLimiter;
+import com.xkrexchange.security.AuthenticationService.AuthenticationException;
+import com.xkrexchange.service.history.HistoryPage;
+import com.xkrexchange.service.history.OrderHistoryEntry;
+import com.xkrexchange.service.history.TradeHistoryEntry;
+import jakarta.servlet.http.HttpServletRequest;
+import java.util.function.Supplier;
+
+/**
+ * REST Controller for order and trade history
+ *
+ * Responsibilities:
+ * 1. Serve the caller's orders and trades a page at a time, newest first
+ * 2. Throttle clients per IP address (HTTP 429), sharing the order endpoints' limiter
+ *
+ * Pages are keyset-paginated: pass a page's nextCursor as {@code before} to get the next (older) page; a null
+ * nextCursor marks the last page. History comes from the OrderHistoryService read model, never from the
+ * database the order and settlement writes go to; HTTP 503 means the history replica could not answer in time.
+ */
+@RestController
+@RequestMapping("/api/v1/history")
+@CrossOrigin(origins = "*") // TODO: Configure proper CORS in production
+public class HistoryController {
+
+    private final OrderGatewayService orderGatewayService;
+    private final RateLimiter apiRateLimiter;
+
+    public HistoryController(OrderGatewayService orderGatewayService,
+                             @Qualifier("apiRateLimiter") RateLimiter apiRateLimiter) {
+        this.orderGatewayService = orderGatewayService;
+        this.apiRateLimiter = apiRateLimiter;
+    }
+
+    /**
+     * @param before - nextCursor of the previous page (an order id), omitted for the newest orders
+     * @param limit - orders per page, capped at trading.history.max-page-size
+     */
+    @GetMapping("/orders")
+    public ResponseEntity<HistoryPage<OrderHistoryEntry>> getOrders(
+            @RequestHeader("Authorization") String authToken,
+            @RequestParam(name = "before", required = false) Long before,
+            @RequestParam(name = "limit", defaultValue = "100") int limit,
+            HttpServletRequest request) {
+
+        return page(request, () -> orderGatewayService.getOrderHistory(authToken, before, limit));
+    }
+
+    /**
+     * @param before - nextCursor of the previous page (a trade id), omitted for the newest trades
+     * @param limit - trades per page, capped at trading.history.max-page-size
+     */
+    @GetMapping("/trades")
+    public ResponseEntity<HistoryPage<TradeHistoryEntry>> getTrades(
+            @RequestHeader("Authorization") String authToken,
+            @RequestParam(name = "before", required = false) Long before,
+            @RequestParam(name = "limit", defaultValue = "100") int limit,
+            HttpServletRequest request) {
+
+        return page(request, () -> orderGatewayService.getTradeHistory(authToken, before, limit));
+    }
+
+    // helpers
+
+    private <T> ResponseEntity<HistoryPage<T>> page(HttpServletRequest request, Supplier<HistoryPage<T>> query) {
+        if (!apiRateLimiter.tryAcquire(OrderGatewayController.clientAddressKey(request.getRemoteAddr()))) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+        }
+        try {
+            return ResponseEntity.ok(query.get());
+        } catch (AuthenticationException e) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        } catch (DataAccessException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+}
@@ -1,9 +1,23 @@
 package com.xkrexchange.config;
 
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import com.xkrexchange.common.dto.MassCancelRequestDto;
 import com.xkrexchange.common.dto.OrderRequestDto;
 import com.xkrexchange.common.dto.OrderResponseDto;
+import com.xkrexchange.gateway.OrderCommand;
+import com.xkrexchange.gateway.OrderCommandParser;
+import com.xkrexchange.gateway.OrderGatewayService;
+import com.xkrexchange.gateway.RateLimiter;
+import com.xkrexchange.matching.MatchingEngine;
+import com.xkrexchange.security.AuthenticationService.AuthenticationException;
+import org.springframework.dao.DataAccessException;
+import jakarta.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * REST Controller for Order Gateway Service
@@ -11,36 +25,120 @@ import com.xkrexchange.common.dto.OrderResponseDto;
  * 
  * Responsibilities:
  * 1. Receive order requests from frontend
- * 2. Validate request format and basic parameters
+ * 2. Decode and validate order bodies with the streaming OrderCommandParser (JSON types, asset, tick grid)
  * 3. Delegate to OrderGatewayService for processing
  * 4. Return appropriate responses to client
+ * 5. Throttle clients per IP address (HTTP 429), before any token or order is parsed
+ *
+ * Order submission returns a CompletableFuture: the servlet thread is released as soon as the order enters
+ * the gateway pipeline, and the response is written when the pipeline completes.
  */
 @RestController
 @RequestMapping("/api/v1/orders")
 @CrossOrigin(origins = "*") // TODO: Configure proper CORS in production
 public class OrderGatewayController {
     
-    // TODO: Inject OrderGatewayService dependency
-    // private final OrderGatewayService orderGatewayService;
+    private final OrderGatewayService orderGatewayService;
+    private final RateLimiter apiRateLimiter;
+    // order bodies are decoded with the streaming parser, one parser and command per servlet thread
+    private final ThreadLocal<OrderCommandParser> commandParsers;
+    private final ThreadLocal<OrderCommand> commands = ThreadLocal.withInitial(OrderCommand::new);
+    
+    public OrderGatewayController(OrderGatewayService orderGatewayService, MatchingEngine matchingEngine,
+                                  @Qualifier("apiRateLimiter") RateLimiter apiRateLimiter) {
+        this.orderGatewayService = orderGatewayService;
+        this.apiRateLimiter = apiRateLimiter;
+        this.commandParsers = ThreadLocal.withInitial(() -> new OrderCommandParser(matchingEngine));
+    }
     
     /**
      * Submit a new order (any type: MARKET, LIMIT, STOP, STOP_LIMIT)
      * 
-     * @param orderRequest - Contains all order details from frontend
+     * @param orderJson - order details from frontend, OrderRequestDto's JSON properties
      * @param authToken - JWT token from Authorization header
-     * @return OrderResponseDto with order ID or error details
+     * @param awaitAck - respond only once the matching engine acknowledged the order (or the ack timeout passed)
+     * @return future OrderResponseDto with order ID or error details
      */
     @PostMapping("/submit")
-    public ResponseEntity<OrderResponseDto> submitOrder(
-            @RequestBody OrderRequestDto orderRequest,
-            @RequestHeader("Authorization") String authToken) {
+    public CompletableFuture<ResponseEntity<OrderResponseDto>> submitOrder(
+            @RequestBody byte[] orderJson,
+            @RequestHeader("Authorization") String authToken,
+            @RequestParam(name = "awaitAck", defaultValue = "false") boolean awaitAck,
+            HttpServletRequest request) {
+        
+        if (!apiRateLimiter.tryAcquire(clientAddressKey(request.getRemoteAddr()))) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .body(OrderResponseDto.rateLimited("Too many requests from this address")));
+        }
+        
+        OrderCommand command = commands.get();
+        if (commandParsers.get().parse(orderJson, command) != OrderCommand.VALID) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                .body(OrderResponseDto.error(OrderCommand.describe(command.getErrorCode()))));
+        }
+        
+        return orderGatewayService.submitOrder(command.toRequestDto(), authToken, awaitAck)
+            .thenApply(response -> {
+                if (response.isSuccess()) return ResponseEntity.ok(response);
+                if (response.isRateLimited()) return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(response);
+                return ResponseEntity.badRequest().body(response);
+            });
+    }
+    
+    /**
+     * Submit several orders in one request (market makers requoting)
+     * One result per order, in request order: the batch itself only fails as a whole on a bad token or size
+     * 
+     * @param ordersJson - JSON array of orders to submit, at most trading.order-gateway.max-batch-size
+     * @param authToken - JWT token from Authorization header
+     * @return future list of OrderResponseDto, HTTP 200 even if some orders were rejected
+     */
+    @PostMapping("/submit/batch")
+    public CompletableFuture<ResponseEntity<List<OrderResponseDto>>> submitOrders(
+            @RequestBody byte[] ordersJson,
+            @RequestHeader("Authorization") String authToken,
+            HttpServletRequest request) {
+        
+        if (!apiRateLimiter.tryAcquire(clientAddressKey(request.getRemoteAddr()))) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .body(List.of(OrderResponseDto.rateLimited("Too many requests from this address"))));
+        }
+        
+        List<OrderRequestDto> orderRequests = new ArrayList<>();
+        List<String> rejections = new ArrayList<>();
+        boolean wellFormed = commandParsers.get().parseEach(ordersJson, commands.get(), command -> {
+            orderRequests.add(command.isValid() ? command.toRequestDto() : null);
+            rejections.add(OrderCommand.describe(command.getErrorCode()));
+        });
+        if (!wellFormed) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                .body(List.of(OrderResponseDto.error(OrderCommand.describe(OrderCommand.MALFORMED)))));
+        }
+        
+        return orderGatewayService.submitOrders(orderRequests, rejections, authToken).thenApply(ResponseEntity::ok);
+    }
+    
+    /**
+     * Cancel all live orders of a user, optionally filtered by asset and side
+     * 
+     * @param massCancelRequest - Filters; an empty body cancels all of the caller's orders
+     * @param authToken - JWT token for authorization
+     * @return future OrderResponseDto once every targeted order book has accepted the request
+     */
+    @PostMapping("/mass-cancel")
+    public CompletableFuture<ResponseEntity<OrderResponseDto>> massCancel(
+            @RequestBody(required = false) MassCancelRequestDto massCancelRequest,
+            @RequestHeader("Authorization") String authToken,
+            HttpServletRequest request) {
         
-        // TODO: Implement order submission logic
-        // 1. Extract and validate JWT token
-        // 2. Call orderGatewayService.processOrder()
-        // 3. Return appropriate response
+        if (!apiRateLimiter.tryAcquire(clientAddressKey(request.getRemoteAddr()))) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .body(OrderResponseDto.rateLimited("Too many requests from this address")));
+        }
         
-        return ResponseEntity.ok(new OrderResponseDto("TODO: Implement"));
+        MassCancelRequestDto filters = massCancelRequest == null ? new MassCancelRequestDto() : massCancelRequest;
+        return orderGatewayService.massCancel(filters, authToken)
+            .thenApply(response -> response.isSuccess() ? ResponseEntity.ok(response) : ResponseEntity.badRequest().body(response));
     }
     
     /**
@@ -53,7 +151,12 @@ public class OrderGatewayController {
     @DeleteMapping("/{orderId}")
     public ResponseEntity<String> cancelOrder(
             @PathVariable Long orderId,
-            @RequestHeader("Authorization") String authToken) {
+            @RequestHeader("Authorization") String authToken,
+            HttpServletRequest request) {
+        
+        if (!apiRateLimiter.tryAcquire(clientAddressKey(request.getRemoteAddr()))) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body("Too many requests from this address");
+        }
         
         // TODO: Implement order cancellation logic
         // 1. Validate user owns this order
@@ -69,18 +172,66 @@ public class OrderGatewayController {
      * 
      * @param orderId - ID of order to query
      * @param authToken - JWT token for authorization
-     * @return Order details and current status
+     * @return Order details and current status (from the in-memory order state cache, else the order history),
+     *         401 if the token is invalid, 404 if unknown
      */
     @GetMapping("/{orderId}")
     public ResponseEntity<OrderResponseDto> getOrderStatus(
             @PathVariable Long orderId,
-            @RequestHeader("Authorization") String authToken) {
+            @RequestHeader("Authorization") String authToken,
+            HttpServletRequest request) {
         
-        // TODO: Implement order status retrieval
-        // 1. Validate user owns this order or has admin privileges
-        // 2. Query order details from database
-        // 3. Return current status and execution details
+        if (!apiRateLimiter.tryAcquire(clientAddressKey(request.getRemoteAddr()))) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .body(OrderResponseDto.rateLimited("Too many requests from this address"));
+        }
         
-        return ResponseEntity.ok(new OrderResponseDto("TODO: Implement"));
+        OrderResponseDto response;
+        try {
+            response = orderGatewayService.getOrderStatus(orderId, authToken);
+        } catch (AuthenticationException e) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(OrderResponseDto.error(e.getMessage()));
+        } catch (DataAccessException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(OrderResponseDto.error("Order history unavailable"));
+        }
+        return response.getOrderId() != null ? ResponseEntity.ok(response)
+                                             : ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+    }
+    
+    // helpers
+    
+    /**
+     * Rate limiter key for a client address: IPv4 packed into the low 32 bits, anything else (IPv6)
+     * hashed with 64-bit FNV-1a. Parsed by hand so no resolver is ever involved
+     */
+    static long clientAddressKey(String address) {
+        long packed = 0;
+        int octet = 0;
+        int dots = 0;
+        boolean digits = false;
+        for (int i = 0; i < address.length(); i++) {
+            char c = address.charAt(i);
+            if (c >= '0' && c <= '9' && (octet = octet * 10 + (c - '0')) <= 255) {
+                digits = true;
+            } else if (c == '.' && digits && dots < 3) {
+                packed = packed << 8 | octet;
+                octet = 0;
+                dots++;
+                digits = false;
+            } else {
+                return fnv1a(address);
+            }
+        }
+        return dots == 3 && digits ? packed << 8 | octet : fnv1a(address);
+    }
+    
+    private static long fnv1a(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash | 1L << 63; // never collides with a packed IPv4 address
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,57 @@
+package com.xkrexchange.config;
+
+import com.xkrexchange.gateway.RateLimiter;
+import com.xkrexchange.gateway.RedisTokenLeaseRateLimiter;
+import com.xkrexchange.gateway.TokenBucketRateLimiter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * Rate limiters used by the order gateway
+ *
+ * - orderRateLimiter: orders per authenticated user ({@code trading.order-gateway.rate-limit})
+ * - apiRateLimiter: HTTP requests per client IP ({@code app.api.rate-limit})
+ *
+ * {@code trading.order-gateway.rate-limit.backend} picks where buckets live: local (per gateway node, lock-free
+ * in-memory) or redis (shared by all nodes, with local token leases)
+ */
+@Configuration
+public class RateLimitConfig {
+
+    @Value("${trading.order-gateway.rate-limit.backend:local}")
+    private String backend;
+
+    @Value("${trading.order-gateway.rate-limit.lease-size:10}")
+    private int leaseSize;
+
+    @Value("${trading.order-gateway.rate-limit.lease-ms:1000}")
+    private long leaseMillis;
+
+    @Bean
+    public RateLimiter orderRateLimiter(@Value("${trading.order-gateway.rate-limit.enabled:true}") boolean enabled,
+                                        @Value("${trading.order-gateway.rate-limit.orders-per-minute:60}") int ordersPerMinute,
+                                        ObjectProvider<StringRedisTemplate> redisTemplate) {
+        return enabled ? createLimiter("orders", ordersPerMinute, redisTemplate) : RateLimiter.UNLIMITED;
+    }
+
+    @Bean
+    public RateLimiter apiRateLimiter(@Value("${app.api.rate-limit.enabled:true}") boolean enabled,
+                                      @Value("${app.api.rate-limit.requests-per-minute:1000}") int requestsPerMinute,
+                                      ObjectProvider<StringRedisTemplate> redisTemplate) {
+        return enabled ? createLimiter("api", requestsPerMinute, redisTemplate) : RateLimiter.UNLIMITED;
+    }
+
+    // helpers
+
+    private RateLimiter createLimiter(String name, int permitsPerMinute, ObjectProvider<StringRedisTemplate> redisTemplate) {
+        return switch (backend) {
+            case "local" -> new TokenBucketRateLimiter(permitsPerMinute);
+            case "redis" -> new RedisTokenLeaseRateLimiter(redisTemplate.getObject(), name, permitsPerMinute,
+                                                           leaseSize, leaseMillis);
+            default -> throw new IllegalArgumentException("Unknown trading.order-gateway.rate-limit.backend: " + backend);
+        };
+    }
+}
@@ -0,0 +1,65 @@
+package com.xkrexchange.gateway;
+
+import com.xkrexchange.common.model.Order;
+import com.xkrexchange.common.model.Price;
+import com.xkrexchange.matching.DepthSnapshot;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Prices market BUY orders, and STOP buys (market orders once triggered), for the cash reservation from the
+ * book's published DepthSnapshot
+ *
+ * Key Responsibilities:
+ * 1. Walk the cached ask levels to find what filling the whole quantity would cost; a market buy for more than
+ *    the levels offer is not priced at all, since what the rest would cost is unknown
+ * 2. Add a buffer (trading.order-gateway.market-order-buffer-percent) for the book moving between the
+ *    snapshot and the order reaching the matching thread
+ * 3. Never price a STOP buy below its trigger price: it only executes once the market has reached it
+ *
+ * Never touches the matching thread. Whatever the order doesn't spend goes back to the user when it
+ * closes: market orders always fill or cancel their remainder, and both release the reservation.
+ */
+@Component
+public class MarketOrderCostEstimator {
+
+    private final BigDecimal bufferFactor; // 1 + buffer
+
+    public MarketOrderCostEstimator(
+            @Value("${trading.order-gateway.market-order-buffer-percent:5}") BigDecimal bufferPercent) {
+        this.bufferFactor = BigDecimal.ONE.add(bufferPercent.movePointLeft(2));
+    }
+
+    /**
+     * @return cash to reserve for the market buy order, or null if the visible asks can't fill all of it (no
+     *         offers, or more shares than the snapshot's levels hold)
+     */
+    public BigDecimal estimateBuyCost(Order order) {
+        return estimateBuyCost(order.getAsset().getOrderBook().getDepthSnapshot(), order.getQuantity());
+    }
+
+    public BigDecimal estimateBuyCost(DepthSnapshot depth, long quantity) {
+        return quantity > depth.getVisibleAskQuantity() ? null : withBuffer(depth.costToBuy(quantity));
+    }
+
+    /**
+     * @return cash to reserve for a STOP buy of quantity shares: what the book would cost now or quantity at the
+     *         trigger price, whichever is higher, plus the buffer (priced off the trigger alone when the book
+     *         has no offers). The book it executes against only exists once triggered, so shares beyond the
+     *         visible depth are priced at the deepest ask rather than refused
+     */
+    public BigDecimal estimateStopBuyCost(DepthSnapshot depth, long quantity, Price triggerPrice) {
+        BigDecimal atTrigger = withBuffer(triggerPrice.getValue().multiply(BigDecimal.valueOf(quantity)));
+        BigDecimal atMarket = withBuffer(depth.costToBuy(quantity));
+        return atMarket == null ? atTrigger : atMarket.max(atTrigger);
+    }
+
+    // helpers
+
+    private BigDecimal withBuffer(BigDecimal cost) {
+        return cost == null ? null : cost.multiply(bufferFactor).setScale(2, RoundingMode.UP);
+    }
+}
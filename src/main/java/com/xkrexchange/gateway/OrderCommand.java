@@ -0,0 +1,148 @@
+package com.xkrexchange.gateway;
+
+import com.xkrexchange.common.dto.OrderRequestDto;
+import com.xkrexchange.common.model.OrderType;
+
+import java.math.BigDecimal;
+
+/**
+ * Reusable, primitive-field form of an order request, filled by OrderCommandParser
+ *
+ * Unlike OrderRequestDto nothing is boxed and nothing is allocated per order: the asset is resolved to its id,
+ * prices are held as a number of ticks of that asset, and the client order id is copied into a fixed char buffer.
+ * Validation yields an int code; the message string is only looked up when an order is actually rejected.
+ *
+ * One instance per thread: parse into it, consume it, parse the next order into it.
+ */
+public final class OrderCommand {
+
+    // === VALIDATION CODES ===
+    public static final int VALID = 0;
+    public static final int MALFORMED = 1;
+    public static final int MISSING_ORDER_TYPE = 2;
+    public static final int NON_POSITIVE_QUANTITY = 3;
+    public static final int MISSING_ASSET = 4;
+    public static final int UNKNOWN_ASSET = 5;
+    public static final int ASSET_MISMATCH = 6;
+    public static final int INVALID_CLIENT_ORDER_ID = 7;
+    public static final int MISSING_LIMIT_PRICE = 8;
+    public static final int MISSING_TRIGGER_PRICE = 9;
+    public static final int PRICE_OFF_TICK = 10;
+
+    private static final String[] MESSAGES = {
+        null,
+        "Malformed order request",
+        "Order type is required",
+        "Quantity must be positive",
+        "Asset ID is required",
+        "Unknown asset",
+        "Asset ID and ticker refer to different assets",
+        "Client order ID must be between 1 and " + OrderRequestDto.MAX_CLIENT_ORDER_ID_LENGTH + " characters",
+        "Limit price must be positive for LIMIT and STOP_LIMIT orders",
+        "Trigger price must be positive for STOP and STOP_LIMIT orders",
+        "Price is not a multiple of the asset's tick size"
+    };
+
+    public static final long NO_ASSET = -1;
+    public static final long NO_PRICE = 0;
+
+    OrderType orderType;
+    boolean buyOrder;
+    long assetId;
+    int quantity;
+    long limitPriceTicks;
+    long triggerPriceTicks;
+    long tickSizeScaled; // tick size in units of 10^-OrderCommandParser.PRICE_SCALE
+    final char[] clientOrderId = new char[OrderRequestDto.MAX_CLIENT_ORDER_ID_LENGTH];
+    int clientOrderIdLength; // -1 = absent
+    int errorCode;
+
+    public OrderCommand() {
+        reset();
+    }
+
+    public void reset() {
+        orderType = null;
+        buyOrder = false;
+        assetId = NO_ASSET;
+        quantity = 0;
+        limitPriceTicks = NO_PRICE;
+        triggerPriceTicks = NO_PRICE;
+        tickSizeScaled = 0;
+        clientOrderIdLength = -1;
+        errorCode = VALID;
+    }
+
+    /**
+     * Same rules as OrderRequestDto.validate(), plus prices must sit on the asset's tick grid
+     * @return VALID or the first failed check; also kept in getErrorCode()
+     */
+    int validate() {
+        if (errorCode != VALID) return errorCode;
+        if (orderType == null) return errorCode = MISSING_ORDER_TYPE;
+        if (quantity <= 0) return errorCode = NON_POSITIVE_QUANTITY;
+        if (assetId == NO_ASSET) return errorCode = MISSING_ASSET;
+        if (clientOrderIdLength == 0) return errorCode = INVALID_CLIENT_ORDER_ID;
+        boolean needsLimit = orderType == OrderType.LIMIT || orderType == OrderType.STOP_LIMIT;
+        boolean needsTrigger = orderType == OrderType.STOP || orderType == OrderType.STOP_LIMIT;
+        if (needsLimit && limitPriceTicks <= 0) return errorCode = MISSING_LIMIT_PRICE;
+        if (needsTrigger && triggerPriceTicks <= 0) return errorCode = MISSING_TRIGGER_PRICE;
+        return VALID;
+    }
+
+    /**
+     * @return client-facing message for a validation code, null for VALID
+     */
+    public static String describe(int errorCode) {
+        return MESSAGES[errorCode];
+    }
+
+    // === ACCESSORS ===
+
+    public int getErrorCode() { return errorCode; }
+    public boolean isValid() { return errorCode == VALID; }
+    public OrderType getOrderType() { return orderType; }
+    public boolean isBuyOrder() { return buyOrder; }
+    public long getAssetId() { return assetId; }
+    public int getQuantity() { return quantity; }
+    public long getLimitPriceTicks() { return limitPriceTicks; }
+    public long getTriggerPriceTicks() { return triggerPriceTicks; }
+
+    public boolean hasClientOrderId() {
+        return clientOrderIdLength > 0;
+    }
+
+    public String clientOrderIdString() {
+        return clientOrderIdLength > 0 ? new String(clientOrderId, 0, clientOrderIdLength) : null;
+    }
+
+    /**
+     * Bridge to the bean-based gateway API; allocates, so call it only for orders that passed validation
+     */
+    public OrderRequestDto toRequestDto() {
+        OrderRequestDto request = new OrderRequestDto();
+        request.setOrderType(orderType);
+        request.setBuyOrder(buyOrder);
+        request.setAssetId(assetId);
+        request.setQuantity(quantity);
+        request.setLimitPrice(ticksToPrice(limitPriceTicks));
+        request.setTriggerPrice(ticksToPrice(triggerPriceTicks));
+        request.setClientOrderId(clientOrderIdString());
+        return request;
+    }
+
+    // helpers
+
+    private BigDecimal ticksToPrice(long ticks) {
+        if (ticks == NO_PRICE) return null;
+        BigDecimal price = BigDecimal.valueOf(ticks * tickSizeScaled, OrderCommandParser.PRICE_SCALE).stripTrailingZeros();
+        return price.scale() < 0 ? price.setScale(0) : price;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("OrderCommand{type=%s, side=%s, asset=%d, qty=%d, limitTicks=%d, triggerTicks=%d, code=%d}",
+                             orderType, buyOrder ? "BUY" : "SELL", assetId, quantity, limitPriceTicks,
+                             triggerPriceTicks, errorCode);
+    }
+}
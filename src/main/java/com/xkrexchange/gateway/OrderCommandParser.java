@@ -0,0 +1,292 @@
+package com.xkrexchange.gateway;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.exc.InputCoercionException;
+import com.xkrexchange.common.model.Asset;
+import com.xkrexchange.common.model.OrderType;
+import com.xkrexchange.matching.MatchingEngine;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Streaming decoder from order JSON (the OrderRequestDto shape) straight into a reusable OrderCommand
+ *
+ * Compared to binding an OrderRequestDto and calling validate():
+ * - no reflection, no bean, no boxed Long / BigDecimal: tokens are read off Jackson's streaming parser and
+ *   numbers are converted from its character buffer directly into fixed-point longs
+ * - field names come back canonicalized from Jackson's symbol table, so matching them allocates nothing
+ * - the asset is resolved once (ticker or id, the ticker straight from the parser's char buffer through the
+ *   AssetRegistry) and prices are converted to ticks of that asset
+ * - failures are int codes; messages are built only for rejected orders (OrderCommand.describe)
+ * - fields of the wrong JSON type ("buyOrder": "true", a quantity in quotes) are MALFORMED, never coerced
+ *
+ * OrderGatewayController decodes /submit and /submit/batch bodies with it, one parser per servlet thread.
+ *
+ * NOT thread-safe: use one parser and one OrderCommand per thread.
+ */
+public final class OrderCommandParser {
+
+    public static final int PRICE_SCALE = 8; // prices are parsed as units of 10^-8
+    private static final long MAX_SCALED_PRICE = Long.MAX_VALUE / 10;
+    private static final long FINER_THAN_SCALE = -1; // price with more than PRICE_SCALE decimals
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final OrderType[] ORDER_TYPES = OrderType.values();
+
+    private final MatchingEngine matchingEngine;
+
+    // last asset resolved, most clients quote the same few assets back to back
+    private Asset lastAsset;
+    private long lastTickSizeScaled;
+
+    public OrderCommandParser(MatchingEngine matchingEngine) {
+        this.matchingEngine = matchingEngine;
+    }
+
+    /**
+     * Decode and validate one order
+     *
+     * @param json - UTF-8 JSON object with OrderRequestDto's properties
+     * @param command - reset and filled in place
+     * @return OrderCommand.VALID or a validation code, also available from command.getErrorCode()
+     */
+    public int parse(byte[] json, int offset, int length, OrderCommand command) {
+        try (JsonParser parser = JSON_FACTORY.createParser(json, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                command.reset();
+                return command.errorCode = OrderCommand.MALFORMED;
+            }
+            return parseObject(parser, command);
+        } catch (IOException | RuntimeException e) {
+            // broken JSON
+            return command.errorCode = OrderCommand.MALFORMED;
+        }
+    }
+
+    public int parse(byte[] json, OrderCommand command) {
+        return parse(json, 0, json.length, command);
+    }
+
+    /**
+     * Decode and validate a JSON array of orders one at a time into command, handing each one to each (valid or
+     * not: see command.getErrorCode()). An order with a bad field is reported MALFORMED and the next one is read
+     *
+     * @return false if json isn't an array of objects or breaks off; each may have seen some orders by then
+     */
+    public boolean parseEach(byte[] json, OrderCommand command, Consumer<OrderCommand> each) {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                return false;
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+                parseObject(parser, command);
+                each.accept(command);
+            }
+            return token == JsonToken.END_ARRAY && parser.nextToken() == null;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    // helpers
+
+    /**
+     * Decode the object the parser is at the start of, leaving the parser at its end
+     * @throws IOException if the JSON itself is broken; a field of the wrong type only makes the order MALFORMED
+     */
+    private int parseObject(JsonParser parser, OrderCommand command) throws IOException {
+        command.reset();
+        long limitPriceScaled = OrderCommand.NO_PRICE;
+        long triggerPriceScaled = OrderCommand.NO_PRICE;
+        Asset tickerAsset = null;
+        boolean tickerGiven = false;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NULL) continue;
+
+            try {
+                switch (field) {
+                    case "orderType" -> command.orderType = orderType(parser, value);
+                    case "buyOrder" -> {
+                        expect(value.isBoolean()); // "true" as a string is not a side
+                        command.buyOrder = value == JsonToken.VALUE_TRUE;
+                    }
+                    case "assetId" -> {
+                        expect(value == JsonToken.VALUE_NUMBER_INT);
+                        command.assetId = parser.getLongValue();
+                    }
+                    case "assetTicker" -> {
+                        expect(value == JsonToken.VALUE_STRING);
+                        tickerGiven = true;
+                        tickerAsset = assetByTicker(parser);
+                    }
+                    case "quantity" -> {
+                        expect(value == JsonToken.VALUE_NUMBER_INT);
+                        command.quantity = parser.getIntValue();
+                    }
+                    case "limitPrice" -> limitPriceScaled = scaledPrice(parser, value);
+                    case "triggerPrice" -> triggerPriceScaled = scaledPrice(parser, value);
+                    case "clientOrderId" -> {
+                        expect(value == JsonToken.VALUE_STRING);
+                        clientOrderId(parser, command);
+                    }
+                    default -> parser.skipChildren(); // unknown or informational field
+                }
+            } catch (IllegalArgumentException | InputCoercionException e) {
+                // wrong token type, unknown order type, number out of range: skip the value, keep reading
+                command.errorCode = OrderCommand.MALFORMED;
+                parser.skipChildren();
+            }
+        }
+        if (command.errorCode != OrderCommand.VALID) {
+            return command.errorCode;
+        }
+
+        // resolve the asset, then express prices in its ticks
+        Asset asset = null;
+        if (command.assetId != OrderCommand.NO_ASSET) {
+            asset = assetById(command.assetId);
+            if (asset == null) return command.errorCode = OrderCommand.UNKNOWN_ASSET;
+            if (tickerGiven && tickerAsset != asset) return command.errorCode = OrderCommand.ASSET_MISMATCH;
+        } else if (tickerGiven) {
+            asset = tickerAsset;
+            if (asset == null) return command.errorCode = OrderCommand.UNKNOWN_ASSET;
+            command.assetId = asset.getAssetId();
+        }
+        if (asset != null) {
+            remember(asset);
+            command.tickSizeScaled = lastTickSizeScaled;
+            command.limitPriceTicks = toTicks(limitPriceScaled, command.tickSizeScaled);
+            command.triggerPriceTicks = toTicks(triggerPriceScaled, command.tickSizeScaled);
+            if (command.limitPriceTicks < 0 || command.triggerPriceTicks < 0) {
+                return command.errorCode = OrderCommand.PRICE_OFF_TICK;
+            }
+        }
+        return command.validate();
+    }
+
+    private static void expect(boolean wellTyped) {
+        if (!wellTyped) {
+            throw new IllegalArgumentException("Unexpected JSON token");
+        }
+    }
+
+    private static OrderType orderType(JsonParser parser, JsonToken value) throws IOException {
+        expect(value == JsonToken.VALUE_STRING);
+        char[] chars = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        int length = parser.getTextLength();
+        for (OrderType type : ORDER_TYPES) {
+            if (matches(type.name(), chars, offset, length)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown order type");
+    }
+
+    /**
+     * Fixed-point value of a JSON number (or numeric string) in units of 10^-PRICE_SCALE, without BigDecimal.
+     * Non-positive prices are returned as NO_PRICE so validation reports them as missing
+     *
+     * @return scaled price, or FINER_THAN_SCALE if it needs more than PRICE_SCALE decimals (off every tick grid)
+     * @throws IllegalArgumentException if the value isn't a plain decimal
+     */
+    private static long scaledPrice(JsonParser parser, JsonToken value) throws IOException {
+        expect(value == JsonToken.VALUE_NUMBER_INT || value == JsonToken.VALUE_NUMBER_FLOAT
+               || value == JsonToken.VALUE_STRING);
+        char[] chars = parser.getTextCharacters();
+        int index = parser.getTextOffset();
+        int end = index + parser.getTextLength();
+        boolean negative = index < end && chars[index] == '-';
+        if (negative) index++;
+
+        long scaled = 0;
+        int decimals = -1; // -1 until the decimal point
+        boolean digits = false;
+        boolean finer = false;
+        for (; index < end; index++) {
+            char c = chars[index];
+            if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else if (c >= '0' && c <= '9') {
+                digits = true;
+                if (decimals >= PRICE_SCALE) {
+                    finer |= c != '0'; // finer than any tick we support
+                    continue;
+                }
+                expect(scaled <= MAX_SCALED_PRICE);
+                scaled = scaled * 10 + (c - '0');
+                if (decimals >= 0) decimals++;
+            } else {
+                expect(false); // exponent, sign in the middle, garbage
+            }
+        }
+        expect(digits);
+        for (int i = Math.max(decimals, 0); i < PRICE_SCALE; i++) {
+            expect(scaled <= MAX_SCALED_PRICE);
+            scaled *= 10;
+        }
+        if (negative || (scaled == 0 && !finer)) return OrderCommand.NO_PRICE;
+        return finer ? FINER_THAN_SCALE : scaled;
+    }
+
+    /**
+     * @return price in ticks, NO_PRICE if absent, -1 if it isn't a whole number of ticks
+     */
+    private static long toTicks(long scaledPrice, long tickSizeScaled) {
+        if (scaledPrice == OrderCommand.NO_PRICE) return OrderCommand.NO_PRICE;
+        if (scaledPrice == FINER_THAN_SCALE) return -1;
+        return scaledPrice % tickSizeScaled == 0 ? scaledPrice / tickSizeScaled : -1;
+    }
+
+    private static void clientOrderId(JsonParser parser, OrderCommand command) throws IOException {
+        int length = parser.getTextLength();
+        if (length == 0 || length > command.clientOrderId.length) {
+            command.clientOrderIdLength = 0; // reported by validate()
+            return;
+        }
+        System.arraycopy(parser.getTextCharacters(), parser.getTextOffset(), command.clientOrderId, 0, length);
+        command.clientOrderIdLength = length;
+    }
+
+    private Asset assetByTicker(JsonParser parser) throws IOException {
+        if (lastAsset != null
+                && matches(lastAsset.getTicker(), parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength())) {
+            return lastAsset;
+        }
+        return remember(matchingEngine.getAssetByTicker(parser.getTextCharacters(), parser.getTextOffset(),
+                                                        parser.getTextLength()));
+    }
+
+    private Asset assetById(long assetId) {
+        if (lastAsset != null && lastAsset.getAssetId() == assetId) {
+            return lastAsset;
+        }
+        return remember(matchingEngine.getAsset(assetId));
+    }
+
+    /**
+     * Make the asset the cached one (computing its scaled tick size once)
+     */
+    private Asset remember(Asset asset) {
+        if (asset != null && asset != lastAsset) {
+            lastAsset = asset;
+            lastTickSizeScaled = asset.getTickSize().movePointRight(PRICE_SCALE).longValueExact();
+        }
+        return asset;
+    }
+
+    private static boolean matches(String expected, char[] chars, int offset, int length) {
+        if (expected.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (expected.charAt(i) != chars[offset + i]) return false;
+        }
+        return true;
+    }
+}
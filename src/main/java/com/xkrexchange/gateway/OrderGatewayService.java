@@ -1,8 +1,43 @@
 package com.xkrexchange.gateway;
 
+import com.xkrexchange.common.model.Asset;
 import com.xkrexchange.common.model.Order;
+import com.xkrexchange.common.model.OrderType;
+import com.xkrexchange.common.model.Price;
+import com.xkrexchange.common.dto.MassCancelRequestDto;
 import com.xkrexchange.common.dto.OrderRequestDto;
 import com.xkrexchange.common.dto.OrderResponseDto;
+import com.xkrexchange.matching.MatchingEngine;
+import com.xkrexchange.messaging.OrderTransport;
+import com.xkrexchange.security.AuthenticatedPrincipal;
+import com.xkrexchange.security.AuthenticationService;
+import com.xkrexchange.security.AuthenticationService.AuthenticationException;
+import com.xkrexchange.security.EntitlementStore;
+import com.xkrexchange.service.OrderPersistenceService;
+import com.xkrexchange.service.history.HistoryPage;
+import com.xkrexchange.service.history.OrderHistoryEntry;
+import com.xkrexchange.service.history.OrderHistoryService;
+import com.xkrexchange.service.history.TradeHistoryEntry;
+import com.xkrexchange.wallet.WalletService;
+import com.xkrexchange.wallet.WalletService.ReservationResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Core business logic for Order Gateway Service
@@ -14,100 +49,637 @@ import com.xkrexchange.common.dto.OrderResponseDto;
  * 3. Order Validation
  * 4. Resource Reservation
  * 5. Order Creation & Routing
+ *
+ * Execution model:
+ * - The workflow is a CompletableFuture pipeline on the orderGatewayExecutor (virtual threads or a bounded
+ *   platform pool, see GatewayExecutorConfig), never on the HTTP request thread
+ * - Once the order exists, the wallet reservation and the PENDING order record are written concurrently;
+ *   both only depend on the order id, and a failed reservation just turns the record into REJECTED
+ * - Routing waits for both: an order never reaches the matching engine without its reservation
+ *
+ * Batch submissions (market makers requoting) authenticate once, then run every order through the same checks;
+ * reservations and order records are written in one task each, and the orders are routed grouped by asset.
+ * Each order gets its own result, so one bad order never fails the rest of the batch.
  */
+@Service
 public class OrderGatewayService {
-    
-    // TODO: Inject dependencies
-    // private final AuthenticationService authService;
-    // private final WalletService walletService;
-    // private final MessageQueueProducer messageProducer;
-    // private final OrderValidationService validationService;
-    
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderGatewayService.class);
+
+    private final AuthenticationService authService;
+    private final WalletService walletService;
+    private final OrderPersistenceService persistenceService;
+    private final OrderTransport orderTransport;
+    private final MatchingEngine matchingEngine;
+    private final PreTradeRiskService riskService;
+    private final RateLimiter orderRateLimiter;
+    private final EntitlementStore entitlementStore;
+    private final OrderStateCache orderStateCache;
+    private final OrderHistoryService historyService;
+    private final MarketOrderCostEstimator marketOrderCostEstimator;
+    private final ExecutorService gatewayExecutor;
+    private final long timeoutMillis;
+    private final int maxBatchSize;
+    private final long ackTimeoutMillis;
+
+    public OrderGatewayService(AuthenticationService authService,
+                               WalletService walletService,
+                               OrderPersistenceService persistenceService,
+                               OrderTransport orderTransport,
+                               MatchingEngine matchingEngine,
+                               PreTradeRiskService riskService,
+                               @Qualifier("orderRateLimiter") RateLimiter orderRateLimiter,
+                               EntitlementStore entitlementStore,
+                               OrderStateCache orderStateCache,
+                               OrderHistoryService historyService,
+                               MarketOrderCostEstimator marketOrderCostEstimator,
+                               @Qualifier("orderGatewayExecutor") ExecutorService gatewayExecutor,
+                               @Value("${trading.order-gateway.timeout-ms:5000}") long timeoutMillis,
+                               @Value("${trading.order-gateway.max-batch-size:100}") int maxBatchSize,
+                               @Value("${trading.order-gateway.ack-timeout-ms:1000}") long ackTimeoutMillis) {
+        this.authService = authService;
+        this.walletService = walletService;
+        this.persistenceService = persistenceService;
+        this.orderTransport = orderTransport;
+        this.matchingEngine = matchingEngine;
+        this.riskService = riskService;
+        this.orderRateLimiter = orderRateLimiter;
+        this.entitlementStore = entitlementStore;
+        this.orderStateCache = orderStateCache;
+        this.historyService = historyService;
+        this.marketOrderCostEstimator = marketOrderCostEstimator;
+        this.gatewayExecutor = gatewayExecutor;
+        this.timeoutMillis = timeoutMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.ackTimeoutMillis = ackTimeoutMillis;
+    }
+
     /**
      * Main order processing method - orchestrates the entire workflow
+     * Blocking convenience wrapper around submitOrder() for callers that can't use a future
      * 
      * @param orderRequest - Raw order data from client
      * @param authToken - JWT token for authentication
      * @return OrderResponseDto with success/failure details
      */
     public OrderResponseDto processOrder(OrderRequestDto orderRequest, String authToken) {
-        
-        // TODO: Implement complete order processing workflow
-        
+        return submitOrder(orderRequest, authToken).join();
+    }
+
+    /**
+     * Asynchronous order processing: returns immediately, the future completes once the order has been
+     * routed to the matching engine or rejected. Never completes exceptionally
+     * 
+     * @param orderRequest - Raw order data from client
+     * @param authToken - JWT token for authentication
+     * @return future OrderResponseDto with success/failure details
+     */
+    public CompletableFuture<OrderResponseDto> submitOrder(OrderRequestDto orderRequest, String authToken) {
+        CompletableFuture<Order> admitted;
+        try {
+            // Steps 1-3 + order creation
+            admitted = CompletableFuture.supplyAsync(() -> admitOrder(orderRequest, authToken), gatewayExecutor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(OrderResponseDto.error("Order gateway is overloaded, retry later"));
+        }
+
+        return admitted
+            .thenCompose(this::reserveAndRecord) // Step 4 (overlapped with persisting the order)
+            .thenCompose(this::routeOrder) // Step 5
+            .orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+            .exceptionally(this::toErrorResponse);
+    }
+
+    /**
+     * submitOrder(), optionally followed by waiting (without blocking a thread) for the matching engine to
+     * accept, fill or reject the order. If the engine hasn't answered within trading.order-gateway.ack-timeout-ms
+     * the response still reports the order as PENDING. Never completes exceptionally
+     * 
+     * @param awaitAck - false behaves exactly like submitOrder()
+     * @return future OrderResponseDto carrying the engine-confirmed status when awaitAck is set
+     */
+    public CompletableFuture<OrderResponseDto> submitOrder(OrderRequestDto orderRequest, String authToken, boolean awaitAck) {
+        CompletableFuture<OrderResponseDto> submitted = submitOrder(orderRequest, authToken);
+        if (!awaitAck) {
+            return submitted;
+        }
+        return submitted.thenCompose(response -> {
+            if (!response.isSuccess()) {
+                return CompletableFuture.completedFuture(response);
+            }
+            return orderStateCache.awaitAck(response.getOrderId(), ackTimeoutMillis)
+                .thenApply(state -> state == null ? response : state.toResponse());
+        });
+    }
+
+    /**
+     * Latest known status of an order, served from the OrderStateCache (no database round trip), or from the
+     * OrderHistoryService for orders the cache doesn't hold (restored at startup, closed longer than
+     * trading.order-state.retention-ms ago). Only the order's owner or an administrator may see it
+     * 
+     * @return OrderResponseDto with status, filled quantity and average fill price (cache only), or an error
+     * @throws AuthenticationException if the token is invalid
+     */
+    public OrderResponseDto getOrderStatus(long orderId, String authToken) {
+        AuthenticatedPrincipal principal = authService.authenticate(authToken);
+        OrderStateCache.OrderState state = orderStateCache.get(orderId);
+        if (state != null) {
+            return state.getUserId() == principal.getUserId() || principal.isAdmin() ? state.toResponse()
+                                                                                     : unknownOrder(orderId);
+        }
+        OrderHistoryEntry entry = historyService.getOrder(principal.getUserId(), orderId);
+        if (entry == null || (entry.userId() != principal.getUserId() && !principal.isAdmin())) {
+            return unknownOrder(orderId);
+        }
+        OrderResponseDto response = new OrderResponseDto();
+        response.setSuccess(!"REJECTED".equals(entry.status()));
+        response.setOrderId(entry.orderId());
+        response.setOrderStatus(entry.status());
+        response.setExecutedQuantity(entry.filledQuantity());
+        response.setMessage(String.format("Order %s, filled %d of %d shares", entry.status(), entry.filledQuantity(),
+                                          entry.quantity()));
+        return response;
+    }
+
+    /**
+     * A page of the caller's orders, newest first, from the OrderHistoryService read model (never the write
+     * path's database)
+     * 
+     * @param beforeOrderId - nextCursor of the previous page, null for the newest orders
+     * @throws AuthenticationException if the token is invalid
+     */
+    public HistoryPage<OrderHistoryEntry> getOrderHistory(String authToken, Long beforeOrderId, int limit) {
+        return historyService.getOrders(authService.authenticate(authToken).getUserId(), beforeOrderId, limit);
+    }
+
+    /**
+     * A page of the caller's trades (as buyer or seller), newest first, from the OrderHistoryService read model
+     * 
+     * @param beforeTradeId - nextCursor of the previous page, null for the newest trades
+     * @throws AuthenticationException if the token is invalid
+     */
+    public HistoryPage<TradeHistoryEntry> getTradeHistory(String authToken, Long beforeTradeId, int limit) {
+        return historyService.getTrades(authService.authenticate(authToken).getUserId(), beforeTradeId, limit);
+    }
+
+    /**
+     * Asynchronous batch submission: the token is checked once, then every order goes through the same checks
+     * as submitOrder(). Never completes exceptionally
+     * 
+     * @param orderRequests - Raw order data from client, at most trading.order-gateway.max-batch-size orders
+     * @param authToken - JWT token for authentication
+     * @return future list with one OrderResponseDto per request, in request order
+     */
+    public CompletableFuture<List<OrderResponseDto>> submitOrders(List<OrderRequestDto> orderRequests, String authToken) {
+        return submitOrders(orderRequests, null, authToken);
+    }
+
+    /**
+     * Batch submission of orders decoded at the edge (OrderCommandParser), some of which failed decoding
+     *
+     * @param rejections - null, or per request the reason it was rejected while decoding (null if it wasn't);
+     *                     a rejected request is answered with that reason and skips every other check
+     */
+    public CompletableFuture<List<OrderResponseDto>> submitOrders(List<OrderRequestDto> orderRequests,
+                                                                  List<String> rejections, String authToken) {
+        if (orderRequests.isEmpty() || orderRequests.size() > maxBatchSize) {
+            OrderResponseDto error = OrderResponseDto.error("Batch must contain between 1 and " + maxBatchSize + " orders");
+            return CompletableFuture.completedFuture(Collections.nCopies(Math.max(1, orderRequests.size()), error));
+        }
+
+        CompletableFuture<OrderBatch> admitted;
+        try {
+            admitted = CompletableFuture.supplyAsync(() -> admitBatch(orderRequests, rejections, authToken),
+                                                     gatewayExecutor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(
+                Collections.nCopies(orderRequests.size(), OrderResponseDto.error("Order gateway is overloaded, retry later")));
+        }
+
+        return admitted
+            .thenCompose(this::reserveAndRecordBatch)
+            .thenCompose(this::routeBatch)
+            .orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+            .exceptionally(failure -> Collections.nCopies(orderRequests.size(), toErrorResponse(failure)));
+    }
+
+    /**
+     * Cancel the live orders of a user, optionally only on one asset and/or one side
+     * Each OrderBook runs the mass cancel as a single command; the cancelled orders are reported one by one
+     * through the usual cancellation reports. Never completes exceptionally
+     * 
+     * @param request - filters (user, asset, side), all optional
+     * @param authToken - JWT token for authentication
+     * @return future OrderResponseDto, successful once every targeted OrderBook has accepted the request
+     */
+    public CompletableFuture<OrderResponseDto> massCancel(MassCancelRequestDto request, String authToken) {
+        CompletableFuture<OrderResponseDto> sent;
+        try {
+            sent = CompletableFuture.supplyAsync(() -> admitMassCancel(request, authToken), gatewayExecutor)
+                .thenCompose(userId -> sendMassCancel(userId, request));
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(OrderResponseDto.error("Order gateway is overloaded, retry later"));
+        }
+        return sent
+            .orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+            .exceptionally(this::toErrorResponse);
+    }
+
+    /**
+     * Asynchronous single-order cancel: the caller must own the order (or be an administrator).
+     * Completes once the cancel is accepted by the transport; the outcome arrives as a cancellation report.
+     * Never completes exceptionally
+     * 
+     * @param orderId - Order to cancel
+     * @param assetId - Asset of the order, used to reach its OrderBook
+     * @param authToken - JWT token for authentication
+     * @return future OrderResponseDto with success/failure details
+     */
+    public CompletableFuture<OrderResponseDto> submitCancel(long orderId, long assetId, String authToken) {
+        CompletableFuture<OrderResponseDto> sent;
+        try {
+            sent = CompletableFuture.supplyAsync(() -> admitCancel(orderId, assetId, authToken), gatewayExecutor)
+                .thenCompose(ignored -> orderTransport.cancelOrder(orderId, assetId))
+                .thenApply(id -> OrderResponseDto.success(id, "Cancel request accepted"));
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(OrderResponseDto.error("Order gateway is overloaded, retry later"));
+        }
+        return sent
+            .orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+            .exceptionally(this::toErrorResponse);
+    }
+
+    // === PIPELINE STAGES ===
+
+    /**
+     * Authenticate, authorize, validate and risk-check, then build the Order
+     * @throws OrderRejectedException if any check fails
+     */
+    private Order admitOrder(OrderRequestDto orderRequest, String authToken) {
         // Step 1: Authentication & Authorization
-        // Long userId = authService.validateTokenAndGetUserId(authToken);
-        // if (!authService.canUserTrade(userId, orderRequest.getAssetId())) {
-        //     return OrderResponseDto.error("User not authorized to trade this asset");
-        // }
-        
-        // Step 2: Order Validation
-        // ValidationResult validation = validationService.validateOrder(orderRequest);
-        // if (!validation.isValid()) {
-        //     return OrderResponseDto.error(validation.getErrorMessage());
-        // }
-        
-        // Step 3: Balance/Position Check & Fund Reservation
-        // ReservationResult reservation = performFundReservation(userId, orderRequest);
-        // if (!reservation.isSuccessful()) {
-        //     return OrderResponseDto.error(reservation.getErrorMessage());
-        // }
-        
-        // Step 4: Create Official Order Object
-        // Order validatedOrder = createOrderFromRequest(userId, orderRequest);
-        
-        // Step 5: Route to Matching Engine
-        // messageProducer.sendOrderToMatchingEngine(validatedOrder);
-        
-        // Step 6: Return Success Response
-        // return OrderResponseDto.success(validatedOrder.getOrderId());
-        
-        return new OrderResponseDto("TODO: Implement processOrder");
+        return admitRequest(authorizeTrading(authToken), orderRequest);
     }
-    
+
+    /**
+     * Authenticate the token once for the whole batch, then admit each order on its own
+     */
+    private OrderBatch admitBatch(List<OrderRequestDto> orderRequests, List<String> rejections, String authToken) {
+        long userId = authorizeTrading(authToken);
+        OrderBatch batch = new OrderBatch(orderRequests.size());
+        for (int i = 0; i < orderRequests.size(); i++) {
+            if (rejections != null && rejections.get(i) != null) {
+                batch.responses[i] = OrderResponseDto.error(rejections.get(i));
+                continue;
+            }
+            try {
+                batch.orders[i] = admitRequest(userId, orderRequests.get(i));
+            } catch (OrderRejectedException e) {
+                batch.responses[i] = toErrorResponse(e);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * @return user id of a token allowed to trade
+     * @throws OrderRejectedException if the user lacks the TRADE permission
+     */
+    private long authorizeTrading(String authToken) {
+        AuthenticatedPrincipal principal = authService.authenticate(authToken);
+        if (!principal.hasPermission(AuthenticatedPrincipal.PERMISSION_TRADE)) {
+            throw new OrderRejectedException("User is not allowed to trade");
+        }
+        return principal.getUserId();
+    }
+
+    /**
+     * Per-order checks for an authenticated user, then build the Order
+     * @throws OrderRejectedException if any check fails
+     */
+    private Order admitRequest(long userId, OrderRequestDto orderRequest) {
+        if (!orderRateLimiter.tryAcquire(userId)) {
+            throw new RateLimitedException("Order rate limit exceeded, slow down");
+        }
+        if (!authService.canUserTrade(userId, orderRequest.getAssetId())) {
+            throw new OrderRejectedException("User not authorized to trade this asset");
+        }
+
+        // Step 3: Order Validation
+        String validationError = orderRequest.validate();
+        if (validationError != null) {
+            throw new OrderRejectedException(validationError);
+        }
+        Asset asset = matchingEngine.getAsset(orderRequest.getAssetId());
+        if (asset == null) {
+            throw new OrderRejectedException("Unknown asset " + orderRequest.getAssetId());
+        }
+        Order order = createOrderFromRequest(userId, orderRequest, asset);
+
+        // Step 2: Pre-trade Risk Management (needs the built order: prices, side, order id)
+        String riskError = riskService.checkAndReserve(order);
+        if (riskError != null) {
+            throw new OrderRejectedException(riskError);
+        }
+        return order;
+    }
+
+    /**
+     * Reserve funds and record the PENDING order in parallel; fails if the reservation failed
+     */
+    private CompletableFuture<Order> reserveAndRecord(Order order) {
+        CompletableFuture<ReservationResult> reservation =
+            CompletableFuture.supplyAsync(() -> performFundReservation(order), gatewayExecutor);
+        CompletableFuture<Long> record =
+            CompletableFuture.supplyAsync(() -> persistenceService.saveNewOrder(order), gatewayExecutor);
+
+        return CompletableFuture.allOf(reservation, record).handle((ignored, failure) -> {
+            boolean reserved = !reservation.isCompletedExceptionally() && reservation.join().isSuccessful();
+            if (failure != null || !reserved) {
+                riskService.release(order.getOrderId());
+                if (reserved) {
+                    walletService.releaseReservations(order.getOrderId()); // order record failed, undo the reservation
+                }
+                if (!record.isCompletedExceptionally()) {
+                    persistenceService.updateOrderStatus(order.getOrderId(), 0, "REJECTED");
+                }
+                if (failure != null) {
+                    throw new CompletionException(unwrap(failure));
+                }
+                throw new OrderRejectedException(reservation.join().getErrorMessage());
+            }
+            order.setDatabaseId(record.join());
+            return order;
+        });
+    }
+
+    /**
+     * Reserve funds for every admitted order of the batch in one task and record them in another, in parallel;
+     * orders whose reservation or record failed are rejected individually. A reservation that throws fails only
+     * its own order, so the reservations made for the others are kept, or released if the record fails
+     */
+    private CompletableFuture<OrderBatch> reserveAndRecordBatch(OrderBatch batch) {
+        List<Order> admitted = batch.pendingOrders();
+        if (admitted.isEmpty()) {
+            return CompletableFuture.completedFuture(batch);
+        }
+        CompletableFuture<List<ReservationResult>> reservations = CompletableFuture.supplyAsync(() -> {
+            List<ReservationResult> results = new ArrayList<>(admitted.size());
+            for (Order order : admitted) {
+                try {
+                    results.add(performFundReservation(order));
+                } catch (RuntimeException e) {
+                    logger.error("Fund reservation failed for order {}", order.getOrderId(), e);
+                    results.add(new ReservationResult(false, "Internal error while reserving funds"));
+                }
+            }
+            return results;
+        }, gatewayExecutor);
+        CompletableFuture<List<Long>> records =
+            CompletableFuture.supplyAsync(() -> persistenceService.saveNewOrders(admitted), gatewayExecutor);
+
+        return CompletableFuture.allOf(reservations, records).handle((ignored, failure) -> {
+            boolean recorded = !records.isCompletedExceptionally();
+            for (int i = 0; i < admitted.size(); i++) {
+                Order order = admitted.get(i);
+                ReservationResult reservation = reservations.isCompletedExceptionally() ? null : reservations.join().get(i);
+                boolean reserved = reservation != null && reservation.isSuccessful();
+                if (failure == null && reserved) {
+                    order.setDatabaseId(records.join().get(i));
+                    continue;
+                }
+                riskService.release(order.getOrderId());
+                if (reserved) {
+                    walletService.releaseReservations(order.getOrderId());
+                }
+                if (recorded) {
+                    persistenceService.updateOrderStatus(order.getOrderId(), 0, "REJECTED");
+                }
+                batch.complete(order, failure != null ? toErrorResponse(failure)
+                                                      : OrderResponseDto.error(reservation.getErrorMessage()));
+            }
+            return batch;
+        });
+    }
+
+    /**
+     * Route every reserved order of the batch, grouped by asset, and collect the per-order results
+     */
+    private CompletableFuture<List<OrderResponseDto>> routeBatch(OrderBatch batch) {
+        List<Order> reserved = batch.pendingOrders();
+        for (Order order : reserved) {
+            entitlementStore.recordOrder(order.getOrderId(), order.getClientId());
+            orderStateCache.recordSubmitted(order);
+            historyService.recordSubmitted(order);
+        }
+        List<CompletableFuture<Long>> routed = orderTransport.submitOrders(reserved);
+
+        CompletableFuture<?>[] results = new CompletableFuture<?>[reserved.size()];
+        for (int i = 0; i < reserved.size(); i++) {
+            Order order = reserved.get(i);
+            results[i] = routed.get(i).handle((orderId, failure) -> {
+                batch.complete(order, routingResult(order, failure));
+                return null;
+            });
+        }
+        return CompletableFuture.allOf(results).thenApply(ignored -> Arrays.asList(batch.responses));
+    }
+
+    /**
+     * Hand the reserved order to the matching engine; undo the reservation if the transport refuses it
+     */
+    private CompletableFuture<OrderResponseDto> routeOrder(Order order) {
+        // recorded before the engine sees the order, so an immediate cancel finds its owner
+        entitlementStore.recordOrder(order.getOrderId(), order.getClientId());
+        orderStateCache.recordSubmitted(order);
+        historyService.recordSubmitted(order);
+        return orderTransport.submitOrder(order).handle((orderId, failure) -> routingResult(order, failure));
+    }
+
+    private OrderResponseDto routingResult(Order order, Throwable failure) {
+        if (failure != null) {
+            entitlementStore.forgetOrder(order.getOrderId());
+            logger.warn("Failed to route order {}: {}", order.getOrderId(), unwrap(failure).getMessage());
+            walletService.releaseReservations(order.getOrderId());
+            riskService.release(order.getOrderId());
+            persistenceService.updateOrderStatus(order.getOrderId(), 0, "REJECTED");
+            orderStateCache.onRejected(order.getOrderId(), order.getClientId(), order.getAsset().getAssetId(),
+                                       "Order could not be routed to the matching engine");
+            historyService.onRejected(order.getOrderId(), order.getClientId());
+            return OrderResponseDto.error("Order could not be routed to the matching engine, retry later");
+        }
+        return OrderResponseDto.success(order.getOrderId());
+    }
+
+    /**
+     * @throws OrderRejectedException if the caller may not cancel this order
+     */
+    private Void admitCancel(long orderId, long assetId, String authToken) {
+        AuthenticatedPrincipal principal = authService.authenticate(authToken);
+        if (!principal.hasPermission(AuthenticatedPrincipal.PERMISSION_CANCEL)) {
+            throw new OrderRejectedException("User is not allowed to cancel orders");
+        }
+        if (!principal.isAdmin() && !entitlementStore.ownsOrder(principal.getUserId(), orderId)) {
+            throw new OrderRejectedException("Order " + orderId + " is not an open order of this user");
+        }
+        if (matchingEngine.getAsset(assetId) == null) {
+            throw new OrderRejectedException("Unknown asset " + assetId);
+        }
+        return null;
+    }
+
+    /**
+     * @return id of the user whose orders the caller may cancel
+     * @throws OrderRejectedException if the caller may not cancel these orders
+     */
+    private long admitMassCancel(MassCancelRequestDto request, String authToken) {
+        AuthenticatedPrincipal principal = authService.authenticate(authToken);
+        if (!principal.hasPermission(AuthenticatedPrincipal.PERMISSION_CANCEL)) {
+            throw new OrderRejectedException("User is not allowed to cancel orders");
+        }
+        if (request.getUserId() != null && request.getUserId() != principal.getUserId() && !principal.isAdmin()) {
+            throw new OrderRejectedException("Only administrators can cancel other users' orders");
+        }
+        String validationError = request.validate();
+        if (validationError != null) {
+            throw new OrderRejectedException(validationError);
+        }
+        return request.getUserId() == null ? principal.getUserId() : request.getUserId();
+    }
+
+    /**
+     * Send the mass cancel to the requested asset's OrderBook, or to every OrderBook
+     */
+    private CompletableFuture<OrderResponseDto> sendMassCancel(long userId, MassCancelRequestDto request) {
+        Collection<Asset> assets;
+        if (request.getAssetId() == null) {
+            assets = matchingEngine.getAssets();
+        } else {
+            Asset asset = matchingEngine.getAsset(request.getAssetId());
+            if (asset == null) {
+                throw new OrderRejectedException("Unknown asset " + request.getAssetId());
+            }
+            assets = List.of(asset);
+        }
+
+        List<CompletableFuture<Void>> sent = new ArrayList<>(assets.size());
+        for (Asset asset : assets) {
+            sent.add(orderTransport.massCancel(userId, asset.getAssetId(), request.bidFilter()));
+        }
+        return CompletableFuture.allOf(sent.toArray(new CompletableFuture<?>[0])).handle((ignored, failure) -> {
+            if (failure != null) {
+                long reached = sent.stream().filter(future -> !future.isCompletedExceptionally()).count();
+                logger.warn("Mass cancel {} reached {} of {} order books: {}", request, reached, sent.size(),
+                            unwrap(failure).getMessage());
+                return OrderResponseDto.error("Mass cancel reached " + reached + " of " + sent.size()
+                                              + " order books, retry");
+            }
+            return OrderResponseDto.success(null, "Mass cancel sent to " + sent.size() + " order books");
+        });
+    }
+
+    private OrderResponseDto toErrorResponse(Throwable failure) {
+        Throwable cause = unwrap(failure);
+        if (cause instanceof RateLimitedException) {
+            return OrderResponseDto.rateLimited(cause.getMessage());
+        }
+        if (cause instanceof OrderRejectedException || cause instanceof AuthenticationException) {
+            return OrderResponseDto.error(cause.getMessage());
+        }
+        if (cause instanceof TimeoutException) {
+            // the order may still be routed after the deadline: the client has to query its status
+            return OrderResponseDto.error("Order submission timed out, check the order status before retrying");
+        }
+        if (cause instanceof RejectedExecutionException) {
+            return OrderResponseDto.error("Order gateway is overloaded, retry later");
+        }
+        logger.error("Order processing failed", cause);
+        return OrderResponseDto.error("Internal error while processing order");
+    }
+
+    // helpers
+
+    private static OrderResponseDto unknownOrder(long orderId) {
+        return OrderResponseDto.error("Unknown order " + orderId); // also for other users' orders: ids don't leak
+    }
+
     /**
      * Handles fund/asset reservation based on order type
      * This prevents double-spending and ensures user has sufficient resources
      * 
-     * @param userId - User making the order
-     * @param orderRequest - Order details
+     * @param order - Order to reserve resources for
      * @return ReservationResult indicating success/failure
      */
-    private ReservationResult performFundReservation(Long userId, OrderRequestDto orderRequest) {
-        
-        // TODO: Implement reservation logic
-        
-        if (orderRequest.isBuyOrder()) {
-            // For BUY orders: Reserve cash
-            // Calculate required amount: quantity * price (for LIMIT) or estimate for MARKET
-            // Call walletService.reserveCash(userId, requiredAmount)
-            
-        } else {
-            // For SELL orders: Reserve asset shares
-            // Call walletService.reserveAsset(userId, assetId, quantity)
+    private ReservationResult performFundReservation(Order order) {
+        if (order.isBid()) {
+            // For BUY orders: Reserve cash (quantity * limit price; market and STOP orders, which execute at
+            // market, walk the cached depth plus a buffer)
+            BigDecimal requiredAmount = pricedNotional(order);
+            if (requiredAmount == null && order.getOrderType() == OrderType.STOP) {
+                requiredAmount = marketOrderCostEstimator.estimateStopBuyCost(
+                    order.getAsset().getOrderBook().getDepthSnapshot(), order.getQuantity(), order.getTriggerPrice());
+            } else if (requiredAmount == null) {
+                requiredAmount = marketOrderCostEstimator.estimateBuyCost(order);
+                if (requiredAmount == null) {
+                    return new ReservationResult(false, "Not enough offers in the book to price market order");
+                }
+            }
+            return walletService.reserveCash(order.getClientId(), requiredAmount, order.getOrderId());
         }
-        
-        return new ReservationResult(true, "TODO: Implement");
+        // For SELL orders: Reserve asset shares
+        return walletService.reserveAsset(order.getClientId(), order.getAsset().getAssetId(),
+                                          order.getQuantity(), order.getOrderId());
     }
-    
+
+    /**
+     * @return quantity * limit price, or null for orders that execute at market (MARKET, STOP)
+     */
+    private static BigDecimal pricedNotional(Order order) {
+        Price price = switch (order.getOrderType()) {
+            case LIMIT, STOP_LIMIT -> order.getExecutionPrice();
+            case STOP, MARKET -> null;
+        };
+        return price == null ? null : price.getValue().multiply(BigDecimal.valueOf(order.getQuantity()));
+    }
+
     /**
      * Creates validated Order object using factory methods
      * 
      * @param userId - Authenticated user ID
      * @param orderRequest - Validated order request
-     * @return Immutable Order object ready for matching
+     * @param asset - Listed asset the order trades
+     * @return Order object ready for matching
      */
-    private Order createOrderFromRequest(Long userId, OrderRequestDto orderRequest) {
-        
-        // TODO: Use your existing Order factory methods
-        // Based on orderRequest.getOrderType():
-        // - OrderType.MARKET -> Order.newMarketOrder(...)
-        // - OrderType.LIMIT -> Order.newLimitOrder(...)
-        // - OrderType.STOP -> Order.newStopOrder(...)
-        // - OrderType.STOP_LIMIT -> Order.newStopLimitOrder(...)
-        
-        return null; // TODO: Implement
+    private Order createOrderFromRequest(long userId, OrderRequestDto orderRequest, Asset asset) {
+        Price limitPrice;
+        Price triggerPrice;
+        try {
+            limitPrice = orderRequest.getLimitPrice() == null ? null : asset.priceOf(orderRequest.getLimitPrice());
+            triggerPrice = orderRequest.getTriggerPrice() == null ? null : asset.priceOf(orderRequest.getTriggerPrice());
+        } catch (IllegalArgumentException e) {
+            throw new OrderRejectedException(e.getMessage());
+        }
+
+        Order order = switch (orderRequest.getOrderType()) {
+            case MARKET -> Order.newMarketOrder(userId, orderRequest.getOrderType(), orderRequest.isBuyOrder(),
+                                                orderRequest.getQuantity(), asset);
+            case LIMIT -> Order.newLimitOrder(userId, orderRequest.getOrderType(), orderRequest.isBuyOrder(),
+                                              orderRequest.getQuantity(), asset, limitPrice);
+            case STOP -> Order.newStopOrder(userId, orderRequest.getOrderType(), orderRequest.isBuyOrder(),
+                                            orderRequest.getQuantity(), asset, triggerPrice);
+            case STOP_LIMIT -> Order.newStopLimitOrder(userId, orderRequest.getOrderType(), orderRequest.isBuyOrder(),
+                                                       orderRequest.getQuantity(), asset, limitPrice, triggerPrice);
+        };
+        order.setClientOrderId(orderRequest.getClientOrderId());
+        return order;
     }
-    
+
+    private static Throwable unwrap(Throwable failure) {
+        while (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        return failure;
+    }
+
     /**
      * Cancels an order and releases reserved resources
      * 
@@ -127,17 +699,53 @@ public class OrderGatewayService {
         return new OrderResponseDto("TODO: Implement cancelOrder");
     }
     
-    // TODO: Create inner class or separate file for ReservationResult
-    private static class ReservationResult {
-        private final boolean successful;
-        private final String message;
-        
-        public ReservationResult(boolean successful, String message) {
-            this.successful = successful;
-            this.message = message;
+    /**
+     * Orders of one batch submission: slot i holds either the admitted Order or, once it has failed, its response
+     */
+    private static final class OrderBatch {
+        private final Order[] orders;
+        private final OrderResponseDto[] responses;
+
+        private OrderBatch(int size) {
+            this.orders = new Order[size];
+            this.responses = new OrderResponseDto[size];
+        }
+
+        /**
+         * @return admitted orders that have no result yet, in batch order
+         */
+        private List<Order> pendingOrders() {
+            List<Order> pending = new ArrayList<>(orders.length);
+            for (int i = 0; i < orders.length; i++) {
+                if (orders[i] != null && responses[i] == null) {
+                    pending.add(orders[i]);
+                }
+            }
+            return pending;
+        }
+
+        private synchronized void complete(Order order, OrderResponseDto response) {
+            for (int i = 0; i < orders.length; i++) {
+                if (orders[i] == order) {
+                    responses[i] = response;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Order failed a gateway check; the message is returned to the client as is
+     */
+    private static class OrderRejectedException extends RuntimeException {
+        OrderRejectedException(String message) {
+            super(message);
+        }
+    }
+
+    private static class RateLimitedException extends OrderRejectedException {
+        RateLimitedException(String message) {
+            super(message);
         }
-        
-        public boolean isSuccessful() { return successful; }
-        public String getErrorMessage() { return message; }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,239 @@
+package com.xkrexchange.gateway;
+
+import com.xkrexchange.common.dto.OrderResponseDto;
+import com.xkrexchange.common.model.Order;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+/**
+ * In-memory view of every order's latest engine-confirmed state (status, filled quantity, average fill price)
+ *
+ * Key Responsibilities:
+ * 1. Record orders as PENDING when the gateway routes them
+ * 2. Apply execution reports (accepted, fills, rejection, cancellation) as the consumer processes them
+ * 3. Serve order status queries without a database round trip
+ * 4. Let a submitter wait for the engine's acknowledgement without blocking a thread
+ *
+ * Entries are replaced atomically per order, so readers always see a consistent state. Closed orders
+ * (filled, cancelled, rejected) are kept for {@code trading.order-state.retention-ms}, then evicted in the
+ * order they closed; live orders stay until they close.
+ */
+@Component
+public class OrderStateCache {
+
+    public static final String PENDING = "PENDING";
+    public static final String POSTED = "POSTED";
+    public static final String PARTIALLY_FILLED = "PARTIALLY_FILLED";
+    public static final String FILLED = "FILLED";
+    public static final String REJECTED = "REJECTED";
+    public static final String CANCELLED = "CANCELLED";
+
+    private final Map<Long, OrderState> states = new ConcurrentHashMap<>();
+    private final Map<Long, CompletableFuture<OrderState>> ackWaiters = new ConcurrentHashMap<>();
+    private final Queue<ClosedOrder> closedOrders = new ConcurrentLinkedQueue<>(); // in closing order
+    private final long retentionMillis;
+
+    public OrderStateCache(@Value("${trading.order-state.retention-ms:600000}") long retentionMillis) {
+        this.retentionMillis = retentionMillis;
+    }
+
+    // === QUERIES ===
+
+    /**
+     * @return latest known state, or null if the order is unknown or was evicted
+     */
+    public OrderState get(long orderId) {
+        return states.get(orderId);
+    }
+
+    public int size() {
+        return states.size();
+    }
+
+    /**
+     * Wait for the engine to acknowledge the order (accept, fill or reject it) without blocking
+     * Never completes exceptionally: after timeoutMillis the future completes with the state at that time
+     * (PENDING, or null if the order is unknown)
+     */
+    public CompletableFuture<OrderState> awaitAck(long orderId, long timeoutMillis) {
+        OrderState state = states.get(orderId);
+        if (state != null && state.isAcknowledged()) {
+            return CompletableFuture.completedFuture(state);
+        }
+        CompletableFuture<OrderState> ack = ackWaiters.computeIfAbsent(orderId, id -> new CompletableFuture<>());
+        state = states.get(orderId); // an update may have landed before the waiter was registered
+        if (state != null && state.isAcknowledged()) {
+            ackWaiters.remove(orderId, ack);
+            ack.complete(state);
+        }
+        return ack.copy()
+            .orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+            .handle((acknowledged, timeout) -> {
+                if (acknowledged != null) return acknowledged;
+                ackWaiters.remove(orderId, ack);
+                return states.get(orderId);
+            });
+    }
+
+    // === UPDATES ===
+
+    /**
+     * Order handed to the matching engine; an engine report that already arrived is not overwritten
+     */
+    public void recordSubmitted(Order order) {
+        states.putIfAbsent(order.getOrderId(), new OrderState(order.getOrderId(), order.getClientId(),
+            order.getAsset().getAssetId(), PENDING, 0, BigDecimal.ZERO, null));
+    }
+
+    public void onAccepted(long orderId, long userId, long assetId, int filledQuantity) {
+        update(orderId, userId, assetId, state -> state.closed() ? state
+            : state.with(filledQuantity == 0 ? POSTED : PARTIALLY_FILLED, Math.max(filledQuantity, state.filledQuantity),
+                         state.notional, null));
+    }
+
+    /**
+     * One fill of the order
+     * @param filledQuantity - cumulative filled quantity after this fill
+     * @param remainingQuantity - quantity still open after this fill
+     */
+    public void onFill(long orderId, long userId, long assetId, int quantity, BigDecimal price,
+                       int filledQuantity, int remainingQuantity) {
+        update(orderId, userId, assetId, state -> state.closed() ? state
+            : state.with(remainingQuantity == 0 ? FILLED : PARTIALLY_FILLED, filledQuantity,
+                         state.notional.add(price.multiply(BigDecimal.valueOf(quantity))), null));
+    }
+
+    public void onRejected(long orderId, long userId, long assetId, String reason) {
+        update(orderId, userId, assetId, state -> state.closed() ? state
+            : state.with(REJECTED, state.filledQuantity, state.notional, reason));
+    }
+
+    public void onCancelled(long orderId, long userId, long assetId, int filledQuantity, String reason) {
+        update(orderId, userId, assetId, state -> state.closed() ? state
+            : state.with(CANCELLED, Math.max(filledQuantity, state.filledQuantity), state.notional, reason));
+    }
+
+    // helpers
+
+    private void update(long orderId, long userId, long assetId, UnaryOperator<OrderState> change) {
+        OrderState[] previous = new OrderState[1];
+        OrderState updated = states.compute(orderId, (id, state) -> {
+            previous[0] = state;
+            return change.apply(state != null ? state
+                : new OrderState(orderId, userId, assetId, PENDING, 0, BigDecimal.ZERO, null));
+        });
+
+        if (updated.isAcknowledged()) {
+            CompletableFuture<OrderState> ack = ackWaiters.remove(orderId);
+            if (ack != null) ack.complete(updated);
+        }
+        if (updated.closed() && (previous[0] == null || !previous[0].closed())) {
+            long now = System.currentTimeMillis();
+            closedOrders.add(new ClosedOrder(orderId, now));
+            evictClosed(now);
+        }
+    }
+
+    private void evictClosed(long now) {
+        ClosedOrder oldest;
+        while ((oldest = closedOrders.peek()) != null && now - oldest.closedAt >= retentionMillis) {
+            if (closedOrders.remove(oldest)) {
+                states.remove(oldest.orderId);
+            }
+        }
+    }
+
+    private record ClosedOrder(long orderId, long closedAt) {
+    }
+
+    // === STATE ===
+
+    /**
+     * Immutable snapshot of one order
+     */
+    public static final class OrderState {
+        private final long orderId;
+        private final long userId;
+        private final long assetId;
+        private final String status;
+        private final int filledQuantity;
+        private final BigDecimal notional; // sum of fill price * quantity
+        private final String reason;
+
+        OrderState(long orderId, long userId, long assetId, String status, int filledQuantity, BigDecimal notional,
+                   String reason) {
+            this.orderId = orderId;
+            this.userId = userId;
+            this.assetId = assetId;
+            this.status = status;
+            this.filledQuantity = filledQuantity;
+            this.notional = notional;
+            this.reason = reason;
+        }
+
+        private OrderState with(String newStatus, int newFilledQuantity, BigDecimal newNotional, String newReason) {
+            return new OrderState(orderId, userId, assetId, newStatus, newFilledQuantity, newNotional, newReason);
+        }
+
+        public long getOrderId() { return orderId; }
+        public long getUserId() { return userId; }
+        public long getAssetId() { return assetId; }
+        public String getStatus() { return status; }
+        public int getFilledQuantity() { return filledQuantity; }
+        public String getReason() { return reason; }
+
+        /**
+         * @return volume-weighted average fill price, null before the first fill
+         */
+        public BigDecimal getAveragePrice() {
+            if (filledQuantity == 0 || notional.signum() == 0) return null;
+            return notional.divide(BigDecimal.valueOf(filledQuantity), 8, RoundingMode.HALF_EVEN).stripTrailingZeros();
+        }
+
+        /**
+         * @return true once the matching engine has reported on the order
+         */
+        public boolean isAcknowledged() {
+            return !PENDING.equals(status);
+        }
+
+        boolean closed() {
+            return FILLED.equals(status) || REJECTED.equals(status) || CANCELLED.equals(status);
+        }
+
+        public OrderResponseDto toResponse() {
+            OrderResponseDto response = new OrderResponseDto();
+            response.setSuccess(!REJECTED.equals(status));
+            response.setOrderId(orderId);
+            response.setOrderStatus(status);
+            response.setExecutedQuantity(filledQuantity);
+            BigDecimal averagePrice = getAveragePrice();
+            if (averagePrice != null) {
+                response.setExecutedPrice(averagePrice);
+                response.setTotalValue(notional);
+            }
+            response.setMessage(reason != null ? reason : switch (status) {
+                case PENDING -> "Order submitted, awaiting matching engine";
+                case POSTED -> "Order resting on the book";
+                default -> String.format("Filled %d shares", filledQuantity);
+            });
+            return response;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("OrderState{order=%d, status=%s, filled=%d, avgPrice=%s}",
+                                 orderId, status, filledQuantity, getAveragePrice());
+        }
+    }
+}
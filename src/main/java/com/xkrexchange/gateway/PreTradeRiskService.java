@@ -0,0 +1,263 @@
+package com.xkrexchange.gateway;
+
+import com.xkrexchange.common.model.Order;
+import com.xkrexchange.common.model.Price;
+import com.xkrexchange.matching.OrderBook;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pre-trade Risk Service - In-memory risk checks run by the gateway before an order is reserved and routed
+ *
+ * Key Responsibilities:
+ * 1. Cap order size and notional value
+ * 2. Reject limit prices outside a collar around the current NBBO midpoint (or last trade)
+ * 3. Cap the number of open orders per user
+ * 4. Cap each user's worst-case net position per asset (position + every open order filling)
+ *
+ * Exposure model:
+ * - All state lives in memory and is updated incrementally: checkAndReserve() adds an accepted order's
+ *   quantity to the user's pending exposure, fills move it from pending into the position, and
+ *   cancels/rejections release whatever was still pending
+ * - Counters are atomics held per user and per (user, asset); limits are enforced with CAS loops, so
+ *   concurrent gateway threads never take a lock and two orders can't both squeeze under the same limit
+ * - Orders this gateway didn't admit (e.g. from another node) are ignored by the fill/close callbacks
+ */
+@Service
+public class PreTradeRiskService {
+
+    private final int maxOrderSize;
+    private final BigDecimal maxOrderValue;
+    private final BigDecimal priceCollar; // fraction of the reference price, e.g. 0.10
+    private final int maxOpenOrders;
+    private final long maxNetPosition;
+
+    private final Map<Long, UserExposure> exposures = new ConcurrentHashMap<>();
+    private final Map<Long, OpenOrder> openOrders = new ConcurrentHashMap<>();
+
+    public PreTradeRiskService(@Value("${trading.order-gateway.max-order-size:1000000}") int maxOrderSize,
+                               @Value("${trading.order-gateway.max-order-value:10000000.00}") BigDecimal maxOrderValue,
+                               @Value("${trading.order-gateway.risk.price-collar-percent:10}") BigDecimal priceCollarPercent,
+                               @Value("${trading.order-gateway.risk.max-open-orders:500}") int maxOpenOrders,
+                               @Value("${trading.order-gateway.risk.max-net-position:5000000}") long maxNetPosition) {
+        this.maxOrderSize = maxOrderSize;
+        this.maxOrderValue = maxOrderValue;
+        this.priceCollar = priceCollarPercent.movePointLeft(2);
+        this.maxOpenOrders = maxOpenOrders;
+        this.maxNetPosition = maxNetPosition;
+    }
+
+    /**
+     * Run every pre-trade check and, if they all pass, count the order against the user's limits
+     * The caller MUST call release() if the order later fails to reach the matching engine
+     *
+     * @param order - Order built by the gateway, not yet routed
+     * @return Risk violation message, or null if the order was accepted
+     */
+    public String checkAndReserve(Order order) {
+        if (order.getQuantity() > maxOrderSize) {
+            return "Quantity exceeds maximum order size of " + maxOrderSize;
+        }
+
+        OrderBook book = order.getAsset().getOrderBook();
+        Price limitPrice = order.getExecutionPrice();
+        if (limitPrice != null) {
+            String collarError = checkPriceCollar(limitPrice.getValue(), book);
+            if (collarError != null) {
+                return collarError;
+            }
+        }
+
+        Price valuationPrice = valuationPrice(order, book);
+        if (valuationPrice != null
+                && valuationPrice.getValue().multiply(BigDecimal.valueOf(order.getQuantity())).compareTo(maxOrderValue) > 0) {
+            return "Order value exceeds maximum of " + maxOrderValue;
+        }
+
+        UserExposure user = exposures.computeIfAbsent(order.getClientId(), id -> new UserExposure());
+        if (!tryIncrement(user.openOrders, maxOpenOrders)) {
+            return "Too many open orders (maximum " + maxOpenOrders + ")";
+        }
+        AssetExposure asset = user.assets.computeIfAbsent(order.getAsset().getAssetId(), id -> new AssetExposure());
+        if (!asset.tryAddPending(order.isBid(), order.getQuantity(), maxNetPosition)) {
+            user.openOrders.decrementAndGet();
+            return "Order would exceed maximum net position of " + maxNetPosition + " shares";
+        }
+
+        openOrders.put(order.getOrderId(), new OpenOrder(user, asset, order.isBid(), order.getQuantity()));
+        return null;
+    }
+
+    /**
+     * Undo checkAndReserve() for an order that never reached the matching engine
+     */
+    public void release(long orderId) {
+        onOrderClosed(orderId);
+    }
+
+    /**
+     * Apply a fill: the filled quantity moves from pending exposure into the position
+     */
+    public void onFill(long orderId, int filledQuantity) {
+        OpenOrder open = openOrders.get(orderId);
+        if (open == null) {
+            return;
+        }
+        int filled = open.fill(filledQuantity);
+        if (filled > 0) {
+            open.asset.applyFill(open.bid, filled);
+        }
+        if (open.remaining.get() == 0 && openOrders.remove(orderId, open)) {
+            open.user.openOrders.decrementAndGet();
+        }
+    }
+
+    /**
+     * Order was cancelled or rejected: release whatever was still pending
+     */
+    public void onOrderClosed(long orderId) {
+        OpenOrder open = openOrders.remove(orderId);
+        if (open == null) {
+            return;
+        }
+        int unfilled = open.remaining.getAndSet(0);
+        open.asset.releasePending(open.bid, unfilled);
+        open.user.openOrders.decrementAndGet();
+    }
+
+    public int getOpenOrderCount(long userId) {
+        UserExposure user = exposures.get(userId);
+        return user == null ? 0 : user.openOrders.get();
+    }
+
+    public long getNetPosition(long userId, long assetId) {
+        UserExposure user = exposures.get(userId);
+        AssetExposure asset = user == null ? null : user.assets.get(assetId);
+        return asset == null ? 0 : asset.position.get();
+    }
+
+    // helpers
+
+    private String checkPriceCollar(BigDecimal price, OrderBook book) {
+        BigDecimal reference = referencePrice(book);
+        if (reference == null) {
+            return null; // nothing to collar against (empty book, no trades yet)
+        }
+        BigDecimal band = reference.multiply(priceCollar);
+        if (price.compareTo(reference.subtract(band)) < 0 || price.compareTo(reference.add(band)) > 0) {
+            return "Limit price " + price + " is outside the allowed band around " + reference;
+        }
+        return null;
+    }
+
+    /**
+     * NBBO midpoint, or the last trade price if one side of the book is empty
+     */
+    private static BigDecimal referencePrice(OrderBook book) {
+        Price bid = book.getNationalBestBidPrice();
+        Price offer = book.getNationalBestOfferPrice();
+        if (bid != null && offer != null) {
+            return bid.getValue().add(offer.getValue()).divide(BigDecimal.valueOf(2), 4, RoundingMode.HALF_UP);
+        }
+        Price last = book.getLastTradePrice();
+        return last == null ? null : last.getValue();
+    }
+
+    /**
+     * Limit price (trigger price for STOP orders); market orders are valued at the opposite side of the NBBO
+     */
+    private static Price valuationPrice(Order order, OrderBook book) {
+        return switch (order.getOrderType()) {
+            case LIMIT, STOP_LIMIT -> order.getExecutionPrice();
+            case STOP -> order.getTriggerPrice();
+            case MARKET -> order.isBid() ? book.getNationalBestOfferPrice() : book.getNationalBestBidPrice();
+        };
+    }
+
+    private static boolean tryIncrement(AtomicInteger counter, int limit) {
+        int current;
+        do {
+            current = counter.get();
+            if (current >= limit) {
+                return false;
+            }
+        } while (!counter.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    private static final class UserExposure {
+        private final AtomicInteger openOrders = new AtomicInteger();
+        private final Map<Long, AssetExposure> assets = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * One user's exposure to one asset, in shares
+     * Worst-case long = position + pendingBuy, worst-case short = pendingSell - position
+     */
+    private static final class AssetExposure {
+        private final AtomicLong position = new AtomicLong();
+        private final AtomicLong pendingBuy = new AtomicLong();
+        private final AtomicLong pendingSell = new AtomicLong();
+
+        boolean tryAddPending(boolean bid, int quantity, long limit) {
+            AtomicLong pending = bid ? pendingBuy : pendingSell;
+            long current;
+            do {
+                current = pending.get();
+                long worstCase = bid ? position.get() + current + quantity : current + quantity - position.get();
+                if (worstCase > limit) {
+                    return false;
+                }
+            } while (!pending.compareAndSet(current, current + quantity));
+            return true;
+        }
+
+        void applyFill(boolean bid, int quantity) {
+            if (bid) {
+                position.addAndGet(quantity);
+                pendingBuy.addAndGet(-quantity);
+            } else {
+                position.addAndGet(-quantity);
+                pendingSell.addAndGet(-quantity);
+            }
+        }
+
+        void releasePending(boolean bid, int quantity) {
+            (bid ? pendingBuy : pendingSell).addAndGet(-quantity);
+        }
+    }
+
+    private static final class OpenOrder {
+        private final UserExposure user;
+        private final AssetExposure asset;
+        private final boolean bid;
+        private final AtomicInteger remaining;
+
+        OpenOrder(UserExposure user, AssetExposure asset, boolean bid, int quantity) {
+            this.user = user;
+            this.asset = asset;
+            this.bid = bid;
+            this.remaining = new AtomicInteger(quantity);
+        }
+
+        /**
+         * @return quantity actually taken off the remainder (never more than what was left)
+         */
+        int fill(int quantity) {
+            int current;
+            int taken;
+            do {
+                current = remaining.get();
+                taken = Math.min(current, quantity);
+            } while (!remaining.compareAndSet(current, current - taken));
+            return taken;
+        }
+    }
+}
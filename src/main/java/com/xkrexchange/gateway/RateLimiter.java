@@ -0,0 +1,19 @@
+package com.xkrexchange.gateway;
+
+/**
+ * Admission control for gateway traffic, keyed by a primitive id (user id, packed IP address)
+ * Implementations must be thread-safe and non-blocking on the common path
+ */
+public interface RateLimiter {
+
+    /**
+     * Take one token for the key
+     * @return true if the request may proceed, false if the key is over its rate
+     */
+    boolean tryAcquire(long key);
+
+    /**
+     * Limiter used when rate limiting is disabled; admits everything
+     */
+    RateLimiter UNLIMITED = key -> true;
+}
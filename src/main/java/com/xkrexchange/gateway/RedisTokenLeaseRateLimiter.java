@@ -0,0 +1,152 @@
+package com.xkrexchange.gateway;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cluster-wide RateLimiter: the token bucket lives in Redis and is shared by every gateway node
+ *
+ * To avoid a Redis round trip per order, a node takes a LEASE of several permits at once (one atomic Lua call)
+ * and hands them out locally until the lease is used up or expires. Unused leased permits are simply dropped
+ * on expiry, so the limit is never exceeded cluster-wide; the cost is that a client spread across nodes may be
+ * throttled slightly early.
+ *
+ * If Redis is unreachable the limiter falls back to a node-local TokenBucketRateLimiter with the same rate.
+ */
+public class RedisTokenLeaseRateLimiter implements RateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisTokenLeaseRateLimiter.class);
+    private static final int MAX_IDLE_LEASES = 100_000;
+
+    /**
+     * KEYS[1] = bucket, ARGV = capacity (permits), refill per ms (permits), permits requested, ttl ms
+     * Uses the Redis server clock so gateway clock skew doesn't matter. Returns the permits granted.
+     */
+    private static final RedisScript<Long> TAKE_LEASE = new DefaultRedisScript<>(
+        "local capacity = tonumber(ARGV[1]) " +
+        "local rate = tonumber(ARGV[2]) " +
+        "local requested = tonumber(ARGV[3]) " +
+        "local time = redis.call('TIME') " +
+        "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000) " +
+        "local bucket = redis.call('HMGET', KEYS[1], 'tokens', 'ts') " +
+        "local tokens = tonumber(bucket[1]) or capacity " +
+        "local ts = tonumber(bucket[2]) or now " +
+        "tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate) " +
+        "local granted = math.min(requested, math.floor(tokens)) " +
+        "tokens = tokens - granted " +
+        "redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', now) " +
+        "redis.call('PEXPIRE', KEYS[1], ARGV[4]) " +
+        "return granted",
+        Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final String keyPrefix;
+    private final int permitsPerMinute;
+    private final int leaseSize;
+    private final long leaseMillis;
+    private final RateLimiter fallback;
+
+    private final Map<Long, Lease> leases = new ConcurrentHashMap<>();
+
+    /**
+     * @param name - limiter name, keeps buckets of different limiters apart in Redis
+     * @param permitsPerMinute - cluster-wide sustained rate per key, also the burst size
+     * @param leaseSize - permits taken from Redis per round trip
+     * @param leaseMillis - how long leased permits stay usable on this node
+     */
+    public RedisTokenLeaseRateLimiter(StringRedisTemplate redisTemplate, String name, int permitsPerMinute,
+                                      int leaseSize, long leaseMillis) {
+        this.redisTemplate = redisTemplate;
+        this.keyPrefix = "xkr:rate-limit:" + name + ":";
+        this.permitsPerMinute = permitsPerMinute;
+        this.leaseSize = Math.max(1, Math.min(leaseSize, permitsPerMinute));
+        this.leaseMillis = leaseMillis;
+        this.fallback = new TokenBucketRateLimiter(permitsPerMinute);
+    }
+
+    @Override
+    public boolean tryAcquire(long key) {
+        long now = System.currentTimeMillis();
+        Lease lease = leases.computeIfAbsent(key, k -> new Lease());
+        if (lease.tryTake(now)) {
+            return true;
+        }
+
+        // only one thread per key goes to Redis; the others wait for its lease
+        synchronized (lease) {
+            if (lease.tryTake(now)) {
+                return true;
+            }
+            int granted;
+            try {
+                granted = takeLease(key);
+            } catch (RuntimeException e) {
+                logger.warn("Redis rate limiter unavailable, using node-local limit: {}", e.getMessage());
+                return fallback.tryAcquire(key);
+            }
+            if (granted == 0) {
+                return false;
+            }
+            lease.renew(granted - 1, now + leaseMillis);
+        }
+
+        if (leases.size() > MAX_IDLE_LEASES) {
+            evictExpired(now);
+        }
+        return true;
+    }
+
+    // helpers
+
+    private int takeLease(long key) {
+        Long granted = redisTemplate.execute(TAKE_LEASE, List.of(keyPrefix + key),
+            String.valueOf(permitsPerMinute),
+            String.valueOf(permitsPerMinute / 60_000.0),
+            String.valueOf(leaseSize),
+            String.valueOf(120_000));
+        return granted == null ? 0 : granted.intValue();
+    }
+
+    private void evictExpired(long now) {
+        leases.entrySet().removeIf(entry -> entry.getValue().isExpired(now));
+    }
+
+    /**
+     * Permits leased from Redis and still available on this node
+     */
+    private static final class Lease {
+        private final AtomicInteger permits = new AtomicInteger();
+        private volatile long expiresAt;
+
+        boolean tryTake(long now) {
+            if (now >= expiresAt) {
+                return false;
+            }
+            int current;
+            do {
+                current = permits.get();
+                if (current <= 0) {
+                    return false;
+                }
+            } while (!permits.compareAndSet(current, current - 1));
+            return true;
+        }
+
+        void renew(int available, long expiresAt) {
+            permits.set(available);
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.xkrexchange.gateway;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * In-memory token-bucket RateLimiter for a single gateway node
+ *
+ * Each key owns a bucket holding up to one minute worth of permits, refilled continuously.
+ * A bucket is ONE packed long: 40 bits of timestamp (ms since the limiter started) and 24 bits of
+ * milli-tokens, so taking a token is a single compareAndSet with no lock and no allocation.
+ *
+ * Buckets live in a striped, open-addressed hash table of primitive longs (keys + packed states):
+ * - Lookups and token updates are lock-free
+ * - Inserting a new key takes the stripe's monitor; when a stripe passes 3/4 load it is rebuilt and
+ *   idle buckets (refilled to capacity, i.e. indistinguishable from a new bucket) are dropped
+ * - A token taken on a stripe while it is being rebuilt may be lost (the new table has the older state);
+ *   the error is at most one token per concurrent request, in the client's favour
+ */
+public class TokenBucketRateLimiter implements RateLimiter {
+
+    private static final long EMPTY = 0L;
+    private static final int TOKEN_BITS = 24;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    private static final long MILLI_TOKENS_PER_PERMIT = 1_000;
+    private static final int MIN_STRIPE_CAPACITY = 64;
+
+    private final int permitsPerMinute;
+    private final long capacity; // milli-tokens
+    private final LongSupplier clockMillis;
+    private final long epochMillis;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    public TokenBucketRateLimiter(int permitsPerMinute) {
+        this(permitsPerMinute, 64, System::currentTimeMillis);
+    }
+
+    /**
+     * @param permitsPerMinute - sustained rate, also the burst size
+     * @param stripeCount - independent insert locks, rounded up to a power of two
+     * @param clockMillis - time source in milliseconds
+     */
+    public TokenBucketRateLimiter(int permitsPerMinute, int stripeCount, LongSupplier clockMillis) {
+        if (permitsPerMinute <= 0 || permitsPerMinute * MILLI_TOKENS_PER_PERMIT > TOKEN_MASK) {
+            throw new IllegalArgumentException("Permits per minute must be between 1 and " + TOKEN_MASK / MILLI_TOKENS_PER_PERMIT);
+        }
+        this.permitsPerMinute = permitsPerMinute;
+        this.capacity = permitsPerMinute * MILLI_TOKENS_PER_PERMIT;
+        this.clockMillis = clockMillis;
+        this.epochMillis = clockMillis.getAsLong();
+
+        int stripeSize = Integer.highestOneBit(Math.max(stripeCount, 1) - 1) << 1;
+        this.stripes = new Stripe[Math.max(stripeSize, 1)];
+        this.stripeMask = stripes.length - 1;
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    @Override
+    public boolean tryAcquire(long key) {
+        long mixedKey = mix(key);
+        Stripe stripe = stripes[(int) (mixedKey >>> 40) & stripeMask];
+        long now = clockMillis.getAsLong() - epochMillis;
+
+        Table table;
+        int slot;
+        while ((slot = (table = stripe.table).find(mixedKey)) < 0) {
+            if (stripe.insert(mixedKey, now)) {
+                return true; // fresh bucket, its first token was taken on insert
+            }
+        }
+
+        while (true) {
+            long state = table.states.get(slot);
+            long refilled = refill(state, now);
+            long tokens = refilled & TOKEN_MASK;
+            if (tokens < MILLI_TOKENS_PER_PERMIT) {
+                return false;
+            }
+            if (table.states.compareAndSet(slot, state, refilled - MILLI_TOKENS_PER_PERMIT)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return number of buckets currently held (live and idle)
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.table.size;
+        }
+        return size;
+    }
+
+    // helpers
+
+    /**
+     * Credit the tokens earned since the bucket's timestamp; the timestamp only advances by the time that
+     * was actually converted into tokens, so slow rates don't lose fractional tokens to rounding
+     */
+    private long refill(long state, long now) {
+        long timestamp = state >>> TOKEN_BITS;
+        long tokens = state & TOKEN_MASK;
+        long elapsed = now - timestamp;
+        if (elapsed <= 0) {
+            return state;
+        }
+        long credit = elapsed * permitsPerMinute / 60; // milli-tokens: permitsPerMinute * 1000 / 60_000 per ms
+        if (tokens + credit >= capacity) {
+            return pack(now, capacity);
+        }
+        if (credit == 0) {
+            return state;
+        }
+        return pack(timestamp + credit * 60 / permitsPerMinute, tokens + credit);
+    }
+
+    private boolean isIdle(long state, long now) {
+        return (refill(state, now) & TOKEN_MASK) == capacity;
+    }
+
+    private static long pack(long timestamp, long milliTokens) {
+        return timestamp << TOKEN_BITS | milliTokens;
+    }
+
+    /**
+     * MurmurHash3 finalizer; also keeps EMPTY (0) reserved for unused slots
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key == EMPTY ? 1L : key;
+    }
+
+    /**
+     * Open-addressed, linear-probing table; keys are written once (under the stripe lock) and never cleared
+     */
+    private static final class Table {
+        private final AtomicLongArray keys;
+        private final AtomicLongArray states;
+        private final int mask;
+        private int size; // guarded by the stripe
+
+        Table(int capacity) {
+            this.keys = new AtomicLongArray(capacity);
+            this.states = new AtomicLongArray(capacity);
+            this.mask = capacity - 1;
+        }
+
+        int find(long key) {
+            int index = (int) key & mask;
+            long current;
+            while ((current = keys.get(index)) != EMPTY) {
+                if (current == key) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * REQUIRES the key to be absent and a free slot to exist; state is published before the key
+         */
+        void put(long key, long state) {
+            int index = (int) key & mask;
+            while (keys.get(index) != EMPTY) {
+                index = (index + 1) & mask;
+            }
+            states.set(index, state);
+            keys.set(index, key);
+            size++;
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+    }
+
+    private final class Stripe {
+        private volatile Table table = new Table(MIN_STRIPE_CAPACITY);
+
+        /**
+         * Add a bucket for the key with one token already taken
+         * @return false if another thread created the bucket first
+         */
+        synchronized boolean insert(long key, long now) {
+            if (table.find(key) >= 0) {
+                return false;
+            }
+            if (table.size + 1 > table.capacity() * 3 / 4) {
+                table = rebuild(table, now);
+            }
+            table.put(key, pack(now, capacity - MILLI_TOKENS_PER_PERMIT));
+            return true;
+        }
+
+        /**
+         * Copy live buckets into a fresh table, dropping idle ones; grows if live buckets would fill over half of it
+         */
+        private Table rebuild(Table old, long now) {
+            int live = 0;
+            for (int i = 0; i < old.capacity(); i++) {
+                if (old.keys.get(i) != EMPTY && !isIdle(old.states.get(i), now)) live++;
+            }
+            int newCapacity = old.capacity();
+            while ((live + 1) * 2 > newCapacity) {
+                newCapacity <<= 1;
+            }
+
+            Table rebuilt = new Table(newCapacity);
+            for (int i = 0; i < old.capacity(); i++) {
+                long key = old.keys.get(i);
+                long state = old.states.get(i);
+                if (key != EMPTY && !isIdle(state, now)) {
+                    rebuilt.put(key, state);
+                }
+            }
+            return rebuilt;
+        }
+    }
+}
@@ -0,0 +1,581 @@
+package com.xkrexchange.gateway.binary;
+
+import com.xkrexchange.common.dto.OrderRequestDto;
+import com.xkrexchange.common.dto.OrderResponseDto;
+import com.xkrexchange.common.model.OrderType;
+import com.xkrexchange.gateway.OrderGatewayService;
+import com.xkrexchange.security.AuthenticatedPrincipal;
+import com.xkrexchange.security.AuthenticationService;
+import com.xkrexchange.security.AuthenticationService.AuthenticationException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static com.xkrexchange.gateway.binary.BinaryProtocol.*;
+
+/**
+ * Binary Order Entry Server - Low-latency TCP order entry alongside the REST API
+ *
+ * Key Responsibilities:
+ * 1. Accept non-blocking TCP sessions speaking BinaryProtocol (no HTTP, no JSON)
+ * 2. Enforce session-level sequence numbers, heartbeats and resend (FIX-like semantics)
+ * 3. Feed orders and cancels into the same OrderGatewayService path as REST (auth, risk, reservation, routing)
+ * 4. Return acks and rejects as sequenced messages, retained for resend after a reconnect
+ *
+ * Threading model:
+ * - One selector thread owns every socket and every session: it decodes frames, assigns outbound sequence
+ *   numbers and writes, so sessions need no locks
+ * - Order processing runs on the gateway's executor; completed responses are queued back to the selector
+ *   thread (lock-free queue + wakeup) which encodes and sends them in completion order
+ *
+ * Disabled by default; enable with {@code trading.binary-gateway.enabled=true}.
+ */
+@Component
+@ConditionalOnProperty(name = "trading.binary-gateway.enabled", havingValue = "true")
+public class BinaryOrderEntryServer {
+
+    private static final Logger logger = LoggerFactory.getLogger(BinaryOrderEntryServer.class);
+    private static final long SELECT_TIMEOUT_MILLIS = 100;
+    private static final long LOGON_TIMEOUT_MILLIS = 5_000;
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final OrderGatewayService orderGatewayService;
+    private final AuthenticationService authService;
+    private final String bindAddress;
+    private final int port;
+    private final int maxHeartbeatSeconds;
+    private final int resendBufferSize;
+    private final int writeBufferBytes;
+
+    // === SELECTOR THREAD STATE ===
+    private final Map<Long, BinarySession> sessions = new HashMap<>(); // by user id
+    private final ByteBuffer encodeBuffer = ByteBuffer.allocate(MAX_FRAME_LENGTH);
+    private final Queue<Response> responses = new ConcurrentLinkedQueue<>();
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private volatile boolean isRunning = false;
+    private Thread selectorThread;
+
+    public BinaryOrderEntryServer(OrderGatewayService orderGatewayService,
+                                  AuthenticationService authService,
+                                  @Value("${trading.binary-gateway.bind-address:0.0.0.0}") String bindAddress,
+                                  @Value("${trading.binary-gateway.port:9878}") int port,
+                                  @Value("${trading.binary-gateway.max-heartbeat-seconds:60}") int maxHeartbeatSeconds,
+                                  @Value("${trading.binary-gateway.resend-buffer-size:8192}") int resendBufferSize,
+                                  @Value("${trading.binary-gateway.write-buffer-bytes:262144}") int writeBufferBytes) {
+        this.orderGatewayService = orderGatewayService;
+        this.authService = authService;
+        this.bindAddress = bindAddress;
+        this.port = port;
+        this.maxHeartbeatSeconds = maxHeartbeatSeconds;
+        this.resendBufferSize = resendBufferSize;
+        this.writeBufferBytes = writeBufferBytes;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (isRunning) return;
+
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(bindAddress, port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        isRunning = true;
+        selectorThread = new Thread(this::selectLoop);
+        selectorThread.setName("BinaryOrderEntry");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        logger.info("Binary order entry listening on {}", serverChannel.getLocalAddress());
+    }
+
+    @PreDestroy
+    public void stop() {
+        isRunning = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (selectorThread != null) {
+            try {
+                selectorThread.join(1_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return port actually bound (differs from the configured one when that is 0)
+     */
+    public int getLocalPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    // === SELECTOR LOOP ===
+
+    private void selectLoop() {
+        while (isRunning) {
+            try {
+                selector.select(SELECT_TIMEOUT_MILLIS);
+                long now = System.currentTimeMillis();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+
+                    if (key.isAcceptable()) {
+                        accept(now);
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            read(connection, now);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush(connection);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        logger.debug("Closing binary connection {}: {}", connection, e.getMessage());
+                        close(connection);
+                    }
+                }
+                drainResponses(now);
+                checkTimers(now);
+            } catch (IOException e) {
+                logger.error("Binary order entry selector failed", e);
+            }
+        }
+        closeAll();
+    }
+
+    private void accept(long now) throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) return;
+
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Connection connection = new Connection(channel, writeBufferBytes, now);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+    }
+
+    private void read(Connection connection, long now) throws IOException {
+        if (connection.channel.read(connection.readBuffer) < 0) {
+            close(connection);
+            return;
+        }
+        ByteBuffer buffer = connection.readBuffer.flip();
+        int length;
+        while (connection.channel.isOpen() && (length = completeFrameLength(buffer)) > 0) {
+            ByteBuffer frame = buffer.slice(buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            onFrame(connection, frame, now);
+        }
+        buffer.compact();
+    }
+
+    // === INBOUND MESSAGES ===
+
+    private void onFrame(Connection connection, ByteBuffer frame, long now) {
+        byte msgType = msgType(frame);
+        boolean possDup = (flags(frame) & FLAG_POSS_DUP) != 0;
+        long seqNum = seqNum(frame);
+        frame.position(HEADER_LENGTH);
+
+        BinarySession session = connection.session;
+        if (session == null) {
+            if (msgType == LOGON) {
+                onLogon(connection, frame, seqNum, now);
+            } else {
+                logout(connection, "First message must be a logon");
+            }
+            return;
+        }
+        session.lastReceivedMillis = now;
+
+        // session control messages are honoured even while an inbound gap is open
+        if (msgType == RESEND_REQUEST) {
+            resend(session, frame.getLong(), frame.getLong());
+            return;
+        }
+        if (msgType == SEQUENCE_RESET) {
+            session.nextInboundSeq = Math.max(session.nextInboundSeq, frame.getLong());
+            session.resendRequested = false;
+            return;
+        }
+
+        if (seqNum < session.nextInboundSeq) {
+            if (!possDup) {
+                logout(connection, "MsgSeqNum too low, expected " + session.nextInboundSeq);
+            }
+            return; // possible duplicate already processed
+        }
+        if (seqNum > session.nextInboundSeq) {
+            // gap: drop everything until the client resends from the first missing message
+            if (!session.resendRequested) {
+                session.resendRequested = true;
+                sendResendRequest(session, session.nextInboundSeq);
+            }
+            return;
+        }
+        session.nextInboundSeq++;
+        session.resendRequested = false;
+
+        switch (msgType) {
+            case HEARTBEAT -> { }
+            case NEW_ORDER -> onNewOrder(session, frame);
+            case CANCEL -> onCancel(session, frame);
+            case LOGOUT -> logout(connection, "Logout acknowledged");
+            default -> logout(connection, "Unsupported message type " + (char) msgType);
+        }
+    }
+
+    private void onLogon(Connection connection, ByteBuffer frame, long seqNum, long now) {
+        boolean resetSeqNum = frame.get() != 0;
+        int heartbeatSeconds = Short.toUnsignedInt(frame.getShort());
+        String authToken = BEARER_PREFIX + getText(frame);
+
+        AuthenticatedPrincipal principal;
+        try {
+            principal = authService.authenticate(authToken);
+        } catch (AuthenticationException e) {
+            logout(connection, "Logon rejected: " + e.getMessage());
+            return;
+        }
+        if (!principal.hasPermission(AuthenticatedPrincipal.PERMISSION_TRADE)) {
+            logout(connection, "Logon rejected: user is not allowed to trade");
+            return;
+        }
+
+        BinarySession session = sessions.get(principal.getUserId());
+        if (session != null && session.connection != null) {
+            logout(connection, "Logon rejected: session already logged on");
+            return;
+        }
+        if (session == null || resetSeqNum) {
+            session = new BinarySession(principal.getUserId(), resendBufferSize);
+            sessions.put(principal.getUserId(), session);
+        }
+        session.authToken = authToken;
+        session.heartbeatMillis = Math.max(1, Math.min(heartbeatSeconds, maxHeartbeatSeconds)) * 1_000L;
+        session.lastReceivedMillis = now;
+        session.connection = connection;
+        connection.session = session;
+
+        long expected = session.nextInboundSeq;
+        if (seqNum == expected) {
+            session.nextInboundSeq++;
+        }
+        ByteBuffer out = begin(session, LOGON);
+        out.putShort((short) (session.heartbeatMillis / 1_000));
+        out.putLong(session.nextInboundSeq);
+        finish(session);
+
+        if (seqNum > expected) {
+            session.resendRequested = true;
+            sendResendRequest(session, expected);
+        } else if (seqNum < expected) {
+            logout(connection, "MsgSeqNum too low, expected " + expected);
+        }
+    }
+
+    private void onNewOrder(BinarySession session, ByteBuffer frame) {
+        OrderRequestDto request = new OrderRequestDto();
+        request.setAssetId(frame.getLong());
+        byte side = frame.get();
+        int orderType = frame.get();
+        request.setQuantity(frame.getInt());
+        request.setLimitPrice(fromScaledPrice(frame.getLong()));
+        request.setTriggerPrice(fromScaledPrice(frame.getLong()));
+        request.setClientOrderId(getShortString(frame));
+
+        if ((side != SIDE_BUY && side != SIDE_SELL) || orderType < 0 || orderType >= OrderType.values().length) {
+            sendOrderReject(session, REJECT_INVALID, request.getClientOrderId(), "Invalid side or order type");
+            return;
+        }
+        request.setBuyOrder(side == SIDE_BUY);
+        request.setOrderType(OrderType.values()[orderType]);
+
+        String clientOrderId = request.getClientOrderId();
+        orderGatewayService.submitOrder(request, session.authToken)
+            .thenAccept(response -> respond(new Response(session, false, 0, clientOrderId, response)));
+    }
+
+    private void onCancel(BinarySession session, ByteBuffer frame) {
+        long orderId = frame.getLong();
+        long assetId = frame.getLong();
+        orderGatewayService.submitCancel(orderId, assetId, session.authToken)
+            .thenAccept(response -> respond(new Response(session, true, orderId, null, response)));
+    }
+
+    // === OUTBOUND MESSAGES ===
+
+    /**
+     * Called on gateway threads: hand a completed response to the selector thread
+     */
+    private void respond(Response response) {
+        responses.add(response);
+        selector.wakeup();
+    }
+
+    private void drainResponses(long now) {
+        Response response;
+        while ((response = responses.poll()) != null) {
+            BinarySession session = response.session;
+            OrderResponseDto result = response.result;
+            if (response.cancel) {
+                ByteBuffer out = begin(session, result.isSuccess() ? CANCEL_ACK : CANCEL_REJECT);
+                out.putLong(response.orderId);
+                if (!result.isSuccess()) {
+                    putText(out, result.getMessage());
+                }
+                finish(session);
+            } else if (result.isSuccess()) {
+                ByteBuffer out = begin(session, ORDER_ACK);
+                out.putLong(result.getOrderId());
+                putShortString(out, response.clientOrderId);
+                finish(session);
+            } else {
+                sendOrderReject(session, result.isRateLimited() ? REJECT_RATE_LIMITED : REJECT_INVALID,
+                                response.clientOrderId, result.getMessage());
+            }
+        }
+    }
+
+    private void sendOrderReject(BinarySession session, byte reason, String clientOrderId, String text) {
+        ByteBuffer out = begin(session, ORDER_REJECT);
+        out.put(reason);
+        putShortString(out, clientOrderId);
+        putText(out, text);
+        finish(session);
+    }
+
+    private void sendResendRequest(BinarySession session, long beginSeqNum) {
+        ByteBuffer out = begin(session, RESEND_REQUEST);
+        out.putLong(beginSeqNum);
+        out.putLong(0);
+        finish(session);
+    }
+
+    /**
+     * Resend retained application messages; session messages and messages no longer retained are replaced
+     * by SEQUENCE_RESET gap fills
+     */
+    private void resend(BinarySession session, long beginSeqNum, long endSeqNum) {
+        Connection connection = session.connection;
+        long last = endSeqNum == 0 || endSeqNum >= session.nextOutboundSeq ? session.nextOutboundSeq - 1 : endSeqNum;
+        long gapStart = 0;
+        for (long seqNum = Math.max(1, beginSeqNum); seqNum <= last && connection.channel.isOpen(); seqNum++) {
+            byte[] frame = session.retrieve(seqNum);
+            if (frame == null || isSessionMessage(frame[2])) {
+                gapStart = gapStart == 0 ? seqNum : gapStart;
+                continue;
+            }
+            if (gapStart != 0) {
+                sendGapFill(connection, gapStart, seqNum);
+                gapStart = 0;
+            }
+            ByteBuffer copy = ByteBuffer.wrap(frame.clone());
+            copy.put(3, (byte) (copy.get(3) | FLAG_POSS_DUP));
+            write(connection, copy);
+        }
+        if (gapStart != 0) {
+            sendGapFill(connection, gapStart, last + 1);
+        }
+    }
+
+    private void sendGapFill(Connection connection, long seqNum, long newSeqNum) {
+        ByteBuffer out = encodeBuffer.clear();
+        int start = beginFrame(out, SEQUENCE_RESET, seqNum);
+        out.put(start + 3, FLAG_POSS_DUP);
+        out.putLong(newSeqNum);
+        endFrame(out, start);
+        write(connection, out.flip());
+    }
+
+    /**
+     * Logout (unsequenced before logon) and close the connection; the session stays for a later reconnect
+     */
+    private void logout(Connection connection, String text) {
+        ByteBuffer out;
+        if (connection.session != null && connection.session.connection == connection) {
+            out = begin(connection.session, LOGOUT);
+            putText(out, text);
+            finish(connection.session);
+        } else {
+            out = encodeBuffer.clear();
+            int start = beginFrame(out, LOGOUT, 0);
+            putText(out, text);
+            endFrame(out, start);
+            write(connection, out.flip());
+        }
+        close(connection);
+    }
+
+    private void checkTimers(long now) {
+        for (SelectionKey key : selector.keys()) {
+            if (!(key.attachment() instanceof Connection connection) || !key.isValid()) continue;
+
+            BinarySession session = connection.session;
+            if (session == null) {
+                if (now - connection.connectedAtMillis > LOGON_TIMEOUT_MILLIS) {
+                    logout(connection, "Logon timeout");
+                }
+            } else if (now - session.lastReceivedMillis > 2 * session.heartbeatMillis) {
+                logout(connection, "Heartbeat timeout");
+            } else if (now - session.lastSentMillis >= session.heartbeatMillis) {
+                begin(session, HEARTBEAT);
+                finish(session);
+            }
+        }
+    }
+
+    // helpers
+
+    /**
+     * Start a sequenced frame for the session in the shared encode buffer
+     */
+    private ByteBuffer begin(BinarySession session, byte msgType) {
+        ByteBuffer out = encodeBuffer.clear();
+        beginFrame(out, msgType, session.nextOutboundSeq);
+        return out;
+    }
+
+    /**
+     * Complete the frame started by begin(), retain it and send it if the client is connected
+     */
+    private void finish(BinarySession session) {
+        ByteBuffer out = encodeBuffer;
+        endFrame(out, 0);
+        out.flip();
+        session.retain(session.nextOutboundSeq++, out);
+        session.lastSentMillis = System.currentTimeMillis();
+        if (session.connection != null) {
+            write(session.connection, out);
+        }
+    }
+
+    private void write(Connection connection, ByteBuffer frame) {
+        if (!connection.channel.isOpen()) return;
+        if (connection.writeBuffer.remaining() < frame.remaining()) {
+            logger.warn("Disconnecting slow binary client {}: write buffer full", connection);
+            close(connection);
+            return;
+        }
+        connection.writeBuffer.put(frame);
+        try {
+            flush(connection);
+        } catch (IOException e) {
+            logger.debug("Closing binary connection {}: {}", connection, e.getMessage());
+            close(connection);
+        }
+    }
+
+    private void flush(Connection connection) throws IOException {
+        ByteBuffer buffer = connection.writeBuffer.flip();
+        connection.channel.write(buffer);
+        boolean pending = buffer.hasRemaining();
+        buffer.compact();
+        if (connection.key.isValid()) {
+            connection.key.interestOps(pending ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+    }
+
+    private void close(Connection connection) {
+        if (connection.session != null && connection.session.connection == connection) {
+            connection.session.connection = null;
+        }
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            logger.debug("Error closing binary connection: {}", e.getMessage());
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection connection) {
+                close(connection);
+            }
+        }
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            logger.debug("Error closing binary order entry server: {}", e.getMessage());
+        }
+    }
+
+    private static boolean isSessionMessage(byte msgType) {
+        return msgType == LOGON || msgType == HEARTBEAT || msgType == RESEND_REQUEST
+            || msgType == SEQUENCE_RESET || msgType == LOGOUT;
+    }
+
+    /**
+     * One TCP connection; bound to a BinarySession once logged on
+     */
+    static final class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(4 * MAX_FRAME_LENGTH);
+        private final ByteBuffer writeBuffer;
+        private final long connectedAtMillis;
+        private SelectionKey key;
+        private BinarySession session;
+
+        private Connection(SocketChannel channel, int writeBufferBytes, long connectedAtMillis) {
+            this.channel = channel;
+            this.writeBuffer = ByteBuffer.allocate(writeBufferBytes);
+            this.connectedAtMillis = connectedAtMillis;
+        }
+
+        @Override
+        public String toString() {
+            try {
+                return String.valueOf(channel.getRemoteAddress());
+            } catch (IOException e) {
+                return "closed";
+            }
+        }
+    }
+
+    /**
+     * Gateway result waiting to be encoded by the selector thread
+     */
+    private static final class Response {
+        private final BinarySession session;
+        private final boolean cancel;
+        private final long orderId; // cancels only
+        private final String clientOrderId; // new orders only
+        private final OrderResponseDto result;
+
+        private Response(BinarySession session, boolean cancel, long orderId, String clientOrderId,
+                         OrderResponseDto result) {
+            this.session = session;
+            this.cancel = cancel;
+            this.orderId = orderId;
+            this.clientOrderId = clientOrderId;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.xkrexchange.gateway.binary;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire format of the binary order-entry protocol (big-endian, fixed-layout, FIX-like session semantics)
+ *
+ * Every frame starts with a 12 byte header:
+ *   int16 frameLength (whole frame, header included) | byte msgType | byte flags | int64 msgSeqNum
+ *
+ * Session messages (both directions unless noted):
+ *   LOGON 'A'            C->S: byte resetSeqNum, int16 heartbeatSeconds, int16 tokenLength, token (JWT, ASCII)
+ *                        S->C: int16 heartbeatSeconds, int64 nextExpectedSeqNum
+ *   HEARTBEAT '0'        empty
+ *   RESEND_REQUEST '2'   int64 beginSeqNum, int64 endSeqNum (0 = up to the latest message)
+ *   SEQUENCE_RESET '4'   int64 newSeqNum (gap fill for messages that are no longer retained)
+ *   LOGOUT '5'           int16 textLength, text
+ *
+ * Application messages:
+ *   NEW_ORDER 'D'        C->S: int64 assetId, byte side (1 buy, 2 sell), byte orderType (OrderType ordinal),
+ *                              int32 quantity, int64 limitPrice, int64 triggerPrice (PRICE_SCALE decimals, 0 = none),
+ *                              byte clOrdIdLength, clOrdId
+ *   CANCEL 'F'           C->S: int64 orderId, int64 assetId
+ *   ORDER_ACK '8'        S->C: int64 orderId, byte clOrdIdLength, clOrdId
+ *   ORDER_REJECT '9'     S->C: byte reason (REJECT_*), byte clOrdIdLength, clOrdId, int16 textLength, text
+ *   CANCEL_ACK 'c'       S->C: int64 orderId
+ *   CANCEL_REJECT 'j'    S->C: int64 orderId, int16 textLength, text
+ *
+ * Sequence numbers start at 1 in each direction and survive reconnects of the same user until a LOGON asks
+ * for a reset. A resent frame is the original frame with FLAG_POSS_DUP set.
+ */
+public final class BinaryProtocol {
+
+    public static final int HEADER_LENGTH = 12;
+    public static final int MAX_FRAME_LENGTH = 4096;
+    public static final int PRICE_SCALE = 8;
+
+    // === MESSAGE TYPES ===
+    public static final byte LOGON = 'A';
+    public static final byte HEARTBEAT = '0';
+    public static final byte RESEND_REQUEST = '2';
+    public static final byte SEQUENCE_RESET = '4';
+    public static final byte LOGOUT = '5';
+    public static final byte NEW_ORDER = 'D';
+    public static final byte CANCEL = 'F';
+    public static final byte ORDER_ACK = '8';
+    public static final byte ORDER_REJECT = '9';
+    public static final byte CANCEL_ACK = 'c';
+    public static final byte CANCEL_REJECT = 'j';
+
+    // === FLAGS ===
+    public static final byte FLAG_POSS_DUP = 1;
+
+    // === FIELD VALUES ===
+    public static final byte SIDE_BUY = 1;
+    public static final byte SIDE_SELL = 2;
+    public static final byte REJECT_INVALID = 0;
+    public static final byte REJECT_RATE_LIMITED = 1;
+
+    private BinaryProtocol() {
+    }
+
+    // === HEADER ===
+
+    /**
+     * Write a header whose frameLength is patched by endFrame()
+     * @return position of the frame start, to pass to endFrame()
+     */
+    public static int beginFrame(ByteBuffer buffer, byte msgType, long seqNum) {
+        int start = buffer.position();
+        buffer.putShort((short) 0);
+        buffer.put(msgType);
+        buffer.put((byte) 0);
+        buffer.putLong(seqNum);
+        return start;
+    }
+
+    public static void endFrame(ByteBuffer buffer, int start) {
+        buffer.putShort(start, (short) (buffer.position() - start));
+    }
+
+    /**
+     * @return length of the complete frame at the buffer's position, or 0 if more bytes are needed
+     * @throws IllegalArgumentException if the length field is invalid
+     */
+    public static int completeFrameLength(ByteBuffer buffer) {
+        if (buffer.remaining() < 2) {
+            return 0;
+        }
+        int length = Short.toUnsignedInt(buffer.getShort(buffer.position()));
+        if (length < HEADER_LENGTH || length > MAX_FRAME_LENGTH) {
+            throw new IllegalArgumentException("Invalid frame length " + length);
+        }
+        return buffer.remaining() >= length ? length : 0;
+    }
+
+    public static byte msgType(ByteBuffer frame) {
+        return frame.get(frame.position() + 2);
+    }
+
+    public static byte flags(ByteBuffer frame) {
+        return frame.get(frame.position() + 3);
+    }
+
+    public static long seqNum(ByteBuffer frame) {
+        return frame.getLong(frame.position() + 4);
+    }
+
+    // === FIELDS ===
+
+    public static long toScaledPrice(BigDecimal price) {
+        return price == null ? 0 : price.movePointRight(PRICE_SCALE).longValueExact();
+    }
+
+    public static BigDecimal fromScaledPrice(long scaled) {
+        return scaled == 0 ? null : BigDecimal.valueOf(scaled, PRICE_SCALE);
+    }
+
+    public static void putShortString(ByteBuffer buffer, String value) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.US_ASCII);
+        buffer.put((byte) Math.min(bytes.length, 255));
+        buffer.put(bytes, 0, Math.min(bytes.length, 255));
+    }
+
+    /**
+     * @return the string, or null if it is empty
+     */
+    public static String getShortString(ByteBuffer buffer) {
+        int length = Byte.toUnsignedInt(buffer.get());
+        return length == 0 ? null : getAscii(buffer, length);
+    }
+
+    public static void putText(ByteBuffer buffer, String value) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.US_ASCII);
+        int length = Math.min(bytes.length, MAX_FRAME_LENGTH / 2);
+        buffer.putShort((short) length);
+        buffer.put(bytes, 0, length);
+    }
+
+    public static String getText(ByteBuffer buffer) {
+        return getAscii(buffer, Short.toUnsignedInt(buffer.getShort()));
+    }
+
+    private static String getAscii(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
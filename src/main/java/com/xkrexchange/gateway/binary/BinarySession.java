@@ -0,0 +1,54 @@
+package com.xkrexchange.gateway.binary;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Session state of one binary order-entry user: sequence numbers in both directions, the outbound messages
+ * kept for resend, and heartbeat bookkeeping
+ *
+ * A session outlives its TCP connection, so a client that reconnects continues where it left off and can ask
+ * for the responses it missed. Only touched by the server's selector thread.
+ */
+final class BinarySession {
+
+    private final long userId;
+    private final byte[][] retained; // outbound frames, slot = seqNum % length
+
+    String authToken;
+    long nextInboundSeq = 1;
+    long nextOutboundSeq = 1;
+    boolean resendRequested; // a RESEND_REQUEST for an inbound gap is outstanding
+    long heartbeatMillis;
+    long lastReceivedMillis;
+    long lastSentMillis;
+    BinaryOrderEntryServer.Connection connection; // current connection, null while the client is disconnected
+
+    BinarySession(long userId, int resendBufferSize) {
+        this.userId = userId;
+        this.retained = new byte[resendBufferSize][];
+    }
+
+    long getUserId() {
+        return userId;
+    }
+
+    /**
+     * Keep a copy of an outbound frame for resend; overwrites the frame resendBufferSize messages older
+     * @param frame - complete frame between position and limit, left unchanged
+     */
+    void retain(long seqNum, ByteBuffer frame) {
+        byte[] copy = new byte[frame.remaining()];
+        frame.duplicate().get(copy);
+        retained[(int) (seqNum % retained.length)] = copy;
+    }
+
+    /**
+     * @return the retained frame with this sequence number, or null if it was already overwritten
+     */
+    byte[] retrieve(long seqNum) {
+        if (seqNum <= 0 || seqNum >= nextOutboundSeq || nextOutboundSeq - seqNum > retained.length) {
+            return null;
+        }
+        return retained[(int) (seqNum % retained.length)];
+    }
+}
@@ -0,0 +1,231 @@
+package com.xkrexchange.matching;
+
+import com.xkrexchange.common.model.Asset;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable, copy-on-write directory of listed assets, looked up by id or ticker on every order
+ *
+ * Key Responsibilities:
+ * - id lookup: a plain array indexed by asset id
+ * - ticker lookup: a perfect hash table built for the current ticker set, so a lookup is one hash over the
+ *   ticker's chars, one slot read and one compare; no probing, no boxing, and callers holding the ticker in a
+ *   char buffer (the streaming parser) don't have to build a String
+ * - register() / reload() build a complete new snapshot and publish it through a volatile write; readers never
+ *   lock and never see a half-built table, in-flight lookups simply finish on the snapshot they started with
+ *
+ * Writers are serialized on the registry; listing changes are rare, lookups are on the hot path.
+ */
+public final class AssetRegistry {
+
+    static final int MAX_ASSET_ID = 1 << 20; // bounds the id-indexed array
+    private static final int MAX_SEED_ATTEMPTS = 256;
+
+    private volatile Snapshot snapshot = Snapshot.build(Collections.emptyList());
+
+    // === LOOKUPS ===
+
+    public Asset byId(long assetId) {
+        Asset[] byId = snapshot.byId;
+        return assetId >= 0 && assetId < byId.length ? byId[(int) assetId] : null;
+    }
+
+    public Asset byTicker(String ticker) {
+        return ticker == null ? null : snapshot.byTicker(ticker);
+    }
+
+    /**
+     * Ticker lookup straight off a char buffer
+     */
+    public Asset byTicker(char[] chars, int offset, int length) {
+        return snapshot.byTicker(chars, offset, length);
+    }
+
+    /**
+     * @return every listed asset, in id order (immutable)
+     */
+    public List<Asset> all() {
+        return snapshot.assets;
+    }
+
+    public int size() {
+        return snapshot.assets.size();
+    }
+
+    // === UPDATES ===
+
+    /**
+     * Add one asset to the listing
+     * @throws IllegalArgumentException if its ticker or id is already listed, or the id is out of range
+     */
+    public synchronized void register(Asset asset) {
+        Snapshot current = snapshot;
+        if (current.byTicker(asset.getTicker()) != null) {
+            throw new IllegalArgumentException("Asset already registered: " + asset.getTicker());
+        }
+        if (byId(asset.getAssetId()) != null) {
+            throw new IllegalArgumentException("Asset id already registered: " + asset.getAssetId());
+        }
+        List<Asset> assets = new ArrayList<>(current.assets);
+        assets.add(asset);
+        snapshot = Snapshot.build(assets);
+    }
+
+    /**
+     * Replace the whole listing in one step. Assets are matched by id: an id that is already listed keeps its
+     * current Asset (and with it its OrderBook and resting orders), whatever instance the new listing carries
+     * @return the assets that were listed before and aren't anymore
+     * @throws IllegalArgumentException on duplicate tickers or ids, or if the listing changes the ticker or tick
+     *         size of an id already listed; the current listing is then kept
+     */
+    public synchronized List<Asset> reload(Collection<Asset> assets) {
+        Snapshot current = snapshot;
+        List<Asset> merged = new ArrayList<>(assets.size());
+        Set<Long> ids = new HashSet<>();
+        for (Asset asset : assets) {
+            Asset listed = current.byId(asset.getAssetId());
+            if (listed != null && listed != asset && (!listed.getTicker().equals(asset.getTicker())
+                                                      || listed.getTickSize().compareTo(asset.getTickSize()) != 0)) {
+                throw new IllegalArgumentException("Asset id " + asset.getAssetId() + " is already listed as "
+                                                   + listed.getTicker() + " with tick size " + listed.getTickSize());
+            }
+            merged.add(listed != null ? listed : asset);
+            ids.add(asset.getAssetId());
+        }
+        Snapshot next = Snapshot.build(merged);
+        List<Asset> removed = new ArrayList<>();
+        for (Asset asset : current.assets) {
+            if (!ids.contains(asset.getAssetId())) {
+                removed.add(asset);
+            }
+        }
+        snapshot = next;
+        return removed;
+    }
+
+    // helpers
+
+    /**
+     * One immutable generation of the listing
+     */
+    private static final class Snapshot {
+        final List<Asset> assets;
+        final Asset[] byId;
+        final Asset[] tickerTable; // perfect hash: each ticker owns the slot its hash points to
+        final int seed;
+        final int mask;
+
+        private Snapshot(List<Asset> assets, Asset[] byId, Asset[] tickerTable, int seed) {
+            this.assets = assets;
+            this.byId = byId;
+            this.tickerTable = tickerTable;
+            this.seed = seed;
+            this.mask = tickerTable.length - 1;
+        }
+
+        static Snapshot build(Collection<Asset> source) {
+            List<Asset> assets = new ArrayList<>(source);
+            assets.sort((a, b) -> Long.compare(a.getAssetId(), b.getAssetId()));
+
+            int maxId = 0;
+            Set<String> tickers = new HashSet<>();
+            for (Asset asset : assets) {
+                long id = asset.getAssetId();
+                if (id < 0 || id >= MAX_ASSET_ID) {
+                    throw new IllegalArgumentException("Asset id out of range: " + id);
+                }
+                if (!tickers.add(asset.getTicker())) {
+                    throw new IllegalArgumentException("Duplicate ticker: " + asset.getTicker());
+                }
+                maxId = Math.max(maxId, (int) id);
+            }
+
+            Asset[] byId = new Asset[maxId + 1];
+            for (Asset asset : assets) {
+                if (byId[(int) asset.getAssetId()] != null) {
+                    throw new IllegalArgumentException("Duplicate asset id: " + asset.getAssetId());
+                }
+                byId[(int) asset.getAssetId()] = asset;
+            }
+
+            // smallest power of two with load <= 1/2, doubled whenever no seed is collision-free
+            int size = Integer.highestOneBit(Math.max(assets.size() * 2 - 1, 1)) << 1;
+            while (true) {
+                for (int seed = 1; seed <= MAX_SEED_ATTEMPTS; seed++) {
+                    Asset[] table = place(assets, size, seed);
+                    if (table != null) {
+                        return new Snapshot(Collections.unmodifiableList(assets), byId, table, seed);
+                    }
+                }
+                size <<= 1;
+            }
+        }
+
+        /**
+         * @return the table, or null if two tickers collide under this seed
+         */
+        private static Asset[] place(List<Asset> assets, int size, int seed) {
+            Asset[] table = new Asset[size];
+            for (Asset asset : assets) {
+                String ticker = asset.getTicker();
+                int slot = hash(ticker, seed) & (size - 1);
+                if (table[slot] != null) return null;
+                table[slot] = asset;
+            }
+            return table;
+        }
+
+        Asset byId(long assetId) {
+            return assetId >= 0 && assetId < byId.length ? byId[(int) assetId] : null;
+        }
+
+        Asset byTicker(String ticker) {
+            Asset candidate = tickerTable[hash(ticker, seed) & mask];
+            return candidate != null && candidate.getTicker().equals(ticker) ? candidate : null;
+        }
+
+        Asset byTicker(char[] chars, int offset, int length) {
+            Asset candidate = tickerTable[hash(chars, offset, length, seed) & mask];
+            return candidate != null && matches(candidate.getTicker(), chars, offset, length) ? candidate : null;
+        }
+    }
+
+    // FNV-1a over the chars, salted with the seed, finished with a murmur3 mix so the low bits are usable
+    private static int hash(String ticker, int seed) {
+        int h = 0x811C9DC5 ^ seed * 0x9E3779B9;
+        for (int i = 0; i < ticker.length(); i++) {
+            h = (h ^ ticker.charAt(i)) * 0x01000193;
+        }
+        return mix(h);
+    }
+
+    private static int hash(char[] chars, int offset, int length, int seed) {
+        int h = 0x811C9DC5 ^ seed * 0x9E3779B9;
+        for (int i = offset; i < offset + length; i++) {
+            h = (h ^ chars[i]) * 0x01000193;
+        }
+        return mix(h);
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ h >>> 16;
+    }
+
+    private static boolean matches(String expected, char[] chars, int offset, int length) {
+        if (expected.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (expected.charAt(i) != chars[offset + i]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,171 @@
+package com.xkrexchange.matching;
+
+/**
+ * Sliding deduplication window of recently seen (client, client order id) pairs for one OrderBook
+ *
+ * Layout: parallel arrays (key, expiry, engine order id, client id, client order id) forming an open-addressed,
+ * linear-probing hash table. Each (client id, client order id) pair is folded into a single 64-bit key, so a probe
+ * is a handful of long comparisons with no allocation and no boxing; only on a key match are the client id and
+ * client order id themselves compared, so two pairs whose keys collide are still told apart and a new order is
+ * never taken for a duplicate. Entries expire windowMillis after they were recorded; expired slots are reused in
+ * place and dropped entirely whenever the table is rebuilt.
+ *
+ * The engine order id of the first submission is kept so callers can tell a redelivery of the same order
+ * (same order id, drop silently) from a new submission reusing a client order id (different order id, reject).
+ *
+ * NOT thread-safe: owned and used exclusively by the OrderBook's matching thread.
+ * CLASS INVARIANT: table length is a power of two and at most half of the slots are occupied
+ */
+public class ClientOrderIdWindow {
+
+    private static final long EMPTY = 0L;
+    public static final long ABSENT = 0L; // order ids start at 1, so 0 never names a real order
+    private static final int MIN_CAPACITY = 1024;
+
+    private final long windowMillis;
+    private long[] keys;
+    private long[] expiries;
+    private long[] orderIds;
+    private long[] clientIds;
+    private String[] clientOrderIds;
+    private int mask;
+    private int occupied; // slots holding a key, live or expired
+
+    public ClientOrderIdWindow(long windowMillis) {
+        this(windowMillis, MIN_CAPACITY);
+    }
+
+    public ClientOrderIdWindow(long windowMillis, int initialCapacity) {
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("Deduplication window must be positive");
+        }
+        this.windowMillis = windowMillis;
+        allocate(tableSizeFor(Math.max(initialCapacity, MIN_CAPACITY)));
+    }
+
+    /**
+     * Record an order id for a client unless it was already seen inside the window
+     *
+     * @param clientId - owner of the order
+     * @param clientOrderId - client supplied order id
+     * @param orderId - engine order id of this submission
+     * @param now - current time in milliseconds
+     * @return ABSENT if this is the first time the id was seen (order should be processed),
+     *         otherwise the engine order id of the earlier submission
+     */
+    public long recordIfAbsent(long clientId, String clientOrderId, long orderId, long now) {
+        long key = keyFor(clientId, clientOrderId);
+        int index = (int) key & mask;
+        int reusable = -1;
+
+        while (keys[index] != EMPTY) {
+            if (keys[index] == key && clientIds[index] == clientId && clientOrderIds[index].equals(clientOrderId)) {
+                if (expiries[index] > now) {
+                    return orderIds[index]; // duplicate inside the window
+                }
+                expiries[index] = now + windowMillis; // seen before but long ago: start a new window
+                orderIds[index] = orderId;
+                return ABSENT;
+            }
+            if (reusable < 0 && expiries[index] <= now) {
+                reusable = index;
+            }
+            index = (index + 1) & mask;
+        }
+
+        // pair is absent: prefer recycling an expired slot on the probe path
+        if (reusable >= 0) {
+            store(reusable, key, now + windowMillis, orderId, clientId, clientOrderId);
+            return ABSENT;
+        }
+
+        store(index, key, now + windowMillis, orderId, clientId, clientOrderId);
+        if (++occupied > (mask + 1) >> 1) {
+            rebuild(now);
+        }
+        return ABSENT;
+    }
+
+    public int size() {
+        return occupied;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    // helpers
+
+    private void store(int index, long key, long expiry, long orderId, long clientId, String clientOrderId) {
+        keys[index] = key;
+        expiries[index] = expiry;
+        orderIds[index] = orderId;
+        clientIds[index] = clientId;
+        clientOrderIds[index] = clientOrderId;
+    }
+
+    /**
+     * Rehash live entries, dropping expired ones; grows only if the live entries alone would exceed a quarter of the table
+     */
+    private void rebuild(long now) {
+        long[] oldKeys = keys;
+        long[] oldExpiries = expiries;
+        long[] oldOrderIds = orderIds;
+        long[] oldClientIds = clientIds;
+        String[] oldClientOrderIds = clientOrderIds;
+
+        int live = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY && oldExpiries[i] > now) live++;
+        }
+        allocate(Math.max(oldKeys.length, tableSizeFor(live * 4)));
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY || oldExpiries[i] <= now) continue;
+            int index = (int) oldKeys[i] & mask;
+            while (keys[index] != EMPTY) {
+                index = (index + 1) & mask;
+            }
+            store(index, oldKeys[i], oldExpiries[i], oldOrderIds[i], oldClientIds[i], oldClientOrderIds[i]);
+            occupied++;
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        expiries = new long[capacity];
+        orderIds = new long[capacity];
+        clientIds = new long[capacity];
+        clientOrderIds = new String[capacity];
+        mask = capacity - 1;
+        occupied = 0;
+    }
+
+    private static int tableSizeFor(int n) {
+        return Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(n, 1) - 1) << 1);
+    }
+
+    /**
+     * Fold client id and a 64-bit FNV-1a hash of the client order id into one well-mixed key
+     */
+    private static long keyFor(long clientId, String clientOrderId) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < clientOrderId.length(); i++) {
+            hash ^= clientOrderId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(clientId * 0xC2B2AE3D27D4EB4FL ^ hash);
+    }
+
+    /**
+     * MurmurHash3 finalizer; also keeps EMPTY (0) reserved for unused slots
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key == EMPTY ? 1L : key;
+    }
+}
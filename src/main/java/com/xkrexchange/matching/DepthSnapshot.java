@@ -0,0 +1,169 @@
+package com.xkrexchange.matching;
+
+import com.xkrexchange.common.model.Order;
+import com.xkrexchange.common.model.Price;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+
+/**
+ * Immutable aggregated view of the top of an OrderBook: price and total resting quantity per level, best first
+ *
+ * Built by the book's matching thread and published through a volatile field, so gateway threads can price
+ * orders against the book without a round trip to the matching thread. A snapshot may trail the live book by
+ * the commands the matching thread has processed since (see OrderBook.getDepthSnapshot).
+ */
+public final class DepthSnapshot {
+
+    public static final DepthSnapshot EMPTY = new DepthSnapshot(new BigDecimal[0], new long[0],
+                                                                new BigDecimal[0], new long[0], 0, 0);
+
+    private final BigDecimal[] bidPrices;
+    private final long[] bidQuantities;
+    private final BigDecimal[] askPrices;
+    private final long[] askQuantities;
+    private final long sequence; // per book, increases with every publish
+    private final long timestamp;
+
+    private DepthSnapshot(BigDecimal[] bidPrices, long[] bidQuantities, BigDecimal[] askPrices, long[] askQuantities,
+                          long sequence, long timestamp) {
+        this.bidPrices = bidPrices;
+        this.bidQuantities = bidQuantities;
+        this.askPrices = askPrices;
+        this.askQuantities = askQuantities;
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Aggregate up to maxLevels levels per side (matching thread only: the level queues must not change meanwhile)
+     */
+    static <Q extends Collection<Order>> DepthSnapshot of(NavigableMap<Price, Q> bids, NavigableMap<Price, Q> asks,
+                                                          int maxLevels, long sequence) {
+        BigDecimal[] bidPrices = new BigDecimal[maxLevels]; // size() of a skip list walks it, so trim afterwards
+        long[] bidQuantities = new long[maxLevels];
+        BigDecimal[] askPrices = new BigDecimal[maxLevels];
+        long[] askQuantities = new long[maxLevels];
+        int bidLevels = aggregate(bids, bidPrices, bidQuantities);
+        int askLevels = aggregate(asks, askPrices, askQuantities);
+        return new DepthSnapshot(trim(bidPrices, bidLevels), trim(bidQuantities, bidLevels),
+                                 trim(askPrices, askLevels), trim(askQuantities, askLevels),
+                                 sequence, System.currentTimeMillis());
+    }
+
+    // === QUERIES ===
+
+    public int getBidLevels() {
+        return bidPrices.length;
+    }
+
+    public int getAskLevels() {
+        return askPrices.length;
+    }
+
+    public BigDecimal getBidPrice(int level) {
+        return bidPrices[level];
+    }
+
+    public long getBidQuantity(int level) {
+        return bidQuantities[level];
+    }
+
+    public BigDecimal getAskPrice(int level) {
+        return askPrices[level];
+    }
+
+    public long getAskQuantity(int level) {
+        return askQuantities[level];
+    }
+
+    /**
+     * @return shares offered on all the snapshot's ask levels
+     */
+    public long getVisibleAskQuantity() {
+        long total = 0;
+        for (long quantity : askQuantities) {
+            total += quantity;
+        }
+        return total;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Cost of buying quantity by walking the asks from the best level down. Whatever the snapshot's depth
+     * doesn't cover is priced at its deepest (worst) ask, as liquidity beyond it is unknown
+     * @return total cost, or null if there are no asks
+     */
+    public BigDecimal costToBuy(long quantity) {
+        return walk(askPrices, askQuantities, quantity);
+    }
+
+    /**
+     * Proceeds of selling quantity by walking the bids; the uncovered remainder is priced at the deepest bid
+     * @return total proceeds, or null if there are no bids
+     */
+    public BigDecimal proceedsToSell(long quantity) {
+        return walk(bidPrices, bidQuantities, quantity);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DepthSnapshot{seq=%d, bids=%d levels (best %s), asks=%d levels (best %s)}",
+                             sequence, bidPrices.length, bidPrices.length == 0 ? null : bidPrices[0],
+                             askPrices.length, askPrices.length == 0 ? null : askPrices[0]);
+    }
+
+    // helpers
+
+    private static BigDecimal walk(BigDecimal[] prices, long[] quantities, long quantity) {
+        if (prices.length == 0) {
+            return null;
+        }
+        BigDecimal total = BigDecimal.ZERO;
+        long remaining = quantity;
+        for (int level = 0; level < prices.length && remaining > 0; level++) {
+            long take = Math.min(remaining, quantities[level]);
+            total = total.add(prices[level].multiply(BigDecimal.valueOf(take)));
+            remaining -= take;
+        }
+        if (remaining > 0) {
+            total = total.add(prices[prices.length - 1].multiply(BigDecimal.valueOf(remaining)));
+        }
+        return total;
+    }
+
+    private static <Q extends Collection<Order>> int aggregate(NavigableMap<Price, Q> side, BigDecimal[] prices,
+                                                               long[] quantities) {
+        int level = 0;
+        for (Map.Entry<Price, Q> entry : side.entrySet()) {
+            if (level == prices.length) break;
+            long quantity = 0;
+            for (Order order : entry.getValue()) {
+                quantity += order.getRemainingQuantity();
+            }
+            if (quantity == 0) continue; // level emptied, not yet cleaned up
+            prices[level] = entry.getKey().getValue();
+            quantities[level] = quantity;
+            level++;
+        }
+        return level;
+    }
+
+    private static BigDecimal[] trim(BigDecimal[] values, int length) {
+        return length == values.length ? values : Arrays.copyOf(values, length);
+    }
+
+    private static long[] trim(long[] values, int length) {
+        return length == values.length ? values : Arrays.copyOf(values, length);
+    }
+}
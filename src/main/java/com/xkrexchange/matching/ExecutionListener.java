@@ -0,0 +1,51 @@
+package com.xkrexchange.matching;
+
+import com.xkrexchange.common.model.CompletedTrade;
+import com.xkrexchange.common.model.Order;
+
+/**
+ * Callback interface through which an OrderBook reports what happened to each order
+ *
+ * ALL methods are invoked on the OrderBook's matching thread, in the exact order the events occurred.
+ * Implementations MUST NOT block: anything slow (serialization, network, database) belongs on another thread.
+ */
+public interface ExecutionListener {
+
+    /**
+     * Order was accepted and is now resting on the book (limit remainder) or waiting in a stop queue
+     */
+    void onOrderAccepted(Order order);
+
+    /**
+     * Two orders traded; both orders already reflect the fill (remaining quantity, completion)
+     */
+    void onTrade(CompletedTrade trade, Order buyOrder, Order sellOrder);
+
+    /**
+     * Unfilled remainder of the order was removed, either on request or because a market order ran out of liquidity
+     * @param cancelledQuantity - quantity that will never be filled
+     */
+    void onOrderCancelled(Order order, int cancelledQuantity, String reason);
+
+    /**
+     * Order was refused before it could touch the book
+     */
+    void onOrderRejected(Order order, String reason);
+
+    /**
+     * Order that never became an Order on this engine (its asset isn't listed here, or its message can't be
+     * rebuilt) was refused. There is no book involved, so this runs on the thread that tried to route it
+     */
+    default void onOrderRejected(long orderId, long userId, long assetId, String reason) {
+    }
+
+    /**
+     * Listener used until one is attached; discards every event
+     */
+    ExecutionListener NONE = new ExecutionListener() {
+        @Override public void onOrderAccepted(Order order) { }
+        @Override public void onTrade(CompletedTrade trade, Order buyOrder, Order sellOrder) { }
+        @Override public void onOrderCancelled(Order order, int cancelledQuantity, String reason) { }
+        @Override public void onOrderRejected(Order order, String reason) { }
+    };
+}
@@ -2,18 +2,294 @@ package com.xkrexchange.matching;
 
 import com.xkrexchange.common.model.Asset;
 import com.xkrexchange.common.model.Order;
-import java.util.HashMap;
-import java.util.PriorityQueue;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Central routing logic (doesn't actually implement any of the order matching logic) but pools together client side orders and routes them over into
  * the respective Asset's OrderBook
  *
- *  Stores all assets using a Map<String, Asset> were the String is the unqiue ticker of the asset
+ *  Listed assets live in an AssetRegistry (copy-on-write, array indexed by id, perfect-hashed by ticker)
+ *
+ * Orders reach the engine in one of two ways:
+ * 1. route()/cancel() - called directly by the Kafka order listener for each consumed message
+ * 2. enqueueOrder()/enqueueCancel() - in-process transport; producers publish into a lock-free ring buffer and a single
+ *    dispatcher thread drains it into the OrderBooks, so gateway threads never touch the books' queues directly
  */
+@Component
 public class MatchingEngine {
 
-    // TODO: Add your matching engine implementation here
-    // This will be called by the message queue consumer when orders arrive
+    private static final Logger logger = LoggerFactory.getLogger(MatchingEngine.class);
+    private static final int DISPATCHER_SPINS_BEFORE_PARK = 1_000;
+    private static final long DISPATCHER_PARK_NANOS = 50_000;
+
+    private final AssetRegistry assets = new AssetRegistry();
+
+    // === IN-PROCESS INBOUND RING ===
+    private final OrderRingBuffer inbound;
+    private final long deduplicationWindowMillis;
+    private volatile ExecutionListener executionListener = ExecutionListener.NONE;
+    private final AtomicBoolean dispatcherStarted = new AtomicBoolean(false);
+    private volatile boolean isRunning = true;
+    private Thread dispatcherThread;
+
+    public MatchingEngine(@Value("${trading.matching-engine.ring-buffer-size:65536}") int ringBufferSize,
+                          @Value("${trading.matching-engine.dedup-window-ms:300000}") long deduplicationWindowMillis) {
+        this.inbound = new OrderRingBuffer(ringBufferSize);
+        this.deduplicationWindowMillis = deduplicationWindowMillis;
+    }
+
+    // === ASSET MANAGEMENT ===
+
+    /**
+     * List an asset on the engine and start its OrderBook's matching thread
+     * REQUIRES the ticker not to be registered already
+     */
+    public synchronized void registerAsset(Asset asset) {
+        assets.register(asset);
+        startBook(asset);
+    }
+
+    /**
+     * Swap the whole listing at once (copy-on-write, lookups keep running on the previous listing until the swap)
+     * Books of newly listed assets are started, books of assets no longer listed are stopped; an asset id present
+     * in both listings keeps its Asset and book untouched (see AssetRegistry.reload)
+     */
+    public synchronized void reloadAssets(Collection<Asset> listing) {
+        Set<Long> alreadyListed = new HashSet<>();
+        for (Asset asset : assets.all()) {
+            alreadyListed.add(asset.getAssetId());
+        }
+        List<Asset> delisted = assets.reload(listing);
+        for (Asset asset : assets.all()) {
+            if (!alreadyListed.contains(asset.getAssetId())) {
+                startBook(asset);
+            }
+        }
+        for (Asset asset : delisted) {
+            asset.getOrderBook().stopMatchingEngine();
+        }
+    }
+
+    /**
+     * Attach the execution report sink to every listed book, and to books listed later
+     */
+    @Autowired(required = false)
+    public void setExecutionListener(ExecutionListener listener) {
+        this.executionListener = listener == null ? ExecutionListener.NONE : listener;
+        for (Asset asset : assets.all()) {
+            asset.getOrderBook().setExecutionListener(this.executionListener);
+        }
+    }
+
+    public Asset getAsset(long assetId) {
+        return assets.byId(assetId);
+    }
+
+    public Asset getAssetByTicker(String ticker) {
+        return assets.byTicker(ticker);
+    }
+
+    public Asset getAssetByTicker(char[] chars, int offset, int length) {
+        return assets.byTicker(chars, offset, length);
+    }
+
+    public Collection<Asset> getAssets() {
+        return assets.all();
+    }
+
+    // === DIRECT ROUTING ===
+
+    /**
+     * Report an order that could not be routed to any book (see ExecutionListener.onOrderRejected)
+     */
+    public void reject(long orderId, long userId, long assetId, String reason) {
+        executionListener.onOrderRejected(orderId, userId, assetId, reason);
+    }
+
+    /**
+     * Hand an order to its asset's OrderBook
+     * @throws IllegalArgumentException if the order's asset isn't listed on this engine
+     */
+    public void route(Order order) {
+        bookFor(order.getAsset().getAssetId()).submitOrder(order);
+    }
+
+    /**
+     * Forward a cancellation to the OrderBook that holds the order
+     * @throws IllegalArgumentException if the asset isn't listed on this engine
+     */
+    public void cancel(long orderId, long assetId) {
+        bookFor(assetId).cancelOrder(orderId);
+    }
+
+    /**
+     * Forward a mass cancel (one user, optionally one side) to an asset's OrderBook
+     * @param bid - true for buy orders only, false for sell orders only, null for both sides
+     * @throws IllegalArgumentException if the asset isn't listed on this engine
+     */
+    public void massCancel(long userId, long assetId, Boolean bid) {
+        bookFor(assetId).massCancel(userId, bid);
+    }
+
+    /**
+     * @return completes once the asset's OrderBook has applied every command routed to it before this call
+     * @throws IllegalArgumentException if the asset isn't listed on this engine
+     */
+    public CompletableFuture<Void> applied(long assetId) {
+        return bookFor(assetId).sync();
+    }
+
+    // === IN-PROCESS TRANSPORT ===
+
+    /**
+     * Publish an order into the inbound ring (lock-free, never blocks)
+     * @return false if the ring is full and the order was NOT accepted
+     */
+    public boolean enqueueOrder(Order order) {
+        ensureDispatcherStarted();
+        return inbound.offer(order);
+    }
+
+    /**
+     * Publish a cancellation into the inbound ring behind every order already published
+     * @return false if the ring is full and the cancel was NOT accepted
+     */
+    public boolean enqueueCancel(long orderId, long assetId) {
+        ensureDispatcherStarted();
+        return inbound.offer(new CancelRequest(orderId, assetId));
+    }
+
+    /**
+     * Publish a mass cancel into the inbound ring behind every order already published
+     * @return false if the ring is full and the mass cancel was NOT accepted
+     */
+    public boolean enqueueMassCancel(long userId, long assetId, Boolean bid) {
+        ensureDispatcherStarted();
+        return inbound.offer(new MassCancelRequest(userId, assetId, bid));
+    }
+
+    public int getInboundBacklog() {
+        return inbound.size();
+    }
+
+    public int getInboundCapacity() {
+        return inbound.capacity();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        isRunning = false;
+        if (dispatcherThread != null) {
+            LockSupport.unpark(dispatcherThread);
+        }
+        for (Asset asset : assets.all()) {
+            asset.getOrderBook().stopMatchingEngine();
+        }
+    }
+
+    // helpers
+
+    private void startBook(Asset asset) {
+        asset.getOrderBook().setDeduplicationWindowMillis(deduplicationWindowMillis);
+        asset.getOrderBook().setExecutionListener(executionListener);
+        asset.getOrderBook().startMatchingEngine();
+    }
+
+    private OrderBook bookFor(long assetId) {
+        Asset asset = assets.byId(assetId);
+        if (asset == null) {
+            throw new IllegalArgumentException("Unknown asset id: " + assetId);
+        }
+        return asset.getOrderBook();
+    }
+
+    private void ensureDispatcherStarted() {
+        if (dispatcherStarted.get() || !dispatcherStarted.compareAndSet(false, true)) return;
+
+        dispatcherThread = new Thread(this::dispatchLoop);
+        dispatcherThread.setName("MatchingEngine-Dispatcher");
+        dispatcherThread.setDaemon(true);
+        dispatcherThread.start();
+    }
+
+    /**
+     * Single consumer of the inbound ring: spins while traffic is flowing, parks briefly once the ring stays empty
+     */
+    private void dispatchLoop() {
+        int idleSpins = 0;
+        while (isRunning) {
+            Object command = inbound.poll();
+            if (command == null) {
+                if (++idleSpins < DISPATCHER_SPINS_BEFORE_PARK) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(DISPATCHER_PARK_NANOS);
+                }
+                continue;
+            }
+            idleSpins = 0;
+
+            try {
+                if (command instanceof Order order) {
+                    route(order);
+                } else if (command instanceof CancelRequest cancel) {
+                    cancel(cancel.orderId, cancel.assetId);
+                } else if (command instanceof MassCancelRequest massCancel) {
+                    massCancel(massCancel.userId, massCancel.assetId, massCancel.bid);
+                }
+            } catch (Exception e) {
+                // keep dispatching; an order that can't reach a book (delisted meanwhile) is rejected, not lost
+                logger.error("Error dispatching {}", command, e);
+                if (command instanceof Order order) {
+                    executionListener.onOrderRejected(order, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static final class CancelRequest {
+        private final long orderId;
+        private final long assetId;
+
+        private CancelRequest(long orderId, long assetId) {
+            this.orderId = orderId;
+            this.assetId = assetId;
+        }
+
+        @Override
+        public String toString() {
+            return "CancelRequest{order=" + orderId + ", asset=" + assetId + "}";
+        }
+    }
+
+    private static final class MassCancelRequest {
+        private final long userId;
+        private final long assetId;
+        private final Boolean bid;
+
+        private MassCancelRequest(long userId, long assetId, Boolean bid) {
+            this.userId = userId;
+            this.assetId = assetId;
+            this.bid = bid;
+        }
 
+        @Override
+        public String toString() {
+            return "MassCancelRequest{user=" + userId + ", asset=" + assetId + ", bid=" + bid + "}";
+        }
+    }
 }
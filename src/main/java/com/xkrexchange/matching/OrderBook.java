@@ -15,6 +15,11 @@ import com.xkrexchange.common.model.*;
  * 2. Single matching engine thread processes orders sequentially
  * 3. Stop orders are held in separate queues until triggered
  * 4. Price updates from trades trigger stop order conversions
+ * 5. Cancellations share the orderQueue so they are sequenced with the orders they refer to
+ * 6. The matching thread publishes an aggregated DepthSnapshot when its queue runs dry (or every
+ *    DEPTH_PUBLISH_INTERVAL commands under load), so other threads can read depth without touching the book
+ * 7. Orders read back from the database at startup are restored onto the book as one command, straight into
+ *    their price levels, without being matched again
  */
 public class OrderBook extends Identifiable<OrderBook> {
     
@@ -25,7 +30,18 @@ public class OrderBook extends Identifiable<OrderBook> {
     private ConcurrentSkipListMap<Price, LinkedBlockingQueue<Order>> asks = new ConcurrentSkipListMap<>();
 
     // === GLOBAL ORDER QUEUE (FIFO Time Priority) ===
-    private final BlockingQueue<Order> orderQueue = new LinkedBlockingQueue<>();
+    // Holds new Orders and control commands (cancels); only the matching thread consumes it
+    private final BlockingQueue<Object> orderQueue = new LinkedBlockingQueue<>();
+
+    // === DUPLICATE SUPPRESSION (matching thread only) ===
+    // Retried or redelivered orders are dropped here, before they can match a second time
+    public static final long DEFAULT_DEDUPLICATION_WINDOW_MILLIS = 300_000;
+    private ClientOrderIdWindow recentOrderIds = new ClientOrderIdWindow(DEFAULT_DEDUPLICATION_WINDOW_MILLIS);
+    private volatile long duplicateOrderCount = 0;
+
+    // === LIVE ORDER INDEX (matching thread only) ===
+    // Resting limit orders and untriggered stop orders by order id, used to locate cancellations
+    private final Map<Long, Order> liveOrders = new HashMap<>();
     
     // === STOP ORDER QUEUES (Price + Time Priority) ===
     // Buy stops: ascending by stop price (lowest triggers first)
@@ -55,6 +71,17 @@ public class OrderBook extends Identifiable<OrderBook> {
     private volatile Price lastTradePrice = null; // Updated after each trade
     private final List<CompletedTrade> tradeHistory = new ArrayList<>();
     
+    // === DEPTH SNAPSHOT (written by the matching thread, read by any thread) ===
+    public static final int DEPTH_LEVELS = 50;
+    static final int DEPTH_PUBLISH_INTERVAL = 64;
+    private volatile DepthSnapshot depthSnapshot = DepthSnapshot.EMPTY;
+    private int commandsSinceDepthPublish = 0; // matching thread only
+    private long depthSequence = 0;
+
+    // === EXECUTION REPORTING ===
+    // Notified on the matching thread for every post, fill, cancel and rejection
+    private volatile ExecutionListener executionListener = ExecutionListener.NONE;
+    
     // === MATCHING ENGINE CONTROL ===
     private volatile boolean isRunning = false;
     private Thread matchingEngineThread;
@@ -81,6 +108,93 @@ public class OrderBook extends Identifiable<OrderBook> {
         }
     }
     
+    /**
+     * Request cancellation of a resting or pending stop order (thread-safe)
+     * The cancel is queued behind every order submitted before it, so it can't overtake its own order
+     */
+    public void cancelOrder(long orderId) {
+        try {
+            orderQueue.put(new CancelCommand(orderId));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Cancel submission interrupted", e);
+        }
+    }
+    
+    /**
+     * Request cancellation of every live order of one user, optionally only one side (thread-safe)
+     * Runs as a single command on the matching thread: nothing can trade against the user's orders halfway through
+     * 
+     * @param bid - true for buy orders only, false for sell orders only, null for both sides
+     */
+    public void massCancel(long userId, Boolean bid) {
+        try {
+            orderQueue.put(new MassCancelCommand(userId, bid));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Mass cancel submission interrupted", e);
+        }
+    }
+    
+    /**
+     * Put orders that were live before a restart back on the book without matching them (they were matched when
+     * first submitted): limit orders go straight to the end of their price level, stop orders to their stop queue.
+     * Runs on the matching thread, queued behind earlier commands; no execution reports are sent
+     * 
+     * @param orders - POSTED / PARTIALLY_FILLED orders of this book in time priority per level, ideally grouped
+     *                 by side and price (consecutive orders of one level skip the level lookup)
+     * @param lastTradePrice - price of the last trade before the restart, null to keep the current one
+     * @return completes once the orders are on the book
+     */
+    public CompletableFuture<Void> restore(List<Order> orders, Price lastTradePrice) {
+        RestoreCommand restore = new RestoreCommand(orders, lastTradePrice);
+        try {
+            orderQueue.put(restore);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Restore submission interrupted", e);
+        }
+        return restore.done;
+    }
+    
+    /**
+     * Barrier behind every command submitted so far (thread-safe)
+     * @return completes once the matching thread has applied every order and cancel queued before it,
+     *         fails if the matching engine stops first
+     */
+    public CompletableFuture<Void> sync() {
+        SyncCommand sync = new SyncCommand();
+        try {
+            orderQueue.put(sync);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Sync submission interrupted", e);
+        }
+        if (!isRunning) {
+            failPendingSyncs();
+        }
+        return sync.done;
+    }
+    
+    /**
+     * Change how long client order ids are remembered for duplicate detection
+     * REQUIRES the matching engine not to be running yet (the window belongs to the matching thread)
+     */
+    public void setDeduplicationWindowMillis(long windowMillis) {
+        if (isRunning) {
+            throw new IllegalStateException("Cannot resize the deduplication window of a running OrderBook");
+        }
+        recentOrderIds = new ClientOrderIdWindow(windowMillis);
+    }
+    
+    /**
+     * Attach the listener that turns book events into execution reports
+     * @param listener - must not block, it runs on the matching thread
+     */
+    public void setExecutionListener(ExecutionListener listener) {
+        this.executionListener = listener == null ? ExecutionListener.NONE : listener;
+    }
+    
     /**
      * Start the matching engine (single background thread)
      */
@@ -102,6 +216,7 @@ public class OrderBook extends Identifiable<OrderBook> {
         if (matchingEngineThread != null) {
             matchingEngineThread.interrupt();
         }
+        failPendingSyncs();
     }
 
     // === MATCHING ENGINE CORE ===
@@ -114,14 +229,34 @@ public class OrderBook extends Identifiable<OrderBook> {
         while (isRunning && !Thread.currentThread().isInterrupted()) {
             try {
                 // Blocking wait for next order (FIFO time priority)
-                Order order = orderQueue.take();
+                Object command = orderQueue.take();
                 
-                // Route order based on type
-                switch (order.getOrderType()) {
-                    case MARKET -> executeMarketOrder(order);
-                    case LIMIT -> executeLimitOrder(order);
-                    case STOP -> addToStopQueue(order);
-                    case STOP_LIMIT -> addToStopLimitQueue(order);
+                if (command instanceof Order order) {
+                    if (liveOrders.containsKey(order.getOrderId())) {
+                        duplicateOrderCount++; // redelivered while it still rests (or waits for its trigger)
+                        continue;
+                    }
+                    long firstOrderId = previousSubmission(order);
+                    if (firstOrderId != ClientOrderIdWindow.ABSENT) {
+                        duplicateOrderCount++;
+                        if (firstOrderId != order.getOrderId()) {
+                            // a new order reusing a client order id (not a redelivery): tell the client
+                            executionListener.onOrderRejected(order, "Duplicate client order id " + order.getClientOrderId());
+                        }
+                        continue;
+                    }
+                    processOrder(order);
+                } else if (command instanceof TriggeredOrder triggered) {
+                    // converted stop orders were deduplicated when first submitted
+                    processOrder(triggered.order);
+                } else if (command instanceof CancelCommand cancel) {
+                    executeCancel(cancel.orderId, "Cancelled by client");
+                } else if (command instanceof MassCancelCommand massCancel) {
+                    executeMassCancel(massCancel.userId, massCancel.bid);
+                } else if (command instanceof RestoreCommand restore) {
+                    executeRestore(restore);
+                } else if (command instanceof SyncCommand sync) {
+                    sync.done.complete(null);
                 }
                 
                 // After processing any order, check if stops should be triggered
@@ -129,6 +264,10 @@ public class OrderBook extends Identifiable<OrderBook> {
                     checkStopTriggers();
                 }
                 
+                if (++commandsSinceDepthPublish >= DEPTH_PUBLISH_INTERVAL || orderQueue.isEmpty()) {
+                    publishDepth();
+                }
+                
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 break;
@@ -140,6 +279,39 @@ public class OrderBook extends Identifiable<OrderBook> {
         }
     }
 
+    /**
+     * Nobody will reach the barriers still queued: fail them instead of leaving their callers waiting
+     */
+    private void failPendingSyncs() {
+        orderQueue.removeIf(command -> command instanceof SyncCommand sync
+            && sync.done.completeExceptionally(new IllegalStateException("OrderBook stopped")));
+    }
+
+    /**
+     * Dedup check done before an order can touch the book, keyed by (client, client order id); orders submitted
+     * without a client order id are not recorded, so the window grows with the orders that carry one only
+     * @return ClientOrderIdWindow.ABSENT for a first submission, otherwise the order id it duplicates
+     */
+    private long previousSubmission(Order order) {
+        if (order.getClientOrderId() == null) {
+            return ClientOrderIdWindow.ABSENT;
+        }
+        return recentOrderIds.recordIfAbsent(order.getClientId(), order.getClientOrderId(), order.getOrderId(),
+                                             System.currentTimeMillis());
+    }
+    
+    /**
+     * Route order based on type
+     */
+    private void processOrder(Order order) {
+        switch (order.getOrderType()) {
+            case MARKET -> executeMarketOrder(order);
+            case LIMIT -> executeLimitOrder(order);
+            case STOP -> addToStopQueue(order);
+            case STOP_LIMIT -> addToStopLimitQueue(order);
+        }
+    }
+
     // === ORDER EXECUTION ===
     
     /**
@@ -163,6 +335,13 @@ public class OrderBook extends Identifiable<OrderBook> {
                 break;
             }
         }
+        
+        // Market orders never rest: whatever couldn't be filled is cancelled
+        if (!order.isCompleted()) {
+            int unfilled = order.getRemainingQuantity();
+            order.cancelOrder();
+            executionListener.onOrderCancelled(order, unfilled, "Insufficient liquidity");
+        }
     }
     
     /**
@@ -215,6 +394,7 @@ public class OrderBook extends Identifiable<OrderBook> {
         // Remove passive order from queue if fully filled
         if (passiveOrder.isCompleted()) {
             passiveQueue.poll();
+            liveOrders.remove(passiveOrder.getOrderId());
             // Clean up empty price levels
             cleanupEmptyPriceLevel(passiveOrder, passiveQueue);
         }
@@ -227,7 +407,7 @@ public class OrderBook extends Identifiable<OrderBook> {
     }
     
     /**
-     * Record completed trade in history
+     * Record completed trade in history and report it
      */
     private void recordTrade(Order buyOrder, Order sellOrder, Price price, int quantity) {
         // Determine which is buy vs sell based on order side
@@ -236,6 +416,84 @@ public class OrderBook extends Identifiable<OrderBook> {
         
         CompletedTrade trade = new CompletedTrade(actualBuyOrder, actualSellOrder, price, quantity);
         tradeHistory.add(trade);
+        executionListener.onTrade(trade, actualBuyOrder, actualSellOrder);
+    }
+
+    /**
+     * Remove a resting or untriggered stop order; unknown ids (already filled, already cancelled) are ignored
+     */
+    private void executeCancel(long orderId, String reason) {
+        Order order = liveOrders.remove(orderId);
+        if (order == null) return;
+        
+        switch (order.getOrderType()) {
+            case LIMIT -> {
+                ConcurrentSkipListMap<Price, LinkedBlockingQueue<Order>> side = order.isBid() ? bids : asks;
+                LinkedBlockingQueue<Order> level = side.get(order.getExecutionPrice());
+                if (level != null) {
+                    level.remove(order);
+                    cleanupEmptyPriceLevel(order, level);
+                }
+            }
+            case STOP -> (order.isBid() ? buyStopQueue : sellStopQueue).remove(order);
+            case STOP_LIMIT -> (order.isBid() ? buyStopLimitQueue : sellStopLimitQueue).remove(order);
+            default -> { }
+        }
+        int unfilled = order.getRemainingQuantity();
+        order.cancelOrder();
+        executionListener.onOrderCancelled(order, unfilled, reason);
+    }
+
+    /**
+     * Cancel every live order (resting or untriggered stop) of the user on the requested side(s)
+     */
+    private void executeMassCancel(long userId, Boolean bid) {
+        List<Long> matching = new ArrayList<>();
+        for (Order order : liveOrders.values()) {
+            if (order.getClientId() == userId && (bid == null || order.isBid() == bid)) {
+                matching.add(order.getOrderId());
+            }
+        }
+        for (long orderId : matching) {
+            executeCancel(orderId, "Mass cancelled by client");
+        }
+    }
+
+    /**
+     * Rebuild levels and stop queues from restored orders; the level of the previous order is reused while
+     * consecutive orders share a side and price
+     */
+    private void executeRestore(RestoreCommand restore) {
+        try {
+            LinkedBlockingQueue<Order> level = null;
+            Price levelPrice = null;
+            boolean levelBid = false;
+            for (Order order : restore.orders) {
+                liveOrders.put(order.getOrderId(), order);
+                switch (order.getOrderType()) {
+                    case STOP -> (order.isBid() ? buyStopQueue : sellStopQueue).offer(order);
+                    case STOP_LIMIT -> (order.isBid() ? buyStopLimitQueue : sellStopLimitQueue).offer(order);
+                    case LIMIT -> {
+                        Price price = order.getExecutionPrice();
+                        if (level == null || levelBid != order.isBid() || levelPrice.compareTo(price) != 0) {
+                            level = (order.isBid() ? bids : asks).computeIfAbsent(price, k -> new LinkedBlockingQueue<>());
+                            levelPrice = price;
+                            levelBid = order.isBid();
+                        }
+                        level.add(order);
+                    }
+                    case MARKET -> liveOrders.remove(order.getOrderId()); // never rests, nothing to restore
+                }
+            }
+            if (restore.lastTradePrice != null) {
+                lastTradePrice = restore.lastTradePrice;
+            }
+            publishDepth();
+            restore.done.complete(null);
+        } catch (RuntimeException e) {
+            restore.done.completeExceptionally(e);
+            throw e;
+        }
     }
 
     // === STOP ORDER MANAGEMENT ===
@@ -244,22 +502,26 @@ public class OrderBook extends Identifiable<OrderBook> {
      * Add stop order to appropriate queue
      */
     private void addToStopQueue(Order order) {
+        liveOrders.put(order.getOrderId(), order);
         if (order.isBid()) {
             buyStopQueue.offer(order);
         } else {
             sellStopQueue.offer(order);
         }
+        executionListener.onOrderAccepted(order);
     }
     
     /**
      * Add stop-limit order to appropriate queue
      */
     private void addToStopLimitQueue(Order order) {
+        liveOrders.put(order.getOrderId(), order);
         if (order.isBid()) {
             buyStopLimitQueue.offer(order);
         } else {
             sellStopLimitQueue.offer(order);
         }
+        executionListener.onOrderAccepted(order);
     }
     
     /**
@@ -286,18 +548,22 @@ public class OrderBook extends Identifiable<OrderBook> {
             // Buy stop triggers when market price >= stop price
             if (lastTradePrice.compareTo(stopOrder.getStopPrice()) >= 0) {
                 buyStopQueue.poll();
+                liveOrders.remove(stopOrder.getOrderId());
                 
-                // Convert to market order and re-inject into queue
-                Order marketOrder = Order.newMarketOrder(
+                // Convert to market order (same order id) and re-inject into queue
+                Order marketOrder = Order.restore(
+                    stopOrder.getOrderId(),
                     stopOrder.getClientId(),
                     OrderType.MARKET,
                     true, // buy
                     stopOrder.getRemainingQuantity(),
-                    stopOrder.getAsset()
+                    stopOrder.getAsset(),
+                    null,
+                    null
                 );
                 
                 try {
-                    orderQueue.put(marketOrder);
+                    orderQueue.put(new TriggeredOrder(marketOrder));
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                     break;
@@ -316,18 +582,22 @@ public class OrderBook extends Identifiable<OrderBook> {
             // Sell stop triggers when market price <= stop price
             if (lastTradePrice.compareTo(stopOrder.getStopPrice()) <= 0) {
                 sellStopQueue.poll();
+                liveOrders.remove(stopOrder.getOrderId());
                 
-                // Convert to market order and re-inject into queue
-                Order marketOrder = Order.newMarketOrder(
+                // Convert to market order (same order id) and re-inject into queue
+                Order marketOrder = Order.restore(
+                    stopOrder.getOrderId(),
                     stopOrder.getClientId(),
                     OrderType.MARKET,
                     false, // sell
                     stopOrder.getRemainingQuantity(),
-                    stopOrder.getAsset()
+                    stopOrder.getAsset(),
+                    null,
+                    null
                 );
                 
                 try {
-                    orderQueue.put(marketOrder);
+                    orderQueue.put(new TriggeredOrder(marketOrder));
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                     break;
@@ -344,19 +614,22 @@ public class OrderBook extends Identifiable<OrderBook> {
             
             if (lastTradePrice.compareTo(stopLimitOrder.getStopPrice()) >= 0) {
                 buyStopLimitQueue.poll();
+                liveOrders.remove(stopLimitOrder.getOrderId());
                 
-                // Convert to limit order and re-inject into queue
-                Order limitOrder = Order.newLimitOrder(
+                // Convert to limit order (same order id) and re-inject into queue
+                Order limitOrder = Order.restore(
+                    stopLimitOrder.getOrderId(),
                     stopLimitOrder.getClientId(),
                     OrderType.LIMIT,
                     true, // buy
                     stopLimitOrder.getRemainingQuantity(),
                     stopLimitOrder.getAsset(),
-                    stopLimitOrder.getExecutionPrice() // use limit price
+                    stopLimitOrder.getExecutionPrice(), // use limit price
+                    null
                 );
                 
                 try {
-                    orderQueue.put(limitOrder);
+                    orderQueue.put(new TriggeredOrder(limitOrder));
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                     break;
@@ -373,19 +646,22 @@ public class OrderBook extends Identifiable<OrderBook> {
             
             if (lastTradePrice.compareTo(stopLimitOrder.getStopPrice()) <= 0) {
                 sellStopLimitQueue.poll();
+                liveOrders.remove(stopLimitOrder.getOrderId());
                 
-                // Convert to limit order and re-inject into queue
-                Order limitOrder = Order.newLimitOrder(
+                // Convert to limit order (same order id) and re-inject into queue
+                Order limitOrder = Order.restore(
+                    stopLimitOrder.getOrderId(),
                     stopLimitOrder.getClientId(),
                     OrderType.LIMIT,
                     false, // sell
                     stopLimitOrder.getRemainingQuantity(),
                     stopLimitOrder.getAsset(),
-                    stopLimitOrder.getExecutionPrice() // use limit price
+                    stopLimitOrder.getExecutionPrice(), // use limit price
+                    null
                 );
                 
                 try {
-                    orderQueue.put(limitOrder);
+                    orderQueue.put(new TriggeredOrder(limitOrder));
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                     break;
@@ -398,16 +674,23 @@ public class OrderBook extends Identifiable<OrderBook> {
 
     // helpers
     
+    private void publishDepth() {
+        depthSnapshot = DepthSnapshot.of(bids, asks, DEPTH_LEVELS, ++depthSequence);
+        commandsSinceDepthPublish = 0;
+    }
+    
     /**
      * Add order to the appropriate order book
      */
     private void addToBook(Order order) {
+        liveOrders.put(order.getOrderId(), order);
         Price orderPrice = order.getExecutionPrice();
         if (order.isBid()) {
             bids.computeIfAbsent(orderPrice, k -> new LinkedBlockingQueue<>()).add(order);
         } else {
             asks.computeIfAbsent(orderPrice, k -> new LinkedBlockingQueue<>()).add(order);
         }
+        executionListener.onOrderAccepted(order);
     }
     
     /**
@@ -455,12 +738,15 @@ public class OrderBook extends Identifiable<OrderBook> {
         return bestAsks.getValue().isEmpty() ? null : bestAsks.getValue();
     }
     
+    // firstEntry() instead of isEmpty() + firstKey(): safe to call from other threads while the book changes
     public Price getNationalBestBidPrice() {
-        return bids.isEmpty() ? null : bids.firstKey();
+        Map.Entry<Price, LinkedBlockingQueue<Order>> best = bids.firstEntry();
+        return best == null ? null : best.getKey();
     }
     
     public Price getNationalBestOfferPrice() {
-        return asks.isEmpty() ? null : asks.firstKey();
+        Map.Entry<Price, LinkedBlockingQueue<Order>> best = asks.firstEntry();
+        return best == null ? null : best.getKey();
     }
 
     // Getter methods
@@ -477,6 +763,13 @@ public class OrderBook extends Identifiable<OrderBook> {
         return lastTradePrice;
     }
     
+    /**
+     * @return latest published depth; trails the live book by at most the commands still being processed
+     */
+    public DepthSnapshot getDepthSnapshot() {
+        return depthSnapshot;
+    }
+    
     public List<CompletedTrade> getTradeHistory() {
         return new ArrayList<>(tradeHistory);
     }
@@ -485,8 +778,58 @@ public class OrderBook extends Identifiable<OrderBook> {
         return orderQueue.size();
     }
     
+    public long getDuplicateOrderCount() {
+        return duplicateOrderCount;
+    }
+    
     public int getStopOrderCount() {
         return buyStopQueue.size() + sellStopQueue.size() + 
                buyStopLimitQueue.size() + sellStopLimitQueue.size();
     }
+
+    // === CONTROL COMMANDS ===
+
+    /**
+     * Stop order converted after its trigger price was hit; keeps the original order id
+     */
+    private static final class TriggeredOrder {
+        private final Order order;
+
+        private TriggeredOrder(Order order) {
+            this.order = order;
+        }
+    }
+
+    private static final class CancelCommand {
+        private final long orderId;
+
+        private CancelCommand(long orderId) {
+            this.orderId = orderId;
+        }
+    }
+
+    private static final class RestoreCommand {
+        private final List<Order> orders;
+        private final Price lastTradePrice; // null = keep
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private RestoreCommand(List<Order> orders, Price lastTradePrice) {
+            this.orders = orders;
+            this.lastTradePrice = lastTradePrice;
+        }
+    }
+
+    private static final class SyncCommand {
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+    }
+
+    private static final class MassCancelCommand {
+        private final long userId;
+        private final Boolean bid; // null = both sides
+
+        private MassCancelCommand(long userId, Boolean bid) {
+            this.userId = userId;
+            this.bid = bid;
+        }
+    }
 }
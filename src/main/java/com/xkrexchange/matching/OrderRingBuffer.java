@@ -0,0 +1,88 @@
+package com.xkrexchange.matching;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free multi-producer / single-consumer ring buffer used as the in-process inbound queue of the MatchingEngine
+ *
+ * Each slot carries its own sequence number (Vyukov bounded queue):
+ * -> a producer claims a slot by CAS-ing the shared tail, writes the element, then publishes by bumping the slot sequence
+ * -> the single consumer reads slots in order and hands them back to producers by advancing the slot sequence one lap
+ * No locks are taken on either side and a full buffer is reported to the producer instead of blocking it.
+ *
+ * CLASS INVARIANT: capacity is a power of two; poll() is only ever called from one thread
+ */
+public class OrderRingBuffer {
+
+    private final int mask;
+    private final AtomicReferenceArray<Object> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong(); // next slot producers will claim
+    private volatile long head = 0; // next slot the consumer will read (written by the consumer thread only)
+
+    public OrderRingBuffer(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring buffer capacity must be a power of two, got " + capacity);
+        }
+        this.mask = capacity - 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Publish an element (any thread)
+     * @param element - Order or engine command, must not be null
+     * @return false if the buffer is full
+     */
+    public boolean offer(Object element) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+                // slot is free for this lap - try to claim it
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.lazySet(index, element);
+                    sequences.set(index, position + 1); // publish to the consumer
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false; // consumer hasn't freed this slot yet: buffer is full
+            }
+            // another producer claimed this position first, retry with the new tail
+        }
+    }
+
+    /**
+     * Take the next element (consumer thread only)
+     * @return the next element or null if the buffer is empty
+     */
+    public Object poll() {
+        int index = (int) head & mask;
+        if (sequences.get(index) != head + 1) {
+            return null; // not published yet
+        }
+        Object element = slots.get(index);
+        slots.lazySet(index, null);
+        sequences.set(index, head + mask + 1); // free the slot for the next lap
+        head++;
+        return element;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Approximate number of elements waiting (exact only when producers and consumer are quiescent)
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+}
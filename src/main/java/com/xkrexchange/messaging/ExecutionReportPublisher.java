@@ -0,0 +1,318 @@
+package com.xkrexchange.messaging;
+
+import com.xkrexchange.common.model.CompletedTrade;
+import com.xkrexchange.common.model.Order;
+import com.xkrexchange.matching.ExecutionListener;
+import com.xkrexchange.messaging.MessageQueueConsumer.OrderAcceptedReport;
+import com.xkrexchange.messaging.MessageQueueConsumer.OrderCancellationReport;
+import com.xkrexchange.messaging.MessageQueueConsumer.OrderRejectionReport;
+import com.xkrexchange.messaging.MessageQueueConsumer.SequencedReport;
+import com.xkrexchange.messaging.MessageQueueConsumer.TradeExecutionReport;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Execution Report Publisher - Turns OrderBook events into execution reports for settlement and clients
+ *
+ * Key Responsibilities:
+ * 1. Capture every post, fill, cancel and rejection as it happens on the matching threads
+ * 2. Batch reports onto the executions topic (keyed by asset): fills, acceptances, cancellations and
+ *    rejections share one stream, so an order's close is always consumed after its fills
+ * 3. Stamp each report with a per-asset publish sequence so consumers can detect gaps
+ * 4. Never drop a report: a failed send stops its asset's stream, and the stream resumes from the failed report
+ *
+ * Threading model:
+ * - Matching threads only build the immutable report and append it to a lock-free queue; they never
+ *   serialize, touch the network or wait on this publisher
+ * - A single publisher thread drains the queue in batches, assigns sequence numbers (so no counter is shared
+ *   with the matching threads) and hands the batch to the Kafka producer, which batches it further per partition
+ * - In in-process transport mode the batch is handed straight to MessageQueueConsumer instead of a broker
+ *
+ * Delivery:
+ * - The publisher waits for each batch's sends to complete. When a send fails, that report and every later
+ *   report of its asset are held back (new reports of the asset queue behind them) and sent again, in order,
+ *   after RETRY_BACKOFF_NANOS, until they succeed. Other assets keep flowing
+ * - The idempotent producer never writes a partition's later batch past a failed one, so a resent report can
+ *   only follow copies of itself or earlier reports, which consumers skip by sequence
+ * - Sequences restart at 1 in every run of the publisher; each report carries the run's epoch (its start time)
+ *   so consumers start over on a new epoch instead of seeing a gap
+ */
+@Service
+public class ExecutionReportPublisher implements ExecutionListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionReportPublisher.class);
+    private static final long IDLE_PARK_NANOS = 100_000;
+    private static final long RETRY_BACKOFF_NANOS = 200_000_000L;
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final MessageQueueConsumer inProcessConsumer; // null when reports go through Kafka
+    private final String executionsTopicName;
+    private final int batchSize;
+
+    // === PUBLISHING STATE ===
+    private final Queue<SequencedReport> pendingReports = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pendingCount = new AtomicLong();
+    private final AtomicInteger stoppedCount = new AtomicInteger();
+    private final Map<Long, long[]> lastSequences = new HashMap<>(); // publisher thread only
+    private final Map<Long, Deque<SequencedReport>> stoppedStreams = new LinkedHashMap<>(); // asset -> reports to resend
+    private long retryAtNanos;
+    private final long sequenceEpoch = System.currentTimeMillis();
+    private volatile boolean isRunning = false;
+    private Thread publisherThread;
+
+    // === METRICS ===
+    private final Counter publishedCounter;
+    private final Counter failedCounter;
+
+    public ExecutionReportPublisher(KafkaTemplate<String, Object> kafkaTemplate,
+                                    MessageQueueConsumer consumer,
+                                    @Value("${trading.transport.mode:kafka}") String transportMode,
+                                    @Value("${kafka.topics.executions}") String executionsTopicName,
+                                    @Value("${trading.execution-reports.batch-size:512}") int batchSize,
+                                    MeterRegistry meterRegistry) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.inProcessConsumer = "in-process".equals(transportMode) ? consumer : null;
+        this.executionsTopicName = executionsTopicName;
+        this.batchSize = batchSize;
+
+        Gauge.builder("xkr.reports.pending", pendingCount, AtomicLong::get)
+             .description("Execution reports produced by the matching threads but not yet published")
+             .register(meterRegistry);
+        this.publishedCounter = Counter.builder("xkr.reports.published").register(meterRegistry);
+        this.failedCounter = Counter.builder("xkr.reports.failed").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        isRunning = true;
+        publisherThread = new Thread(this::publishLoop, "ExecutionReportPublisher");
+        publisherThread.setDaemon(true);
+        publisherThread.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        isRunning = false;
+        if (publisherThread != null) {
+            LockSupport.unpark(publisherThread);
+            try {
+                publisherThread.join(5_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public long getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * @return assets whose report stream is stopped on a failed send (read from the publisher thread's state)
+     */
+    public int getStoppedStreamCount() {
+        return stoppedCount.get();
+    }
+
+    // === EXECUTION LISTENER (matching threads) ===
+
+    @Override
+    public void onOrderAccepted(Order order) {
+        enqueue(new OrderAcceptedReport(
+            order.getOrderId(),
+            order.getClientId(),
+            order.getAsset().getAssetId(),
+            order.getOrderType().name(),
+            order.isBid(),
+            order.getQuantity() - order.getRemainingQuantity(),
+            order.getRemainingQuantity(),
+            System.currentTimeMillis(),
+            0
+        ));
+    }
+
+    @Override
+    public void onTrade(CompletedTrade trade, Order buyOrder, Order sellOrder) {
+        enqueue(new TradeExecutionReport(
+            trade.getTradeId(),
+            trade.getBuyOrderId(),
+            trade.getSellOrderId(),
+            trade.getBuyerUserId(),
+            trade.getSellerUserId(),
+            trade.getAssetId(),
+            trade.getQuantity(),
+            trade.getExecutionPrice().getValue(),
+            buyOrder.getQuantity() - buyOrder.getRemainingQuantity(),
+            buyOrder.getRemainingQuantity(),
+            sellOrder.getQuantity() - sellOrder.getRemainingQuantity(),
+            sellOrder.getRemainingQuantity(),
+            System.currentTimeMillis(),
+            0
+        ));
+    }
+
+    @Override
+    public void onOrderCancelled(Order order, int cancelledQuantity, String reason) {
+        enqueue(new OrderCancellationReport(
+            order.getOrderId(),
+            order.getClientId(),
+            order.getAsset().getAssetId(),
+            order.getQuantity() - cancelledQuantity,
+            cancelledQuantity,
+            reason,
+            System.currentTimeMillis(),
+            0
+        ));
+    }
+
+    @Override
+    public void onOrderRejected(long orderId, long userId, long assetId, String reason) {
+        enqueue(new OrderRejectionReport(orderId, userId, assetId, reason, System.currentTimeMillis(), 0));
+    }
+
+    @Override
+    public void onOrderRejected(Order order, String reason) {
+        enqueue(new OrderRejectionReport(
+            order.getOrderId(),
+            order.getClientId(),
+            order.getAsset().getAssetId(),
+            reason,
+            System.currentTimeMillis(),
+            0
+        ));
+    }
+
+    // helpers
+
+    private void enqueue(SequencedReport report) {
+        pendingReports.offer(report);
+        pendingCount.incrementAndGet();
+    }
+
+    private void publishLoop() {
+        List<SequencedReport> batch = new ArrayList<>(batchSize);
+        while (isRunning || !pendingReports.isEmpty() || !stoppedStreams.isEmpty()) {
+            if (!stoppedStreams.isEmpty() && System.nanoTime() - retryAtNanos >= 0) {
+                // held-back reports go first, so each stream resumes exactly where its send failed
+                for (Deque<SequencedReport> held : stoppedStreams.values()) {
+                    batch.addAll(held);
+                }
+                stoppedStreams.clear();
+            }
+            SequencedReport report;
+            int drained = 0;
+            while (drained < batchSize && (report = pendingReports.poll()) != null) {
+                report.setSequence(sequenceEpoch, nextSequence(report));
+                drained++;
+                Deque<SequencedReport> held = stoppedStreams.get(report.getAssetId());
+                if (held != null) {
+                    held.add(report);
+                } else {
+                    batch.add(report);
+                }
+            }
+            pendingCount.addAndGet(-drained);
+            if (batch.isEmpty()) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            List<SequencedReport> failed;
+            try {
+                failed = publish(batch);
+            } catch (Exception e) {
+                failed = batch;
+                logger.error("Failed to publish {} execution reports", batch.size(), e);
+            }
+            if (!failed.isEmpty()) {
+                failedCounter.increment(failed.size());
+                for (SequencedReport held : failed) {
+                    stoppedStreams.computeIfAbsent(held.getAssetId(), k -> new ArrayDeque<>()).add(held);
+                }
+                retryAtNanos = System.nanoTime() + RETRY_BACKOFF_NANOS;
+            }
+            stoppedCount.set(stoppedStreams.size());
+            batch.clear();
+        }
+    }
+
+    /**
+     * Send a batch and wait for the broker to acknowledge it
+     * @return reports to send again: for every asset with a failed send, its reports from the first failure on
+     */
+    private List<SequencedReport> publish(List<SequencedReport> batch) {
+        if (inProcessConsumer != null) {
+            inProcessConsumer.applyReports(new ArrayList<>(batch));
+            publishedCounter.increment(batch.size());
+            return List.of();
+        }
+        List<CompletableFuture<?>> sends = new ArrayList<>(batch.size());
+        Set<Long> stopped = new HashSet<>();
+        for (SequencedReport report : batch) {
+            CompletableFuture<?> send = null;
+            if (!stopped.contains(report.getAssetId())) {
+                try {
+                    send = kafkaTemplate.send(executionsTopicName, String.valueOf(report.getAssetId()), report);
+                } catch (Exception e) {
+                    logger.error("Failed to publish {}", report, e);
+                    stopped.add(report.getAssetId()); // nothing later of this asset may overtake it
+                }
+            }
+            sends.add(send);
+        }
+
+        List<SequencedReport> failed = new ArrayList<>();
+        stopped.clear();
+        for (int i = 0; i < batch.size(); i++) {
+            SequencedReport report = batch.get(i);
+            CompletableFuture<?> send = sends.get(i);
+            if (send != null && !stopped.contains(report.getAssetId())) {
+                try {
+                    send.join();
+                    publishedCounter.increment();
+                    continue;
+                } catch (CompletionException | CancellationException e) {
+                    logger.error("Failed to publish {}, holding back asset {} until it is sent", report,
+                                 report.getAssetId(), e.getCause() != null ? e.getCause() : e);
+                }
+            }
+            stopped.add(report.getAssetId());
+            failed.add(report); // resent even if this copy got through: consumers skip it by sequence
+        }
+        return failed;
+    }
+
+    /**
+     * Next sequence number of the report's asset stream; contiguous from 1 within one run of the publisher
+     */
+    private long nextSequence(SequencedReport report) {
+        long key = report.getAssetId() << 2 | MessageQueueConsumer.EXECUTIONS_STREAM;
+        long[] counter = lastSequences.computeIfAbsent(key, k -> new long[1]);
+        return ++counter[0];
+    }
+}
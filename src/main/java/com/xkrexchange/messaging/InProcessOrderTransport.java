@@ -0,0 +1,55 @@
+package com.xkrexchange.messaging;
+
+import com.xkrexchange.common.model.Order;
+import com.xkrexchange.matching.MatchingEngine;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * OrderTransport that publishes directly into the MatchingEngine's lock-free ring buffer
+ *
+ * Used when gateway and engine share a JVM: no serialization, no broker hop. A full ring is reported
+ * as a RejectedExecutionException, the same way the Kafka producer reports backpressure.
+ */
+@Component
+@ConditionalOnProperty(name = "trading.transport.mode", havingValue = "in-process")
+public class InProcessOrderTransport implements OrderTransport {
+
+    private final MatchingEngine matchingEngine;
+
+    public InProcessOrderTransport(MatchingEngine matchingEngine) {
+        this.matchingEngine = matchingEngine;
+    }
+
+    @Override
+    public CompletableFuture<Long> submitOrder(Order order) {
+        if (!matchingEngine.enqueueOrder(order)) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Matching engine inbound ring is full"));
+        }
+        return CompletableFuture.completedFuture(order.getOrderId());
+    }
+
+    @Override
+    public CompletableFuture<Long> cancelOrder(long orderId, long assetId) {
+        if (!matchingEngine.enqueueCancel(orderId, assetId)) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Matching engine inbound ring is full"));
+        }
+        return CompletableFuture.completedFuture(orderId);
+    }
+
+    @Override
+    public CompletableFuture<Void> massCancel(long userId, long assetId, Boolean bid) {
+        if (!matchingEngine.enqueueMassCancel(userId, assetId, bid)) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Matching engine inbound ring is full"));
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public boolean isHealthy() {
+        return matchingEngine.getInboundBacklog() < matchingEngine.getInboundCapacity();
+    }
+}
@@ -0,0 +1,47 @@
+package com.xkrexchange.messaging;
+
+import com.xkrexchange.common.model.Order;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * OrderTransport backed by the trading.orders Kafka topic (default mode)
+ */
+@Component
+@ConditionalOnProperty(name = "trading.transport.mode", havingValue = "kafka", matchIfMissing = true)
+public class KafkaOrderTransport implements OrderTransport {
+
+    private final MessageQueueProducer producer;
+
+    public KafkaOrderTransport(MessageQueueProducer producer) {
+        this.producer = producer;
+    }
+
+    @Override
+    public CompletableFuture<Long> submitOrder(Order order) {
+        return producer.publishOrder(order);
+    }
+
+    @Override
+    public List<CompletableFuture<Long>> submitOrders(List<Order> orders) {
+        return producer.publishOrderBatch(orders);
+    }
+
+    @Override
+    public CompletableFuture<Long> cancelOrder(long orderId, long assetId) {
+        return producer.publishCancellation(orderId, assetId);
+    }
+
+    @Override
+    public CompletableFuture<Void> massCancel(long userId, long assetId, Boolean bid) {
+        return producer.publishMassCancellation(userId, assetId, bid);
+    }
+
+    @Override
+    public boolean isHealthy() {
+        return producer.isQueueHealthy();
+    }
+}
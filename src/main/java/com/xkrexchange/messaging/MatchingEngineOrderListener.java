@@ -0,0 +1,165 @@
+package com.xkrexchange.messaging;
+
+import com.xkrexchange.common.model.Asset;
+import com.xkrexchange.common.model.Order;
+import com.xkrexchange.common.model.Price;
+import com.xkrexchange.matching.MatchingEngine;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.TopicPartition;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.IntStream;
+
+/**
+ * Engine side of the Kafka transport: consumes the trading.orders topic and routes each message into the MatchingEngine
+ *
+ * Records arrive in partition (= asset) order and are routed in that order, so every OrderBook sees its orders and
+ * cancellations exactly as they were published. An order that cannot be routed (asset not listed here, price off
+ * the tick grid) is reported as rejected, so the gateway releases its reservation and the client sees why.
+ *
+ * Delivery:
+ * - Offsets are committed only once every book the poll touched has applied its commands (MatchingEngine.applied),
+ *   so orders still waiting in a book's queue are delivered again after a crash. BookRecoveryService relies on
+ *   this: it restores what reached the database and leaves PENDING orders to the redelivery
+ * - The listener has its own consumer group (kafka.consumer.orders-group-id) and is assigned the partitions of the
+ *   books this node owns (trading.matching-engine.owned-assets, all listed assets by default) instead of joining
+ *   a rebalancing group: a partition can never move to a node whose book for it is empty. When several engine
+ *   nodes split the listing, give each its own group id; records of a book owned by another node are skipped
+ */
+@Component
+@ConditionalOnProperty(name = "trading.transport.mode", havingValue = "kafka", matchIfMissing = true)
+public class MatchingEngineOrderListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(MatchingEngineOrderListener.class);
+
+    private final MatchingEngine matchingEngine;
+    private final Set<Long> ownedAssets; // empty = every listed asset
+    private final int ordersPartitions;
+
+    public MatchingEngineOrderListener(MatchingEngine matchingEngine,
+                                       @Value("${trading.matching-engine.owned-assets:}") List<Long> ownedAssets,
+                                       @Value("${kafka.topics.orders-partitions:12}") int ordersPartitions) {
+        this.matchingEngine = matchingEngine;
+        this.ownedAssets = Set.copyOf(ownedAssets);
+        this.ordersPartitions = ordersPartitions;
+    }
+
+    @KafkaListener(id = "matchingEngineOrders", groupId = "${kafka.consumer.orders-group-id}",
+                   topicPartitions = @TopicPartition(topic = "${kafka.topics.orders}",
+                                                     partitions = "#{@matchingEngineOrderListener.ownedPartitions()}"),
+                   containerFactory = "batchListenerContainerFactory")
+    public void handleOrders(List<ConsumerRecord<String, Object>> records, Acknowledgment ack) {
+        Set<Long> routedAssets = new HashSet<>();
+        for (ConsumerRecord<String, Object> record : records) {
+            try {
+                if (record.value() instanceof OrderMessage message) {
+                    if (owns(message.getAssetId())) {
+                        matchingEngine.route(toOrder(message));
+                        routedAssets.add(message.getAssetId());
+                    }
+                } else if (record.value() instanceof MessageQueueProducer.CancellationMessage cancellation) {
+                    if (owns(cancellation.getAssetId())) {
+                        matchingEngine.cancel(cancellation.getOrderId(), cancellation.getAssetId());
+                        routedAssets.add(cancellation.getAssetId());
+                    }
+                } else if (record.value() instanceof MessageQueueProducer.MassCancellationMessage massCancel) {
+                    if (owns(massCancel.getAssetId())) {
+                        matchingEngine.massCancel(massCancel.getUserId(), massCancel.getAssetId(), massCancel.getBid());
+                        routedAssets.add(massCancel.getAssetId());
+                    }
+                } else {
+                    logger.warn("Ignoring unexpected message on orders topic: {}", record.value());
+                }
+            } catch (IllegalArgumentException e) {
+                // unknown asset: redelivering won't help, skip the record
+                logger.error("Dropping {} at {}-{}@{}: {}", record.value(), record.topic(),
+                             record.partition(), record.offset(), e.getMessage());
+                if (record.value() instanceof OrderMessage message) {
+                    matchingEngine.reject(message.getOrderId(), message.getClientId(), message.getAssetId(), e.getMessage());
+                }
+            }
+        }
+
+        CompletableFuture<?>[] applied = routedAssets.stream()
+            .filter(assetId -> matchingEngine.getAsset(assetId) != null) // delisted meanwhile: its book is gone
+            .map(matchingEngine::applied)
+            .toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(applied).join();
+        } catch (CompletionException e) {
+            // the engine is stopping: leave the offsets uncommitted so the poll is delivered again
+            logger.warn("Not committing {} orders topic records: {}", records.size(), e.getCause().getMessage());
+            return;
+        }
+        ack.acknowledge();
+    }
+
+    /**
+     * Partitions of the orders topic that carry this node's books: the producer keys every message by asset id,
+     * so they are found with the producer's partitioner for keyed records (kafka.topics.orders-partitions must
+     * match the topic's partition count)
+     */
+    public String[] ownedPartitions() {
+        if (matchingEngine.getAssets().isEmpty()) {
+            // no books at all: every order is for an unknown asset, consume them all so they are rejected
+            logger.warn("No assets listed, consuming every orders topic partition to reject their orders");
+            return IntStream.range(0, ordersPartitions).mapToObj(String::valueOf).toArray(String[]::new);
+        }
+        String[] owned = matchingEngine.getAssets().stream()
+            .filter(asset -> owns(asset.getAssetId()))
+            .mapToInt(asset -> partitionOf(asset.getAssetId()))
+            .distinct()
+            .sorted()
+            .mapToObj(String::valueOf)
+            .toArray(String[]::new);
+        if (owned.length == 0) {
+            throw new IllegalStateException("trading.matching-engine.owned-assets names no listed asset");
+        }
+        logger.info("Consuming orders topic partitions {}", String.join(",", owned));
+        return owned;
+    }
+
+    // helpers
+
+    /**
+     * @return false for a book listed here but run by another engine node; unknown assets count as owned, so
+     *         their orders are rejected
+     */
+    private boolean owns(Long assetId) {
+        return ownedAssets.isEmpty() || ownedAssets.contains(assetId) || matchingEngine.getAsset(assetId) == null;
+    }
+
+    private int partitionOf(long assetId) {
+        byte[] key = MessageQueueProducer.assetKey(assetId).getBytes(StandardCharsets.UTF_8);
+        return Utils.toPositive(Utils.murmur2(key)) % ordersPartitions;
+    }
+
+    /**
+     * Rebuild the Order with the id the gateway assigned to it
+     */
+    private Order toOrder(OrderMessage message) {
+        Asset asset = matchingEngine.getAsset(message.getAssetId());
+        if (asset == null) {
+            throw new IllegalArgumentException("Unknown asset id: " + message.getAssetId());
+        }
+        Price limitPrice = message.getLimitPrice() == null ? null : asset.priceOf(message.getLimitPrice());
+        Price triggerPrice = message.getTriggerPrice() == null ? null : asset.priceOf(message.getTriggerPrice());
+        Order order = Order.restore(message.getOrderId(), message.getClientId(), message.getOrderType(), message.isBid(),
+                                    message.getQuantity(), asset, limitPrice, triggerPrice);
+        order.setClientOrderId(message.getClientOrderId());
+        return order;
+    }
+}
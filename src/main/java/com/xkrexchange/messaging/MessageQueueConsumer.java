@@ -1,145 +1,631 @@
 package com.xkrexchange.messaging;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.xkrexchange.gateway.OrderStateCache;
+import com.xkrexchange.gateway.PreTradeRiskService;
+import com.xkrexchange.security.EntitlementStore;
+import com.xkrexchange.service.OrderPersistenceService;
+import com.xkrexchange.service.history.OrderHistoryService;
+import com.xkrexchange.wallet.WalletService;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
 /**
  * Message Queue Consumer - Receives execution reports from matching engine
- * 
+ *
  * Key Responsibilities:
  * 1. Listen for trade execution reports
  * 2. Process settlement instructions
  * 3. Handle order status updates
  * 4. Trigger wallet service for final settlement
  * 5. Notify clients of execution results
+ * 6. Detect gaps in the per-asset publish sequence of the report stream
+ * 7. Keep the OrderStateCache (status queries, submit acknowledgements) in step with the engine
+ * 8. Feed the OrderHistoryService read model (order and trade history queries)
+ *
+ * Processing model:
+ * - Each listener receives a whole poll (up to {@code kafka.consumer.max-poll-records}) at once
+ * - The poll is split by partition; partitions are processed in parallel on the settlement workers,
+ *   records WITHIN a partition strictly in offset order. Reports are keyed by asset, so every order
+ *   (and every user's activity on that book) is applied in the sequence the engine produced it
+ * - Offsets are committed only after every partition of the poll has finished and the wallet has applied AND
+ *   persisted the poll's settlements (they are batched and netted across the whole poll). If a record fails, everything
+ *   before the earliest failure is committed and the rest of the poll is redelivered
+ * - A redelivered trade is applied at most once: the steps that add to state (risk, order state, history, the
+ *   trade row) are remembered per trade id, the wallet skips trades it already settled, and the rest
+ *   (status updates, releases) are idempotent
  */
+@Service
 public class MessageQueueConsumer {
-    
-    // TODO: Inject dependencies
-    // private final WalletService walletService;
-    // private final NotificationService notificationService;
-    // private final OrderRepository orderRepository;
-    
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageQueueConsumer.class);
+    private static final Duration REDELIVERY_BACKOFF = Duration.ofMillis(500);
+    // listeners stay idle when the engine runs in-process and reports never touch a broker
+    private static final String KAFKA_TRANSPORT_ENABLED = "#{'${trading.transport.mode:kafka}' == 'kafka'}";
+
+    private final WalletService walletService;
+    private final OrderPersistenceService persistenceService;
+    private final PreTradeRiskService riskService;
+    private final EntitlementStore entitlementStore;
+    private final OrderStateCache orderStateCache;
+    private final OrderHistoryService historyService;
+    private final ExecutorService settlementWorkers;
+
+    // === SEQUENCE TRACKING ===
+    static final int EXECUTIONS_STREAM = 0;
+    private final Map<Long, StreamPosition> lastSequences = new ConcurrentHashMap<>();
+    private final AtomicLong sequenceGapCount = new AtomicLong();
+
+    // === REDELIVERY ===
+    private static final int APPLIED_TRADE_WINDOW = 1 << 16; // trade ids remembered
+    private static final int FILLS_APPLIED = 1;
+    private static final int TRADE_SAVED = 2;
+    private final Map<Long, Integer> appliedTradeSteps = Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+            return size() > APPLIED_TRADE_WINDOW;
+        }
+    });
+
+    public MessageQueueConsumer(WalletService walletService,
+                                OrderPersistenceService persistenceService,
+                                PreTradeRiskService riskService,
+                                EntitlementStore entitlementStore,
+                                OrderStateCache orderStateCache,
+                                OrderHistoryService historyService,
+                                @Value("${kafka.consumer.settlement-workers:8}") int settlementWorkers) {
+        this.walletService = walletService;
+        this.persistenceService = persistenceService;
+        this.riskService = riskService;
+        this.entitlementStore = entitlementStore;
+        this.orderStateCache = orderStateCache;
+        this.historyService = historyService;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.settlementWorkers = Executors.newFixedThreadPool(settlementWorkers, r -> {
+            Thread t = new Thread(r, "SettlementWorker-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        settlementWorkers.shutdown();
+    }
+
+    // === BATCH LISTENERS ===
+
+    @KafkaListener(topics = "${kafka.topics.executions}", containerFactory = "batchListenerContainerFactory",
+                   autoStartup = KAFKA_TRANSPORT_ENABLED)
+    public void handleTradeExecutions(List<ConsumerRecord<String, SequencedReport>> records, Acknowledgment ack) {
+        processPoll(records, ack, this::handleExecutionReport);
+    }
+
+    // === IN-PROCESS DELIVERY ===
+
+    /**
+     * Apply reports handed over directly by the ExecutionReportPublisher when no broker is involved
+     * Reports arrive in publish order on the publisher thread, so they are applied sequentially
+     */
+    public void applyReports(List<SequencedReport> reports) {
+        for (SequencedReport report : reports) {
+            try {
+                handleExecutionReport(report, lastSequences);
+            } catch (Exception e) {
+                logger.error("Failed to process {}", report, e);
+            }
+        }
+    }
+
+    // === PER-RECORD HANDLERS (run on settlement workers) ===
+
+    /**
+     * Executions topic carries fills, acceptances, cancellations and rejections, so an asset's reports stay in
+     * the order the engine produced them: an order's close (and its release) always follows its fills
+     *
+     * @param marks - where the applied sequence is recorded (see applyInSequence)
+     */
+    private void handleExecutionReport(SequencedReport report, Map<Long, StreamPosition> marks) {
+        applyInSequence(EXECUTIONS_STREAM, report, marks, r -> {
+            if (r instanceof TradeExecutionReport execution) {
+                handleTradeExecution(execution);
+            } else if (r instanceof OrderAcceptedReport accepted) {
+                handleOrderAccepted(accepted);
+            } else if (r instanceof OrderCancellationReport cancellation) {
+                handleOrderCancellation(cancellation);
+            } else if (r instanceof OrderRejectionReport rejection) {
+                handleOrderRejection(rejection);
+            } else {
+                logger.warn("Unexpected report on executions stream: {}", r);
+            }
+        });
+    }
+
     /**
      * Handle trade execution report from matching engine
-     * This is called automatically when a message arrives
-     * 
+     *
      * @param executionReport - Details of completed trade
      */
-    // @KafkaListener(topics = "trading.executions")
     public void handleTradeExecution(TradeExecutionReport executionReport) {
-        
-        // TODO: Implement execution processing
-        // 1. Validate execution report
-        // 2. Update order statuses in database
-        // 3. Call walletService.executeSettlement() to transfer funds/assets
-        // 4. Send notifications to affected users
-        // 5. Log execution for audit trail
-        
-        // Example implementation:
-        // try {
-        //     // Update order statuses
-        //     orderRepository.updateOrderStatus(executionReport.getBuyOrderId(), OrderStatus.PARTIALLY_FILLED);
-        //     orderRepository.updateOrderStatus(executionReport.getSellOrderId(), OrderStatus.PARTIALLY_FILLED);
-        //     
-        //     // Execute settlement
-        //     walletService.executeSettlement(
-        //         executionReport.getBuyerUserId(),
-        //         executionReport.getSellerUserId(),
-        //         executionReport.getAssetId(),
-        //         executionReport.getQuantity(),
-        //         executionReport.getPrice(),
-        //         executionReport.getBuyOrderId(),
-        //         executionReport.getSellOrderId()
-        //     );
-        //     
-        //     // Notify users
-        //     notificationService.notifyTradeExecution(executionReport);
-        //     
-        // } catch (Exception e) {
-        //     logger.error("Failed to process trade execution", e);
-        //     // TODO: Implement compensation/rollback logic
-        // }
-    }
-    
+        Long tradeId = executionReport.getTradeId();
+        if (!isApplied(tradeId, FILLS_APPLIED)) {
+            riskService.onFill(executionReport.getBuyOrderId(), executionReport.getQuantity());
+            riskService.onFill(executionReport.getSellOrderId(), executionReport.getQuantity());
+            orderStateCache.onFill(executionReport.getBuyOrderId(), executionReport.getBuyerUserId(), executionReport.getAssetId(),
+                executionReport.getQuantity(), executionReport.getPrice(), executionReport.getBuyFilledQuantity(),
+                executionReport.getBuyRemainingQuantity());
+            orderStateCache.onFill(executionReport.getSellOrderId(), executionReport.getSellerUserId(), executionReport.getAssetId(),
+                executionReport.getQuantity(), executionReport.getPrice(), executionReport.getSellFilledQuantity(),
+                executionReport.getSellRemainingQuantity());
+            historyService.onFill(executionReport.getBuyOrderId(), executionReport.getBuyerUserId(),
+                executionReport.getBuyFilledQuantity(), executionReport.getBuyRemainingQuantity());
+            historyService.onFill(executionReport.getSellOrderId(), executionReport.getSellerUserId(),
+                executionReport.getSellFilledQuantity(), executionReport.getSellRemainingQuantity());
+            historyService.onTrade(executionReport.getTradeId(), executionReport.getBuyOrderId(),
+                executionReport.getSellOrderId(), executionReport.getAssetId(), executionReport.getQuantity(),
+                executionReport.getPrice(), executionReport.getBuyerUserId(), executionReport.getSellerUserId(),
+                executionReport.getExecutionTimestamp());
+            markApplied(tradeId, FILLS_APPLIED);
+        }
+        walletService.executeSettlement( // the ledger skips a trade id it already settled
+            executionReport.getTradeId(),
+            executionReport.getBuyerUserId(),
+            executionReport.getSellerUserId(),
+            executionReport.getAssetId(),
+            executionReport.getQuantity(),
+            executionReport.getPrice(),
+            executionReport.getBuyOrderId(),
+            executionReport.getSellOrderId()
+        );
+        // a filled order may still hold part of its reservation (price improvement), hand it back
+        if (executionReport.getBuyRemainingQuantity() == 0) {
+            entitlementStore.forgetOrder(executionReport.getBuyOrderId());
+            walletService.releaseAfterSettlement(executionReport.getBuyOrderId());
+        }
+        if (executionReport.getSellRemainingQuantity() == 0) {
+            entitlementStore.forgetOrder(executionReport.getSellOrderId());
+            walletService.releaseAfterSettlement(executionReport.getSellOrderId());
+        }
+        if (!isApplied(tradeId, TRADE_SAVED)) {
+            persistenceService.saveTrade(executionReport.getTradeId(), executionReport.getBuyOrderId(),
+                executionReport.getSellOrderId(), executionReport.getAssetId(), executionReport.getQuantity(),
+                executionReport.getPrice(), executionReport.getBuyerUserId(), executionReport.getSellerUserId(),
+                executionReport.getExecutionTimestamp());
+            markApplied(tradeId, TRADE_SAVED);
+        }
+        persistenceService.updateOrderStatus(executionReport.getBuyOrderId(), executionReport.getBuyFilledQuantity(),
+            executionReport.getBuyRemainingQuantity() == 0 ? "FILLED" : "PARTIALLY_FILLED");
+        persistenceService.updateOrderStatus(executionReport.getSellOrderId(), executionReport.getSellFilledQuantity(),
+            executionReport.getSellRemainingQuantity() == 0 ? "FILLED" : "PARTIALLY_FILLED");
+    }
+
+    /**
+     * Handle order acceptance (order is live on the book) from matching engine
+     *
+     * @param acceptedReport - Details of the accepted order
+     */
+    public void handleOrderAccepted(OrderAcceptedReport acceptedReport) {
+        entitlementStore.recordOrder(acceptedReport.getOrderId(), acceptedReport.getUserId());
+        walletService.confirmReservation(acceptedReport.getOrderId());
+        orderStateCache.onAccepted(acceptedReport.getOrderId(), acceptedReport.getUserId(), acceptedReport.getAssetId(),
+            acceptedReport.getFilledQuantity());
+        historyService.onAccepted(acceptedReport.getOrderId(), acceptedReport.getUserId(), acceptedReport.getFilledQuantity());
+        persistenceService.updateOrderStatus(acceptedReport.getOrderId(), acceptedReport.getFilledQuantity(),
+            acceptedReport.getFilledQuantity() == 0 ? "POSTED" : "PARTIALLY_FILLED");
+    }
+
     /**
      * Handle order rejection from matching engine
-     * 
+     *
      * @param rejectionReport - Details of rejected order
      */
-    // @KafkaListener(topics = "trading.rejections")
     public void handleOrderRejection(OrderRejectionReport rejectionReport) {
-        
-        // TODO: Implement rejection processing
-        // 1. Update order status to REJECTED
-        // 2. Release reserved funds via walletService
-        // 3. Notify user of rejection with reason
-        // 4. Log rejection for analysis
-        
-        // Example implementation:
-        // try {
-        //     orderRepository.updateOrderStatus(rejectionReport.getOrderId(), OrderStatus.REJECTED);
-        //     walletService.releaseReservations(rejectionReport.getOrderId());
-        //     notificationService.notifyOrderRejection(rejectionReport);
-        // } catch (Exception e) {
-        //     logger.error("Failed to process order rejection", e);
-        // }
-    }
-    
+        riskService.onOrderClosed(rejectionReport.getOrderId());
+        entitlementStore.forgetOrder(rejectionReport.getOrderId());
+        orderStateCache.onRejected(rejectionReport.getOrderId(), rejectionReport.getUserId(), rejectionReport.getAssetId(),
+            rejectionReport.getRejectionReason());
+        historyService.onRejected(rejectionReport.getOrderId(), rejectionReport.getUserId());
+        persistenceService.updateOrderStatus(rejectionReport.getOrderId(), 0, "REJECTED");
+        walletService.releaseAfterSettlement(rejectionReport.getOrderId());
+    }
+
     /**
      * Handle order cancellation confirmation from matching engine
-     * 
+     *
      * @param cancellationReport - Details of cancelled order
      */
-    // @KafkaListener(topics = "trading.cancellations.confirmed")
     public void handleOrderCancellation(OrderCancellationReport cancellationReport) {
-        
-        // TODO: Implement cancellation processing
-        // 1. Update order status to CANCELLED
-        // 2. Release any remaining reserved funds
-        // 3. Notify user of successful cancellation
-        // 4. Log cancellation
-        
-    }
-    
-    // TODO: Create message classes for different report types
-    public static class TradeExecutionReport {
-        private Long buyOrderId;
-        private Long sellOrderId;
-        private Long buyerUserId;
-        private Long sellerUserId;
-        private Long assetId;
-        private int quantity;
-        private java.math.BigDecimal price;
-        private long executionTimestamp;
-        
-        // TODO: Add constructors, getters, and JSON deserialization annotations
+        riskService.onOrderClosed(cancellationReport.getOrderId());
+        entitlementStore.forgetOrder(cancellationReport.getOrderId());
+        orderStateCache.onCancelled(cancellationReport.getOrderId(), cancellationReport.getUserId(),
+            cancellationReport.getAssetId(), cancellationReport.getFilledQuantity(), cancellationReport.getCancellationReason());
+        historyService.onCancelled(cancellationReport.getOrderId(), cancellationReport.getUserId(),
+            cancellationReport.getFilledQuantity());
+        persistenceService.updateOrderStatus(cancellationReport.getOrderId(), cancellationReport.getFilledQuantity(), "CANCELLED");
+        walletService.releaseAfterSettlement(cancellationReport.getOrderId());
+    }
+
+    /**
+     * @return number of times a report stream skipped ahead of the next expected sequence number
+     */
+    public long getSequenceGapCount() {
+        return sequenceGapCount.get();
+    }
+
+    // helpers
+
+    /**
+     * Gap detection on the per-(stream, asset) publish sequence; all reports of one asset share a partition,
+     * so each stream/asset pair is only ever handled by one worker at a time.
+     * A newer epoch (the publisher restarted) starts the stream over at 1; reports of an older epoch are stale.
+     * The sequence is recorded in marks only once the handler succeeded; a poll's marks reach lastSequences
+     * only once its settlements are applied, so a redelivered failure is applied again while reports that were
+     * already applied are skipped
+     */
+    private <T extends SequencedReport> void applyInSequence(int stream, T report, Map<Long, StreamPosition> marks,
+                                                             Consumer<T> handler) {
+        long sequence = report.getSequenceNumber();
+        if (sequence <= 0 || report.getAssetId() == null) {
+            handler.accept(report); // unsequenced report
+            return;
+        }
+        long epoch = report.getSequenceEpoch();
+        long key = streamKey(stream, report.getAssetId());
+        StreamPosition last = marks.get(key);
+        if (last == null) {
+            last = lastSequences.get(key);
+        }
+        if (last != null && (epoch < last.epoch() || epoch == last.epoch() && sequence <= last.sequence())) {
+            logger.debug("Skipping already applied {}", report);
+            return;
+        }
+        long expected = last == null ? sequence : epoch == last.epoch() ? last.sequence() + 1 : 1;
+        if (sequence != expected) {
+            sequenceGapCount.incrementAndGet();
+            logger.warn("Sequence gap on stream {} asset {}: expected {} but received {}",
+                        stream, report.getAssetId(), expected, sequence);
+        }
+        handler.accept(report);
+        marks.put(key, new StreamPosition(epoch, sequence));
+    }
+
+    private boolean isApplied(Long tradeId, int step) {
+        if (tradeId == null) {
+            return false;
+        }
+        Integer steps = appliedTradeSteps.get(tradeId);
+        return steps != null && (steps & step) != 0;
+    }
+
+    private void markApplied(Long tradeId, int step) {
+        if (tradeId != null) {
+            appliedTradeSteps.merge(tradeId, step, (steps, added) -> steps | added);
+        }
+    }
+
+    private static long streamKey(int stream, long assetId) {
+        return assetId << 2 | stream;
+    }
+
+    /**
+     * Last report applied on a stream: the publisher run it came from and its sequence within that run
+     */
+    private record StreamPosition(long epoch, long sequence) {
+    }
+
+    /**
+     * Fan a poll out to the settlement workers (one task per partition), wait for all of them,
+     * then commit - or commit up to the earliest failed record and ask for the rest to be redelivered.
+     * If the wallet fails to apply the poll's settlements nothing is committed and the whole poll is redelivered
+     *
+     * @param handler - applies one report, recording its sequence in the poll's marks
+     */
+    private <T> void processPoll(List<ConsumerRecord<String, T>> records, Acknowledgment ack,
+                                 BiConsumer<T, Map<Long, StreamPosition>> handler) {
+        if (records.isEmpty()) {
+            ack.acknowledge();
+            return;
+        }
+
+        // index of each record in the poll, grouped by partition (offset order is preserved)
+        Map<TopicPartition, List<Integer>> byPartition = new LinkedHashMap<>();
+        for (int i = 0; i < records.size(); i++) {
+            ConsumerRecord<String, T> record = records.get(i);
+            byPartition.computeIfAbsent(new TopicPartition(record.topic(), record.partition()), k -> new ArrayList<>()).add(i);
+        }
+
+        Map<Long, StreamPosition> marks = new ConcurrentHashMap<>(); // sequences applied by this poll
+        List<CompletableFuture<Integer>> partitionResults = new ArrayList<>(byPartition.size());
+        for (List<Integer> indexes : byPartition.values()) {
+            partitionResults.add(CompletableFuture.supplyAsync(
+                () -> processPartition(records, indexes, report -> handler.accept(report, marks)), settlementWorkers));
+        }
+        CompletableFuture.allOf(partitionResults.toArray(new CompletableFuture[0])).join();
+
+        int firstFailure = Integer.MAX_VALUE;
+        for (CompletableFuture<Integer> result : partitionResults) {
+            firstFailure = Math.min(firstFailure, result.join());
+        }
+        try {
+            walletService.flushSettlements().join(); // never commit a trade the ledger hasn't applied and persisted
+        } catch (CompletionException e) {
+            logger.error("Wallet failed to settle a poll of {} records, redelivering it", records.size(), e.getCause());
+            ack.nack(0, REDELIVERY_BACKOFF);
+            return;
+        }
+        lastSequences.putAll(marks);
+
+        if (firstFailure == Integer.MAX_VALUE) {
+            ack.acknowledge();
+        } else {
+            // every record before firstFailure succeeded (partitions stop at their first failure)
+            ack.nack(firstFailure, REDELIVERY_BACKOFF);
+        }
+    }
+
+    /**
+     * @return index of the first record that failed, or Integer.MAX_VALUE if the whole partition succeeded
+     */
+    private <T> int processPartition(List<ConsumerRecord<String, T>> records, List<Integer> indexes, Consumer<T> handler) {
+        for (int index : indexes) {
+            ConsumerRecord<String, T> record = records.get(index);
+            try {
+                handler.accept(record.value());
+            } catch (Exception e) {
+                logger.error("Failed to process {} at {}-{}@{}", record.value(), record.topic(),
+                             record.partition(), record.offset(), e);
+                return index;
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    // === MESSAGE CLASSES ===
+
+    /**
+     * Base of every report the engine publishes: carries the publish sequence of its (topic, asset) stream
+     * and the epoch of the publisher run that numbered it (sequences restart at 1 in every run)
+     */
+    public abstract static class SequencedReport {
+        private long sequenceNumber;
+        private long sequenceEpoch;
+
+        protected SequencedReport(long sequenceNumber) {
+            this.sequenceNumber = sequenceNumber;
+        }
+
+        public abstract Long getAssetId();
+
+        public long getSequenceNumber() { return sequenceNumber; }
+        public long getSequenceEpoch() { return sequenceEpoch; }
+
+        @JsonProperty("sequenceEpoch")
+        void setSequenceEpoch(long sequenceEpoch) { this.sequenceEpoch = sequenceEpoch; }
+
+        // assigned by the publisher thread just before the report is sent
+        void setSequence(long sequenceEpoch, long sequenceNumber) {
+            this.sequenceEpoch = sequenceEpoch;
+            this.sequenceNumber = sequenceNumber;
+        }
+    }
+
+    public static class TradeExecutionReport extends SequencedReport {
+        private final Long tradeId;
+        private final Long buyOrderId;
+        private final Long sellOrderId;
+        private final Long buyerUserId;
+        private final Long sellerUserId;
+        private final Long assetId;
+        private final int quantity;
+        private final java.math.BigDecimal price;
+        private final int buyFilledQuantity;
+        private final int buyRemainingQuantity;
+        private final int sellFilledQuantity;
+        private final int sellRemainingQuantity;
+        private final long executionTimestamp;
+
+        @JsonCreator
+        public TradeExecutionReport(@JsonProperty("tradeId") Long tradeId,
+                                    @JsonProperty("buyOrderId") Long buyOrderId,
+                                    @JsonProperty("sellOrderId") Long sellOrderId,
+                                    @JsonProperty("buyerUserId") Long buyerUserId,
+                                    @JsonProperty("sellerUserId") Long sellerUserId,
+                                    @JsonProperty("assetId") Long assetId,
+                                    @JsonProperty("quantity") int quantity,
+                                    @JsonProperty("price") java.math.BigDecimal price,
+                                    @JsonProperty("buyFilledQuantity") int buyFilledQuantity,
+                                    @JsonProperty("buyRemainingQuantity") int buyRemainingQuantity,
+                                    @JsonProperty("sellFilledQuantity") int sellFilledQuantity,
+                                    @JsonProperty("sellRemainingQuantity") int sellRemainingQuantity,
+                                    @JsonProperty("executionTimestamp") long executionTimestamp,
+                                    @JsonProperty("sequenceNumber") long sequenceNumber) {
+            super(sequenceNumber);
+            this.tradeId = tradeId;
+            this.buyOrderId = buyOrderId;
+            this.sellOrderId = sellOrderId;
+            this.buyerUserId = buyerUserId;
+            this.sellerUserId = sellerUserId;
+            this.assetId = assetId;
+            this.quantity = quantity;
+            this.price = price;
+            this.buyFilledQuantity = buyFilledQuantity;
+            this.buyRemainingQuantity = buyRemainingQuantity;
+            this.sellFilledQuantity = sellFilledQuantity;
+            this.sellRemainingQuantity = sellRemainingQuantity;
+            this.executionTimestamp = executionTimestamp;
+        }
+
+        public Long getTradeId() { return tradeId; }
         public Long getBuyOrderId() { return buyOrderId; }
         public Long getSellOrderId() { return sellOrderId; }
         public Long getBuyerUserId() { return buyerUserId; }
         public Long getSellerUserId() { return sellerUserId; }
-        public Long getAssetId() { return assetId; }
+        @Override public Long getAssetId() { return assetId; }
         public int getQuantity() { return quantity; }
         public java.math.BigDecimal getPrice() { return price; }
+        public int getBuyFilledQuantity() { return buyFilledQuantity; }
+        public int getBuyRemainingQuantity() { return buyRemainingQuantity; }
+        public int getSellFilledQuantity() { return sellFilledQuantity; }
+        public int getSellRemainingQuantity() { return sellRemainingQuantity; }
         public long getExecutionTimestamp() { return executionTimestamp; }
+
+        @Override
+        public String toString() {
+            return String.format("TradeExecutionReport{seq=%d, trade=%d, buy=%d, sell=%d, asset=%d, qty=%d, price=%s}",
+                                 getSequenceNumber(), tradeId, buyOrderId, sellOrderId, assetId, quantity, price);
+        }
+    }
+
+    /**
+     * Order passed the engine's checks and is resting on the book or waiting in a stop queue
+     * Published on the executions topic so it is ordered with the order's fills
+     */
+    public static class OrderAcceptedReport extends SequencedReport {
+        private final Long orderId;
+        private final Long userId;
+        private final Long assetId;
+        private final String orderType;
+        private final boolean bid;
+        private final int filledQuantity;
+        private final int remainingQuantity;
+        private final long acceptedTimestamp;
+
+        @JsonCreator
+        public OrderAcceptedReport(@JsonProperty("orderId") Long orderId,
+                                   @JsonProperty("userId") Long userId,
+                                   @JsonProperty("assetId") Long assetId,
+                                   @JsonProperty("orderType") String orderType,
+                                   @JsonProperty("bid") boolean bid,
+                                   @JsonProperty("filledQuantity") int filledQuantity,
+                                   @JsonProperty("remainingQuantity") int remainingQuantity,
+                                   @JsonProperty("acceptedTimestamp") long acceptedTimestamp,
+                                   @JsonProperty("sequenceNumber") long sequenceNumber) {
+            super(sequenceNumber);
+            this.orderId = orderId;
+            this.userId = userId;
+            this.assetId = assetId;
+            this.orderType = orderType;
+            this.bid = bid;
+            this.filledQuantity = filledQuantity;
+            this.remainingQuantity = remainingQuantity;
+            this.acceptedTimestamp = acceptedTimestamp;
+        }
+
+        public Long getOrderId() { return orderId; }
+        public Long getUserId() { return userId; }
+        @Override public Long getAssetId() { return assetId; }
+        public String getOrderType() { return orderType; }
+        public boolean isBid() { return bid; }
+        public int getFilledQuantity() { return filledQuantity; }
+        public int getRemainingQuantity() { return remainingQuantity; }
+        public long getAcceptedTimestamp() { return acceptedTimestamp; }
+
+        @Override
+        public String toString() {
+            return String.format("OrderAcceptedReport{seq=%d, order=%d, asset=%d, remaining=%d}",
+                                 getSequenceNumber(), orderId, assetId, remainingQuantity);
+        }
     }
-    
-    public static class OrderRejectionReport {
-        private Long orderId;
-        private String rejectionReason;
-        private long rejectionTimestamp;
-        
-        // TODO: Add constructors, getters, and JSON deserialization annotations
+
+    public static class OrderRejectionReport extends SequencedReport {
+        private final Long orderId;
+        private final Long userId;
+        private final Long assetId;
+        private final String rejectionReason;
+        private final long rejectionTimestamp;
+
+        @JsonCreator
+        public OrderRejectionReport(@JsonProperty("orderId") Long orderId,
+                                    @JsonProperty("userId") Long userId,
+                                    @JsonProperty("assetId") Long assetId,
+                                    @JsonProperty("rejectionReason") String rejectionReason,
+                                    @JsonProperty("rejectionTimestamp") long rejectionTimestamp,
+                                    @JsonProperty("sequenceNumber") long sequenceNumber) {
+            super(sequenceNumber);
+            this.orderId = orderId;
+            this.userId = userId;
+            this.assetId = assetId;
+            this.rejectionReason = rejectionReason;
+            this.rejectionTimestamp = rejectionTimestamp;
+        }
+
         public Long getOrderId() { return orderId; }
+        public Long getUserId() { return userId; }
+        @Override public Long getAssetId() { return assetId; }
         public String getRejectionReason() { return rejectionReason; }
         public long getRejectionTimestamp() { return rejectionTimestamp; }
+
+        @Override
+        public String toString() {
+            return String.format("OrderRejectionReport{seq=%d, order=%d, reason='%s'}",
+                                 getSequenceNumber(), orderId, rejectionReason);
+        }
     }
-    
-    public static class OrderCancellationReport {
-        private Long orderId;
-        private Long userId;
-        private long cancellationTimestamp;
-        
-        // TODO: Add constructors, getters, and JSON deserialization annotations
+
+    public static class OrderCancellationReport extends SequencedReport {
+        private final Long orderId;
+        private final Long userId;
+        private final Long assetId;
+        private final int filledQuantity;
+        private final int cancelledQuantity;
+        private final String cancellationReason;
+        private final long cancellationTimestamp;
+
+        @JsonCreator
+        public OrderCancellationReport(@JsonProperty("orderId") Long orderId,
+                                       @JsonProperty("userId") Long userId,
+                                       @JsonProperty("assetId") Long assetId,
+                                       @JsonProperty("filledQuantity") int filledQuantity,
+                                       @JsonProperty("cancelledQuantity") int cancelledQuantity,
+                                       @JsonProperty("cancellationReason") String cancellationReason,
+                                       @JsonProperty("cancellationTimestamp") long cancellationTimestamp,
+                                       @JsonProperty("sequenceNumber") long sequenceNumber) {
+            super(sequenceNumber);
+            this.orderId = orderId;
+            this.userId = userId;
+            this.assetId = assetId;
+            this.filledQuantity = filledQuantity;
+            this.cancelledQuantity = cancelledQuantity;
+            this.cancellationReason = cancellationReason;
+            this.cancellationTimestamp = cancellationTimestamp;
+        }
+
         public Long getOrderId() { return orderId; }
         public Long getUserId() { return userId; }
+        @Override public Long getAssetId() { return assetId; }
+        public int getFilledQuantity() { return filledQuantity; }
+        public int getCancelledQuantity() { return cancelledQuantity; }
+        public String getCancellationReason() { return cancellationReason; }
         public long getCancellationTimestamp() { return cancellationTimestamp; }
+
+        @Override
+        public String toString() {
+            return String.format("OrderCancellationReport{seq=%d, order=%d, user=%d, cancelled=%d}",
+                                 getSequenceNumber(), orderId, userId, cancelledQuantity);
+        }
     }
-} 
\ No newline at end of file
+}
@@ -1,137 +1,308 @@
 package com.xkrexchange.messaging;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.xkrexchange.common.model.Order;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Message Queue Producer - Sends validated orders to matching engine
- * 
+ *
  * Key Responsibilities:
  * 1. Send validated orders to matching engine queue
- * 2. Send order cancellations to matching engine
+ * 2. Send order cancellations (single orders and per-user mass cancels) to matching engine
  * 3. Handle message delivery failures and retries
  * 4. Maintain order of messages for same asset
  * 5. Provide delivery confirmations
- * 
- * Technologies to consider:
- * - Apache Kafka (recommended for high throughput)
- * - RabbitMQ (easier setup, good for smaller scale)
- * - Apache Pulsar (newer alternative with good features)
+ *
+ * Implementation notes:
+ * - Every message is keyed by asset id, so all traffic for one OrderBook lands on one partition
+ *   and is consumed in the exact order it was published
+ * - Cancellations travel on the orders topic (same key) rather than a separate topic, otherwise a
+ *   cancel could overtake the order it refers to
+ * - Sends are asynchronous: the calling thread only serializes and appends to the producer's batch,
+ *   the broker acknowledgement completes a per-order future later
+ * - Unacknowledged sends are capped by a semaphore; once the cap is hit new orders are rejected
+ *   immediately (backpressure) instead of piling up in the producer buffer
  */
+@Service
 public class MessageQueueProducer {
-    
-    // TODO: Inject dependencies
-    // private final KafkaTemplate<String, Order> kafkaTemplate;
-    // private final ObjectMapper objectMapper;
-    
-    // TODO: Configuration properties
-    // private final String ordersTopicName = "trading.orders";
-    // private final String cancellationsTopicName = "trading.cancellations";
-    
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageQueueProducer.class);
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final String ordersTopicName;
+
+    // === BACKPRESSURE ===
+    private final int maxPendingSends;
+    private final Semaphore sendPermits;
+
+    // === METRICS ===
+    private final AtomicLong inFlight = new AtomicLong();
+    private final Counter sentCounter;
+    private final Counter failedCounter;
+    private final Counter rejectedCounter;
+
+    public MessageQueueProducer(KafkaTemplate<String, Object> kafkaTemplate,
+                                @Value("${kafka.topics.orders}") String ordersTopicName,
+                                @Value("${kafka.producer.max-pending-sends:50000}") int maxPendingSends,
+                                MeterRegistry meterRegistry) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.ordersTopicName = ordersTopicName;
+        this.maxPendingSends = maxPendingSends;
+        this.sendPermits = new Semaphore(maxPendingSends);
+
+        Gauge.builder("xkr.producer.in_flight", inFlight, AtomicLong::get)
+             .description("Order messages sent but not yet acknowledged by the broker")
+             .register(meterRegistry);
+        Gauge.builder("xkr.producer.capacity_remaining", sendPermits, Semaphore::availablePermits)
+             .description("Sends that can still be accepted before backpressure kicks in")
+             .register(meterRegistry);
+        this.sentCounter = Counter.builder("xkr.producer.sent").register(meterRegistry);
+        this.failedCounter = Counter.builder("xkr.producer.failed").register(meterRegistry);
+        this.rejectedCounter = Counter.builder("xkr.producer.rejected")
+             .description("Sends refused because too many were already in flight")
+             .register(meterRegistry);
+    }
+
     /**
      * Send validated order to matching engine for processing
-     * 
+     * Non-blocking: returns as soon as the order is handed to the producer
+     *
      * @param order - Validated and authorized order ready for matching
-     * @return true if message was successfully sent
+     * @return true if the message was accepted for delivery, false if rejected by backpressure or a send failure
      */
     public boolean sendOrderToMatchingEngine(Order order) {
-        
-        // TODO: Implement order publishing
-        // 1. Serialize order to JSON or use binary format
-        // 2. Use asset ID as partition key to ensure ordering
-        // 3. Send to orders topic
-        // 4. Handle any delivery failures
-        // 5. Log successful delivery
-        
-        // Example Kafka implementation:
-        // try {
-        //     String assetKey = order.getAsset().getTicker(); // Use as partition key
-        //     kafkaTemplate.send(ordersTopicName, assetKey, order);
-        //     return true;
-        // } catch (Exception e) {
-        //     logger.error("Failed to send order {} to queue", order.getOrderId(), e);
-        //     return false;
-        // }
-        
-        return false; // TODO: Implement
-    }
-    
+        return !publishOrder(order).isCompletedExceptionally();
+    }
+
+    /**
+     * Publish an order asynchronously
+     *
+     * @param order - Validated and authorized order ready for matching
+     * @return future completing with the order id once the broker has durably acknowledged the message,
+     *         or exceptionally (RejectedExecutionException on backpressure, the Kafka error otherwise)
+     */
+    public CompletableFuture<Long> publishOrder(Order order) {
+        return send(assetKey(order.getAsset().getAssetId()), OrderMessage.from(order), order.getOrderId());
+    }
+
     /**
      * Send order cancellation request to matching engine
-     * 
+     *
      * @param orderId - ID of order to cancel
      * @param assetId - Asset ID for proper partitioning
-     * @return true if cancellation message was sent successfully
+     * @return true if cancellation message was accepted for delivery
      */
     public boolean sendOrderCancellation(Long orderId, Long assetId) {
-        
-        // TODO: Implement cancellation publishing
-        // 1. Create cancellation message object
-        // 2. Use asset ID for partitioning
-        // 3. Send to cancellations topic
-        // 4. Handle delivery failures
-        
-        // Example implementation:
-        // CancellationMessage cancellation = new CancellationMessage(orderId, assetId);
-        // try {
-        //     String assetKey = assetId.toString();
-        //     kafkaTemplate.send(cancellationsTopicName, assetKey, cancellation);
-        //     return true;
-        // } catch (Exception e) {
-        //     logger.error("Failed to send cancellation for order {}", orderId, e);
-        //     return false;
-        // }
-        
-        return false; // TODO: Implement
-    }
-    
+        return !publishCancellation(orderId, assetId).isCompletedExceptionally();
+    }
+
+    /**
+     * Publish a cancellation asynchronously on the same partition as the order it cancels
+     *
+     * @param orderId - ID of order to cancel
+     * @param assetId - Asset ID for proper partitioning
+     * @return future completing with the order id once the broker has acknowledged the request
+     */
+    public CompletableFuture<Long> publishCancellation(Long orderId, Long assetId) {
+        return send(assetKey(assetId), new CancellationMessage(orderId, assetId), orderId);
+    }
+
+    /**
+     * Publish a mass cancel for one user on the asset's partition, behind every order already published for it
+     *
+     * @param userId - owner of the orders to cancel
+     * @param assetId - Asset ID for proper partitioning
+     * @param bid - true for buy orders only, false for sell orders only, null for both sides
+     * @return future completing once the broker has acknowledged the request
+     */
+    public CompletableFuture<Void> publishMassCancellation(long userId, long assetId, Boolean bid) {
+        return send(assetKey(assetId), new MassCancellationMessage(userId, assetId, bid), userId).thenApply(id -> null);
+    }
+
     /**
      * Send batch of orders (useful for high-frequency scenarios)
-     * 
+     *
+     * @param orders - List of orders to send
+     * @return Number of orders accepted for delivery
+     */
+    public int sendOrderBatch(List<Order> orders) {
+        int accepted = 0;
+        for (CompletableFuture<Long> future : publishOrderBatch(orders)) {
+            if (!future.isCompletedExceptionally()) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Publish a batch of orders, grouped by asset so each partition receives its orders back-to-back
+     * and the producer can pack them into as few record batches as possible
+     *
      * @param orders - List of orders to send
-     * @return Number of successfully sent orders
+     * @return one future per order, in the same order as the input list
      */
-    public int sendOrderBatch(java.util.List<Order> orders) {
-        
-        // TODO: Implement batch sending
-        // 1. Group orders by asset for proper partitioning
-        // 2. Send in batches to improve throughput
-        // 3. Handle partial failures
-        // 4. Return count of successful sends
-        
-        return 0; // TODO: Implement
-    }
-    
+    public List<CompletableFuture<Long>> publishOrderBatch(List<Order> orders) {
+        Map<Long, List<Integer>> indexesByAsset = new LinkedHashMap<>();
+        for (int i = 0; i < orders.size(); i++) {
+            indexesByAsset.computeIfAbsent(orders.get(i).getAsset().getAssetId(), k -> new ArrayList<>()).add(i);
+        }
+
+        List<CompletableFuture<Long>> futures = new ArrayList<>(Collections.nCopies(orders.size(), null));
+        for (List<Integer> indexes : indexesByAsset.values()) {
+            for (int index : indexes) {
+                futures.set(index, publishOrder(orders.get(index)));
+            }
+        }
+        return futures;
+    }
+
     /**
      * Check if message queue is healthy and accepting messages
-     * 
-     * @return true if queue is operational
+     *
+     * @return true if the orders topic is reachable and the producer isn't saturated
      */
     public boolean isQueueHealthy() {
-        
-        // TODO: Implement health check
-        // 1. Try to send a test message
-        // 2. Check broker connectivity
-        // 3. Verify topic exists
-        // 4. Return health status
-        
-        return false; // TODO: Implement
-    }
-    
-    // TODO: Create message classes
-    private static class CancellationMessage {
+        if (sendPermits.availablePermits() == 0) {
+            return false;
+        }
+        try {
+            return !kafkaTemplate.partitionsFor(ordersTopicName).isEmpty();
+        } catch (Exception e) {
+            logger.warn("Kafka health check failed: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    // === METRICS ACCESSORS ===
+
+    public long getInFlightCount() {
+        return inFlight.get();
+    }
+
+    public int getRemainingCapacity() {
+        return sendPermits.availablePermits();
+    }
+
+    public int getMaxPendingSends() {
+        return maxPendingSends;
+    }
+
+    // helpers
+
+    /**
+     * @param id - order id (user id for mass cancels), completes the returned future and tags log lines
+     */
+    private CompletableFuture<Long> send(String key, Object message, long id) {
+        if (!sendPermits.tryAcquire()) {
+            rejectedCounter.increment();
+            return CompletableFuture.failedFuture(new RejectedExecutionException(
+                "Order queue is saturated (" + maxPendingSends + " sends in flight)"));
+        }
+        inFlight.incrementAndGet();
+
+        try {
+            return kafkaTemplate.send(ordersTopicName, key, message)
+                .handle((result, ex) -> {
+                    inFlight.decrementAndGet();
+                    sendPermits.release();
+                    if (ex != null) {
+                        failedCounter.increment();
+                        logger.error("Failed to deliver {} for {}", message.getClass().getSimpleName(), id, ex);
+                        throw new IllegalStateException("Delivery failed for " + id, ex);
+                    }
+                    sentCounter.increment();
+                    return id;
+                });
+        } catch (Exception e) {
+            // serialization errors and metadata timeouts are thrown synchronously by send()
+            inFlight.decrementAndGet();
+            sendPermits.release();
+            failedCounter.increment();
+            logger.error("Failed to send {} for {}", message.getClass().getSimpleName(), id, e);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Record key of every message about an asset's book; MatchingEngineOrderListener finds its partitions from it
+     */
+    static String assetKey(Long assetId) {
+        return String.valueOf(assetId);
+    }
+
+    /**
+     * Cancellation request, published on the orders topic with the asset key of the order it cancels
+     */
+    public static class CancellationMessage {
         private final Long orderId;
         private final Long assetId;
         private final long timestamp;
-        
+
         public CancellationMessage(Long orderId, Long assetId) {
+            this(orderId, assetId, System.currentTimeMillis());
+        }
+
+        @JsonCreator
+        public CancellationMessage(@JsonProperty("orderId") Long orderId,
+                                   @JsonProperty("assetId") Long assetId,
+                                   @JsonProperty("timestamp") long timestamp) {
             this.orderId = orderId;
             this.assetId = assetId;
-            this.timestamp = System.currentTimeMillis();
+            this.timestamp = timestamp;
         }
-        
-        // TODO: Add getters and JSON serialization annotations
+
         public Long getOrderId() { return orderId; }
         public Long getAssetId() { return assetId; }
         public long getTimestamp() { return timestamp; }
     }
-} 
\ No newline at end of file
+
+    /**
+     * Mass cancel request for one user's orders in one OrderBook, published with that book's asset key
+     */
+    public static class MassCancellationMessage {
+        private final long userId;
+        private final long assetId;
+        private final Boolean bid; // null = both sides
+        private final long timestamp;
+
+        public MassCancellationMessage(long userId, long assetId, Boolean bid) {
+            this(userId, assetId, bid, System.currentTimeMillis());
+        }
+
+        @JsonCreator
+        public MassCancellationMessage(@JsonProperty("userId") long userId,
+                                       @JsonProperty("assetId") long assetId,
+                                       @JsonProperty("bid") Boolean bid,
+                                       @JsonProperty("timestamp") long timestamp) {
+            this.userId = userId;
+            this.assetId = assetId;
+            this.bid = bid;
+            this.timestamp = timestamp;
+        }
+
+        public long getUserId() { return userId; }
+        public long getAssetId() { return assetId; }
+        public Boolean getBid() { return bid; }
+        public long getTimestamp() { return timestamp; }
+    }
+}
@@ -0,0 +1,93 @@
+package com.xkrexchange.messaging;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.xkrexchange.common.model.Order;
+import com.xkrexchange.common.model.OrderType;
+import java.math.BigDecimal;
+
+/**
+ * Wire representation of an Order published to the {@code trading.orders} topic
+ *
+ * Order itself can't be serialized directly (it references its Asset, which in turn owns an OrderBook),
+ * so the producer flattens it into this immutable message. The matching engine side resolves the asset
+ * by id and rebuilds the Order with the SAME order id the gateway assigned.
+ */
+public class OrderMessage {
+
+    private final long orderId;
+    private final long clientId;
+    private final String clientOrderId; // null if the client didn't supply one
+    private final OrderType orderType;
+    private final boolean bid;
+    private final int quantity;
+    private final long assetId;
+    private final String assetTicker;
+    private final BigDecimal limitPrice; // null for MARKET and STOP orders
+    private final BigDecimal triggerPrice; // null unless STOP or STOP_LIMIT
+    private final long timestamp;
+
+    @JsonCreator
+    public OrderMessage(@JsonProperty("orderId") long orderId,
+                        @JsonProperty("clientId") long clientId,
+                        @JsonProperty("clientOrderId") String clientOrderId,
+                        @JsonProperty("orderType") OrderType orderType,
+                        @JsonProperty("bid") boolean bid,
+                        @JsonProperty("quantity") int quantity,
+                        @JsonProperty("assetId") long assetId,
+                        @JsonProperty("assetTicker") String assetTicker,
+                        @JsonProperty("limitPrice") BigDecimal limitPrice,
+                        @JsonProperty("triggerPrice") BigDecimal triggerPrice,
+                        @JsonProperty("timestamp") long timestamp) {
+        this.orderId = orderId;
+        this.clientId = clientId;
+        this.clientOrderId = clientOrderId;
+        this.orderType = orderType;
+        this.bid = bid;
+        this.quantity = quantity;
+        this.assetId = assetId;
+        this.assetTicker = assetTicker;
+        this.limitPrice = limitPrice;
+        this.triggerPrice = triggerPrice;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Flatten an Order into its wire format
+     * @param order - validated order ready for matching
+     * @return message carrying every field needed to rebuild the order on the engine side
+     */
+    public static OrderMessage from(Order order) {
+        return new OrderMessage(
+            order.getOrderId(),
+            order.getClientId(),
+            order.getClientOrderId(),
+            order.getOrderType(),
+            order.isBid(),
+            order.getQuantity(),
+            order.getAsset().getAssetId(),
+            order.getAsset().getTicker(),
+            order.getExecutionPrice() == null ? null : order.getExecutionPrice().getValue(),
+            order.getTriggerPrice() == null ? null : order.getTriggerPrice().getValue(),
+            System.currentTimeMillis()
+        );
+    }
+
+    public long getOrderId() { return orderId; }
+    public long getClientId() { return clientId; }
+    public String getClientOrderId() { return clientOrderId; }
+    public OrderType getOrderType() { return orderType; }
+    public boolean isBid() { return bid; }
+    public int getQuantity() { return quantity; }
+    public long getAssetId() { return assetId; }
+    public String getAssetTicker() { return assetTicker; }
+    public BigDecimal getLimitPrice() { return limitPrice; }
+    public BigDecimal getTriggerPrice() { return triggerPrice; }
+    public long getTimestamp() { return timestamp; }
+
+    @Override
+    public String toString() {
+        return String.format("OrderMessage{id=%d, clientId=%d, type=%s, %s, qty=%d, asset=%s}",
+                orderId, clientId, orderType, bid ? "BUY" : "SELL", quantity, assetTicker);
+    }
+}
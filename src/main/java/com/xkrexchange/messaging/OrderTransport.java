@@ -0,0 +1,72 @@
+package com.xkrexchange.messaging;
+
+import com.xkrexchange.common.model.Order;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Path that carries validated orders and cancellations from the gateway to the MatchingEngine
+ *
+ * Implementations (selected with {@code trading.transport.mode}):
+ * - kafka: publish to the trading.orders topic, consumed by the engine's order listener (multi-node deployments)
+ * - in-process: publish straight into the MatchingEngine's ring buffer (single-node deployments, tests without a broker)
+ *
+ * Every method is non-blocking; the returned future completes with the order id once the transport has
+ * durably accepted the message (broker ack for Kafka, ring buffer slot for in-process).
+ */
+public interface OrderTransport {
+
+    /**
+     * @param order - validated order ready for matching
+     * @return future completing with the order id, or exceptionally if the transport refused the order
+     */
+    CompletableFuture<Long> submitOrder(Order order);
+
+    /**
+     * Submit several orders at once, grouped by asset so each OrderBook receives its orders back-to-back
+     *
+     * @param orders - validated orders ready for matching
+     * @return one future per order, in the same order as the input list
+     */
+    default List<CompletableFuture<Long>> submitOrders(List<Order> orders) {
+        Map<Long, List<Integer>> indexesByAsset = new LinkedHashMap<>();
+        for (int i = 0; i < orders.size(); i++) {
+            indexesByAsset.computeIfAbsent(orders.get(i).getAsset().getAssetId(), k -> new ArrayList<>()).add(i);
+        }
+
+        List<CompletableFuture<Long>> futures = new ArrayList<>(Collections.nCopies(orders.size(), null));
+        for (List<Integer> indexes : indexesByAsset.values()) {
+            for (int index : indexes) {
+                futures.set(index, submitOrder(orders.get(index)));
+            }
+        }
+        return futures;
+    }
+
+    /**
+     * @param orderId - order to cancel
+     * @param assetId - asset of the order, used to reach the right OrderBook
+     * @return future completing with the order id once the cancel request is accepted
+     */
+    CompletableFuture<Long> cancelOrder(long orderId, long assetId);
+
+    /**
+     * Cancel every live order of a user in one OrderBook, executed as a single command by that book
+     *
+     * @param userId - owner of the orders to cancel
+     * @param assetId - asset whose OrderBook should run the mass cancel
+     * @param bid - true for buy orders only, false for sell orders only, null for both sides
+     * @return future completing once the mass cancel request is accepted
+     */
+    CompletableFuture<Void> massCancel(long userId, long assetId, Boolean bid);
+
+    /**
+     * @return true if the transport is currently able to accept orders
+     */
+    boolean isHealthy();
+}
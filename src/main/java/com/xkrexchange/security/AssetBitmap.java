@@ -0,0 +1,113 @@
+package com.xkrexchange.security;
+
+import java.util.Arrays;
+
+/**
+ * Immutable, compressed set of asset ids
+ *
+ * Only the 64-bit words that contain at least one asset are stored: a sorted int[] of word indexes plus the
+ * matching long[] of bits. A user entitled to a handful of assets costs a few dozen bytes no matter how large
+ * the ids are, and membership is a binary search over the word indexes followed by one bit test.
+ * Updates return a new bitmap, so readers never need a lock.
+ */
+public final class AssetBitmap {
+
+    public static final AssetBitmap EMPTY = new AssetBitmap(new int[0], new long[0]);
+
+    private final int[] wordIndexes; // sorted ascending
+    private final long[] words;
+
+    private AssetBitmap(int[] wordIndexes, long[] words) {
+        this.wordIndexes = wordIndexes;
+        this.words = words;
+    }
+
+    public static AssetBitmap of(long... assetIds) {
+        AssetBitmap bitmap = EMPTY;
+        for (long assetId : assetIds) {
+            bitmap = bitmap.with(assetId);
+        }
+        return bitmap;
+    }
+
+    public boolean contains(long assetId) {
+        if (assetId < 0) {
+            return false;
+        }
+        int position = Arrays.binarySearch(wordIndexes, wordIndex(assetId));
+        return position >= 0 && (words[position] & (1L << assetId)) != 0;
+    }
+
+    /**
+     * @return bitmap that also contains assetId (this one if it already did)
+     */
+    public AssetBitmap with(long assetId) {
+        int wordIndex = wordIndex(assetId);
+        int position = Arrays.binarySearch(wordIndexes, wordIndex);
+        if (position >= 0) {
+            if ((words[position] & (1L << assetId)) != 0) {
+                return this;
+            }
+            long[] newWords = words.clone();
+            newWords[position] |= 1L << assetId;
+            return new AssetBitmap(wordIndexes, newWords);
+        }
+
+        int insertAt = -position - 1;
+        int[] newIndexes = new int[wordIndexes.length + 1];
+        long[] newWords = new long[words.length + 1];
+        System.arraycopy(wordIndexes, 0, newIndexes, 0, insertAt);
+        System.arraycopy(words, 0, newWords, 0, insertAt);
+        newIndexes[insertAt] = wordIndex;
+        newWords[insertAt] = 1L << assetId;
+        System.arraycopy(wordIndexes, insertAt, newIndexes, insertAt + 1, wordIndexes.length - insertAt);
+        System.arraycopy(words, insertAt, newWords, insertAt + 1, words.length - insertAt);
+        return new AssetBitmap(newIndexes, newWords);
+    }
+
+    /**
+     * @return bitmap without assetId; empty words are dropped so the bitmap stays compact
+     */
+    public AssetBitmap without(long assetId) {
+        if (!contains(assetId)) {
+            return this;
+        }
+        int position = Arrays.binarySearch(wordIndexes, wordIndex(assetId));
+        long remaining = words[position] & ~(1L << assetId);
+        if (remaining != 0) {
+            long[] newWords = words.clone();
+            newWords[position] = remaining;
+            return new AssetBitmap(wordIndexes, newWords);
+        }
+
+        int[] newIndexes = new int[wordIndexes.length - 1];
+        long[] newWords = new long[words.length - 1];
+        System.arraycopy(wordIndexes, 0, newIndexes, 0, position);
+        System.arraycopy(words, 0, newWords, 0, position);
+        System.arraycopy(wordIndexes, position + 1, newIndexes, position, wordIndexes.length - position - 1);
+        System.arraycopy(words, position + 1, newWords, position, words.length - position - 1);
+        return new AssetBitmap(newIndexes, newWords);
+    }
+
+    public int cardinality() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    // helpers
+
+    private static int wordIndex(long assetId) {
+        if (assetId < 0 || assetId >>> 6 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Asset id out of range: " + assetId);
+        }
+        return (int) (assetId >>> 6);
+    }
+
+    @Override
+    public String toString() {
+        return "AssetBitmap{assets=" + cardinality() + ", words=" + words.length + "}";
+    }
+}
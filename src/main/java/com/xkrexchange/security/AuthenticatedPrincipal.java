@@ -0,0 +1,53 @@
+package com.xkrexchange.security;
+
+/**
+ * Identity and permissions extracted from a validated JWT
+ *
+ * Permissions are a bitmask so checks on the order path are a single AND.
+ */
+public final class AuthenticatedPrincipal {
+
+    public static final long PERMISSION_TRADE = 1L;
+    public static final long PERMISSION_CANCEL = 1L << 1;
+    public static final long PERMISSION_VIEW = 1L << 2;
+    public static final long PERMISSION_ADMIN = 1L << 3;
+
+    private final long userId;
+    private final long permissions;
+    private final long expiresAtMillis;
+
+    public AuthenticatedPrincipal(long userId, long permissions, long expiresAtMillis) {
+        this.userId = userId;
+        this.permissions = permissions;
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    /**
+     * Permission bits granted by a role name from the token's "roles" claim
+     */
+    public static long permissionsForRole(String role) {
+        return switch (role) {
+            case "ADMIN", "SUPER_ADMIN" -> PERMISSION_TRADE | PERMISSION_CANCEL | PERMISSION_VIEW | PERMISSION_ADMIN;
+            case "TRADER" -> PERMISSION_TRADE | PERMISSION_CANCEL | PERMISSION_VIEW;
+            case "VIEWER" -> PERMISSION_VIEW;
+            default -> 0L;
+        };
+    }
+
+    public long getUserId() { return userId; }
+    public long getPermissions() { return permissions; }
+    public long getExpiresAtMillis() { return expiresAtMillis; }
+
+    public boolean hasPermission(long permission) {
+        return (permissions & permission) == permission;
+    }
+
+    public boolean isAdmin() {
+        return hasPermission(PERMISSION_ADMIN);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AuthenticatedPrincipal{user=%d, permissions=%s}", userId, Long.toBinaryString(permissions));
+    }
+}
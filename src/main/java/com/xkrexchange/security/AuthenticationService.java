@@ -1,5 +1,21 @@
 package com.xkrexchange.security;
 
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  * Authentication Service - Handles JWT token validation and user authorization
  * 
@@ -9,9 +25,49 @@ package com.xkrexchange.security;
  * 3. Check user permissions for trading specific assets
  * 4. Manage user roles and access levels
  * 5. Handle token refresh and expiration
+ *
+ * Token validation cache:
+ * - Order-entry clients resend the same token thousands of times per minute, so the result of a signature
+ *   check is cached in a bounded, direct-mapped table indexed by the token's hash. Each slot holds the full
+ *   token and is only used on an exact match, so a hash collision costs a re-verification, never a wrong user
+ * - A cached entry is valid until the token's own expiry or the cache TTL, whichever comes first
+ * - Asset permissions, admin rights and order ownership come from the in-memory EntitlementStore
+ * - logoutUser() adds the token to a revocation set (kept until the token would have expired anyway) and
+ *   evicts it from the cache; revocation is checked on cache hits as well
+ * - Revocation is local to this gateway node: the set is neither shared nor broadcast, so another node keeps
+ *   accepting a logged-out token until it expires. Keep token lifetimes short when running several nodes
  */
+@Service
 public class AuthenticationService {
     
+    private static final String BEARER_PREFIX = "Bearer ";
+    private static final int REVOCATION_PURGE_THRESHOLD = 10_000;
+    
+    private final JwtParser jwtParser;
+    private final long cacheTtlMillis;
+    private final EntitlementStore entitlementStore;
+    
+    // === TOKEN CACHE ===
+    private final AtomicReferenceArray<CachedToken> tokenCache;
+    private final int cacheMask;
+    private final Map<String, Long> revokedTokens = new ConcurrentHashMap<>(); // token -> its expiry
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    
+    public AuthenticationService(@Value("${spring.security.jwt.secret}") String jwtSecret,
+                                 @Value("${spring.security.jwt.cache-size:65536}") int cacheSize,
+                                 @Value("${spring.security.jwt.cache-ttl-ms:60000}") long cacheTtlMillis,
+                                 EntitlementStore entitlementStore) {
+        this.jwtParser = Jwts.parser()
+            .verifyWith(Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8)))
+            .build();
+        this.cacheTtlMillis = cacheTtlMillis;
+        this.entitlementStore = entitlementStore;
+        int capacity = Integer.highestOneBit(Math.max(cacheSize, 2) - 1) << 1;
+        this.tokenCache = new AtomicReferenceArray<>(capacity);
+        this.cacheMask = capacity - 1;
+    }
+    
     // TODO: Inject dependencies
     // private final JwtTokenUtil jwtTokenUtil;
     // private final UserRepository userRepository;
@@ -25,22 +81,42 @@ public class AuthenticationService {
      * @throws AuthenticationException if token is invalid or expired
      */
     public Long validateTokenAndGetUserId(String authToken) {
+        return authenticate(authToken).getUserId();
+    }
+    
+    /**
+     * Validate JWT token and extract the user and their permissions
+     * Served from the token cache when the same token was verified recently
+     * 
+     * @param authToken - JWT token from Authorization header (includes "Bearer " prefix)
+     * @return principal carried by the token
+     * @throws AuthenticationException if token is invalid, expired or revoked
+     */
+    public AuthenticatedPrincipal authenticate(String authToken) {
+        String token = stripBearerPrefix(authToken);
+        long now = System.currentTimeMillis();
+        int index = slotFor(token);
         
-        // TODO: Implement JWT token validation
-        // 1. Remove "Bearer " prefix from token
-        // 2. Validate token signature and expiration
-        // 3. Extract user ID from token claims
-        // 4. Verify user still exists and is active
-        // 5. Return user ID
-        
-        // Example implementation:
-        // String token = authToken.substring(7); // Remove "Bearer "
-        // if (!jwtTokenUtil.isTokenValid(token)) {
-        //     throw new AuthenticationException("Invalid or expired token");
-        // }
-        // return jwtTokenUtil.getUserIdFromToken(token);
+        CachedToken cached = tokenCache.get(index);
+        if (cached != null && now < cached.validUntil && cached.token.equals(token)) {
+            cacheHits.increment();
+            checkNotRevoked(token);
+            return cached.principal;
+        }
         
-        return null; // TODO: Implement
+        cacheMisses.increment();
+        AuthenticatedPrincipal principal = verify(token);
+        checkNotRevoked(token);
+        tokenCache.set(index, new CachedToken(token, principal, Math.min(principal.getExpiresAtMillis(), now + cacheTtlMillis)));
+        return principal;
+    }
+    
+    public long getCacheHitCount() {
+        return cacheHits.sum();
+    }
+    
+    public long getCacheMissCount() {
+        return cacheMisses.sum();
     }
     
     /**
@@ -51,15 +127,7 @@ public class AuthenticationService {
      * @return true if user can trade this asset
      */
     public boolean canUserTrade(Long userId, Long assetId) {
-        
-        // TODO: Implement permission checking
-        // 1. Check if user account is active and verified
-        // 2. Check if user has trading permissions
-        // 3. Check if asset is available for trading
-        // 4. Check for any user-specific restrictions (e.g., sanctions, risk limits)
-        // 5. Check if asset requires special permissions (e.g., options, forex)
-        
-        return false; // TODO: Implement
+        return userId != null && assetId != null && entitlementStore.canTrade(userId, assetId);
     }
     
     /**
@@ -69,13 +137,7 @@ public class AuthenticationService {
      * @return true if user is an admin
      */
     public boolean isUserAdmin(Long userId) {
-        
-        // TODO: Implement admin check
-        // 1. Query user's roles from database
-        // 2. Check if they have ADMIN or SUPER_ADMIN role
-        // 3. Return result
-        
-        return false; // TODO: Implement
+        return userId != null && entitlementStore.isAdmin(userId);
     }
     
     /**
@@ -86,14 +148,10 @@ public class AuthenticationService {
      * @return true if user owns this order or is admin
      */
     public boolean canUserAccessOrder(Long userId, Long orderId) {
-        
-        // TODO: Implement order ownership check
-        // 1. Query order from database
-        // 2. Check if order.clientId == userId
-        // 3. OR check if user is admin
-        // 4. Return result
-        
-        return false; // TODO: Implement
+        if (userId == null || orderId == null) {
+            return false;
+        }
+        return entitlementStore.ownsOrder(userId, orderId) || entitlementStore.isAdmin(userId);
     }
     
     /**
@@ -141,12 +199,90 @@ public class AuthenticationService {
      * @param authToken - Token to invalidate
      */
     public void logoutUser(String authToken) {
+        String token = stripBearerPrefix(authToken);
+        AuthenticatedPrincipal principal;
+        try {
+            principal = verify(token);
+        } catch (AuthenticationException e) {
+            return; // invalid or expired tokens are rejected anyway
+        }
+        
+        long now = System.currentTimeMillis();
+        if (revokedTokens.size() > REVOCATION_PURGE_THRESHOLD) {
+            revokedTokens.values().removeIf(expiresAt -> expiresAt <= now);
+        }
+        revokedTokens.put(token, principal.getExpiresAtMillis());
+        
+        int index = slotFor(token);
+        CachedToken cached = tokenCache.get(index);
+        if (cached != null && cached.token.equals(token)) {
+            tokenCache.compareAndSet(index, cached, null);
+        }
+    }
+    
+    // helpers
+    
+    /**
+     * Full signature and expiry check (the expensive path)
+     */
+    private AuthenticatedPrincipal verify(String token) {
+        Claims claims;
+        try {
+            claims = jwtParser.parseSignedClaims(token).getPayload();
+        } catch (JwtException | IllegalArgumentException e) {
+            throw new AuthenticationException("Invalid or expired token");
+        }
         
-        // TODO: Implement logout
-        // 1. Extract token from auth header
-        // 2. Add token to blacklist/revocation list
-        // 3. Optionally notify other services
+        Date expiration = claims.getExpiration();
+        if (expiration == null) {
+            throw new AuthenticationException("Token has no expiration");
+        }
+        long userId;
+        try {
+            userId = Long.parseLong(claims.getSubject());
+        } catch (NumberFormatException | NullPointerException e) {
+            throw new AuthenticationException("Token subject is not a user id");
+        }
         
+        // no roles claim, no permissions: a token that doesn't say what its holder may do is not a trading token
+        if (!(claims.get("roles") instanceof Collection<?> roleNames)) {
+            throw new AuthenticationException("Token has no roles claim");
+        }
+        long permissions = 0;
+        for (Object role : roleNames) {
+            permissions |= AuthenticatedPrincipal.permissionsForRole(String.valueOf(role));
+        }
+        return new AuthenticatedPrincipal(userId, permissions, expiration.getTime());
+    }
+    
+    private void checkNotRevoked(String token) {
+        if (!revokedTokens.isEmpty() && revokedTokens.containsKey(token)) {
+            throw new AuthenticationException("Token has been revoked");
+        }
+    }
+    
+    private static String stripBearerPrefix(String authToken) {
+        if (authToken == null || !authToken.startsWith(BEARER_PREFIX) || authToken.length() == BEARER_PREFIX.length()) {
+            throw new AuthenticationException("Missing bearer token");
+        }
+        return authToken.substring(BEARER_PREFIX.length());
+    }
+    
+    private int slotFor(String token) {
+        int hash = token.hashCode();
+        return (hash ^ (hash >>> 16)) & cacheMask;
+    }
+    
+    private static final class CachedToken {
+        private final String token;
+        private final AuthenticatedPrincipal principal;
+        private final long validUntil;
+        
+        CachedToken(String token, AuthenticatedPrincipal principal, long validUntil) {
+            this.token = token;
+            this.principal = principal;
+            this.validUntil = validUntil;
+        }
     }
     
     // TODO: Create separate exception classes
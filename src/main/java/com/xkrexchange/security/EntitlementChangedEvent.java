@@ -0,0 +1,25 @@
+package com.xkrexchange.security;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published whenever a user's permissions change in the system of record, so cached entitlements are dropped
+ */
+public class EntitlementChangedEvent extends ApplicationEvent {
+
+    public static final long ALL_USERS = -1L;
+
+    private final long userId;
+
+    /**
+     * @param userId - user whose entitlements changed, or ALL_USERS to drop every cached entry
+     */
+    public EntitlementChangedEvent(Object source, long userId) {
+        super(source);
+        this.userId = userId;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+}
@@ -0,0 +1,13 @@
+package com.xkrexchange.security;
+
+/**
+ * System of record for user entitlements (user/role tables)
+ * EntitlementStore calls it on a cache miss, i.e. the first check for a user or the first check after an invalidation
+ */
+public interface EntitlementSource {
+
+    /**
+     * @return current entitlements of the user, or null if the user is unknown
+     */
+    UserEntitlements load(long userId);
+}
@@ -0,0 +1,153 @@
+package com.xkrexchange.security;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Entitlement Store - In-memory answers for "may this user trade this asset" and "does this user own this order"
+ *
+ * Key Responsibilities:
+ * 1. Cache per-user entitlements (active flag, admin flag, compressed bitmap of tradable assets)
+ * 2. Maintain an order-ownership index fed from the order stream (gateway routing + engine reports)
+ * 3. Drop cached entitlements when an EntitlementChangedEvent says they changed
+ *
+ * Both checks run on every submit and cancel, so they are plain hash lookups plus a bit test on immutable
+ * snapshots: no locks, no database. Users missing from the cache are loaded from the EntitlementSource bean
+ * if there is one, otherwise {@code trading.entitlements.default-access} decides (none by default | all).
+ *
+ * A load races with invalidations: the source may answer with the entitlements an EntitlementChangedEvent has just
+ * replaced. Every invalidation bumps a generation counter first, and a load that sees the counter move while it ran
+ * takes its result back out of the cache, so the next check loads again.
+ */
+@Service
+public class EntitlementStore {
+
+    private static final UserEntitlements NO_ASSETS = new UserEntitlements(true, false, false, AssetBitmap.EMPTY);
+
+    private final Map<Long, UserEntitlements> entitlements = new ConcurrentHashMap<>();
+    private final Map<Long, Long> orderOwners = new ConcurrentHashMap<>(); // open order id -> user id
+    private final EntitlementSource source; // null if none configured
+    private final UserEntitlements defaultEntitlements;
+    private final AtomicLong generation = new AtomicLong(); // bumped by every invalidation
+
+    @Autowired
+    public EntitlementStore(ObjectProvider<EntitlementSource> source,
+                            @Value("${trading.entitlements.default-access:none}") String defaultAccess) {
+        this(source.getIfAvailable(), defaultAccess);
+    }
+
+    /**
+     * @param source - system of record, may be null
+     * @param defaultAccess - "all" or "none", applied to users the source doesn't know
+     */
+    public EntitlementStore(EntitlementSource source, String defaultAccess) {
+        this.source = source;
+        this.defaultEntitlements = switch (defaultAccess) {
+            case "all" -> UserEntitlements.ALL_ASSETS;
+            case "none" -> UserEntitlements.NONE;
+            default -> throw new IllegalArgumentException("Unknown trading.entitlements.default-access: " + defaultAccess);
+        };
+    }
+
+    // === ENTITLEMENT CHECKS ===
+
+    public boolean canTrade(long userId, long assetId) {
+        return entitlementsOf(userId).canTrade(assetId);
+    }
+
+    public boolean isAdmin(long userId) {
+        return entitlementsOf(userId).isAdmin();
+    }
+
+    public boolean ownsOrder(long userId, long orderId) {
+        Long owner = orderOwners.get(orderId);
+        return owner != null && owner == userId;
+    }
+
+    public UserEntitlements entitlementsOf(long userId) {
+        UserEntitlements cached = entitlements.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+        long loadedAt = generation.get();
+        UserEntitlements loaded = source == null ? null : source.load(userId);
+        if (loaded == null) {
+            return defaultEntitlements; // not cached: keeps unknown users from filling the map
+        }
+        UserEntitlements raced = entitlements.putIfAbsent(userId, loaded);
+        if (raced != null) {
+            return raced;
+        }
+        if (generation.get() != loadedAt) {
+            // invalidated while loading: the loaded entitlements may predate the change, don't keep them
+            entitlements.remove(userId, loaded);
+        }
+        return loaded;
+    }
+
+    // === ENTITLEMENT UPDATES ===
+
+    public void setEntitlements(long userId, UserEntitlements userEntitlements) {
+        entitlements.put(userId, userEntitlements);
+    }
+
+    /**
+     * Grant and revoke start from what the user may trade right now: the cached entry, else the source's, else the
+     * default access, so neither narrows nor widens anything but the one asset
+     */
+    public void grantAsset(long userId, long assetId) {
+        entitlements.compute(userId, (id, current) -> (current == null ? uncached(id) : current).withAsset(assetId));
+    }
+
+    public void revokeAsset(long userId, long assetId) {
+        entitlements.compute(userId, (id, current) -> (current == null ? uncached(id) : current).withoutAsset(assetId));
+    }
+
+    @EventListener
+    public void onEntitlementChanged(EntitlementChangedEvent event) {
+        generation.incrementAndGet(); // before the removal, so a load in flight sees it
+        if (event.getUserId() == EntitlementChangedEvent.ALL_USERS) {
+            entitlements.clear();
+        } else {
+            entitlements.remove(event.getUserId());
+        }
+    }
+
+    // === ORDER OWNERSHIP ===
+
+    /**
+     * Order entered the system (routed by this gateway or reported by the engine)
+     */
+    public void recordOrder(long orderId, long userId) {
+        orderOwners.put(orderId, userId);
+    }
+
+    /**
+     * Order reached a terminal state (filled, cancelled, rejected) and can no longer be cancelled
+     */
+    public void forgetOrder(long orderId) {
+        orderOwners.remove(orderId);
+    }
+
+    public int getOpenOrderCount() {
+        return orderOwners.size();
+    }
+
+    // helpers
+
+    private UserEntitlements uncached(long userId) {
+        UserEntitlements loaded = source == null ? null : source.load(userId);
+        if (loaded != null) {
+            return loaded;
+        }
+        // an unknown user granted an asset becomes an active user of that one asset, not a deactivated one
+        return defaultEntitlements == UserEntitlements.NONE ? NO_ASSETS : defaultEntitlements;
+    }
+}
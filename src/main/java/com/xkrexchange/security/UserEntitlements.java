@@ -0,0 +1,47 @@
+package com.xkrexchange.security;
+
+/**
+ * Immutable snapshot of what one user may do
+ */
+public final class UserEntitlements {
+
+    public static final UserEntitlements NONE = new UserEntitlements(false, false, false, AssetBitmap.EMPTY);
+    public static final UserEntitlements ALL_ASSETS = new UserEntitlements(true, false, true, AssetBitmap.EMPTY);
+
+    private final boolean active;
+    private final boolean admin;
+    private final boolean allAssets; // trades every listed asset except those in the bitmap
+    private final AssetBitmap tradableAssets; // allAssets: the assets revoked from the user
+
+    public UserEntitlements(boolean active, boolean admin, boolean allAssets, AssetBitmap tradableAssets) {
+        this.active = active;
+        this.admin = admin;
+        this.allAssets = allAssets;
+        this.tradableAssets = tradableAssets;
+    }
+
+    public boolean canTrade(long assetId) {
+        return active && allAssets != tradableAssets.contains(assetId);
+    }
+
+    public boolean isActive() { return active; }
+    public boolean isAdmin() { return active && admin; }
+    public boolean isAllAssets() { return allAssets; }
+    public AssetBitmap getTradableAssets() { return tradableAssets; }
+
+    public UserEntitlements withAsset(long assetId) {
+        return new UserEntitlements(active, admin, allAssets,
+                                    allAssets ? tradableAssets.without(assetId) : tradableAssets.with(assetId));
+    }
+
+    public UserEntitlements withoutAsset(long assetId) {
+        return new UserEntitlements(active, admin, allAssets,
+                                    allAssets ? tradableAssets.with(assetId) : tradableAssets.without(assetId));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("UserEntitlements{active=%s, admin=%s, assets=%s}",
+                             active, admin, allAssets ? "ALL except " + tradableAssets : tradableAssets);
+    }
+}
@@ -0,0 +1,220 @@
+package com.xkrexchange.service;
+
+import com.xkrexchange.common.model.Asset;
+import com.xkrexchange.common.model.CompletedTrade;
+import com.xkrexchange.common.model.Identifiable;
+import com.xkrexchange.common.model.Order;
+import com.xkrexchange.common.model.OrderType;
+import com.xkrexchange.common.model.Price;
+import com.xkrexchange.gateway.MarketOrderCostEstimator;
+import com.xkrexchange.matching.MatchingEngine;
+import com.xkrexchange.matching.OrderBook;
+import com.xkrexchange.security.EntitlementStore;
+import com.xkrexchange.wallet.WalletService;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Rebuilds the order books from the database at startup, before any order flow is accepted
+ *
+ * Key Responsibilities:
+ * 1. Wait for writes left over from the previous run (spilled segments) to reach the database, and refuse to
+ *    start if they don't within CATCH_UP_TIMEOUT_NANOS
+ * 2. Restart the Order and CompletedTrade id counters past every id the previous runs may have handed out (the
+ *    persisted id high-water marks, or the highest id in the table if that is higher), and keep the marks ahead
+ *    of the counters from then on (Identifiable.reserveIdsInBlocks)
+ * 3. Stream every listed asset's POSTED / PARTIALLY_FILLED orders through a cursor and hand them to the book in
+ *    chunks (OrderBook.restore), straight into their price levels without running them through matching
+ * 4. Restore each book's lastTradePrice, so stop orders keep triggering from where they left off
+ * 5. Reserve the remaining cost of every restored order again and record its owner for cancel checks
+ *
+ * Assets load in parallel (trading.recovery.parallelism), and each book builds a chunk on its matching thread
+ * while the next chunk is read, so startup time is bound by the database read rather than by matching.
+ * An order whose reservation can no longer be made (the balances moved on without it) is cancelled instead.
+ */
+@Service
+@DependsOn("assetListingConfig")
+public class BookRecoveryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BookRecoveryService.class);
+    private static final int FETCH_SIZE = 10_000;
+    private static final long CATCH_UP_TIMEOUT_NANOS = 60_000_000_000L;
+    private static final long ID_BLOCK_SIZE = 1_000_000;
+
+    private final MatchingEngine matchingEngine;
+    private final OrderPersistenceService persistenceService;
+    private final WalletService walletService;
+    private final EntitlementStore entitlementStore;
+    private final MarketOrderCostEstimator costEstimator;
+    private final int parallelism;
+    private final int chunkSize;
+
+    @Autowired
+    public BookRecoveryService(MatchingEngine matchingEngine, OrderPersistenceService persistenceService,
+                               WalletService walletService, EntitlementStore entitlementStore,
+                               MarketOrderCostEstimator costEstimator,
+                               @Value("${trading.recovery.parallelism:4}") int parallelism,
+                               @Value("${trading.recovery.chunk-size:65536}") int chunkSize) {
+        this.matchingEngine = matchingEngine;
+        this.persistenceService = persistenceService;
+        this.walletService = walletService;
+        this.entitlementStore = entitlementStore;
+        this.costEstimator = costEstimator;
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+    }
+
+    @PostConstruct
+    public void recoverListedBooks() {
+        recover(matchingEngine.getAssets());
+    }
+
+    /**
+     * Restore the books of the given (listed, running) assets
+     * @return number of orders put back on the books
+     */
+    public long recover(Collection<Asset> assets) {
+        long started = System.nanoTime();
+        awaitPersistenceCaughtUp();
+        resumeIdCounters();
+        if (assets.isEmpty()) {
+            return 0;
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService loaders = Executors.newFixedThreadPool(Math.min(parallelism, assets.size()), runnable -> {
+            Thread thread = new Thread(runnable, "BookRecovery-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<CompletableFuture<Long>> books = new ArrayList<>(assets.size());
+            for (Asset asset : assets) {
+                books.add(CompletableFuture.supplyAsync(() -> recoverBook(asset), loaders));
+            }
+            long restored = 0;
+            for (CompletableFuture<Long> book : books) {
+                restored += book.join();
+            }
+            logger.info("Restored {} orders on {} books in {} ms", restored, assets.size(),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            return restored;
+        } finally {
+            loaders.shutdown();
+        }
+    }
+
+    // helpers
+
+    /**
+     * Ids at or below a persisted mark may belong to a trade report still on the bus or a row still in a spill
+     * segment: handing them out again would make the new trade look already settled, or collide on the primary key
+     */
+    private void resumeIdCounters() {
+        Identifiable.advanceCounter(Order.class, Math.max(persistenceService.getHighestOrderId(),
+                                    persistenceService.getIdHighWaterMark(OrderPersistenceService.ORDER_IDS)));
+        Identifiable.advanceCounter(CompletedTrade.class, Math.max(persistenceService.getHighestTradeId(),
+                                    persistenceService.getIdHighWaterMark(OrderPersistenceService.TRADE_IDS)));
+        Identifiable.reserveIdsInBlocks(Order.class, ID_BLOCK_SIZE,
+            id -> persistenceService.raiseIdHighWaterMark(OrderPersistenceService.ORDER_IDS, id));
+        Identifiable.reserveIdsInBlocks(CompletedTrade.class, ID_BLOCK_SIZE,
+            id -> persistenceService.raiseIdHighWaterMark(OrderPersistenceService.TRADE_IDS, id));
+    }
+
+    private long recoverBook(Asset asset) {
+        OrderBook book = asset.getOrderBook();
+        Price lastTradePrice = persistenceService.getLastTradePriceForAsset(asset.getAssetId());
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        List<Order> chunk = new ArrayList<>(chunkSize);
+        long[] counts = new long[2]; // restored, cancelled
+        persistenceService.streamActiveOrders(asset, FETCH_SIZE, order -> {
+            if (!reserve(order)) {
+                counts[1]++;
+                persistenceService.updateOrderStatus(order.getOrderId(), order.getQuantity() - order.getRemainingQuantity(),
+                                                     "CANCELLED");
+                return;
+            }
+            entitlementStore.recordOrder(order.getOrderId(), order.getClientId());
+            chunk.add(order);
+            counts[0]++;
+            if (chunk.size() == chunkSize) {
+                chunks.add(book.restore(new ArrayList<>(chunk), lastTradePrice));
+                chunk.clear();
+            }
+        });
+        chunks.add(book.restore(chunk, lastTradePrice));
+        CompletableFuture.allOf(chunks.toArray(new CompletableFuture[0])).join();
+        if (counts[1] > 0) {
+            logger.warn("Cancelled {} orders of {} whose funds could not be reserved again", counts[1], asset.getTicker());
+        }
+        logger.info("Restored {} orders of {} (last trade {})", counts[0], asset.getTicker(),
+                    lastTradePrice == null ? null : lastTradePrice.getValue());
+        return counts[0];
+    }
+
+    /**
+     * Reserve what the order can still spend: remaining quantity at its limit price for a buy (a STOP buy is
+     * priced like the gateway prices it, see MarketOrderCostEstimator.estimateStopBuyCost), remaining shares for
+     * a sell. Balances were loaded with every reservation returned to available
+     */
+    private boolean reserve(Order order) {
+        long userId = order.getClientId();
+        int remaining = order.getRemainingQuantity();
+        boolean reserved;
+        if (order.isBid()) {
+            BigDecimal amount;
+            if (order.getOrderType() == OrderType.STOP) {
+                if (order.getTriggerPrice() == null) {
+                    return false;
+                }
+                amount = costEstimator.estimateStopBuyCost(order.getAsset().getOrderBook().getDepthSnapshot(),
+                                                           remaining, order.getTriggerPrice());
+            } else {
+                Price price = order.getExecutionPrice();
+                if (price == null) {
+                    return false;
+                }
+                amount = price.getValue().multiply(BigDecimal.valueOf(remaining));
+            }
+            reserved = walletService.reserveCash(userId, amount, order.getOrderId()).isSuccessful();
+        } else {
+            reserved = walletService.reserveAsset(userId, order.getAsset().getAssetId(), remaining,
+                                                  order.getOrderId()).isSuccessful();
+        }
+        if (reserved) {
+            walletService.confirmReservation(order.getOrderId());
+        }
+        return reserved;
+    }
+
+    /**
+     * Books restored from a database that is missing spilled rows would lose orders and reuse ids, so startup
+     * fails instead
+     */
+    private void awaitPersistenceCaughtUp() {
+        long deadline = System.nanoTime() + CATCH_UP_TIMEOUT_NANOS;
+        while (!persistenceService.isCaughtUp()) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Persistence still replaying spilled writes after "
+                    + TimeUnit.NANOSECONDS.toSeconds(CATCH_UP_TIMEOUT_NANOS) + "s, refusing to restore the books");
+            }
+            LockSupport.parkNanos(10_000_000L);
+        }
+    }
+}
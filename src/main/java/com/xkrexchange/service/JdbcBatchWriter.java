@@ -0,0 +1,208 @@
+package com.xkrexchange.service;
+
+import com.xkrexchange.service.PersistenceRow.NewOrder;
+import com.xkrexchange.service.PersistenceRow.StatusUpdate;
+import com.xkrexchange.service.PersistenceRow.Trade;
+import org.postgresql.PGConnection;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes one batch of PersistenceRows to the orders and trades tables in a single transaction
+ *
+ * New orders and trades are loaded with PostgreSQL's binary COPY when the connection is a PostgreSQL one and
+ * the mode is COPY, and with a JDBC batch INSERT otherwise. Status updates are applied afterwards as one JDBC
+ * batch UPDATE, so an order inserted and updated within the same batch ends in its latest state. Ids are the
+ * ones the application assigned (orders.id, trades.id), not the tables' sequences.
+ *
+ * Order and trade inserts are idempotent: a row already in the table (a redelivered execution report, a spill
+ * segment replayed after a write that did commit) is skipped rather than failing the batch. COPY cannot skip
+ * conflicts, so orders and trades are copied into per-session staging tables and moved into their tables with
+ * the same conflict rule.
+ */
+final class JdbcBatchWriter {
+
+    enum Mode { COPY, BATCH }
+
+    static final String ORDER_COLUMNS =
+        "id, user_id, asset_id, order_type, side, quantity, price, stop_price, created_at, updated_at";
+    static final String TRADE_COLUMNS =
+        "id, buy_order_id, sell_order_id, asset_id, quantity, price, buyer_id, seller_id, executed_at";
+
+    static final String INSERT_ORDER = "INSERT INTO orders (" + ORDER_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) "
+        + "ON CONFLICT DO NOTHING";
+    static final String INSERT_TRADE = "INSERT INTO trades (" + TRADE_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) "
+        + "ON CONFLICT DO NOTHING";
+    static final String CREATE_ORDER_STAGING =
+        "CREATE TEMP TABLE IF NOT EXISTS orders_staging (LIKE orders INCLUDING DEFAULTS) ON COMMIT DELETE ROWS";
+    static final String COPY_ORDERS = "COPY orders_staging (" + ORDER_COLUMNS + ") FROM STDIN (FORMAT BINARY)";
+    static final String MERGE_ORDER_STAGING = "INSERT INTO orders (" + ORDER_COLUMNS + ") SELECT " + ORDER_COLUMNS
+        + " FROM orders_staging ON CONFLICT DO NOTHING";
+    static final String CREATE_TRADE_STAGING =
+        "CREATE TEMP TABLE IF NOT EXISTS trades_staging (LIKE trades INCLUDING DEFAULTS) ON COMMIT DELETE ROWS";
+    static final String COPY_TRADES = "COPY trades_staging (" + TRADE_COLUMNS + ") FROM STDIN (FORMAT BINARY)";
+    static final String MERGE_TRADE_STAGING = "INSERT INTO trades (" + TRADE_COLUMNS + ") SELECT " + TRADE_COLUMNS
+        + " FROM trades_staging ON CONFLICT DO NOTHING";
+    static final String UPDATE_STATUS = "UPDATE orders SET filled_quantity = ?, status = ?, updated_at = ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Mode mode;
+
+    JdbcBatchWriter(JdbcTemplate jdbcTemplate, Mode mode) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.mode = mode;
+    }
+
+    /**
+     * Write every row of the batch, or none of them
+     */
+    void write(List<PersistenceRow> rows) {
+        List<NewOrder> orders = new ArrayList<>();
+        List<Trade> trades = new ArrayList<>();
+        List<StatusUpdate> updates = new ArrayList<>();
+        for (PersistenceRow row : rows) {
+            if (row instanceof NewOrder order) {
+                orders.add(order);
+            } else if (row instanceof Trade trade) {
+                trades.add(trade);
+            } else if (row instanceof StatusUpdate update) {
+                updates.add(update);
+            }
+        }
+        jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+            boolean autoCommit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try {
+                boolean copy = mode == Mode.COPY && con.isWrapperFor(PGConnection.class);
+                if (copy) {
+                    copyOrders(con, orders);
+                    copyTrades(con, trades);
+                } else {
+                    insertOrders(con, orders);
+                    insertTrades(con, trades);
+                }
+                updateStatuses(con, updates);
+                con.commit();
+            } catch (SQLException | RuntimeException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(autoCommit);
+            }
+            return null;
+        });
+    }
+
+    // === COPY ===
+
+    private static void copyOrders(Connection con, List<NewOrder> orders) throws SQLException {
+        if (orders.isEmpty()) return;
+        PgBinaryCopy copy = new PgBinaryCopy();
+        for (NewOrder order : orders) {
+            copy.row(10).int8(order.orderId()).int8(order.userId()).int8(order.assetId())
+                .text(order.orderType()).text(side(order.buy())).int4(order.quantity())
+                .numeric(order.price()).numeric(order.stopPrice())
+                .timestamp(order.createdAt()).timestamp(order.createdAt());
+        }
+        try (Statement statement = con.createStatement()) {
+            statement.execute(CREATE_ORDER_STAGING);
+            copyIn(con, COPY_ORDERS, copy.finish());
+            statement.executeUpdate(MERGE_ORDER_STAGING);
+        }
+    }
+
+    private static void copyTrades(Connection con, List<Trade> trades) throws SQLException {
+        if (trades.isEmpty()) return;
+        PgBinaryCopy copy = new PgBinaryCopy();
+        for (Trade trade : trades) {
+            copy.row(9).int8(trade.tradeId()).int8(trade.buyOrderId()).int8(trade.sellOrderId()).int8(trade.assetId())
+                .int4(trade.quantity()).numeric(trade.price()).int8(trade.buyerId()).int8(trade.sellerId())
+                .timestamp(trade.executedAt());
+        }
+        try (Statement statement = con.createStatement()) {
+            statement.execute(CREATE_TRADE_STAGING);
+            copyIn(con, COPY_TRADES, copy.finish());
+            statement.executeUpdate(MERGE_TRADE_STAGING);
+        }
+    }
+
+    private static void copyIn(Connection con, String sql, byte[] payload) throws SQLException {
+        try {
+            con.unwrap(PGConnection.class).getCopyAPI().copyIn(sql, new ByteArrayInputStream(payload));
+        } catch (IOException e) {
+            throw new SQLException("COPY failed: " + sql, e);
+        }
+    }
+
+    // === JDBC BATCH ===
+
+    private static void insertOrders(Connection con, List<NewOrder> orders) throws SQLException {
+        executeBatch(con, INSERT_ORDER, orders, (ps, order) -> {
+            ps.setLong(1, order.orderId());
+            ps.setLong(2, order.userId());
+            ps.setLong(3, order.assetId());
+            ps.setString(4, order.orderType());
+            ps.setString(5, side(order.buy()));
+            ps.setInt(6, order.quantity());
+            ps.setObject(7, order.price(), Types.DECIMAL);
+            ps.setObject(8, order.stopPrice(), Types.DECIMAL);
+            ps.setTimestamp(9, new Timestamp(order.createdAt()));
+            ps.setTimestamp(10, new Timestamp(order.createdAt()));
+        });
+    }
+
+    private static void insertTrades(Connection con, List<Trade> trades) throws SQLException {
+        executeBatch(con, INSERT_TRADE, trades, (ps, trade) -> {
+            ps.setLong(1, trade.tradeId());
+            ps.setLong(2, trade.buyOrderId());
+            ps.setLong(3, trade.sellOrderId());
+            ps.setLong(4, trade.assetId());
+            ps.setInt(5, trade.quantity());
+            ps.setBigDecimal(6, trade.price());
+            ps.setLong(7, trade.buyerId());
+            ps.setLong(8, trade.sellerId());
+            ps.setTimestamp(9, new Timestamp(trade.executedAt()));
+        });
+    }
+
+    private static void updateStatuses(Connection con, List<StatusUpdate> updates) throws SQLException {
+        executeBatch(con, UPDATE_STATUS, updates, (ps, update) -> {
+            ps.setInt(1, update.filledQuantity());
+            ps.setString(2, update.status());
+            ps.setTimestamp(3, new Timestamp(update.updatedAt()));
+            ps.setLong(4, update.orderId());
+        });
+    }
+
+    // helpers
+
+    private interface Binder<T> {
+        void bind(PreparedStatement ps, T row) throws SQLException;
+    }
+
+    private static <T> void executeBatch(Connection con, String sql, List<T> rows, Binder<T> binder) throws SQLException {
+        if (rows.isEmpty()) return;
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            for (T row : rows) {
+                binder.bind(ps, row);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private static String side(boolean buy) {
+        return buy ? "BUY" : "SELL";
+    }
+}
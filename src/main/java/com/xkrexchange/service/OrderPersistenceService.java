@@ -1,10 +1,22 @@
 package com.xkrexchange.service;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import com.xkrexchange.common.model.*;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.ZoneId;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.function.Consumer;
 
 /**
  * Service layer for persisting order and trade data to the database
@@ -17,90 +29,245 @@ import java.util.ArrayList;
  * 3. Recording completed trades for audit trail
  * 4. Reconstructing order book state on startup
  * 
- * IMPORTANT: This is a placeholder implementation!
- * In a real system, this would use Spring Data JPA repositories
- * to interact with PostgreSQL database tables.
+ * Writes never touch the database on the caller's thread: they are queued for the PersistenceWriter, which
+ * flushes them in batches on its own thread (binary COPY on PostgreSQL, JDBC batches otherwise, see
+ * trading.persistence.*) and spills to local files while the database can't keep up. The queue is bounded,
+ * so callers wait when it is full rather than the process running out of memory.
+ * Non-terminal status updates are coalesced per order over trading.persistence.status-coalesce-ms, so an order
+ * filled in many pieces costs one database write per window rather than one per fill.
  */
 @Service
-@Transactional
 public class OrderPersistenceService {
     
-    // TODO: Inject actual database repositories
-    // @Autowired private OrderRepository orderRepository;
-    // @Autowired private TradeRepository tradeRepository;
+    static final String SELECT_ACTIVE_ORDERS =
+        "SELECT id, user_id, order_type, side, quantity, price, stop_price, filled_quantity FROM orders "
+        + "WHERE asset_id = ? AND status IN ('POSTED', 'PARTIALLY_FILLED') ORDER BY side, price, id";
+    static final String SELECT_LAST_TRADE_PRICE =
+        "SELECT price FROM trades WHERE asset_id = ? ORDER BY executed_at DESC, id DESC LIMIT 1";
+    static final String CREATE_ID_MARKS =
+        "CREATE TABLE IF NOT EXISTS id_high_water_marks (name VARCHAR(32) PRIMARY KEY, high_water_mark BIGINT NOT NULL)";
+    static final String SELECT_ID_MARK = "SELECT high_water_mark FROM id_high_water_marks WHERE name = ?";
+    static final String INSERT_ID_MARK =
+        "INSERT INTO id_high_water_marks (name, high_water_mark) VALUES (?, 0) ON CONFLICT DO NOTHING";
+    static final String RAISE_ID_MARK =
+        "UPDATE id_high_water_marks SET high_water_mark = GREATEST(high_water_mark, ?) WHERE name = ?";
+    public static final String ORDER_IDS = "orders";
+    public static final String TRADE_IDS = "trades";
+    
+    private final JdbcTemplate jdbcTemplate; // null = memory-only
+    private final PersistenceWriter writer;
+    private final OrderStatusCoalescer statusCoalescer;
     
     /**
-     * Save a new order to the database when it's first submitted
+     * Memory-only persistence (no datasource): rows are dropped
+     */
+    public OrderPersistenceService() {
+        this((JdbcTemplate) null, "copy", 1_000, 1_000, 50, 500, Path.of("data", "persistence-spill"), 0);
+    }
+    
+    @Autowired
+    public OrderPersistenceService(ObjectProvider<JdbcTemplate> jdbcTemplate,
+                                   @Value("${trading.persistence.mode:copy}") String mode,
+                                   @Value("${trading.persistence.queue-capacity:100000}") int queueCapacity,
+                                   @Value("${trading.persistence.batch-size:1000}") int batchSize,
+                                   @Value("${trading.persistence.flush-interval-ms:50}") long flushIntervalMillis,
+                                   @Value("${trading.persistence.slow-flush-ms:500}") long slowFlushMillis,
+                                   @Value("${trading.persistence.spill-dir:data/persistence-spill}") String spillDirectory,
+                                   @Value("${trading.persistence.status-coalesce-ms:100}") long statusCoalesceMillis) {
+        this(jdbcTemplate.getIfAvailable(), mode, queueCapacity, batchSize, flushIntervalMillis, slowFlushMillis,
+             Path.of(spillDirectory), statusCoalesceMillis);
+    }
+    
+    public OrderPersistenceService(JdbcTemplate jdbcTemplate, String mode, int queueCapacity, int batchSize,
+                                   long flushIntervalMillis, long slowFlushMillis, Path spillDirectory,
+                                   long statusCoalesceMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        JdbcBatchWriter database = jdbcTemplate == null ? null
+            : new JdbcBatchWriter(jdbcTemplate, JdbcBatchWriter.Mode.valueOf(mode.toUpperCase()));
+        this.writer = new PersistenceWriter(database, queueCapacity, batchSize, flushIntervalMillis, slowFlushMillis,
+                                            spillDirectory);
+        this.statusCoalescer = new OrderStatusCoalescer(writer, statusCoalesceMillis);
+    }
+    
+    @PostConstruct
+    public void start() {
+        if (jdbcTemplate != null) {
+            jdbcTemplate.execute(CREATE_ID_MARKS);
+        }
+        writer.start();
+        statusCoalescer.start();
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        statusCoalescer.stop();
+        writer.stop();
+    }
+    
+    /**
+     * Queue a new order for the database when it's first submitted
      * 
      * @param order The order to save
-     * @return The database-assigned order ID
+     * @return The order's database ID (the id it was assigned at creation)
      */
     public Long saveNewOrder(Order order) {
-        // TODO: Implement actual database save
-        // OrderEntity entity = convertToEntity(order);
-        // OrderEntity saved = orderRepository.save(entity);
-        // return saved.getId();
-        
-        // PLACEHOLDER: Return a fake ID for now
-        return System.currentTimeMillis(); // Unique timestamp-based ID
+        writer.enqueue(toRow(order, System.currentTimeMillis()));
+        return order.getOrderId();
+    }
+    
+    /**
+     * Queue several new orders at once (batch submissions)
+     * 
+     * @param orders The orders to save
+     * @return The orders' database IDs, in the same order as the input list
+     */
+    public List<Long> saveNewOrders(List<Order> orders) {
+        long now = System.currentTimeMillis();
+        List<Long> ids = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            writer.enqueue(toRow(order, now));
+            ids.add(order.getOrderId());
+        }
+        return ids;
     }
     
     /**
-     * Update an order's status and filled quantity in the database
+     * Record an order's new status and filled quantity; only the latest one per coalescing window is written,
+     * terminal statuses (FILLED, CANCELLED, REJECTED) are queued at once
      * 
      * @param orderId Database ID of the order
      * @param filledQuantity How much of the order has been filled
      * @param status New status ("PENDING", "POSTED", "PARTIALLY_FILLED", "FILLED", "CANCELLED")
      */
     public void updateOrderStatus(Long orderId, int filledQuantity, String status) {
-        // TODO: Implement actual database update
-        // Optional<OrderEntity> orderOpt = orderRepository.findById(orderId);
-        // if (orderOpt.isPresent()) {
-        //     OrderEntity order = orderOpt.get();
-        //     order.setFilledQuantity(filledQuantity);
-        //     order.setStatus(OrderStatus.valueOf(status));
-        //     order.setUpdatedAt(LocalDateTime.now());
-        //     orderRepository.save(order);
-        // }
-        
-        // PLACEHOLDER: Just log for now
-        System.out.println("DB UPDATE: Order " + orderId + " -> " + status + 
-                          " (filled: " + filledQuantity + ")");
-    }
-    
-    /**
-     * Save a completed trade to the database for audit trail
+        statusCoalescer.update(new PersistenceRow.StatusUpdate(orderId, filledQuantity, status, System.currentTimeMillis()));
+    }
+    
+    /**
+     * Queue a completed trade for the audit trail
      * 
      * @param trade The completed trade to record
      */
     public void saveTrade(CompletedTrade trade) {
-        // TODO: Implement actual database save
-        // TradeEntity entity = convertToEntity(trade);
-        // tradeRepository.save(entity);
-        
-        // PLACEHOLDER: Just log for now
-        System.out.println("DB TRADE: " + trade.getBuyOrderId() + " <-> " + 
-                          trade.getSellOrderId() + " @ " + trade.getExecutionPrice() +
-                          " x " + trade.getQuantity());
+        long executedAt = trade.getExecutionTimestamp().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        saveTrade(trade.getTradeId(), trade.getBuyOrderId(), trade.getSellOrderId(), trade.getAssetId(),
+                  trade.getQuantity(), trade.getExecutionPrice().getValue(), trade.getBuyerUserId(),
+                  trade.getSellerUserId(), executedAt);
+    }
+    
+    /**
+     * Queue a trade reported by the matching engine for the audit trail
+     */
+    public void saveTrade(long tradeId, long buyOrderId, long sellOrderId, long assetId, int quantity, BigDecimal price,
+                          long buyerId, long sellerId, long executedAt) {
+        writer.enqueue(new PersistenceRow.Trade(tradeId, buyOrderId, sellOrderId, assetId, quantity, price,
+                                                buyerId, sellerId, executedAt));
+    }
+    
+    /**
+     * @return rows waiting for the writer thread
+     */
+    public int getQueueDepth() {
+        return writer.getQueueDepth();
+    }
+    
+    /**
+     * @return spill segments waiting to be replayed into the database
+     */
+    public int getSpilledSegmentCount() {
+        return writer.getSegmentCount();
+    }
+    
+    /**
+     * @return spill segments the database kept rejecting, moved aside to the quarantine directory
+     */
+    public long getQuarantinedSegmentCount() {
+        return writer.getQuarantinedSegments();
+    }
+    
+    /**
+     * @return rows written to the database, directly or replayed from a spill
+     */
+    public long getWrittenRowCount() {
+        return writer.getWrittenRows();
+    }
+    
+    /**
+     * @return status updates superseded by a later one for the same order before being written
+     */
+    public long getCoalescedStatusUpdateCount() {
+        return statusCoalescer.getCoalescedCount();
+    }
+    
+    /**
+     * @return enqueues that had to wait for room in the queue
+     */
+    public long getBlockedEnqueueCount() {
+        return writer.getBlockedEnqueues();
+    }
+    
+    // === STARTUP RECOVERY ===
+    
+    /**
+     * @return true once every write queued so far (including spills of a previous run) is in the database
+     */
+    public boolean isCaughtUp() {
+        return writer.isCaughtUp();
     }
     
     /**
      * Load all active orders for a specific asset from the database
      * This is used to reconstruct the order book state on startup
      * 
-     * @param assetId The asset to load orders for
-     * @return List of active orders
+     * @param asset The asset to load orders for
+     * @return List of active orders, grouped by side and price level, time priority within a level
+     */
+    public List<Order> getActiveOrdersByAsset(Asset asset) {
+        List<Order> orders = new ArrayList<>();
+        streamActiveOrders(asset, 10_000, orders::add);
+        return orders;
+    }
+    
+    /**
+     * Stream the asset's POSTED / PARTIALLY_FILLED orders through a cursor, in the order of
+     * getActiveOrdersByAsset, rebuilt with their original ids and filled quantity
+     * 
+     * @param fetchSize rows per round trip
+     * @return number of orders streamed
      */
-    public List<Order> getActiveOrdersByAsset(Long assetId) {
-        // TODO: Implement actual database query
-        // List<OrderEntity> entities = orderRepository.findActiveOrdersByAsset(assetId);
-        // return entities.stream()
-        //               .map(this::convertToOrder)
-        //               .collect(Collectors.toList());
-        
-        // PLACEHOLDER: Return empty list for now
-        System.out.println("DB LOAD: Loading active orders for asset " + assetId);
-        return new ArrayList<>();
+    public long streamActiveOrders(Asset asset, int fetchSize, Consumer<Order> consumer) {
+        if (jdbcTemplate == null) {
+            return 0;
+        }
+        return jdbcTemplate.execute((ConnectionCallback<Long>) con -> {
+            boolean autoCommit = con.getAutoCommit();
+            con.setAutoCommit(false); // PostgreSQL only streams with a cursor inside a transaction
+            long count = 0;
+            try (PreparedStatement ps = con.prepareStatement(SELECT_ACTIVE_ORDERS)) {
+                ps.setFetchSize(fetchSize);
+                ps.setLong(1, asset.getAssetId());
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        BigDecimal price = rs.getBigDecimal("price");
+                        BigDecimal stopPrice = rs.getBigDecimal("stop_price");
+                        Order order = Order.restore(rs.getLong("id"), rs.getLong("user_id"),
+                            OrderType.valueOf(rs.getString("order_type")), "BUY".equals(rs.getString("side")),
+                            rs.getInt("quantity"), asset, price == null ? null : new Price(price),
+                            stopPrice == null ? null : new Price(stopPrice));
+                        int filled = rs.getInt("filled_quantity");
+                        if (filled > 0) {
+                            order.fillOrder(filled, order.getExecutionPrice());
+                        }
+                        consumer.accept(order);
+                        count++;
+                    }
+                }
+            } finally {
+                con.commit();
+                con.setAutoCommit(autoCommit);
+            }
+            return count;
+        });
     }
     
     /**
@@ -111,19 +278,69 @@ public class OrderPersistenceService {
      * @return Last trade price or null if no trades exist
      */
     public Price getLastTradePriceForAsset(Long assetId) {
-        // TODO: Implement actual database query
-        // Optional<TradeEntity> lastTrade = tradeRepository
-        //     .findTopByAssetIdOrderByExecutedAtDesc(assetId);
-        // return lastTrade.map(trade -> new Price(trade.getPrice()))
-        //                .orElse(null);
-        
-        // PLACEHOLDER: Return null for now
-        System.out.println("DB LOAD: Loading last trade price for asset " + assetId);
-        return null;
-    }
-    
-    // TODO: Add conversion methods between domain objects and database entities
-    // private OrderEntity convertToEntity(Order order) { ... }
-    // private Order convertToOrder(OrderEntity entity) { ... }
-    // private TradeEntity convertToEntity(CompletedTrade trade) { ... }
-} 
\ No newline at end of file
+        if (jdbcTemplate == null) {
+            return null;
+        }
+        List<BigDecimal> prices = jdbcTemplate.queryForList(SELECT_LAST_TRADE_PRICE, BigDecimal.class, assetId);
+        return prices.isEmpty() ? null : new Price(prices.get(0));
+    }
+    
+    /**
+     * @return highest order id in the database (0 if none), to restart the Order id counter past
+     */
+    public long getHighestOrderId() {
+        return highestId("SELECT MAX(id) FROM orders");
+    }
+    
+    /**
+     * @return highest trade id in the database (0 if none), to restart the CompletedTrade id counter past
+     */
+    public long getHighestTradeId() {
+        return highestId("SELECT MAX(id) FROM trades");
+    }
+    
+    /**
+     * @return highest id of the sequence (ORDER_IDS, TRADE_IDS) the previous runs may have handed out, 0 if none
+     *         was recorded; ids can be in use without being in their table yet (spilled rows, reports on the bus)
+     */
+    public long getIdHighWaterMark(String name) {
+        if (jdbcTemplate == null) {
+            return 0;
+        }
+        List<Long> marks = jdbcTemplate.queryForList(SELECT_ID_MARK, Long.class, name);
+        return marks.isEmpty() ? 0 : marks.get(0);
+    }
+    
+    /**
+     * Persist that ids of the sequence up to id may be handed out (the mark never goes down)
+     */
+    public void raiseIdHighWaterMark(String name, long id) {
+        if (jdbcTemplate == null) {
+            return;
+        }
+        if (jdbcTemplate.update(RAISE_ID_MARK, id, name) == 0) {
+            jdbcTemplate.update(INSERT_ID_MARK, name);
+            jdbcTemplate.update(RAISE_ID_MARK, id, name);
+        }
+    }
+    
+    // helpers
+    
+    private long highestId(String sql) {
+        if (jdbcTemplate == null) {
+            return 0;
+        }
+        Long id = jdbcTemplate.queryForObject(sql, Long.class);
+        return id == null ? 0 : id;
+    }
+    
+    private static PersistenceRow.NewOrder toRow(Order order, long createdAt) {
+        return new PersistenceRow.NewOrder(order.getOrderId(), order.getClientId(), order.getAsset().getAssetId(),
+                                           order.getOrderType().name(), order.isBid(), order.getQuantity(),
+                                           value(order.getExecutionPrice()), value(order.getStopPrice()), createdAt);
+    }
+    
+    private static BigDecimal value(Price price) {
+        return price == null ? null : price.getValue();
+    }
+}
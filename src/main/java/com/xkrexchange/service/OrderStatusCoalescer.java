@@ -0,0 +1,118 @@
+package com.xkrexchange.service;
+
+import com.xkrexchange.service.PersistenceRow.StatusUpdate;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Holds back order status updates so the database sees one write per order per window, not one per fill
+ *
+ * Key Responsibilities:
+ * 1. Keep only the latest update (filled quantity, status) of every order with a pending change
+ * 2. Hand pending updates to the PersistenceWriter every window (trading.persistence.status-coalesce-ms)
+ * 3. Hand an order's update over at once when it reaches a terminal status (FILLED, CANCELLED, REJECTED)
+ *
+ * An order sweeping fifty resting orders reaches the database as a single FILLED row instead of fifty
+ * PARTIALLY_FILLED ones. Updates of one order are handed over inside its map entry's compute, so a periodic
+ * flush can never queue an older update behind the terminal one.
+ */
+class OrderStatusCoalescer {
+
+    static final Set<String> TERMINAL_STATUSES = Set.of("FILLED", "CANCELLED", "REJECTED");
+
+    private final PersistenceWriter writer;
+    private final long windowNanos;
+    private final ConcurrentHashMap<Long, StatusUpdate> pending = new ConcurrentHashMap<>();
+    private final AtomicLong coalescedUpdates = new AtomicLong();
+
+    private volatile boolean isRunning = false;
+    private Thread flushThread;
+
+    OrderStatusCoalescer(PersistenceWriter writer, long windowMillis) {
+        this.writer = writer;
+        this.windowNanos = windowMillis * 1_000_000L;
+    }
+
+    /**
+     * Record the order's latest status; written within a window, or right away if terminal
+     */
+    void update(StatusUpdate update) {
+        if (windowNanos == 0 || !isRunning) {
+            writer.enqueue(update);
+            return;
+        }
+        StatusUpdate merged = pending.merge(update.orderId(), update, (held, latest) -> {
+            coalescedUpdates.incrementAndGet();
+            return isTerminal(held) ? held : latest;
+        });
+        if (isTerminal(merged)) {
+            flush(update.orderId());
+        }
+    }
+
+    void start() {
+        if (windowNanos == 0) {
+            return;
+        }
+        isRunning = true;
+        flushThread = new Thread(this::flushLoop, "OrderStatusCoalescer");
+        flushThread.setDaemon(true);
+        flushThread.start();
+    }
+
+    /**
+     * Stop coalescing and hand every pending update to the writer
+     */
+    void stop() {
+        isRunning = false;
+        if (flushThread != null) {
+            LockSupport.unpark(flushThread);
+            try {
+                flushThread.join(10_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flushAll();
+    }
+
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * @return updates that replaced a pending one instead of becoming a database write
+     */
+    long getCoalescedCount() {
+        return coalescedUpdates.get();
+    }
+
+    // helpers
+
+    private void flushLoop() {
+        while (isRunning) {
+            LockSupport.parkNanos(windowNanos);
+            flushAll();
+        }
+    }
+
+    private void flushAll() {
+        for (Long orderId : pending.keySet()) {
+            flush(orderId);
+        }
+    }
+
+    private void flush(Long orderId) {
+        pending.computeIfPresent(orderId, (id, update) -> {
+            writer.enqueue(update);
+            return null;
+        });
+    }
+
+    private static boolean isTerminal(StatusUpdate update) {
+        return TERMINAL_STATUSES.contains(update.status());
+    }
+}
@@ -0,0 +1,97 @@
+package com.xkrexchange.service;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * One row queued for the PersistenceWriter: a new order, an order status change, or a trade
+ *
+ * Rows are plain values so they can be written to the database in bulk, or to a spill segment and read back
+ * unchanged when the database is slow or down.
+ */
+public interface PersistenceRow {
+
+    byte NEW_ORDER = 1;
+    byte STATUS_UPDATE = 2;
+    byte TRADE = 3;
+
+    void writeTo(DataOutputStream out) throws IOException;
+
+    /**
+     * @return the next row of a spill segment
+     */
+    static PersistenceRow readFrom(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        return switch (tag) {
+            case NEW_ORDER -> new NewOrder(in.readLong(), in.readLong(), in.readLong(), in.readUTF(), in.readBoolean(),
+                                           in.readInt(), readDecimal(in), readDecimal(in), in.readLong());
+            case STATUS_UPDATE -> new StatusUpdate(in.readLong(), in.readInt(), in.readUTF(), in.readLong());
+            case TRADE -> new Trade(in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readInt(),
+                                    readDecimal(in), in.readLong(), in.readLong(), in.readLong());
+            default -> throw new IOException("Unknown persistence row tag " + tag);
+        };
+    }
+
+    /**
+     * orders row; price is null for market orders, stopPrice null unless a stop order
+     */
+    record NewOrder(long orderId, long userId, long assetId, String orderType, boolean buy, int quantity,
+                    BigDecimal price, BigDecimal stopPrice, long createdAt) implements PersistenceRow {
+        @Override
+        public void writeTo(DataOutputStream out) throws IOException {
+            out.writeByte(NEW_ORDER);
+            out.writeLong(orderId);
+            out.writeLong(userId);
+            out.writeLong(assetId);
+            out.writeUTF(orderType);
+            out.writeBoolean(buy);
+            out.writeInt(quantity);
+            writeDecimal(out, price);
+            writeDecimal(out, stopPrice);
+            out.writeLong(createdAt);
+        }
+    }
+
+    record StatusUpdate(long orderId, int filledQuantity, String status, long updatedAt) implements PersistenceRow {
+        @Override
+        public void writeTo(DataOutputStream out) throws IOException {
+            out.writeByte(STATUS_UPDATE);
+            out.writeLong(orderId);
+            out.writeInt(filledQuantity);
+            out.writeUTF(status);
+            out.writeLong(updatedAt);
+        }
+    }
+
+    record Trade(long tradeId, long buyOrderId, long sellOrderId, long assetId, int quantity, BigDecimal price,
+                 long buyerId, long sellerId, long executedAt) implements PersistenceRow {
+        @Override
+        public void writeTo(DataOutputStream out) throws IOException {
+            out.writeByte(TRADE);
+            out.writeLong(tradeId);
+            out.writeLong(buyOrderId);
+            out.writeLong(sellOrderId);
+            out.writeLong(assetId);
+            out.writeInt(quantity);
+            writeDecimal(out, price);
+            out.writeLong(buyerId);
+            out.writeLong(sellerId);
+            out.writeLong(executedAt);
+        }
+    }
+
+    // helpers
+
+    private static void writeDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value.toPlainString());
+        }
+    }
+
+    private static BigDecimal readDecimal(DataInputStream in) throws IOException {
+        return in.readBoolean() ? new BigDecimal(in.readUTF()) : null;
+    }
+}
@@ -0,0 +1,437 @@
+package com.xkrexchange.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Moves PersistenceRows from the trading threads to the database on one dedicated thread
+ *
+ * Key Responsibilities:
+ * 1. Buffer rows in a bounded queue; enqueue blocks while it is full (backpressure instead of unbounded memory)
+ * 2. Drain the queue in batches and hand each batch to the JdbcBatchWriter (one transaction per batch)
+ * 3. Spill batches to local segment files while the database is failing, or too slow to keep the queue down
+ * 4. Replay spilled segments, oldest first, once the queue has room again
+ * 5. Quarantine poison rows: a segment the database rejects for its content (integrity or data errors, which no
+ *    retry fixes) MAX_POISON_ATTEMPTS times in a row is bisected, its halves written in order and split again
+ *    while rejected, and only the rows refused on their own go to the quarantine directory under the spill
+ *    directory, so they no longer hold back every write behind them
+ *
+ * Rows reach the database in the order they were enqueued: while any segment exists every new batch is spilled
+ * behind it, and segments left over from a previous run are replayed before anything new. Transient failures
+ * (connection lost, timeouts, the database down) are retried for as long as they last. Without a database
+ * (no datasource configured) rows are dropped and persistence is memory-only.
+ */
+class PersistenceWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(PersistenceWriter.class);
+    private static final long RETRY_BACKOFF_NANOS = 1_000_000_000L;
+    private static final String SEGMENT_PREFIX = "spill-";
+    private static final String SEGMENT_SUFFIX = ".bin";
+    private static final String QUARANTINE_DIRECTORY = "quarantine";
+    static final int MAX_POISON_ATTEMPTS = 3;
+
+    private final JdbcBatchWriter database; // null = memory-only
+    private final BlockingQueue<PersistenceRow> queue;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long slowFlushNanos;
+    private final int highWaterMark; // a slow flush with the queue above this starts spilling
+    private final int lowWaterMark; // segments are replayed while the queue is below this
+    private final Path spillDirectory;
+
+    private final ArrayDeque<Path> segments = new ArrayDeque<>(); // writer thread only
+    private long nextSegment = 0;
+    private boolean spillNext = false;
+    private long nextReplayNanos = 0;
+    private int poisonAttempts = 0; // permanent rejections of the oldest segment in a row
+
+    private final AtomicLong writtenRows = new AtomicLong();
+    private final AtomicLong spilledRows = new AtomicLong();
+    private final AtomicLong replayedRows = new AtomicLong();
+    private final AtomicLong blockedEnqueues = new AtomicLong();
+    private final AtomicLong unwrittenRows = new AtomicLong(); // queued or being written, not yet spilled
+    private final AtomicLong quarantinedSegments = new AtomicLong();
+    private volatile int segmentCount = 0;
+
+    private volatile boolean isRunning = false;
+    private Thread writerThread;
+
+    PersistenceWriter(JdbcBatchWriter database, int queueCapacity, int batchSize, long flushIntervalMillis,
+                      long slowFlushMillis, Path spillDirectory) {
+        this.database = database;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = flushIntervalMillis * 1_000_000L;
+        this.slowFlushNanos = slowFlushMillis * 1_000_000L;
+        this.highWaterMark = queueCapacity / 2;
+        this.lowWaterMark = queueCapacity / 10;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Queue a row for the database, waiting while the queue is full
+     */
+    void enqueue(PersistenceRow row) {
+        if (database == null) {
+            return;
+        }
+        unwrittenRows.incrementAndGet();
+        if (queue.offer(row)) {
+            return;
+        }
+        blockedEnqueues.incrementAndGet();
+        try {
+            queue.put(row);
+        } catch (InterruptedException e) {
+            unwrittenRows.decrementAndGet();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for room in the persistence queue", e);
+        }
+    }
+
+    void start() {
+        if (database == null) {
+            logger.info("No datasource: order and trade persistence is memory-only");
+            return;
+        }
+        recoverSegments();
+        isRunning = true;
+        writerThread = new Thread(this::writeLoop, "PersistenceWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Stop the writer after it has written (or spilled) everything queued
+     */
+    void stop() {
+        isRunning = false;
+        if (writerThread != null) {
+            LockSupport.unpark(writerThread);
+            try {
+                writerThread.join(30_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return true once everything enqueued so far, and every spilled segment, is in the database
+     */
+    boolean isCaughtUp() {
+        return unwrittenRows.get() == 0 && segmentCount == 0;
+    }
+
+    // === METRICS ===
+
+    int getQueueDepth() {
+        return queue.size();
+    }
+
+    int getSegmentCount() {
+        return segmentCount;
+    }
+
+    long getWrittenRows() {
+        return writtenRows.get();
+    }
+
+    long getSpilledRows() {
+        return spilledRows.get();
+    }
+
+    long getReplayedRows() {
+        return replayedRows.get();
+    }
+
+    long getBlockedEnqueues() {
+        return blockedEnqueues.get();
+    }
+
+    long getQuarantinedSegments() {
+        return quarantinedSegments.get();
+    }
+
+    // helpers
+
+    private void writeLoop() {
+        List<PersistenceRow> batch = new ArrayList<>(batchSize);
+        while (true) {
+            if (!segments.isEmpty() && (queue.size() < lowWaterMark || !isRunning) && System.nanoTime() >= nextReplayNanos) {
+                if (!replayOldestSegment() && !isRunning) {
+                    batch.clear();
+                    while (queue.drainTo(batch, batchSize) > 0) {
+                        spill(batch);
+                        batch.clear();
+                    }
+                    logger.warn("Shutting down with {} spilled persistence segments in {}", segments.size(), spillDirectory);
+                    return;
+                }
+                continue;
+            }
+            batch.clear();
+            queue.drainTo(batch, batchSize);
+            if (batch.isEmpty()) {
+                if (!isRunning && segments.isEmpty()) return;
+                LockSupport.parkNanos(flushIntervalNanos);
+                continue;
+            }
+            if (!segments.isEmpty() || spillNext) {
+                spillNext = false;
+                spill(batch);
+                continue;
+            }
+            long started = System.nanoTime();
+            try {
+                database.write(batch);
+                writtenRows.addAndGet(batch.size());
+                unwrittenRows.addAndGet(-batch.size());
+                if (System.nanoTime() - started > slowFlushNanos && queue.size() > highWaterMark) {
+                    logger.warn("Persistence flush of {} rows took {} ms with {} rows queued, spilling",
+                                batch.size(), (System.nanoTime() - started) / 1_000_000, queue.size());
+                    spillNext = true;
+                }
+            } catch (RuntimeException e) {
+                logger.error("Failed to persist {} rows, spilling to {}", batch.size(), spillDirectory, e);
+                nextReplayNanos = System.nanoTime() + RETRY_BACKOFF_NANOS;
+                spill(batch);
+            }
+        }
+    }
+
+    /**
+     * @return false if the database rejected the segment (it stays first in line, retried after a backoff)
+     */
+    private boolean replayOldestSegment() {
+        Path segment = segments.peekFirst();
+        List<PersistenceRow> rows;
+        try {
+            rows = readSegment(segment);
+        } catch (IOException e) {
+            logger.error("Unreadable persistence segment {}, quarantining it", segment, e);
+            quarantineOldestSegment(segment);
+            return true;
+        }
+        try {
+            database.write(rows);
+        } catch (RuntimeException e) {
+            if (!SqlFailures.isPermanent(e)) {
+                poisonAttempts = 0;
+                logger.error("Failed to replay persistence segment {} ({} rows), retrying", segment, rows.size(), e);
+                nextReplayNanos = System.nanoTime() + RETRY_BACKOFF_NANOS;
+                return false;
+            }
+            if (++poisonAttempts < MAX_POISON_ATTEMPTS) {
+                logger.error("Database rejected persistence segment {} ({} rows), attempt {} of {}", segment,
+                             rows.size(), poisonAttempts, MAX_POISON_ATTEMPTS, e);
+                nextReplayNanos = System.nanoTime() + RETRY_BACKOFF_NANOS;
+                return false;
+            }
+            logger.error("Database rejected persistence segment {} ({} rows) {} times, writing it in parts to find "
+                         + "the rows at fault", segment, rows.size(), poisonAttempts, e);
+            List<PersistenceRow> rejected;
+            try {
+                rejected = writeAccepted(rows);
+            } catch (RuntimeException transientFailure) {
+                // the parts written so far are retried with the segment, the inserts skip rows already there
+                logger.error("Failed to replay persistence segment {} ({} rows), retrying", segment, rows.size(),
+                             transientFailure);
+                nextReplayNanos = System.nanoTime() + RETRY_BACKOFF_NANOS;
+                return false;
+            }
+            quarantineRows(segment, rejected);
+            replayedRows.addAndGet(rows.size() - rejected.size());
+            writtenRows.addAndGet(rows.size() - rejected.size());
+            removeOldestSegment(segment);
+            return true;
+        }
+        poisonAttempts = 0;
+        replayedRows.addAndGet(rows.size());
+        writtenRows.addAndGet(rows.size());
+        removeOldestSegment(segment);
+        if (segments.isEmpty()) {
+            logger.info("Replayed every spilled persistence segment, writing straight to the database again");
+        }
+        return true;
+    }
+
+    private void removeOldestSegment(Path segment) {
+        segments.pollFirst();
+        segmentCount = segments.size();
+        try {
+            Files.deleteIfExists(segment);
+        } catch (IOException e) {
+            logger.warn("Could not delete replayed persistence segment {}", segment, e);
+        }
+    }
+
+    /**
+     * Write the rows the database accepts, in order: a rejected part is split in half until the rows at fault
+     * are on their own
+     *
+     * @return the rows the database refuses by themselves
+     * @throws RuntimeException on a transient failure
+     */
+    private List<PersistenceRow> writeAccepted(List<PersistenceRow> rows) {
+        try {
+            database.write(rows);
+            return List.of();
+        } catch (RuntimeException e) {
+            if (!SqlFailures.isPermanent(e)) {
+                throw e;
+            }
+            if (rows.size() == 1) {
+                logger.error("Database rejected {}", rows.get(0), e);
+                return rows;
+            }
+            int half = rows.size() / 2;
+            List<PersistenceRow> rejected = new ArrayList<>(writeAccepted(rows.subList(0, half)));
+            rejected.addAll(writeAccepted(rows.subList(half, rows.size())));
+            return rejected;
+        }
+    }
+
+    /**
+     * Keep the rejected rows of a segment in the quarantine directory for inspection, under the segment's name
+     */
+    private void quarantineRows(Path segment, List<PersistenceRow> rejected) {
+        poisonAttempts = 0;
+        quarantinedSegments.incrementAndGet();
+        Path quarantined = spillDirectory.resolve(QUARANTINE_DIRECTORY).resolve(segment.getFileName());
+        logger.error("Quarantining {} rows of persistence segment {} in {}; they are NOT in the database",
+                     rejected.size(), segment, quarantined);
+        try {
+            Files.createDirectories(quarantined.getParent());
+            writeSegmentFile(quarantined, rejected);
+        } catch (IOException e) {
+            logger.error("Could not write quarantined rows to {}: {}", quarantined, rejected, e);
+        }
+    }
+
+    /**
+     * Take the segment out of the replay line and keep it in the quarantine directory for inspection
+     */
+    private void quarantineOldestSegment(Path segment) {
+        segments.pollFirst();
+        segmentCount = segments.size();
+        poisonAttempts = 0;
+        quarantinedSegments.incrementAndGet();
+        Path quarantine = spillDirectory.resolve(QUARANTINE_DIRECTORY);
+        try {
+            Files.createDirectories(quarantine);
+            Files.move(segment, quarantine.resolve(segment.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.error("Could not move persistence segment {} to {}, leaving it in place", segment, quarantine, e);
+        }
+    }
+
+    /**
+     * Append the batch as a new segment, retrying while the disk refuses it
+     */
+    private void spill(List<PersistenceRow> batch) {
+        while (true) {
+            try {
+                segments.addLast(writeSegment(batch));
+                segmentCount = segments.size();
+                spilledRows.addAndGet(batch.size());
+                unwrittenRows.addAndGet(-batch.size());
+                return;
+            } catch (IOException | UncheckedIOException e) {
+                if (!isRunning) {
+                    logger.error("Shutting down, {} rows could be neither persisted nor spilled", batch.size(), e);
+                    return;
+                }
+                logger.error("Failed to spill {} rows to {}, retrying", batch.size(), spillDirectory, e);
+                LockSupport.parkNanos(RETRY_BACKOFF_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Write to a temporary file, sync, then rename so a crash never leaves a partial segment behind
+     */
+    private Path writeSegment(List<PersistenceRow> rows) throws IOException {
+        Files.createDirectories(spillDirectory);
+        Path segment = spillDirectory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, nextSegment++, SEGMENT_SUFFIX));
+        writeSegmentFile(segment, rows);
+        return segment;
+    }
+
+    private static void writeSegmentFile(Path segment, List<PersistenceRow> rows) throws IOException {
+        Path temporary = segment.resolveSibling(segment.getFileName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeInt(rows.size());
+            for (PersistenceRow row : rows) {
+                row.writeTo(out);
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temporary, segment, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static List<PersistenceRow> readSegment(Path segment) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+            int count = in.readInt();
+            List<PersistenceRow> rows = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                rows.add(PersistenceRow.readFrom(in));
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * Queue segments left by a previous run for replay, and drop temporary files of spills it never finished
+     */
+    private void recoverSegments() {
+        if (!Files.isDirectory(spillDirectory)) {
+            return;
+        }
+        List<Path> found = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(spillDirectory, SEGMENT_PREFIX + "*")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(SEGMENT_SUFFIX)) {
+                    found.add(file);
+                } else {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read persistence spill directory " + spillDirectory, e);
+        }
+        found.sort(null); // zero-padded sequence numbers sort by name
+        for (Path segment : found) {
+            String name = segment.getFileName().toString();
+            long sequence = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            nextSegment = Math.max(nextSegment, sequence + 1);
+            segments.addLast(segment);
+        }
+        segmentCount = segments.size();
+        if (!segments.isEmpty()) {
+            logger.warn("Found {} spilled persistence segments in {}, replaying them first", segments.size(), spillDirectory);
+        }
+    }
+}
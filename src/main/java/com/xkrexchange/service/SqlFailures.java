@@ -0,0 +1,29 @@
+package com.xkrexchange.service;
+
+import java.sql.SQLException;
+
+/**
+ * Classifies database failures for the write-behind writers (PersistenceWriter, LedgerWriteBehind)
+ */
+public final class SqlFailures {
+
+    private SqlFailures() {
+    }
+
+    /**
+     * A failure no retry will fix: the database refused the rows themselves (SQLState class 22 data exception,
+     * 23 integrity constraint violation) rather than failing to take them
+     */
+    public static boolean isPermanent(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sql && sql.getSQLState() != null) {
+                String stateClass = sql.getSQLState().substring(0, Math.min(2, sql.getSQLState().length()));
+                if (stateClass.equals("22") || stateClass.equals("23")) {
+                    return true;
+                }
+            }
+            if (cause.getCause() == cause) break;
+        }
+        return false;
+    }
+}
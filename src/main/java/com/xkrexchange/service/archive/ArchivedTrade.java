@@ -0,0 +1,10 @@
+package com.xkrexchange.service.archive;
+
+import java.math.BigDecimal;
+
+/**
+ * One row of the trades table, as kept in the columnar archive
+ */
+public record ArchivedTrade(long tradeId, long buyOrderId, long sellOrderId, long assetId, int quantity,
+                            BigDecimal price, long buyerId, long sellerId, long executedAt) {
+}
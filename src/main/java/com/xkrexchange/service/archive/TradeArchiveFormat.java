@@ -0,0 +1,101 @@
+package com.xkrexchange.service.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * File format of the columnar trade archive (one file per trading day, big-endian)
+ *
+ *   MAGIC (8 bytes)
+ *   row group*           int32 rows, then per column: int64 min, int64 max, int32 blockLength;
+ *                        then the column blocks, in Column order
+ *   footer               int32 groupCount, int64 totalRows, per group: int64 offset,
+ *                        per column: int64 min, int64 max (whole file)
+ *   int64 footerOffset, MAGIC
+ *
+ * Every column is stored as int64 (PRICE in micros, the scale of trades.price; EXECUTED_AT in epoch millis).
+ * A block is the column's values of one row group as deltas from the previous value, zig-zag varint encoded
+ * and deflated: ids and timestamps of a day's trades barely move, so most deltas take one or two bytes before
+ * compression. The min/max stats let a reader skip whole files and row groups, and a scan only inflates the
+ * columns it needs.
+ */
+public final class TradeArchiveFormat {
+
+    static final byte[] MAGIC = { 'X', 'K', 'R', 'T', 'C', 'A', '0', '1' };
+    static final int TRAILER_BYTES = 8 + MAGIC.length;
+    static final int DEFAULT_ROW_GROUP_SIZE = 65_536;
+    static final int PRICE_SCALE = 6;
+
+    public enum Column { ID, BUY_ORDER_ID, SELL_ORDER_ID, ASSET_ID, QUANTITY, PRICE, BUYER_ID, SELLER_ID, EXECUTED_AT }
+
+    static final Column[] COLUMNS = Column.values();
+
+    private TradeArchiveFormat() {
+    }
+
+    // helpers
+
+    static byte[] encode(long[] values, int count) {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(count * 2);
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            long delta = values[i] - previous;
+            previous = values[i];
+            long zigzag = (delta << 1) ^ (delta >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                raw.write((int) ((zigzag & 0x7F) | 0x80));
+                zigzag >>>= 7;
+            }
+            raw.write((int) zigzag);
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(raw.toByteArray());
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.size() / 2 + 64);
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            compressed.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return compressed.toByteArray();
+    }
+
+    static long[] decode(byte[] block, int count) {
+        Inflater inflater = new Inflater();
+        inflater.setInput(block);
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(count * 2);
+        byte[] buffer = new byte[8192];
+        try {
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated trade archive column block");
+                }
+                raw.write(buffer, 0, inflated);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt trade archive column block", e);
+        } finally {
+            inflater.end();
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(raw.toByteArray());
+        long[] values = new long[count];
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes.get();
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            previous += (zigzag >>> 1) ^ -(zigzag & 1);
+            values[i] = previous;
+        }
+        return values;
+    }
+}
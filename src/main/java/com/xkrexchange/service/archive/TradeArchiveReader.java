@@ -0,0 +1,195 @@
+package com.xkrexchange.service.archive;
+
+import com.xkrexchange.service.archive.TradeArchiveFormat.Column;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import static com.xkrexchange.service.archive.TradeArchiveFormat.*;
+
+/**
+ * Reads a columnar trade archive file (see TradeArchiveFormat)
+ *
+ * Key Responsibilities:
+ * 1. Expose the file's row count and per-column min/max, so callers can skip files without scanning
+ * 2. Scan trades of an asset and time range, skipping row groups whose stats rule them out and inflating the
+ *    other columns only for groups with a matching row
+ * 3. Read single columns for aggregate reporting (volumes, VWAPs) without materialising trades
+ */
+public class TradeArchiveReader implements Closeable {
+
+    private final FileChannel channel;
+    private final long totalRows;
+    private final long[] groupOffsets;
+    private final long[] fileMin = new long[COLUMNS.length];
+    private final long[] fileMax = new long[COLUMNS.length];
+
+    public TradeArchiveReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < MAGIC.length + TRAILER_BYTES) {
+                throw new IOException("Not a trade archive (too short): " + path);
+            }
+            ByteBuffer trailer = read(size - TRAILER_BYTES, TRAILER_BYTES);
+            long footerOffset = trailer.getLong();
+            byte[] magic = new byte[MAGIC.length];
+            trailer.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a trade archive (bad magic): " + path);
+            }
+            ByteBuffer footer = read(footerOffset, (int) (size - TRAILER_BYTES - footerOffset));
+            int groupCount = footer.getInt();
+            this.totalRows = footer.getLong();
+            this.groupOffsets = new long[groupCount];
+            for (int g = 0; g < groupCount; g++) {
+                groupOffsets[g] = footer.getLong();
+            }
+            for (int c = 0; c < COLUMNS.length; c++) {
+                fileMin[c] = footer.getLong();
+                fileMax[c] = footer.getLong();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public long getRowCount() {
+        return totalRows;
+    }
+
+    /**
+     * @return smallest value of the column in the file (PRICE in micros, EXECUTED_AT in epoch millis)
+     */
+    public long getMin(Column column) {
+        return fileMin[column.ordinal()];
+    }
+
+    public long getMax(Column column) {
+        return fileMax[column.ordinal()];
+    }
+
+    /**
+     * Visit every trade of the asset (null = all assets) executed in [fromMillis, toMillis), in file order
+     * @return number of trades visited
+     */
+    public long scan(Long assetId, long fromMillis, long toMillis, Consumer<ArchivedTrade> visitor) throws IOException {
+        if (totalRows == 0 || !overlaps(fileMin, fileMax, assetId, fromMillis, toMillis)) {
+            return 0;
+        }
+        long visited = 0;
+        for (long offset : groupOffsets) {
+            RowGroup group = new RowGroup(offset);
+            if (!overlaps(group.min, group.max, assetId, fromMillis, toMillis)) {
+                continue;
+            }
+            long[] assets = group.column(Column.ASSET_ID);
+            long[] times = group.column(Column.EXECUTED_AT);
+            long[][] columns = null;
+            for (int row = 0; row < group.rows; row++) {
+                if ((assetId != null && assets[row] != assetId) || times[row] < fromMillis || times[row] >= toMillis) {
+                    continue;
+                }
+                if (columns == null) {
+                    columns = new long[COLUMNS.length][];
+                    for (Column column : COLUMNS) {
+                        columns[column.ordinal()] = group.column(column);
+                    }
+                }
+                visitor.accept(toTrade(columns, row));
+                visited++;
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * @return every value of the column, in file order
+     */
+    public long[] readColumn(Column column) throws IOException {
+        long[] values = new long[(int) totalRows];
+        int filled = 0;
+        for (long offset : groupOffsets) {
+            RowGroup group = new RowGroup(offset);
+            long[] block = group.column(column);
+            System.arraycopy(block, 0, values, filled, block.length);
+            filled += block.length;
+        }
+        return values;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // helpers
+
+    /**
+     * Stats and block positions of one row group; blocks are read and inflated on demand
+     */
+    private final class RowGroup {
+        final int rows;
+        final long[] min = new long[COLUMNS.length];
+        final long[] max = new long[COLUMNS.length];
+        final long[] blockOffsets = new long[COLUMNS.length];
+        final int[] blockLengths = new int[COLUMNS.length];
+
+        RowGroup(long offset) throws IOException {
+            int headerBytes = 4 + COLUMNS.length * 20;
+            ByteBuffer header = read(offset, headerBytes);
+            rows = header.getInt();
+            long blockOffset = offset + headerBytes;
+            for (int c = 0; c < COLUMNS.length; c++) {
+                min[c] = header.getLong();
+                max[c] = header.getLong();
+                blockLengths[c] = header.getInt();
+                blockOffsets[c] = blockOffset;
+                blockOffset += blockLengths[c];
+            }
+        }
+
+        long[] column(Column column) throws IOException {
+            int c = column.ordinal();
+            return decode(read(blockOffsets[c], blockLengths[c]).array(), rows);
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Trade archive truncated at " + (position + buffer.position()));
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static boolean overlaps(long[] min, long[] max, Long assetId, long fromMillis, long toMillis) {
+        int asset = Column.ASSET_ID.ordinal();
+        int time = Column.EXECUTED_AT.ordinal();
+        if (assetId != null && (assetId < min[asset] || assetId > max[asset])) {
+            return false;
+        }
+        return max[time] >= fromMillis && min[time] < toMillis;
+    }
+
+    private static ArchivedTrade toTrade(long[][] columns, int row) {
+        return new ArchivedTrade(
+            columns[Column.ID.ordinal()][row], columns[Column.BUY_ORDER_ID.ordinal()][row],
+            columns[Column.SELL_ORDER_ID.ordinal()][row], columns[Column.ASSET_ID.ordinal()][row],
+            (int) columns[Column.QUANTITY.ordinal()][row],
+            BigDecimal.valueOf(columns[Column.PRICE.ordinal()][row], PRICE_SCALE),
+            columns[Column.BUYER_ID.ordinal()][row], columns[Column.SELLER_ID.ordinal()][row],
+            columns[Column.EXECUTED_AT.ordinal()][row]);
+    }
+}
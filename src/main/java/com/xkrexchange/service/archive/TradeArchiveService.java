@@ -0,0 +1,301 @@
+package com.xkrexchange.service.archive;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Trade Archive Service - Keeps the live trades table small by rolling closed days out to columnar files
+ *
+ * Key Responsibilities:
+ * 1. Create the daily partitions of trades (PARTITION BY RANGE (executed_at)) ahead of the days they hold, moving
+ *    the day's trades out of the DEFAULT partition (trades_default) if they landed there first
+ * 2. Detach every partition older than trading.archive.hot-days, export it to a compressed columnar file (see
+ *    TradeArchiveFormat), then drop it
+ * 3. Scan the archived days for reporting, without touching PostgreSQL
+ *
+ * The archiver runs on its own thread every trading.archive.check-interval-ms. A partition is detached before it
+ * is exported, so the file holds every row the table will ever have; a late trade of that day lands in the
+ * DEFAULT partition instead. A day's file is written under a temporary name and renamed once complete, and the
+ * table is only dropped after that; a crash in between leaves a detached trades_pYYYYMMDD table, which the next
+ * run finds by name and exports again. Enabled with trading.archive.enabled (PostgreSQL only); without it every
+ * trade goes to the DEFAULT partition.
+ */
+@Service
+@ConditionalOnProperty(name = "trading.archive.enabled", havingValue = "true")
+public class TradeArchiveService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TradeArchiveService.class);
+    private static final DateTimeFormatter PARTITION_DAY = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final String PARTITION_PREFIX = "trades_p";
+    private static final String FILE_PREFIX = "trades-";
+    private static final String FILE_SUFFIX = ".tca";
+
+    static final String SELECT_PARTITIONS =
+        "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid "
+        + "JOIN pg_class p ON p.oid = i.inhparent WHERE p.relname = 'trades'";
+    static final String SELECT_DEFAULT_PARTITION = SELECT_PARTITIONS + " AND pg_get_expr(c.relpartbound, c.oid) = 'DEFAULT'";
+    // attached partitions and the ones detached by a run that crashed before dropping them
+    static final String SELECT_DAY_TABLES = "SELECT relname FROM pg_class WHERE relkind = 'r' AND relname LIKE 'trades_p%'";
+    static final String SELECT_DAY =
+        "SELECT id, buy_order_id, sell_order_id, asset_id, quantity, price, buyer_id, seller_id, executed_at "
+        + "FROM %s WHERE executed_at >= ? AND executed_at < ? ORDER BY executed_at, id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Path directory;
+    private final int hotDays;
+    private final int precreateDays;
+    private final long checkIntervalNanos;
+
+    private volatile boolean isRunning = false;
+    private Thread archiverThread;
+
+    @Autowired
+    public TradeArchiveService(JdbcTemplate jdbcTemplate,
+                               @Value("${trading.archive.directory:data/trade-archive}") String directory,
+                               @Value("${trading.archive.hot-days:7}") int hotDays,
+                               @Value("${trading.archive.precreate-days:3}") int precreateDays,
+                               @Value("${trading.archive.check-interval-ms:3600000}") long checkIntervalMillis) {
+        this(jdbcTemplate, Path.of(directory), hotDays, precreateDays, checkIntervalMillis);
+    }
+
+    public TradeArchiveService(JdbcTemplate jdbcTemplate, Path directory, int hotDays, int precreateDays,
+                               long checkIntervalMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.directory = directory;
+        this.hotDays = hotDays;
+        this.precreateDays = precreateDays;
+        this.checkIntervalNanos = checkIntervalMillis * 1_000_000L;
+    }
+
+    @PostConstruct
+    public void start() {
+        ensurePartitions(LocalDate.now()); // before any trade of today is written
+        isRunning = true;
+        archiverThread = new Thread(this::archiveLoop, "TradeArchiver");
+        archiverThread.setDaemon(true);
+        archiverThread.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        isRunning = false;
+        if (archiverThread != null) {
+            LockSupport.unpark(archiverThread);
+            try {
+                archiverThread.join(30_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // === PARTITIONS ===
+
+    /**
+     * Create the partitions of today and the next precreate-days days, if missing
+     */
+    public void ensurePartitions(LocalDate today) {
+        Set<String> existing = new HashSet<>(jdbcTemplate.queryForList(SELECT_PARTITIONS, String.class));
+        String defaultPartition = jdbcTemplate.queryForList(SELECT_DEFAULT_PARTITION, String.class).stream()
+            .findFirst().orElse(null);
+        for (int i = 0; i <= precreateDays; i++) {
+            LocalDate day = today.plusDays(i);
+            if (!existing.contains(partitionName(day))) {
+                createPartition(day, defaultPartition);
+            }
+        }
+    }
+
+    /**
+     * Detach, export and drop every partition older than hot-days
+     * @return days archived
+     */
+    public List<LocalDate> archiveClosedDays(LocalDate today) throws IOException {
+        LocalDate oldestHot = today.minusDays(hotDays);
+        Set<String> attached = new HashSet<>(jdbcTemplate.queryForList(SELECT_PARTITIONS, String.class));
+        List<LocalDate> archived = new ArrayList<>();
+        for (String partition : jdbcTemplate.queryForList(SELECT_DAY_TABLES, String.class)) {
+            LocalDate day = partitionDay(partition);
+            if (day == null || !day.isBefore(oldestHot)) {
+                continue;
+            }
+            if (attached.contains(partition)) {
+                jdbcTemplate.execute("ALTER TABLE trades DETACH PARTITION " + partition); // no new rows from here on
+            }
+            exportDay(day, partition);
+            jdbcTemplate.execute("DROP TABLE " + partition);
+            logger.info("Archived trades of {} to {} and dropped partition {}", day, archiveFile(day), partition);
+            archived.add(day);
+        }
+        return archived;
+    }
+
+    // === ARCHIVE FILES ===
+
+    /**
+     * Stream the day's trades from the database into its archive file
+     * @return the archive file
+     */
+    public Path exportDay(LocalDate day) throws IOException {
+        return exportDay(day, "trades");
+    }
+
+    private Path exportDay(LocalDate day, String table) throws IOException {
+        Files.createDirectories(directory);
+        Path file = archiveFile(day);
+        Path temporary = directory.resolve(file.getFileName() + ".tmp");
+        long rows;
+        try (TradeArchiveWriter writer = new TradeArchiveWriter(temporary)) {
+            rows = jdbcTemplate.execute((ConnectionCallback<Long>) con -> {
+                boolean autoCommit = con.getAutoCommit();
+                con.setAutoCommit(false); // PostgreSQL only streams with a cursor inside a transaction
+                try (PreparedStatement ps = con.prepareStatement(String.format(SELECT_DAY, table))) {
+                    ps.setFetchSize(10_000);
+                    ps.setTimestamp(1, Timestamp.valueOf(day.atStartOfDay()));
+                    ps.setTimestamp(2, Timestamp.valueOf(day.plusDays(1).atStartOfDay()));
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            writer.append(new ArchivedTrade(
+                                rs.getLong("id"), rs.getLong("buy_order_id"), rs.getLong("sell_order_id"),
+                                rs.getLong("asset_id"), rs.getInt("quantity"), rs.getBigDecimal("price"),
+                                rs.getLong("buyer_id"), rs.getLong("seller_id"), rs.getTimestamp("executed_at").getTime()));
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    con.commit();
+                    con.setAutoCommit(autoCommit);
+                }
+                return writer.getRowCount();
+            });
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        logger.info("Exported {} trades of {} to {}", rows, day, file);
+        return file;
+    }
+
+    /**
+     * Visit the archived trades of the asset (null = all assets) executed between from and to (inclusive days)
+     * @return number of trades visited
+     */
+    public long scan(Long assetId, LocalDate from, LocalDate to, Consumer<ArchivedTrade> visitor) throws IOException {
+        long fromMillis = from.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long toMillis = to.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long visited = 0;
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            Path file = archiveFile(day);
+            if (!Files.exists(file)) {
+                continue;
+            }
+            try (TradeArchiveReader reader = new TradeArchiveReader(file)) {
+                visited += reader.scan(assetId, fromMillis, toMillis, visitor);
+            }
+        }
+        return visited;
+    }
+
+    public Path archiveFile(LocalDate day) {
+        return directory.resolve(FILE_PREFIX + day + FILE_SUFFIX);
+    }
+
+    // helpers
+
+    private void archiveLoop() {
+        while (isRunning) {
+            try {
+                LocalDate today = LocalDate.now();
+                ensurePartitions(today);
+                archiveClosedDays(today);
+            } catch (IOException | RuntimeException e) {
+                logger.error("Trade archival failed, retrying in {} ms", checkIntervalNanos / 1_000_000, e);
+            }
+            LockSupport.parkNanos(checkIntervalNanos);
+        }
+    }
+
+    /**
+     * Create the day's partition as a plain table, move the day's trades from the DEFAULT partition into it and
+     * attach it, in one transaction: a range can't be attached while the DEFAULT partition holds rows of it
+     */
+    private void createPartition(LocalDate day, String defaultPartition) {
+        String partition = partitionName(day);
+        String range = String.format("executed_at >= '%s' AND executed_at < '%s'",
+                                     day.atStartOfDay(), day.plusDays(1).atStartOfDay());
+        jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+            boolean autoCommit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try (Statement statement = con.createStatement()) {
+                if (defaultPartition != null) {
+                    statement.execute("LOCK TABLE " + defaultPartition); // no trade of the day slips in meanwhile
+                }
+                statement.execute(String.format("CREATE TABLE %s (LIKE trades INCLUDING DEFAULTS INCLUDING CONSTRAINTS)",
+                                                partition));
+                if (defaultPartition != null) {
+                    int moved = statement.executeUpdate(String.format(
+                        "WITH moved AS (DELETE FROM %s WHERE %s RETURNING *) INSERT INTO %s SELECT * FROM moved",
+                        defaultPartition, range, partition));
+                    if (moved > 0) {
+                        logger.info("Moved {} trades of {} from {} to {}", moved, day, defaultPartition, partition);
+                    }
+                }
+                statement.execute(String.format("ALTER TABLE trades ATTACH PARTITION %s FOR VALUES FROM ('%s') TO ('%s')",
+                                                partition, day.atStartOfDay(), day.plusDays(1).atStartOfDay()));
+                con.commit();
+            } catch (SQLException | RuntimeException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(autoCommit);
+            }
+            return null;
+        });
+    }
+
+    private static String partitionName(LocalDate day) {
+        return PARTITION_PREFIX + day.format(PARTITION_DAY);
+    }
+
+    /**
+     * @return the day a trades_pYYYYMMDD table holds, null for any other table
+     */
+    private static LocalDate partitionDay(String table) {
+        if (!table.startsWith(PARTITION_PREFIX)) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(table.substring(PARTITION_PREFIX.length()), PARTITION_DAY);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
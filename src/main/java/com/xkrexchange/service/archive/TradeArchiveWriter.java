@@ -0,0 +1,126 @@
+package com.xkrexchange.service.archive;
+
+import com.xkrexchange.service.archive.TradeArchiveFormat.Column;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.xkrexchange.service.archive.TradeArchiveFormat.*;
+
+/**
+ * Streams trades into a columnar archive file (see TradeArchiveFormat), one row group at a time
+ *
+ * Holds at most one row group in memory, so a day of any size can be exported straight from a cursor.
+ * Not thread-safe; the file is complete only once close() has written the footer.
+ */
+public class TradeArchiveWriter implements Closeable {
+
+    private final FileOutputStream file;
+    private final DataOutputStream out;
+    private final int rowGroupSize;
+    private final long[][] group; // [column][row]
+    private final long[] fileMin = new long[COLUMNS.length];
+    private final long[] fileMax = new long[COLUMNS.length];
+    private final List<Long> groupOffsets = new ArrayList<>();
+    private int groupRows = 0;
+    private long totalRows = 0;
+    private long position = 0;
+
+    public TradeArchiveWriter(Path path) throws IOException {
+        this(path, DEFAULT_ROW_GROUP_SIZE);
+    }
+
+    public TradeArchiveWriter(Path path, int rowGroupSize) throws IOException {
+        this.file = new FileOutputStream(path.toFile());
+        this.out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16));
+        this.rowGroupSize = rowGroupSize;
+        this.group = new long[COLUMNS.length][rowGroupSize];
+        Arrays.fill(fileMin, Long.MAX_VALUE);
+        Arrays.fill(fileMax, Long.MIN_VALUE);
+        out.write(MAGIC);
+        position = MAGIC.length;
+    }
+
+    public void append(ArchivedTrade trade) throws IOException {
+        group[Column.ID.ordinal()][groupRows] = trade.tradeId();
+        group[Column.BUY_ORDER_ID.ordinal()][groupRows] = trade.buyOrderId();
+        group[Column.SELL_ORDER_ID.ordinal()][groupRows] = trade.sellOrderId();
+        group[Column.ASSET_ID.ordinal()][groupRows] = trade.assetId();
+        group[Column.QUANTITY.ordinal()][groupRows] = trade.quantity();
+        group[Column.PRICE.ordinal()][groupRows] = trade.price().movePointRight(PRICE_SCALE).longValueExact();
+        group[Column.BUYER_ID.ordinal()][groupRows] = trade.buyerId();
+        group[Column.SELLER_ID.ordinal()][groupRows] = trade.sellerId();
+        group[Column.EXECUTED_AT.ordinal()][groupRows] = trade.executedAt();
+        if (++groupRows == rowGroupSize) {
+            writeGroup();
+        }
+    }
+
+    public long getRowCount() {
+        return totalRows + groupRows;
+    }
+
+    /**
+     * Write the last row group and the footer, and sync the file to disk
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (groupRows > 0) {
+                writeGroup();
+            }
+            long footerOffset = position;
+            out.writeInt(groupOffsets.size());
+            out.writeLong(totalRows);
+            for (long offset : groupOffsets) {
+                out.writeLong(offset);
+            }
+            for (int c = 0; c < COLUMNS.length; c++) {
+                out.writeLong(fileMin[c]);
+                out.writeLong(fileMax[c]);
+            }
+            out.writeLong(footerOffset);
+            out.write(MAGIC);
+            out.flush();
+            file.getFD().sync();
+        } finally {
+            out.close();
+        }
+    }
+
+    // helpers
+
+    private void writeGroup() throws IOException {
+        byte[][] blocks = new byte[COLUMNS.length][];
+        groupOffsets.add(position);
+        out.writeInt(groupRows);
+        for (int c = 0; c < COLUMNS.length; c++) {
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            for (int row = 0; row < groupRows; row++) {
+                min = Math.min(min, group[c][row]);
+                max = Math.max(max, group[c][row]);
+            }
+            fileMin[c] = Math.min(fileMin[c], min);
+            fileMax[c] = Math.max(fileMax[c], max);
+            blocks[c] = encode(group[c], groupRows);
+            out.writeLong(min);
+            out.writeLong(max);
+            out.writeInt(blocks[c].length);
+        }
+        position += 4 + COLUMNS.length * 20L;
+        for (byte[] block : blocks) {
+            out.write(block);
+            position += block.length;
+        }
+        totalRows += groupRows;
+        groupRows = 0;
+    }
+}
@@ -0,0 +1,10 @@
+package com.xkrexchange.service.history;
+
+import java.util.List;
+
+/**
+ * One page of a history query, newest first
+ * @param nextCursor - pass as "before" to get the next (older) page, null on the last page
+ */
+public record HistoryPage<T>(List<T> items, Long nextCursor) {
+}
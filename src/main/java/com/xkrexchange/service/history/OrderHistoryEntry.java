@@ -0,0 +1,21 @@
+package com.xkrexchange.service.history;
+
+import java.math.BigDecimal;
+
+/**
+ * One order as shown in a user's order history (a row of the orders table)
+ * Prices are null where the order type has none; times are epoch millis
+ */
+public record OrderHistoryEntry(long orderId, long userId, long assetId, String orderType, boolean bid, int quantity,
+                                BigDecimal price, BigDecimal stopPrice, String status, int filledQuantity,
+                                long createdAt, long updatedAt) {
+
+    OrderHistoryEntry withStatus(String newStatus, int newFilledQuantity, long now) {
+        return new OrderHistoryEntry(orderId, userId, assetId, orderType, bid, quantity, price, stopPrice,
+                                     newStatus, newFilledQuantity, createdAt, now);
+    }
+
+    boolean closed() {
+        return "FILLED".equals(status) || "REJECTED".equals(status) || "CANCELLED".equals(status);
+    }
+}
@@ -0,0 +1,458 @@
+package com.xkrexchange.service.history;
+
+import com.xkrexchange.common.model.Order;
+import com.xkrexchange.common.model.Price;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * Order History Service - Read model behind users' order and trade history, kept off the write path's database
+ *
+ * Key Responsibilities:
+ * 1. Follow the execution stream (submissions, acceptances, fills, cancels, rejections, trades) into per-user
+ *    indexes of recent orders and trades, kept in memory for trading.history.recent-window-ms
+ * 2. Serve history pages newest first with keyset pagination: a page ends at an id, and the next page is
+ *    everything older than it, so deep pages cost the same as the first one
+ * 3. Read what is older than the in-memory window from a read replica (trading.history.replica.*) through its
+ *    own small connection pool, so heavy history browsing never competes with settlement writes for connections
+ *
+ * Per user and per kind (orders, trades) the in-memory window holds every entry above a floor id; the floor only
+ * rises, as entries age out of the window or past trading.history.max-per-user. A page takes what it can from
+ * memory and continues on the replica strictly below the floor, so the two never overlap. Ids come from
+ * per-class counters, so they rise with time and the newest first order is the id order.
+ * Entries younger than trading.history.min-evict-age-ms are kept past max-per-user: the replica may not have
+ * them yet (write-behind persistence, replication lag), and evicting them would hide them from both sides.
+ * Without trading.history.replica.url history is limited to the in-memory window; the primary is never used.
+ */
+@Service
+public class OrderHistoryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderHistoryService.class);
+    private static final long UNSET = Long.MIN_VALUE;
+
+    static final String SELECT_ORDERS =
+        "SELECT id, user_id, asset_id, order_type, side, quantity, price, stop_price, status, filled_quantity, "
+        + "created_at, updated_at FROM orders WHERE user_id = ? AND id < ? ORDER BY id DESC LIMIT ?";
+    static final String SELECT_ORDER =
+        "SELECT id, user_id, asset_id, order_type, side, quantity, price, stop_price, status, filled_quantity, "
+        + "created_at, updated_at FROM orders WHERE id = ?";
+    private static final String TRADE_COLUMNS =
+        "id, buy_order_id, sell_order_id, asset_id, quantity, price, buyer_id, seller_id, executed_at";
+    // one index range scan per side (buyer_id, id) / (seller_id, id), merged and cut to the page
+    static final String SELECT_TRADES =
+        "SELECT " + TRADE_COLUMNS + " FROM ("
+        + "(SELECT " + TRADE_COLUMNS + " FROM trades WHERE buyer_id = ? AND id < ? ORDER BY id DESC LIMIT ?) UNION "
+        + "(SELECT " + TRADE_COLUMNS + " FROM trades WHERE seller_id = ? AND id < ? ORDER BY id DESC LIMIT ?)"
+        + ") t ORDER BY id DESC LIMIT ?";
+
+    private final JdbcTemplate replica; // null = in-memory window only
+    private final boolean ownsReplicaPool;
+    private final long windowMillis;
+    private final int maxPerUser;
+    private final long minEvictAgeMillis;
+    private final int maxPageSize;
+
+    private final Map<Long, UserHistory> users = new ConcurrentHashMap<>();
+    private final AtomicLong replicaQueries = new AtomicLong();
+
+    private volatile boolean isRunning = false;
+    private Thread janitorThread;
+
+    /**
+     * In-memory window only (no replica)
+     */
+    public OrderHistoryService() {
+        this(null, 3_600_000, 1_000, 60_000, 500);
+    }
+
+    @Autowired
+    public OrderHistoryService(@Value("${trading.history.replica.url:}") String replicaUrl,
+                               @Value("${trading.history.replica.username:}") String username,
+                               @Value("${trading.history.replica.password:}") String password,
+                               @Value("${trading.history.replica.max-connections:4}") int maxConnections,
+                               @Value("${trading.history.query-timeout-ms:2000}") long queryTimeoutMillis,
+                               @Value("${trading.history.recent-window-ms:3600000}") long windowMillis,
+                               @Value("${trading.history.max-per-user:1000}") int maxPerUser,
+                               @Value("${trading.history.min-evict-age-ms:60000}") long minEvictAgeMillis,
+                               @Value("${trading.history.max-page-size:500}") int maxPageSize) {
+        this(replicaPool(replicaUrl, username, password, maxConnections, queryTimeoutMillis), true,
+             windowMillis, maxPerUser, minEvictAgeMillis, maxPageSize);
+    }
+
+    public OrderHistoryService(JdbcTemplate replica, long windowMillis, int maxPerUser, long minEvictAgeMillis,
+                               int maxPageSize) {
+        this(replica, false, windowMillis, maxPerUser, minEvictAgeMillis, maxPageSize);
+    }
+
+    private OrderHistoryService(JdbcTemplate replica, boolean ownsReplicaPool, long windowMillis, int maxPerUser,
+                                long minEvictAgeMillis, int maxPageSize) {
+        this.replica = replica;
+        this.ownsReplicaPool = ownsReplicaPool;
+        this.windowMillis = windowMillis;
+        this.maxPerUser = maxPerUser;
+        this.minEvictAgeMillis = minEvictAgeMillis;
+        this.maxPageSize = maxPageSize;
+    }
+
+    @PostConstruct
+    public void start() {
+        isRunning = true;
+        janitorThread = new Thread(this::janitorLoop, "OrderHistoryJanitor");
+        janitorThread.setDaemon(true);
+        janitorThread.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        isRunning = false;
+        if (janitorThread != null) {
+            LockSupport.unpark(janitorThread);
+            try {
+                janitorThread.join(5_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (ownsReplicaPool && replica != null && replica.getDataSource() instanceof HikariDataSource pool) {
+            pool.close();
+        }
+    }
+
+    // === QUERIES ===
+
+    /**
+     * The user's orders older than beforeOrderId (null = newest), newest first
+     * @param limit - page size, capped at trading.history.max-page-size
+     */
+    public HistoryPage<OrderHistoryEntry> getOrders(long userId, Long beforeOrderId, int limit) {
+        int size = pageSize(limit);
+        long before = beforeOrderId == null ? Long.MAX_VALUE : beforeOrderId;
+        List<OrderHistoryEntry> page = new ArrayList<>(size);
+        UserHistory history = users.get(userId);
+        long replicaBefore = history == null ? before : history.orders.page(before, size, page);
+        if (page.size() < size && replica != null) {
+            replicaQueries.incrementAndGet();
+            page.addAll(replica.query(SELECT_ORDERS, OrderHistoryService::toOrder, userId, replicaBefore,
+                                      size - page.size()));
+        }
+        return toPage(page, size, OrderHistoryEntry::orderId);
+    }
+
+    /**
+     * One order by id, from the user's in-memory window or else the replica (whoever owns it: the caller checks)
+     * @param userId - whose window to look in; orders of other users are only found on the replica
+     * @return null if neither has it
+     */
+    public OrderHistoryEntry getOrder(long userId, long orderId) {
+        UserHistory history = users.get(userId);
+        OrderHistoryEntry entry = history == null ? null : history.orders.get(orderId);
+        if (entry != null || replica == null) {
+            return entry;
+        }
+        replicaQueries.incrementAndGet();
+        List<OrderHistoryEntry> found = replica.query(SELECT_ORDER, OrderHistoryService::toOrder, orderId);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * The trades the user bought or sold older than beforeTradeId (null = newest), newest first
+     * @param limit - page size, capped at trading.history.max-page-size
+     */
+    public HistoryPage<TradeHistoryEntry> getTrades(long userId, Long beforeTradeId, int limit) {
+        int size = pageSize(limit);
+        long before = beforeTradeId == null ? Long.MAX_VALUE : beforeTradeId;
+        List<TradeHistoryEntry> page = new ArrayList<>(size);
+        UserHistory history = users.get(userId);
+        long replicaBefore = history == null ? before : history.trades.page(before, size, page);
+        if (page.size() < size && replica != null) {
+            int missing = size - page.size();
+            replicaQueries.incrementAndGet();
+            page.addAll(replica.query(SELECT_TRADES, OrderHistoryService::toTrade, userId, replicaBefore, missing,
+                                      userId, replicaBefore, missing, missing));
+        }
+        return toPage(page, size, TradeHistoryEntry::tradeId);
+    }
+
+    // === EXECUTION STREAM ===
+
+    /**
+     * Order handed to the matching engine
+     */
+    public void recordSubmitted(Order order) {
+        long now = System.currentTimeMillis();
+        OrderHistoryEntry entry = new OrderHistoryEntry(order.getOrderId(), order.getClientId(),
+            order.getAsset().getAssetId(), order.getOrderType().name(), order.isBid(), order.getQuantity(),
+            value(order.getExecutionPrice()), value(order.getStopPrice()), "PENDING", 0, now, now);
+        users.compute(order.getClientId(), (userId, history) -> {
+            UserHistory updated = history != null ? history : new UserHistory();
+            updated.orders.add(entry.orderId(), entry, maxPerUser, now - minEvictAgeMillis);
+            return updated;
+        });
+    }
+
+    public void onAccepted(long orderId, long userId, int filledQuantity) {
+        updateOrder(orderId, userId, filledQuantity == 0 ? "POSTED" : "PARTIALLY_FILLED", filledQuantity);
+    }
+
+    /**
+     * @param filledQuantity - cumulative filled quantity after this fill
+     */
+    public void onFill(long orderId, long userId, int filledQuantity, int remainingQuantity) {
+        updateOrder(orderId, userId, remainingQuantity == 0 ? "FILLED" : "PARTIALLY_FILLED", filledQuantity);
+    }
+
+    public void onRejected(long orderId, long userId) {
+        updateOrder(orderId, userId, "REJECTED", -1);
+    }
+
+    public void onCancelled(long orderId, long userId, int filledQuantity) {
+        updateOrder(orderId, userId, "CANCELLED", filledQuantity);
+    }
+
+    /**
+     * Trade settled between buyer and seller; it shows in both their histories
+     */
+    public void onTrade(long tradeId, long buyOrderId, long sellOrderId, long assetId, int quantity, BigDecimal price,
+                        long buyerId, long sellerId, long executedAt) {
+        TradeHistoryEntry entry = new TradeHistoryEntry(tradeId, buyOrderId, sellOrderId, assetId, quantity, price,
+                                                        buyerId, sellerId, executedAt);
+        addTrade(buyerId, entry);
+        if (sellerId != buyerId) {
+            addTrade(sellerId, entry);
+        }
+    }
+
+    // === METRICS ===
+
+    public int getUserCount() {
+        return users.size();
+    }
+
+    /**
+     * @return history pages that had to continue on the replica
+     */
+    public long getReplicaQueryCount() {
+        return replicaQueries.get();
+    }
+
+    // helpers
+
+    private void updateOrder(long orderId, long userId, String status, int filledQuantity) {
+        UserHistory history = users.get(userId);
+        if (history == null) {
+            return; // not in the window: the replica has it
+        }
+        long now = System.currentTimeMillis();
+        history.orders.update(orderId, entry -> entry.closed() ? entry
+            : entry.withStatus(status, Math.max(filledQuantity, entry.filledQuantity()), now));
+    }
+
+    private void addTrade(long userId, TradeHistoryEntry entry) {
+        users.compute(userId, (id, history) -> {
+            UserHistory updated = history != null ? history : new UserHistory();
+            updated.trades.add(entry.tradeId(), entry, maxPerUser, System.currentTimeMillis() - minEvictAgeMillis);
+            return updated;
+        });
+    }
+
+    private int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, maxPageSize));
+    }
+
+    private static <T> HistoryPage<T> toPage(List<T> page, int size, ToLongFunction<T> id) {
+        return new HistoryPage<>(page, page.size() < size ? null : id.applyAsLong(page.get(page.size() - 1)));
+    }
+
+    private void janitorLoop() {
+        long intervalNanos = Math.max(windowMillis / 10, 1_000) * 1_000_000L;
+        while (isRunning) {
+            try {
+                evictOlderThan(System.currentTimeMillis() - windowMillis);
+            } catch (RuntimeException e) {
+                logger.error("Order history eviction failed", e);
+            }
+            LockSupport.parkNanos(intervalNanos);
+        }
+    }
+
+    /**
+     * Drop entries older than cutoff from every user's window, and users left with nothing in memory. Windows
+     * over max-per-user are cut back too, as far as their entries are old enough to evict
+     */
+    public void evictOlderThan(long cutoff) {
+        long evictableBefore = System.currentTimeMillis() - minEvictAgeMillis;
+        for (Long userId : users.keySet()) {
+            users.computeIfPresent(userId, (id, history) -> {
+                history.orders.evictOlderThan(cutoff);
+                history.trades.evictOlderThan(cutoff);
+                history.orders.trim(maxPerUser, evictableBefore);
+                history.trades.trim(maxPerUser, evictableBefore);
+                return history.orders.isEmpty() && history.trades.isEmpty() ? null : history;
+            });
+        }
+    }
+
+    private static OrderHistoryEntry toOrder(ResultSet rs, int row) throws SQLException {
+        long createdAt = millis(rs.getTimestamp("created_at"));
+        Timestamp updatedAt = rs.getTimestamp("updated_at");
+        return new OrderHistoryEntry(rs.getLong("id"), rs.getLong("user_id"), rs.getLong("asset_id"),
+            rs.getString("order_type"), "BUY".equals(rs.getString("side")), rs.getInt("quantity"),
+            rs.getBigDecimal("price"), rs.getBigDecimal("stop_price"), rs.getString("status"),
+            rs.getInt("filled_quantity"), createdAt, updatedAt == null ? createdAt : updatedAt.getTime());
+    }
+
+    private static TradeHistoryEntry toTrade(ResultSet rs, int row) throws SQLException {
+        return new TradeHistoryEntry(rs.getLong("id"), rs.getLong("buy_order_id"), rs.getLong("sell_order_id"),
+            rs.getLong("asset_id"), rs.getInt("quantity"), rs.getBigDecimal("price"), rs.getLong("buyer_id"),
+            rs.getLong("seller_id"), millis(rs.getTimestamp("executed_at")));
+    }
+
+    private static long millis(Timestamp timestamp) {
+        return timestamp == null ? 0 : timestamp.getTime();
+    }
+
+    private static BigDecimal value(Price price) {
+        return price == null ? null : price.getValue();
+    }
+
+    /**
+     * Read-only pool of its own: a slow history query waits for one of these connections, never for one of the
+     * write path's. Opened lazily on the first query
+     */
+    private static JdbcTemplate replicaPool(String url, String username, String password, int maxConnections,
+                                            long queryTimeoutMillis) {
+        if (url == null || url.isBlank()) {
+            logger.info("No history replica: order and trade history is limited to the recent window");
+            return null;
+        }
+        HikariDataSource pool = new HikariDataSource();
+        pool.setPoolName("HistoryReplica");
+        pool.setJdbcUrl(url);
+        pool.setUsername(username);
+        pool.setPassword(password);
+        pool.setMaximumPoolSize(maxConnections);
+        pool.setReadOnly(true);
+        pool.setConnectionTimeout(Math.max(250, queryTimeoutMillis));
+        JdbcTemplate template = new JdbcTemplate(pool);
+        template.setQueryTimeout((int) Math.max(1, queryTimeoutMillis / 1000));
+        return template;
+    }
+
+    /**
+     * One user's in-memory windows
+     */
+    private static final class UserHistory {
+        final Window<OrderHistoryEntry> orders = new Window<>(OrderHistoryEntry::createdAt);
+        final Window<TradeHistoryEntry> trades = new Window<>(TradeHistoryEntry::executedAt);
+    }
+
+    /**
+     * Entries of one kind above a rising floor id, sorted by id
+     */
+    private static final class Window<T> {
+        private final ConcurrentSkipListMap<Long, T> entries = new ConcurrentSkipListMap<>();
+        private final AtomicInteger size = new AtomicInteger(); // ConcurrentSkipListMap.size() walks the map
+        private final AtomicLong floor = new AtomicLong(UNSET);
+        private final ToLongFunction<T> time;
+
+        Window(ToLongFunction<T> time) {
+            this.time = time;
+        }
+
+        /**
+         * @param evictableBefore - entries past maxEntries are only evicted if older than this
+         */
+        void add(long id, T entry, int maxEntries, long evictableBefore) {
+            floor.compareAndSet(UNSET, id - 1); // everything before the first entry is the replica's
+            if (id <= floor.get()) {
+                return; // arrived after its place in the window was given up
+            }
+            if (entries.putIfAbsent(id, entry) == null) {
+                size.incrementAndGet();
+                trim(maxEntries, evictableBefore);
+            }
+        }
+
+        T get(long id) {
+            return entries.get(id);
+        }
+
+        void update(long id, UnaryOperator<T> change) {
+            entries.computeIfPresent(id, (key, entry) -> change.apply(entry));
+        }
+
+        void evictOlderThan(long cutoff) {
+            Map.Entry<Long, T> oldest;
+            while ((oldest = entries.firstEntry()) != null && time.applyAsLong(oldest.getValue()) < cutoff) {
+                evictOldest();
+            }
+        }
+
+        /**
+         * Evict the oldest entries past maxEntries, stopping at the first one not older than evictableBefore
+         */
+        void trim(int maxEntries, long evictableBefore) {
+            Map.Entry<Long, T> oldest;
+            while (size.get() > maxEntries && (oldest = entries.firstEntry()) != null
+                   && time.applyAsLong(oldest.getValue()) < evictableBefore) {
+                evictOldest();
+            }
+        }
+
+        boolean isEmpty() {
+            return entries.isEmpty();
+        }
+
+        /**
+         * Add up to limit entries below before to out, newest first
+         * @return where the replica has to continue: below the floor, or below before if that is lower
+         */
+        long page(long before, int limit, List<T> out) {
+            List<Map.Entry<Long, T>> found = new ArrayList<>(limit);
+            for (Map.Entry<Long, T> entry : entries.headMap(before, false).descendingMap().entrySet()) {
+                if (found.size() == limit) break;
+                found.add(entry);
+            }
+            long currentFloor = floor.get(); // read after the entries: anything evicted meanwhile is below it
+            if (currentFloor == UNSET) {
+                return before;
+            }
+            for (Map.Entry<Long, T> entry : found) {
+                if (entry.getKey() > currentFloor) {
+                    out.add(entry.getValue());
+                }
+            }
+            return Math.min(before, currentFloor + 1);
+        }
+
+        private void evictOldest() {
+            Map.Entry<Long, T> oldest = entries.pollFirstEntry();
+            if (oldest != null) {
+                size.decrementAndGet();
+                floor.accumulateAndGet(oldest.getKey(), Math::max);
+            }
+        }
+    }
+}
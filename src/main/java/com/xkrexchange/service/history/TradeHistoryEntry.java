@@ -0,0 +1,10 @@
+package com.xkrexchange.service.history;
+
+import java.math.BigDecimal;
+
+/**
+ * One trade as shown in the trade history of its buyer and its seller (a row of the trades table)
+ */
+public record TradeHistoryEntry(long tradeId, long buyOrderId, long sellOrderId, long assetId, int quantity,
+                                BigDecimal price, long buyerId, long sellerId, long executedAt) {
+}
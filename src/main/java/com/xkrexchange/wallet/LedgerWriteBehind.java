@@ -0,0 +1,378 @@
+package com.xkrexchange.wallet;
+
+import com.xkrexchange.service.SqlFailures;
+import com.xkrexchange.wallet.WalletLedger.JournalEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Persists the WalletLedger journal to PostgreSQL off the order path
+ *
+ * Key Responsibilities:
+ * 1. Load user_balances into the ledger at startup, and the most recently settled trade ids so trades settled
+ *    before the restart are not settled again
+ * 2. Drain the journal in batches into ledger_journal (one JDBC batch and one transaction per drain)
+ * 3. Write the latest balance of every (user, asset) touched by the batch to user_balances
+ * 4. Write the per-trade audit records of settled trades to settlement_trades
+ * 5. Expose a durable watermark (audit records persisted so far, see awaitPersisted) so consumers only commit
+ *    settlements that are in the database
+ * 6. Quarantine a poison batch: one the database rejects for its content (SQLState class 22 or 23, see
+ *    SqlFailures) MAX_POISON_ATTEMPTS times in a row is written to a file in the quarantine directory and
+ *    skipped, so it no longer holds back every ledger change behind it
+ *
+ * Each batch (journal entries, balances and trade audit records) is written in one transaction, and a batch
+ * that carries trades also carries every journal entry applied before them, so a trade in settlement_trades
+ * always has its balance changes persisted with or before it.
+ *
+ * Balances and reservations never wait for this thread. A batch that fails to write is retried as it is, before
+ * anything newer, so the database only ever lags the ledger and never skips a change it can take; a quarantined
+ * batch's trades count as persisted so their consumers move on, and the next batch touching the same balances
+ * writes their latest values again. Without a JdbcTemplate
+ * (no datasource configured) the journal is drained and dropped, and the ledger is memory-only.
+ */
+public class LedgerWriteBehind {
+
+    private static final Logger logger = LoggerFactory.getLogger(LedgerWriteBehind.class);
+    private static final long RETRY_BACKOFF_NANOS = 1_000_000_000L;
+    static final int MAX_POISON_ATTEMPTS = 3;
+
+    static final String INSERT_JOURNAL =
+        "INSERT INTO ledger_journal (user_id, asset_id, entry_type, order_id, available_delta, reserved_delta, created_at) "
+        + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    static final String UPDATE_BALANCE =
+        "UPDATE user_balances SET available_balance = ?, reserved_balance = ?, updated_at = ? "
+        + "WHERE user_id = ? AND asset_id IS NOT DISTINCT FROM ?";
+    static final String INSERT_BALANCE =
+        "INSERT INTO user_balances (user_id, asset_id, available_balance, reserved_balance, updated_at) VALUES (?, ?, ?, ?, ?)";
+    static final String INSERT_TRADE =
+        "INSERT INTO settlement_trades (trade_id, buyer_user_id, seller_user_id, asset_id, quantity, price, trade_value, "
+        + "buy_order_id, sell_order_id, settled_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    static final String SELECT_BALANCES =
+        "SELECT user_id, asset_id, available_balance, reserved_balance FROM user_balances";
+    static final String SELECT_RECENT_TRADES =
+        "SELECT trade_id, buyer_user_id, seller_user_id FROM settlement_trades WHERE trade_id IS NOT NULL "
+        + "ORDER BY id DESC LIMIT ?";
+
+    private final WalletLedger ledger;
+    private final JdbcTemplate jdbcTemplate; // null = memory-only
+    private final long flushIntervalNanos;
+    private final int batchSize;
+    private final Path quarantineDirectory;
+    private int poisonAttempts = 0; // permanent rejections of the current batch in a row, writer thread only
+    private final AtomicLong quarantinedBatches = new AtomicLong();
+
+    private volatile boolean isRunning = false;
+    private Thread writerThread;
+
+    // === DURABLE WATERMARK ===
+    private final AtomicLong persistedTrades = new AtomicLong();
+    private final Queue<Watermark> waiters = new ConcurrentLinkedQueue<>();
+
+    public LedgerWriteBehind(WalletLedger ledger, JdbcTemplate jdbcTemplate, long flushIntervalMillis, int batchSize,
+                             Path quarantineDirectory) {
+        this.ledger = ledger;
+        this.jdbcTemplate = jdbcTemplate;
+        this.flushIntervalNanos = flushIntervalMillis * 1_000_000L;
+        this.batchSize = batchSize;
+        this.quarantineDirectory = quarantineDirectory;
+    }
+
+    /**
+     * Credit every persisted balance into the ledger; reservations of open orders are returned to the
+     * available bucket since open orders do not survive a restart
+     * @return number of balances loaded
+     */
+    public int loadBalances() {
+        if (jdbcTemplate == null) {
+            logger.info("No datasource: wallet ledger is memory-only");
+            return 0;
+        }
+        List<long[]> balances = jdbcTemplate.query(SELECT_BALANCES, (rs, row) -> {
+            Object assetId = rs.getObject("asset_id");
+            long asset = assetId == null ? WalletLedger.CASH : ((Number) assetId).longValue();
+            BigDecimal total = rs.getBigDecimal("available_balance").add(rs.getBigDecimal("reserved_balance"));
+            return new long[] { rs.getLong("user_id"), asset, toUnits(asset, total) };
+        });
+        for (long[] balance : balances) {
+            ledger.credit(balance[0], balance[1], balance[2], WalletLedger.DEPOSIT);
+        }
+        ledger.drainJournal(balances.size()); // already persisted, don't write the load back
+        List<long[]> settled = jdbcTemplate.query(SELECT_RECENT_TRADES, (rs, row) -> new long[] {
+            rs.getLong("trade_id"), rs.getLong("buyer_user_id"), rs.getLong("seller_user_id") },
+            WalletLedger.SETTLED_TRADE_WINDOW);
+        ledger.markSettled(settled);
+        logger.info("Loaded {} balances and {} settled trade ids into the wallet ledger", balances.size(), settled.size());
+        return balances.size();
+    }
+
+    public void start() {
+        isRunning = true;
+        writerThread = new Thread(this::writeLoop, "LedgerWriteBehind");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Stop the writer after it has flushed whatever is left in the journal
+     */
+    public void stop() {
+        isRunning = false;
+        if (writerThread != null) {
+            LockSupport.unpark(writerThread);
+            try {
+                writerThread.join(10_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        IllegalStateException stopped = new IllegalStateException("Ledger write-behind stopped");
+        waiters.forEach(waiter -> waiter.done.completeExceptionally(stopped));
+    }
+
+    /**
+     * @param tradeCount - a WalletLedger.getAuditedTradeCount() value
+     * @return future completed once that many audit records (and every journal entry before them) are committed;
+     *         right away when memory-only
+     */
+    public CompletableFuture<Void> awaitPersisted(long tradeCount) {
+        if (jdbcTemplate == null || persistedTrades.get() >= tradeCount) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (!isRunning) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Ledger write-behind is not running"));
+        }
+        Watermark waiter = new Watermark(tradeCount, new CompletableFuture<>());
+        waiters.add(waiter);
+        if (persistedTrades.get() >= tradeCount) {
+            waiter.done.complete(null); // persisted while registering
+        }
+        LockSupport.unpark(writerThread); // someone is waiting: don't sit out the flush interval
+        return waiter.done;
+    }
+
+    public long getPersistedTradeCount() {
+        return persistedTrades.get();
+    }
+
+    /**
+     * @return batches the database kept rejecting, written to the quarantine directory instead
+     */
+    public long getQuarantinedBatchCount() {
+        return quarantinedBatches.get();
+    }
+
+    // helpers
+
+    private void writeLoop() {
+        List<JournalEntry> batch = List.of();
+        List<TradeSettlement> trades = List.of();
+        while (true) {
+            if (batch.isEmpty() && trades.isEmpty()) {
+                // trades first: their journal entries were appended before them, so the drain below includes them
+                trades = ledger.drainSettledTrades(batchSize);
+                batch = ledger.drainJournal(trades.isEmpty() ? batchSize : Integer.MAX_VALUE);
+            }
+            if (batch.isEmpty() && trades.isEmpty()) {
+                if (!isRunning) return;
+                LockSupport.parkNanos(flushIntervalNanos);
+                continue;
+            }
+            try {
+                write(batch, trades);
+                poisonAttempts = 0;
+                advanceWatermark(trades.size());
+                batch = List.of();
+                trades = List.of();
+            } catch (RuntimeException e) {
+                boolean permanent = SqlFailures.isPermanent(e);
+                poisonAttempts = permanent ? poisonAttempts + 1 : 0;
+                if (poisonAttempts >= MAX_POISON_ATTEMPTS) {
+                    logger.error("Database rejected {} ledger entries and {} trades {} times, quarantining them; they "
+                                 + "are NOT in the database", batch.size(), trades.size(), poisonAttempts, e);
+                    quarantine(batch, trades);
+                    advanceWatermark(trades.size());
+                    batch = List.of();
+                    trades = List.of();
+                    continue;
+                }
+                logger.error("Failed to persist {} ledger entries and {} trades, retrying", batch.size(), trades.size(), e);
+                if (!isRunning) {
+                    logger.error("Shutting down with {} unpersisted ledger entries",
+                                 batch.size() + ledger.getJournalBacklog());
+                    return;
+                }
+                LockSupport.parkNanos(RETRY_BACKOFF_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Keep the rejected batch in the quarantine directory, one line per trade and journal entry, for repair by hand
+     */
+    private void quarantine(List<JournalEntry> batch, List<TradeSettlement> trades) {
+        poisonAttempts = 0;
+        long batchNumber = quarantinedBatches.incrementAndGet();
+        List<String> lines = new ArrayList<>(trades.size() + batch.size());
+        trades.forEach(trade -> lines.add(trade.toString()));
+        batch.forEach(entry -> lines.add(entry.toString()));
+        Path file = quarantineDirectory.resolve(String.format("ledger-%d-%d.txt", System.currentTimeMillis(), batchNumber));
+        try {
+            Files.createDirectories(quarantineDirectory);
+            Files.write(file, lines);
+        } catch (IOException e) {
+            logger.error("Could not write quarantined ledger batch to {}: {}", file, lines, e);
+        }
+    }
+
+    private void advanceWatermark(int trades) {
+        long persisted = persistedTrades.addAndGet(trades);
+        for (Iterator<Watermark> it = waiters.iterator(); it.hasNext(); ) {
+            Watermark waiter = it.next();
+            if (waiter.tradeCount <= persisted) {
+                waiter.done.complete(null);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Write the trades' audit records, the journal entries and the resulting balances, all or nothing
+     */
+    void write(List<JournalEntry> batch, List<TradeSettlement> trades) {
+        if (jdbcTemplate == null) {
+            return;
+        }
+        Map<List<Long>, JournalEntry> latest = new LinkedHashMap<>(); // (user, asset) -> last entry of the batch
+        for (JournalEntry entry : batch) {
+            latest.put(List.of(entry.getUserId(), entry.getAssetId()), entry);
+        }
+        List<JournalEntry> balances = new ArrayList<>(latest.values());
+        jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+            boolean autoCommit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try {
+                insertTrades(con, trades);
+                insertJournal(con, batch);
+                writeBalances(con, balances);
+                con.commit();
+            } catch (SQLException | RuntimeException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(autoCommit);
+            }
+            return null;
+        });
+    }
+
+    private static void insertTrades(Connection con, List<TradeSettlement> trades) throws SQLException {
+        if (trades.isEmpty()) return;
+        try (PreparedStatement ps = con.prepareStatement(INSERT_TRADE)) {
+            for (TradeSettlement trade : trades) {
+                ps.setObject(1, trade.getTradeId(), Types.BIGINT);
+                ps.setLong(2, trade.getBuyerUserId());
+                ps.setLong(3, trade.getSellerUserId());
+                ps.setLong(4, trade.getAssetId());
+                ps.setInt(5, trade.getQuantity());
+                ps.setBigDecimal(6, trade.getPrice());
+                ps.setBigDecimal(7, toDecimal(WalletLedger.CASH, trade.getTradeValue()));
+                ps.setLong(8, trade.getBuyOrderId());
+                ps.setLong(9, trade.getSellOrderId());
+                ps.setTimestamp(10, new Timestamp(trade.getTimestamp()));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private static void insertJournal(Connection con, List<JournalEntry> batch) throws SQLException {
+        if (batch.isEmpty()) return;
+        try (PreparedStatement ps = con.prepareStatement(INSERT_JOURNAL)) {
+            for (JournalEntry entry : batch) {
+                ps.setLong(1, entry.getUserId());
+                ps.setObject(2, assetColumn(entry.getAssetId()), Types.BIGINT);
+                ps.setString(3, entry.getType());
+                ps.setObject(4, entry.getOrderId() == 0 ? null : entry.getOrderId(), Types.BIGINT);
+                ps.setBigDecimal(5, toDecimal(entry.getAssetId(), entry.getAvailableDelta()));
+                ps.setBigDecimal(6, toDecimal(entry.getAssetId(), entry.getReservedDelta()));
+                ps.setTimestamp(7, new Timestamp(entry.getTimestamp()));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Update every balance the batch touched to its latest value, inserting the ones not in user_balances yet
+     */
+    private static void writeBalances(Connection con, List<JournalEntry> balances) throws SQLException {
+        if (balances.isEmpty()) return;
+        int[] updated;
+        try (PreparedStatement ps = con.prepareStatement(UPDATE_BALANCE)) {
+            for (JournalEntry entry : balances) {
+                ps.setBigDecimal(1, toDecimal(entry.getAssetId(), entry.getAvailableAfter()));
+                ps.setBigDecimal(2, toDecimal(entry.getAssetId(), entry.getReservedAfter()));
+                ps.setTimestamp(3, new Timestamp(entry.getTimestamp()));
+                ps.setLong(4, entry.getUserId());
+                ps.setObject(5, assetColumn(entry.getAssetId()), Types.BIGINT);
+                ps.addBatch();
+            }
+            updated = ps.executeBatch();
+        }
+        try (PreparedStatement ps = con.prepareStatement(INSERT_BALANCE)) {
+            boolean any = false;
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] == 0) {
+                    JournalEntry entry = balances.get(i);
+                    ps.setLong(1, entry.getUserId());
+                    ps.setObject(2, assetColumn(entry.getAssetId()), Types.BIGINT);
+                    ps.setBigDecimal(3, toDecimal(entry.getAssetId(), entry.getAvailableAfter()));
+                    ps.setBigDecimal(4, toDecimal(entry.getAssetId(), entry.getReservedAfter()));
+                    ps.setTimestamp(5, new Timestamp(entry.getTimestamp()));
+                    ps.addBatch();
+                    any = true;
+                }
+            }
+            if (any) {
+                ps.executeBatch();
+            }
+        }
+    }
+
+    private static Long assetColumn(long assetId) {
+        return assetId == WalletLedger.CASH ? null : assetId; // user_balances keeps cash under a NULL asset
+    }
+
+    static BigDecimal toDecimal(long assetId, long units) {
+        return assetId == WalletLedger.CASH ? BigDecimal.valueOf(units, WalletLedger.CASH_SCALE) : BigDecimal.valueOf(units);
+    }
+
+    static long toUnits(long assetId, BigDecimal amount) {
+        return assetId == WalletLedger.CASH ? amount.movePointRight(WalletLedger.CASH_SCALE).longValue() : amount.longValue();
+    }
+
+    private record Watermark(long tradeCount, CompletableFuture<Void> done) {
+    }
+}
@@ -0,0 +1,173 @@
+package com.xkrexchange.wallet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Open reservations of the users of one WalletLedger shard, indexed by order and by user, with expiry deadlines
+ * kept in a hashed timing wheel
+ *
+ * Key Responsibilities:
+ * 1. Find an order's reservation, or all of a user's reservations, in O(1)
+ * 2. Arm / re-arm / disarm a reservation's deadline in O(1)
+ * 3. Hand back the reservations whose deadline has passed, touching only the wheel slots that came due
+ *    (never a scan of every open reservation)
+ *
+ * The wheel has WHEEL_SIZE slots of tickMillis each; a reservation due further out than one revolution waits in
+ * its slot until the revolution it belongs to. Slots are intrusive doubly-linked lists, so disarming unlinks
+ * in place. Not thread-safe: owned by the shard's thread like the rest of the shard state.
+ */
+final class ReservationStore {
+
+    static final int WHEEL_SIZE = 512; // power of two
+    static final long NOT_ARMED = Long.MIN_VALUE;
+
+    private final Map<Long, Reservation> byOrder = new HashMap<>();
+    private final Map<Long, Map<Long, Reservation>> byUser = new HashMap<>(); // userId -> orderId -> reservation
+    private final Reservation[] wheel = new Reservation[WHEEL_SIZE]; // slot heads
+    private final long tickMillis;
+    private long currentTick = -1; // last tick expired, -1 before the first advance
+    private int armed;
+
+    ReservationStore(long tickMillis) {
+        this.tickMillis = Math.max(1, tickMillis);
+    }
+
+    // === INDEX ===
+
+    Reservation get(long orderId) {
+        return byOrder.get(orderId);
+    }
+
+    Reservation add(long userId, long orderId, long assetId, long units) {
+        Reservation reservation = new Reservation(userId, orderId, assetId, units);
+        byOrder.put(orderId, reservation);
+        byUser.computeIfAbsent(userId, id -> new LinkedHashMap<>()).put(orderId, reservation);
+        return reservation;
+    }
+
+    /**
+     * Drop the reservation from both indexes and the wheel
+     * @return the removed reservation, null if there was none
+     */
+    Reservation remove(long orderId) {
+        Reservation reservation = byOrder.remove(orderId);
+        if (reservation == null) {
+            return null;
+        }
+        Map<Long, Reservation> userReservations = byUser.get(reservation.userId);
+        userReservations.remove(orderId);
+        if (userReservations.isEmpty()) {
+            byUser.remove(reservation.userId);
+        }
+        disarm(reservation);
+        return reservation;
+    }
+
+    /**
+     * @return open reservations of the user, in the order they were made
+     */
+    List<Reservation> forUser(long userId) {
+        Map<Long, Reservation> userReservations = byUser.get(userId);
+        return userReservations == null ? List.of() : new ArrayList<>(userReservations.values());
+    }
+
+    int size() {
+        return byOrder.size();
+    }
+
+    // === DEADLINES ===
+
+    /**
+     * (Re-)arm the reservation to expire at deadlineMillis
+     */
+    void arm(Reservation reservation, long deadlineMillis) {
+        disarm(reservation);
+        long tick = Math.max(ceilDiv(deadlineMillis, tickMillis), currentTick + 1); // never into a slot already passed
+        reservation.deadlineTick = tick;
+        int slot = (int) (tick & (WHEEL_SIZE - 1));
+        reservation.next = wheel[slot];
+        if (wheel[slot] != null) {
+            wheel[slot].prev = reservation;
+        }
+        wheel[slot] = reservation;
+        armed++;
+    }
+
+    void disarm(Reservation reservation) {
+        if (reservation.deadlineTick == NOT_ARMED) {
+            return;
+        }
+        int slot = (int) (reservation.deadlineTick & (WHEEL_SIZE - 1));
+        if (reservation.prev != null) {
+            reservation.prev.next = reservation.next;
+        } else {
+            wheel[slot] = reservation.next;
+        }
+        if (reservation.next != null) {
+            reservation.next.prev = reservation.prev;
+        }
+        reservation.prev = null;
+        reservation.next = null;
+        reservation.deadlineTick = NOT_ARMED;
+        armed--;
+    }
+
+    /**
+     * Advance the wheel to nowMillis and remove every reservation that is due
+     * @return the expired reservations, already removed from the store
+     */
+    List<Reservation> expire(long nowMillis) {
+        long nowTick = Math.floorDiv(nowMillis, tickMillis);
+        if (currentTick < 0) {
+            currentTick = nowTick - WHEEL_SIZE; // first advance: every slot may hold something due
+        }
+        List<Reservation> expired = new ArrayList<>();
+        // a full revolution visits every slot once, so never walk more than that
+        for (long tick = Math.max(currentTick + 1, nowTick - WHEEL_SIZE + 1); tick <= nowTick && armed > 0; tick++) {
+            Reservation reservation = wheel[(int) (tick & (WHEEL_SIZE - 1))];
+            while (reservation != null) {
+                Reservation next = reservation.next;
+                if (reservation.deadlineTick <= nowTick) {
+                    remove(reservation.orderId);
+                    expired.add(reservation);
+                }
+                reservation = next;
+            }
+        }
+        currentTick = Math.max(currentTick, nowTick);
+        return expired;
+    }
+
+    // helpers
+
+    private static long ceilDiv(long value, long divisor) {
+        return -Math.floorDiv(-value, divisor);
+    }
+
+    /**
+     * Funds held for one order: a single bucket (cash for a buy, the asset for a sell), shrunk by each fill
+     */
+    static final class Reservation {
+        final long userId;
+        final long orderId;
+        final long assetId;
+        long remaining;
+        boolean closing; // order closed, deadline is the settlement timeout
+
+        // wheel links
+        long deadlineTick = NOT_ARMED;
+        Reservation prev;
+        Reservation next;
+
+        Reservation(long userId, long orderId, long assetId, long remaining) {
+            this.userId = userId;
+            this.orderId = orderId;
+            this.assetId = assetId;
+            this.remaining = remaining;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.xkrexchange.wallet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Collects trades over a short window and settles them on the WalletLedger as one netted batch
+ *
+ * Key Responsibilities:
+ * 1. Accept trades and end-of-order releases from the settlement consumers without blocking them
+ * 2. Close a batch when the window has elapsed, the batch is full, or someone waits for it (flush)
+ * 3. Settle the batch's trades (netted per user and asset, see WalletLedger.settle), THEN release the
+ *    reservations of orders that closed in the batch, so a filled order's leftover is only returned once
+ *    its fills have been paid for
+ *
+ * A single batcher thread applies batches in arrival order. A batch the ledger fails to settle is kept and
+ * settled again at the head of the next batch (after RETRY_BACKOFF), never dropped: its flushes fail so the
+ * callers don't commit it, and WalletLedger.settle skips the trades that did get applied before the failure.
+ */
+public class SettlementBatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(SettlementBatcher.class);
+    private static final long IDLE_PARK_NANOS = 100_000;
+    private static final long RETRY_BACKOFF_NANOS = 100_000_000L;
+
+    private final WalletLedger ledger;
+    private final long windowNanos;
+    private final int maxBatchSize;
+
+    private final Queue<Object> pending = new ConcurrentLinkedQueue<>(); // TradeSettlement | Release | Flush
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicInteger pendingFlushes = new AtomicInteger();
+    private volatile Batch failed; // last batch the ledger rejected, settled again before anything newer
+    private volatile boolean isRunning = false;
+    private Thread batcherThread;
+
+    // === METRICS ===
+    private final AtomicLong settledTrades = new AtomicLong();
+    private final AtomicLong settledBatches = new AtomicLong();
+
+    public SettlementBatcher(WalletLedger ledger, long windowMillis, int maxBatchSize) {
+        this.ledger = ledger;
+        this.windowNanos = windowMillis * 1_000_000L;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public void start() {
+        isRunning = true;
+        batcherThread = new Thread(this::batchLoop, "SettlementBatcher");
+        batcherThread.setDaemon(true);
+        batcherThread.start();
+    }
+
+    /**
+     * Stop after settling everything already submitted
+     */
+    public void stop() {
+        isRunning = false;
+        if (batcherThread != null) {
+            LockSupport.unpark(batcherThread);
+            try {
+                batcherThread.join(5_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // === SUBMISSION ===
+
+    public void submit(TradeSettlement trade) {
+        pending.add(trade);
+        pendingCount.incrementAndGet();
+    }
+
+    /**
+     * Release the order's remaining reservation after every trade submitted before it is settled
+     */
+    public void submitRelease(long orderId) {
+        pending.add(new Release(orderId));
+        pendingCount.incrementAndGet();
+    }
+
+    /**
+     * @return future completed once everything submitted before this call is applied to the ledger
+     */
+    public CompletableFuture<Void> flush() {
+        Flush flush = new Flush();
+        pendingFlushes.incrementAndGet();
+        pending.add(flush);
+        pendingCount.incrementAndGet();
+        if (!isRunning) {
+            while (!flush.done.isDone()) {
+                drainAndApply(); // not started (tests, shutdown): apply on the caller's thread
+            }
+        } else {
+            LockSupport.unpark(batcherThread);
+        }
+        return flush.done;
+    }
+
+    public long getSettledTradeCount() {
+        return settledTrades.get();
+    }
+
+    public long getSettledBatchCount() {
+        return settledBatches.get();
+    }
+
+    // helpers
+
+    private void batchLoop() {
+        while (isRunning || pendingCount.get() > 0) {
+            if (failed != null) {
+                LockSupport.parkNanos(RETRY_BACKOFF_NANOS);
+                drainAndApply();
+                continue;
+            }
+            if (pendingCount.get() == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            // first item arrived: give the window a chance to fill unless a flush is already waiting
+            long deadline = System.nanoTime() + windowNanos;
+            while (isRunning && pendingCount.get() < maxBatchSize && pendingFlushes.get() == 0
+                   && System.nanoTime() < deadline) {
+                LockSupport.parkNanos(Math.min(IDLE_PARK_NANOS, Math.max(1, deadline - System.nanoTime())));
+            }
+            drainAndApply();
+        }
+        if (failed != null) {
+            logger.error("Stopping with {} trades and {} releases that could not be settled",
+                         failed.trades.size(), failed.releases.size());
+        }
+    }
+
+    private synchronized void drainAndApply() {
+        Batch retry = failed;
+        List<TradeSettlement> trades = retry == null ? new ArrayList<>() : retry.trades;
+        List<Long> releases = retry == null ? new ArrayList<>() : retry.releases;
+        List<Flush> flushes = new ArrayList<>();
+        Object item;
+        while (trades.size() < maxBatchSize && (item = pending.poll()) != null) {
+            pendingCount.decrementAndGet();
+            if (item instanceof TradeSettlement trade) {
+                trades.add(trade);
+            } else if (item instanceof Release release) {
+                releases.add(release.orderId);
+            } else if (item instanceof Flush flush) {
+                flushes.add(flush);
+                pendingFlushes.decrementAndGet();
+                break; // close the batch at the flush point
+            }
+        }
+
+        try {
+            ledger.settle(trades);
+            for (long orderId : releases) {
+                ledger.release(orderId);
+            }
+            if (!trades.isEmpty()) {
+                settledTrades.addAndGet(trades.size());
+                settledBatches.incrementAndGet();
+            }
+            failed = null;
+            flushes.forEach(flush -> flush.done.complete(null));
+        } catch (RuntimeException e) {
+            logger.error("Failed to settle batch of {} trades and {} releases, retrying", trades.size(), releases.size(), e);
+            failed = new Batch(trades, releases);
+            flushes.forEach(flush -> flush.done.completeExceptionally(e));
+        }
+    }
+
+    private record Release(long orderId) {
+    }
+
+    private record Batch(List<TradeSettlement> trades, List<Long> releases) {
+    }
+
+    private static final class Flush {
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+    }
+}
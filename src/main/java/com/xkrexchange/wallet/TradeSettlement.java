@@ -0,0 +1,53 @@
+package com.xkrexchange.wallet;
+
+import java.math.BigDecimal;
+
+/**
+ * One trade to settle: the buyer pays tradeValue out of the buy order's cash reservation and receives the shares,
+ * the seller delivers the shares out of the sell order's reservation and receives tradeValue
+ *
+ * Also the per-trade audit record persisted next to the netted ledger entries.
+ */
+public final class TradeSettlement {
+    private final Long tradeId;
+    private final long buyerUserId;
+    private final long sellerUserId;
+    private final long assetId;
+    private final int quantity;
+    private final BigDecimal price;
+    private final long tradeValue; // cash units (10^-WalletLedger.CASH_SCALE)
+    private final long buyOrderId;
+    private final long sellOrderId;
+    private final long timestamp;
+
+    public TradeSettlement(Long tradeId, long buyerUserId, long sellerUserId, long assetId, int quantity,
+                           BigDecimal price, long tradeValue, long buyOrderId, long sellOrderId) {
+        this.tradeId = tradeId;
+        this.buyerUserId = buyerUserId;
+        this.sellerUserId = sellerUserId;
+        this.assetId = assetId;
+        this.quantity = quantity;
+        this.price = price;
+        this.tradeValue = tradeValue;
+        this.buyOrderId = buyOrderId;
+        this.sellOrderId = sellOrderId;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    public Long getTradeId() { return tradeId; }
+    public long getBuyerUserId() { return buyerUserId; }
+    public long getSellerUserId() { return sellerUserId; }
+    public long getAssetId() { return assetId; }
+    public int getQuantity() { return quantity; }
+    public BigDecimal getPrice() { return price; }
+    public long getTradeValue() { return tradeValue; }
+    public long getBuyOrderId() { return buyOrderId; }
+    public long getSellOrderId() { return sellOrderId; }
+    public long getTimestamp() { return timestamp; }
+
+    @Override
+    public String toString() {
+        return String.format("TradeSettlement{trade=%d, buyer=%d, seller=%d, asset=%d, qty=%d, price=%s}",
+                             tradeId, buyerUserId, sellerUserId, assetId, quantity, price);
+    }
+}
@@ -0,0 +1,698 @@
+package com.xkrexchange.wallet;
+
+import com.xkrexchange.wallet.ReservationStore.Reservation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * In-memory balances of every user: cash and asset positions, each split into an available and a reserved bucket
+ *
+ * Key Responsibilities:
+ * 1. Hold balances as fixed-point longs (cash in units of 10^-CASH_SCALE, positions in whole shares)
+ * 2. Reserve / release / settle without touching the database
+ * 3. Append every change to a journal, and every settled trade to an audit queue, that LedgerWriteBehind
+ *    persists asynchronously
+ * 4. Expire leaked reservations: one the engine never acknowledged within reserveTimeoutMillis, or one still
+ *    held settlementTimeoutMillis after its order closed, goes back to available (journaled as EXPIRE)
+ *
+ * Threading model:
+ * - Users are spread over a power-of-two number of shards; each shard's state is owned by one thread and every
+ *   operation on a user runs on that user's shard thread, so balances need no locks and a user's operations
+ *   are applied (and journaled) in the order they were submitted
+ * - Callers hand the operation to the shard and wait for its result; different users proceed in parallel
+ * - Except reserve(): it takes the units out of the balance cell's available bucket with a CAS on the caller's
+ *   thread (no lock, no thread hop, fails fast when short), then queues the bookkeeping (reserved bucket,
+ *   reservation, journal) to the shard's lock-free booking queue without waiting. Many threads reserving against one hot account only
+ *   contend on that cell. available() reads the cell, so it already reflects reservations still being booked;
+ *   reserved() and the journal lag them until the shard has applied them
+ * - A trade touches two users: each side's legs run on its own shard. Trades are settled in batches, netted per
+ *   (user, asset) within each shard, so a burst of fills becomes one balance update per user and asset
+ * - Each shard keeps its reservations in a ReservationStore; its thread advances the store's timing wheel every
+ *   TICK_MILLIS, so expiry costs only the reservations that are due
+ * - Settlement is idempotent per trade id: each shard remembers the last SETTLED_TRADE_WINDOW trade legs it
+ *   applied and skips them when the same trade is settled again (a redelivered report, a retried batch)
+ */
+public final class WalletLedger {
+
+    private static final Logger logger = LoggerFactory.getLogger(WalletLedger.class);
+    static final long TICK_MILLIS = 100;
+    static final int SETTLED_TRADE_WINDOW = 1 << 16; // trade ids remembered to skip settling a trade twice
+
+    public static final long CASH = 0; // asset id of the cash balance (listed assets start at 1)
+    public static final int CASH_SCALE = 6;
+
+    // === JOURNAL ENTRY TYPES ===
+    public static final String DEPOSIT = "DEPOSIT";
+    public static final String RESERVE = "RESERVE";
+    public static final String RELEASE = "RELEASE";
+    public static final String SETTLE = "SETTLE";
+    public static final String EXPIRE = "EXPIRE";
+
+    private final Shard[] shards;
+    private final int shardMask;
+    private final Map<Long, Owner> reservationOwners = new ConcurrentHashMap<>(); // orderId -> user and bucket
+    private final long reserveTimeoutMillis; // 0 = reservations never expire
+    private final long settlementTimeoutMillis;
+    private final AtomicLong expiredReservations = new AtomicLong();
+    private final AtomicLong duplicateLegs = new AtomicLong();
+    private final AtomicLong negativeBalances = new AtomicLong();
+
+    // === JOURNAL (shard threads -> write-behind thread) ===
+    private final Queue<JournalEntry> journal = new ConcurrentLinkedQueue<>();
+    private final AtomicLong journalBacklog = new AtomicLong();
+    private final Queue<TradeSettlement> settledTrades = new ConcurrentLinkedQueue<>();
+    private final AtomicLong settledBacklog = new AtomicLong();
+    private final AtomicLong auditedTradeCount = new AtomicLong(); // audit records ever queued
+    private final Set<Long> auditedTrades = Collections.synchronizedSet(recentIds(SETTLED_TRADE_WINDOW));
+
+    /**
+     * Ledger whose reservations never expire
+     */
+    public WalletLedger(int shardCount) {
+        this(shardCount, 0, 0);
+    }
+
+    public WalletLedger(int shardCount, long reserveTimeoutMillis, long settlementTimeoutMillis) {
+        int size = shardCount <= 1 ? 1 : Integer.highestOneBit(shardCount - 1) << 1; // next power of two
+        this.shards = new Shard[size];
+        this.shardMask = size - 1;
+        this.reserveTimeoutMillis = reserveTimeoutMillis;
+        this.settlementTimeoutMillis = settlementTimeoutMillis;
+        for (int i = 0; i < size; i++) {
+            shards[i] = new Shard(i);
+        }
+    }
+
+    /**
+     * Start advancing every shard's timing wheel (no-op when neither timeout is set)
+     */
+    public void startExpiry() {
+        if (reserveTimeoutMillis <= 0 && settlementTimeoutMillis <= 0) {
+            return;
+        }
+        for (Shard shard : shards) {
+            shard.executor.scheduleAtFixedRate(() -> shard.expire(System.currentTimeMillis()),
+                                               TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void shutdown() {
+        for (Shard shard : shards) {
+            shard.executor.shutdown();
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    // === QUERIES ===
+
+    public long available(long userId, long assetId) {
+        Balance balance = shards[shardIndex(userId)].peekBalance(userId, assetId);
+        return balance == null ? 0 : balance.available;
+    }
+
+    public long reserved(long userId, long assetId) {
+        return onShard(userId, shard -> shard.balance(userId, assetId).reserved);
+    }
+
+    /**
+     * @return orderId -> what is still reserved, for every open reservation of the user
+     */
+    public Map<Long, OpenReservation> openReservations(long userId) {
+        return onShard(userId, shard -> {
+            Map<Long, OpenReservation> open = new LinkedHashMap<>();
+            for (Reservation reservation : shard.reservations.forUser(userId)) {
+                open.put(reservation.orderId, new OpenReservation(reservation.assetId, reservation.remaining));
+            }
+            return open;
+        });
+    }
+
+    public long getExpiredReservationCount() {
+        return expiredReservations.get();
+    }
+
+    /**
+     * @return trade legs skipped because their trade had already been settled
+     */
+    public long getDuplicateSettlementCount() {
+        return duplicateLegs.get();
+    }
+
+    /**
+     * @return settlements that left an available bucket below zero
+     */
+    public long getNegativeBalanceCount() {
+        return negativeBalances.get();
+    }
+
+    // === OPERATIONS ===
+
+    /**
+     * Add to the available bucket (deposits, balances loaded at startup)
+     */
+    public void credit(long userId, long assetId, long units, String type) {
+        onShard(userId, shard -> {
+            Balance balance = shard.balance(userId, assetId);
+            balance.addAvailable(units);
+            shard.journal(userId, assetId, type, 0, units, 0, balance);
+            return null;
+        });
+    }
+
+    /**
+     * Atomically check and move units from available to reserved for an order, lock-free on the caller's thread
+     * (the reserved side is booked by the shard right after, in order with everything else on the user)
+     * @return false, changing nothing, if the available balance is too small
+     */
+    public boolean reserve(long userId, long assetId, long units, long orderId) {
+        if (units <= 0) {
+            return false;
+        }
+        Shard shard = shards[shardIndex(userId)];
+        Balance balance = shard.balance(userId, assetId);
+        if (!balance.tryTake(units)) {
+            return false;
+        }
+        Owner owner = new Owner(userId, assetId);
+        Owner existing = reservationOwners.putIfAbsent(orderId, owner);
+        if (existing != null && !existing.equals(owner)) {
+            balance.untake(units);
+            return false; // an order reserves a single bucket
+        }
+        shard.queueBooking(new Booking(userId, assetId, units, orderId, balance));
+        return true;
+    }
+
+    /**
+     * The engine acknowledged the order: its reservation is held until the order closes, however long it rests
+     */
+    public void confirm(long orderId) {
+        Owner owner = reservationOwners.get(orderId);
+        if (owner == null) {
+            return;
+        }
+        onShard(owner.userId, shard -> {
+            Reservation reservation = shard.reservations.get(orderId);
+            if (reservation != null && !reservation.closing) {
+                shard.reservations.disarm(reservation);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * The order closed (filled, cancelled, rejected) and its release is on the way: if the reservation is still
+     * there after settlementTimeoutMillis, the release was lost and the reservation expires
+     */
+    public void markClosed(long orderId) {
+        Owner owner = reservationOwners.get(orderId);
+        if (owner == null || settlementTimeoutMillis <= 0) {
+            return;
+        }
+        onShard(owner.userId, shard -> {
+            Reservation reservation = shard.reservations.get(orderId);
+            if (reservation != null && !reservation.closing) {
+                reservation.closing = true;
+                shard.reservations.arm(reservation, System.currentTimeMillis() + settlementTimeoutMillis);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Return whatever is still reserved for the order to the available bucket
+     * @return false if nothing was reserved for the order
+     */
+    public boolean release(long orderId) {
+        Owner owner = reservationOwners.remove(orderId);
+        if (owner == null) {
+            return false;
+        }
+        long userId = owner.userId;
+        return onShard(userId, shard -> {
+            Reservation reservation = shard.reservations.remove(orderId);
+            if (reservation == null) {
+                return false;
+            }
+            if (reservation.remaining == 0) {
+                return true; // fully settled, nothing to hand back
+            }
+            Balance balance = shard.balance(userId, reservation.assetId);
+            balance.reserved -= reservation.remaining;
+            balance.addAvailable(reservation.remaining);
+            shard.journal(userId, reservation.assetId, RELEASE, orderId, reservation.remaining, -reservation.remaining, balance);
+            return true;
+        });
+    }
+
+    /**
+     * Settle a batch of trades with one task per shard involved. Within a shard, every trade leg consumes its own
+     * order's reservation, then the deltas are netted per (user, asset): each balance is updated and journaled
+     * once per batch however many trades touched it. Shards run in parallel, each atomically for its users.
+     * Legs of a trade id the shard already settled are skipped, so settling a batch again after a failure, or a
+     * trade that was redelivered, never moves funds twice (trades without an id are always applied)
+     */
+    public void settle(List<TradeSettlement> trades) {
+        if (trades.isEmpty()) {
+            return;
+        }
+        List<List<Leg>> legsByShard = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            legsByShard.add(new ArrayList<>());
+        }
+        for (TradeSettlement trade : trades) {
+            legsByShard.get(shardIndex(trade.getBuyerUserId())).add(new Leg(legKey(trade.getTradeId(), true),
+                trade.getBuyerUserId(), trade.getBuyOrderId(), CASH, trade.getTradeValue(), trade.getAssetId(), trade.getQuantity()));
+            legsByShard.get(shardIndex(trade.getSellerUserId())).add(new Leg(legKey(trade.getTradeId(), false),
+                trade.getSellerUserId(), trade.getSellOrderId(), trade.getAssetId(), trade.getQuantity(), CASH, trade.getTradeValue()));
+        }
+
+        List<CompletableFuture<Void>> applied = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            List<Leg> legs = legsByShard.get(i);
+            if (!legs.isEmpty()) {
+                Shard shard = shards[i];
+                applied.add(CompletableFuture.runAsync(() -> shard.settle(legs), shard.executor));
+            }
+        }
+        CompletableFuture.allOf(applied.toArray(new CompletableFuture<?>[0])).join();
+        for (TradeSettlement trade : trades) {
+            if (trade.getTradeId() == null || auditedTrades.add(trade.getTradeId())) {
+                settledTrades.add(trade);
+                settledBacklog.incrementAndGet();
+                auditedTradeCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Remember trades settled before a restart (their audit records), so a redelivered report of one of them
+     * is not settled again
+     * @param trades - { tradeId, buyerUserId, sellerUserId } of the most recently settled trades
+     */
+    public void markSettled(List<long[]> trades) {
+        List<List<Long>> keysByShard = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            keysByShard.add(new ArrayList<>());
+        }
+        for (long[] trade : trades) {
+            auditedTrades.add(trade[0]);
+            keysByShard.get(shardIndex(trade[1])).add(legKey(trade[0], true));
+            keysByShard.get(shardIndex(trade[2])).add(legKey(trade[0], false));
+        }
+        List<CompletableFuture<Void>> marked = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            List<Long> keys = keysByShard.get(i);
+            if (!keys.isEmpty()) {
+                Shard shard = shards[i];
+                marked.add(CompletableFuture.runAsync(() -> shard.settledLegs.addAll(keys), shard.executor));
+            }
+        }
+        CompletableFuture.allOf(marked.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    // === JOURNAL ===
+
+    /**
+     * @return up to max journal entries, oldest first; a user's entries are always in the order they were applied
+     */
+    public List<JournalEntry> drainJournal(int max) {
+        List<JournalEntry> entries = new ArrayList<>(Math.min(max, 1024));
+        JournalEntry entry;
+        while (entries.size() < max && (entry = journal.poll()) != null) {
+            entries.add(entry);
+        }
+        journalBacklog.addAndGet(-entries.size());
+        return entries;
+    }
+
+    public long getJournalBacklog() {
+        return journalBacklog.get();
+    }
+
+    /**
+     * @return up to max settled trades (audit records), oldest first
+     */
+    public List<TradeSettlement> drainSettledTrades(int max) {
+        List<TradeSettlement> trades = new ArrayList<>(Math.min(max, 1024));
+        TradeSettlement trade;
+        while (trades.size() < max && (trade = settledTrades.poll()) != null) {
+            trades.add(trade);
+        }
+        settledBacklog.addAndGet(-trades.size());
+        return trades;
+    }
+
+    public long getSettledTradeBacklog() {
+        return settledBacklog.get();
+    }
+
+    /**
+     * @return audit records queued since startup; drained in the same order, so the write-behind can tell from
+     *         a count which of them it has persisted
+     */
+    public long getAuditedTradeCount() {
+        return auditedTradeCount.get();
+    }
+
+    /**
+     * Expire every reservation due at nowMillis on every shard (the shards also do this on their own every
+     * TICK_MILLIS once startExpiry() was called)
+     * @return number of reservations expired
+     */
+    public int expireReservations(long nowMillis) {
+        List<CompletableFuture<Integer>> expired = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            expired.add(CompletableFuture.supplyAsync(() -> shard.expire(nowMillis), shard.executor));
+        }
+        return expired.stream().mapToInt(CompletableFuture::join).sum();
+    }
+
+    // helpers
+
+    private <T> T onShard(long userId, Function<Shard, T> operation) {
+        Shard shard = shards[shardIndex(userId)];
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                shard.applyBookings();
+                return operation.apply(shard);
+            }, shard.executor).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    private static long legKey(Long tradeId, boolean buy) {
+        return tradeId == null ? Leg.NO_TRADE : tradeId << 1 | (buy ? 0 : 1);
+    }
+
+    /**
+     * Insertion-ordered set that forgets its oldest ids beyond capacity
+     */
+    private static Set<Long> recentIds(int capacity) {
+        return Collections.newSetFromMap(new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+                return size() > capacity;
+            }
+        });
+    }
+
+    private int shardIndex(long userId) {
+        long h = userId * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ h >>> 32) & shardMask;
+    }
+
+    /**
+     * Balances and open reservations of the users mapped to one shard; only touched by the shard's thread,
+     * except the balance cells' available bucket (see Balance)
+     */
+    private final class Shard {
+        final ScheduledExecutorService executor;
+        final Map<Long, Map<Long, Balance>> accounts = new ConcurrentHashMap<>(); // userId -> assetId -> balance
+        final ReservationStore reservations = new ReservationStore(TICK_MILLIS);
+        final Queue<Booking> bookings = new ConcurrentLinkedQueue<>(); // reserve() -> shard thread
+        final AtomicBoolean bookingScheduled = new AtomicBoolean();
+        final Set<Long> settledLegs = recentIds(SETTLED_TRADE_WINDOW); // legKey of the legs applied last
+        long nextSequence = 1;
+
+        Shard(int index) {
+            this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "WalletShard-" + index);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        Balance balance(long userId, long assetId) {
+            Balance balance = peekBalance(userId, assetId);
+            if (balance != null) {
+                return balance;
+            }
+            return accounts.computeIfAbsent(userId, id -> new ConcurrentHashMap<>())
+                .computeIfAbsent(assetId, id -> new Balance());
+        }
+
+        Balance peekBalance(long userId, long assetId) {
+            Map<Long, Balance> account = accounts.get(userId);
+            return account == null ? null : account.get(assetId);
+        }
+
+        /**
+         * Hand a reservation to the shard: lock-free, and one executor task per burst rather than per reservation
+         */
+        void queueBooking(Booking booking) {
+            bookings.add(booking);
+            if (!bookingScheduled.get() && bookingScheduled.compareAndSet(false, true)) {
+                executor.execute(this::applyBookings);
+            }
+        }
+
+        /**
+         * Shard side of reserve(): the units already left the cell's available bucket. Every shard task runs this
+         * first, so an operation always sees the reservations made before it was submitted
+         */
+        void applyBookings() {
+            bookingScheduled.set(false);
+            Booking booking;
+            while ((booking = bookings.poll()) != null) {
+                Balance balance = booking.balance;
+                balance.journaledAvailable -= booking.units;
+                balance.reserved += booking.units;
+                Reservation reservation = reservations.get(booking.orderId);
+                if (reservation == null) {
+                    reservation = reservations.add(booking.userId, booking.orderId, booking.assetId, booking.units);
+                } else {
+                    reservation.remaining += booking.units;
+                }
+                if (reserveTimeoutMillis > 0 && !reservation.closing) {
+                    reservations.arm(reservation, System.currentTimeMillis() + reserveTimeoutMillis);
+                }
+                journal(booking.userId, booking.assetId, RESERVE, booking.orderId, -booking.units, booking.units, balance);
+            }
+        }
+
+        void settle(List<Leg> legs) {
+            applyBookings();
+            Map<Long, Map<Long, long[]>> net = new HashMap<>(); // userId -> assetId -> { available, reserved } delta
+            for (Leg leg : legs) {
+                if (leg.key != Leg.NO_TRADE && !settledLegs.add(leg.key)) {
+                    duplicateLegs.incrementAndGet();
+                    logger.debug("Skipping already settled {} of user {}", leg.key, leg.userId);
+                    continue;
+                }
+                Reservation reservation = reservations.get(leg.orderId);
+                long fromReserved = reservation == null || reservation.assetId != leg.debitAsset
+                    ? 0 : Math.min(leg.debitUnits, reservation.remaining);
+                if (reservation != null) {
+                    reservation.remaining -= fromReserved;
+                    if (!reservation.closing) {
+                        reservations.disarm(reservation); // filled, so the engine has it
+                    }
+                }
+                Map<Long, long[]> user = net.computeIfAbsent(leg.userId, id -> new HashMap<>());
+                long[] debit = user.computeIfAbsent(leg.debitAsset, id -> new long[2]);
+                debit[0] -= leg.debitUnits - fromReserved; // any excess over the reservation comes out of available
+                debit[1] -= fromReserved;
+                user.computeIfAbsent(leg.creditAsset, id -> new long[2])[0] += leg.creditUnits;
+            }
+            for (Map.Entry<Long, Map<Long, long[]>> user : net.entrySet()) {
+                for (Map.Entry<Long, long[]> delta : user.getValue().entrySet()) {
+                    long[] change = delta.getValue();
+                    if (change[0] == 0 && change[1] == 0) continue; // netted out
+                    Balance balance = balance(user.getKey(), delta.getKey());
+                    balance.addAvailable(change[0]);
+                    balance.reserved += change[1];
+                    journal(user.getKey(), delta.getKey(), SETTLE, 0, change[0], change[1], balance);
+                    if (change[0] < 0 && balance.journaledAvailable < 0) {
+                        // the trade cost more than was reserved and available could not cover it: the trade is
+                        // final, so settle it and raise the alarm rather than lose it
+                        negativeBalances.incrementAndGet();
+                        logger.error("Settlement left user {} asset {} available at {} (reserved {})",
+                                     user.getKey(), delta.getKey(), balance.journaledAvailable, balance.reserved);
+                    }
+                }
+            }
+        }
+
+        int expire(long nowMillis) {
+            applyBookings();
+            List<Reservation> expired = reservations.expire(nowMillis);
+            for (Reservation reservation : expired) {
+                reservationOwners.remove(reservation.orderId);
+                Balance balance = balance(reservation.userId, reservation.assetId);
+                balance.reserved -= reservation.remaining;
+                balance.addAvailable(reservation.remaining);
+                journal(reservation.userId, reservation.assetId, EXPIRE, reservation.orderId,
+                        reservation.remaining, -reservation.remaining, balance);
+                logger.warn("Expired reservation of order {} (user {}, asset {}, {} units)",
+                            reservation.orderId, reservation.userId, reservation.assetId, reservation.remaining);
+            }
+            expiredReservations.addAndGet(expired.size());
+            return expired.size();
+        }
+
+        void journal(long userId, long assetId, String type, long orderId, long availableDelta, long reservedDelta,
+                     Balance after) {
+            journal.add(new JournalEntry(nextSequence++, userId, assetId, type, orderId, availableDelta, reservedDelta,
+                                         after.journaledAvailable, after.reserved, System.currentTimeMillis()));
+            journalBacklog.incrementAndGet();
+        }
+    }
+
+    /**
+     * One user's side of a trade; key identifies the side of the trade (tradeId << 1 | sell) for deduplication
+     */
+    private record Leg(long key, long userId, long orderId, long debitAsset, long debitUnits, long creditAsset,
+                       long creditUnits) {
+        static final long NO_TRADE = -1;
+    }
+
+    /**
+     * Units still reserved for an order, in the bucket it reserved
+     */
+    public record OpenReservation(long assetId, long units) {
+    }
+
+    /**
+     * A reservation taken from the cell by reserve(), waiting for the shard to book it
+     */
+    private record Booking(long userId, long assetId, long units, long orderId, Balance balance) {
+    }
+
+    /**
+     * Reservation owner, so a repeated reserve() of an order can be checked against its bucket without a hop
+     */
+    private record Owner(long userId, long assetId) {
+    }
+
+    /**
+     * One (user, asset) balance cell. The available bucket is CAS-updated from any thread; journaledAvailable
+     * and reserved belong to the shard thread and move together with the journal, so the post-balances the
+     * write-behind persists never show a reservation half-applied (taken from available, not yet reserved)
+     */
+    private static final class Balance {
+        private static final VarHandle AVAILABLE;
+
+        static {
+            try {
+                AVAILABLE = MethodHandles.lookup().findVarHandle(Balance.class, "available", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        volatile long available;
+        long journaledAvailable; // available minus the reservations the shard has booked so far
+        long reserved;
+
+        /**
+         * Take units from available if there are enough; fails fast, never blocks
+         */
+        boolean tryTake(long units) {
+            long current = available;
+            while (current >= units) {
+                long witness = (long) AVAILABLE.compareAndExchange(this, current, current - units);
+                if (witness == current) {
+                    return true;
+                }
+                current = witness;
+            }
+            return false;
+        }
+
+        /**
+         * Put back units taken by tryTake that were never booked
+         */
+        void untake(long units) {
+            AVAILABLE.getAndAdd(this, units);
+        }
+
+        /**
+         * Shard thread only
+         */
+        void addAvailable(long units) {
+            AVAILABLE.getAndAdd(this, units);
+            journaledAvailable += units;
+        }
+    }
+
+    /**
+     * One applied change, with the resulting balance so the write-behind never has to read the ledger
+     */
+    public static final class JournalEntry {
+        private final long sequence; // per shard
+        private final long userId;
+        private final long assetId;
+        private final String type;
+        private final long orderId; // 0 when not order related
+        private final long availableDelta;
+        private final long reservedDelta;
+        private final long availableAfter;
+        private final long reservedAfter;
+        private final long timestamp;
+
+        JournalEntry(long sequence, long userId, long assetId, String type, long orderId, long availableDelta,
+                     long reservedDelta, long availableAfter, long reservedAfter, long timestamp) {
+            this.sequence = sequence;
+            this.userId = userId;
+            this.assetId = assetId;
+            this.type = type;
+            this.orderId = orderId;
+            this.availableDelta = availableDelta;
+            this.reservedDelta = reservedDelta;
+            this.availableAfter = availableAfter;
+            this.reservedAfter = reservedAfter;
+            this.timestamp = timestamp;
+        }
+
+        public long getSequence() { return sequence; }
+        public long getUserId() { return userId; }
+        public long getAssetId() { return assetId; }
+        public String getType() { return type; }
+        public long getOrderId() { return orderId; }
+        public long getAvailableDelta() { return availableDelta; }
+        public long getReservedDelta() { return reservedDelta; }
+        public long getAvailableAfter() { return availableAfter; }
+        public long getReservedAfter() { return reservedAfter; }
+        public long getTimestamp() { return timestamp; }
+
+        @Override
+        public String toString() {
+            return String.format("JournalEntry{user=%d, asset=%d, %s, order=%d, available%+d, reserved%+d}",
+                                 userId, assetId, type, orderId, availableDelta, reservedDelta);
+        }
+    }
+}
@@ -1,6 +1,19 @@
 package com.xkrexchange.wallet;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
 
 /**
  * Wallet Service - Manages user balances and asset positions
@@ -11,13 +24,73 @@ import java.math.BigDecimal;
  * 3. Reserve/release funds for pending orders
  * 4. Execute settlements after trades
  * 5. Provide balance/position queries
+ *
+ * Balances live in the sharded in-memory WalletLedger, so checks and reservations on the order path never
+ * wait on the database; LedgerWriteBehind persists the ledger journal and balances to PostgreSQL in batches.
+ * Trades are settled through the SettlementBatcher: collected over trading.wallet.settlement-window-ms and
+ * netted per (user, asset), with a per-trade audit record kept for each.
+ * flushSettlements() completes once the settlements are applied AND persisted (the write-behind's durable
+ * watermark), failing after trading.wallet.durable-timeout-ms, so a consumer only commits durable settlements.
+ * Reservations the engine never acknowledges within trading.wallet.reserve-timeout, or that outlive their
+ * order's close by trading.wallet.settlement-timeout, expire back to available (see WalletLedger).
+ * Cash is held in units of 10^-6 (the scale of user_balances): reservations round up, settlements to nearest.
  */
+@Service
 public class WalletService {
     
-    // TODO: Inject dependencies
-    // private final UserBalanceRepository balanceRepository;
-    // private final UserPositionRepository positionRepository;
-    // private final TransactionLogRepository transactionRepository;
+    private final WalletLedger ledger;
+    private final LedgerWriteBehind writeBehind;
+    private final SettlementBatcher settlementBatcher;
+    private final long durableTimeoutMillis;
+    
+    /**
+     * Memory-only wallet (no persistence)
+     */
+    public WalletService() {
+        this(4, (JdbcTemplate) null, 200, 1_000, 2, 1_000, 0, 0, 30_000, null);
+    }
+    
+    @Autowired
+    public WalletService(@Value("${trading.wallet.ledger-shards:8}") int shardCount,
+                         ObjectProvider<JdbcTemplate> jdbcTemplate,
+                         @Value("${trading.wallet.flush-interval-ms:200}") long flushIntervalMillis,
+                         @Value("${trading.wallet.flush-batch-size:1000}") int flushBatchSize,
+                         @Value("${trading.wallet.settlement-window-ms:2}") long settlementWindowMillis,
+                         @Value("${trading.wallet.settlement-batch-size:1000}") int settlementBatchSize,
+                         @Value("${trading.wallet.reserve-timeout:300000}") long reserveTimeoutMillis,
+                         @Value("${trading.wallet.settlement-timeout:30000}") long settlementTimeoutMillis,
+                         @Value("${trading.wallet.durable-timeout-ms:30000}") long durableTimeoutMillis,
+                         @Value("${trading.wallet.quarantine-dir:data/ledger-quarantine}") Path quarantineDirectory) {
+        this(shardCount, jdbcTemplate.getIfAvailable(), flushIntervalMillis, flushBatchSize,
+             settlementWindowMillis, settlementBatchSize, reserveTimeoutMillis, settlementTimeoutMillis,
+             durableTimeoutMillis, quarantineDirectory);
+    }
+    
+    public WalletService(int shardCount, JdbcTemplate jdbcTemplate, long flushIntervalMillis, int flushBatchSize,
+                         long settlementWindowMillis, int settlementBatchSize,
+                         long reserveTimeoutMillis, long settlementTimeoutMillis, long durableTimeoutMillis,
+                         Path quarantineDirectory) {
+        this.ledger = new WalletLedger(shardCount, reserveTimeoutMillis, settlementTimeoutMillis);
+        this.writeBehind = new LedgerWriteBehind(ledger, jdbcTemplate, flushIntervalMillis, flushBatchSize,
+                                                 quarantineDirectory);
+        this.settlementBatcher = new SettlementBatcher(ledger, settlementWindowMillis, settlementBatchSize);
+        this.durableTimeoutMillis = durableTimeoutMillis;
+    }
+    
+    @PostConstruct
+    public void start() {
+        writeBehind.loadBalances();
+        writeBehind.start();
+        settlementBatcher.start();
+        ledger.startExpiry();
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        settlementBatcher.stop();
+        ledger.shutdown();
+        writeBehind.stop();
+    }
     
     /**
      * Check if user has sufficient cash for a buy order
@@ -27,13 +100,7 @@ public class WalletService {
      * @return true if user has sufficient funds
      */
     public boolean hasSufficientCash(Long userId, BigDecimal requiredAmount) {
-        
-        // TODO: Implement cash balance check
-        // 1. Query user's available cash balance (not including reserved funds)
-        // 2. Compare with required amount
-        // 3. Return result
-        
-        return false; // TODO: Implement
+        return ledger.available(userId, WalletLedger.CASH) >= cashUnits(requiredAmount, RoundingMode.UP);
     }
     
     /**
@@ -45,13 +112,7 @@ public class WalletService {
      * @return true if user owns enough shares
      */
     public boolean hasSufficientAssets(Long userId, Long assetId, int requiredQuantity) {
-        
-        // TODO: Implement asset holding check
-        // 1. Query user's available asset holdings (not including reserved shares)
-        // 2. Compare with required quantity
-        // 3. Return result
-        
-        return false; // TODO: Implement
+        return ledger.available(userId, assetId) >= requiredQuantity;
     }
     
     /**
@@ -64,14 +125,10 @@ public class WalletService {
      * @return ReservationResult indicating success/failure
      */
     public ReservationResult reserveCash(Long userId, BigDecimal amount, Long orderId) {
-        
-        // TODO: Implement cash reservation
-        // 1. Verify user has sufficient available cash
-        // 2. Move cash from 'available' to 'reserved' bucket
-        // 3. Record reservation with order ID for tracking
-        // 4. Return success/failure result
-        
-        return new ReservationResult(false, "TODO: Implement reserveCash");
+        if (ledger.reserve(userId, WalletLedger.CASH, cashUnits(amount, RoundingMode.UP), orderId)) {
+            return new ReservationResult(true, "Reserved " + amount.toPlainString());
+        }
+        return new ReservationResult(false, "Insufficient available cash");
     }
     
     /**
@@ -85,36 +142,60 @@ public class WalletService {
      * @return ReservationResult indicating success/failure
      */
     public ReservationResult reserveAsset(Long userId, Long assetId, int quantity, Long orderId) {
-        
-        // TODO: Implement asset reservation
-        // 1. Verify user has sufficient available shares
-        // 2. Move shares from 'available' to 'reserved' bucket
-        // 3. Record reservation with order ID for tracking
-        // 4. Return success/failure result
-        
-        return new ReservationResult(false, "TODO: Implement reserveAsset");
+        if (ledger.reserve(userId, assetId, quantity, orderId)) {
+            return new ReservationResult(true, "Reserved " + quantity + " shares");
+        }
+        return new ReservationResult(false, "Insufficient available shares");
     }
     
     /**
-     * Release reserved funds when order is cancelled or rejected
+     * Release reserved funds when order is cancelled, rejected or completely filled
      * 
      * @param orderId - Order whose reservations should be released
-     * @return true if successful
+     * @return true if something was still reserved for the order
      */
     public boolean releaseReservations(Long orderId) {
-        
-        // TODO: Implement reservation release
-        // 1. Find all reservations for this order ID
-        // 2. Move reserved funds/assets back to 'available' bucket
-        // 3. Delete reservation records
-        // 4. Return success/failure
-        
-        return false; // TODO: Implement
+        return ledger.release(orderId);
+    }
+    
+    /**
+     * Release the order's remaining reservation once every trade submitted before it has been settled
+     * (filled, cancelled or engine-rejected orders). Callers must submit it after the order's fills: the
+     * consumer does, since every report of an asset arrives on the executions stream in engine order
+     * 
+     * @param orderId - Order whose reservations should be released
+     */
+    public void releaseAfterSettlement(Long orderId) {
+        ledger.markClosed(orderId);
+        settlementBatcher.submitRelease(orderId);
+    }
+    
+    /**
+     * The matching engine accepted the order: keep its reservation for as long as it rests on the book
+     * 
+     * @param orderId - Order acknowledged by the engine
+     */
+    public void confirmReservation(Long orderId) {
+        ledger.confirm(orderId);
+    }
+    
+    /**
+     * Get the user's open reservations
+     * 
+     * @param userId - User to look up
+     * @return orderId -> amount still reserved (cash, or shares for sell orders)
+     */
+    public Map<Long, BigDecimal> getOpenReservations(Long userId) {
+        Map<Long, BigDecimal> open = new LinkedHashMap<>();
+        ledger.openReservations(userId).forEach((orderId, reservation) ->
+            open.put(orderId, LedgerWriteBehind.toDecimal(reservation.assetId(), reservation.units())));
+        return open;
     }
     
     /**
      * Execute settlement after a trade occurs
      * This finalizes the transfer of funds and assets
+     * Queued for the next settlement batch; flushSettlements() waits until it is applied and persisted
      * 
      * @param buyerUserId - User who bought the asset
      * @param sellerUserId - User who sold the asset
@@ -127,14 +208,42 @@ public class WalletService {
     public void executeSettlement(Long buyerUserId, Long sellerUserId, Long assetId, 
                                 int quantity, BigDecimal pricePerShare, 
                                 Long buyOrderId, Long sellOrderId) {
-        
-        // TODO: Implement trade settlement
-        // 1. Calculate total trade value (quantity * pricePerShare)
-        // 2. Transfer cash from buyer's reserved funds to seller's available cash
-        // 3. Transfer asset shares from seller's reserved assets to buyer's available assets
-        // 4. Reduce remaining reservations for both orders
-        // 5. Log all transactions for audit trail
-        // 6. Handle any remaining reservations if orders are partially filled
+        executeSettlement(null, buyerUserId, sellerUserId, assetId, quantity, pricePerShare, buyOrderId, sellOrderId);
+    }
+    
+    /**
+     * executeSettlement() carrying the engine's trade id into the audit record
+     */
+    public void executeSettlement(Long tradeId, Long buyerUserId, Long sellerUserId, Long assetId,
+                                  int quantity, BigDecimal pricePerShare, Long buyOrderId, Long sellOrderId) {
+        long tradeValue = cashUnits(pricePerShare.multiply(BigDecimal.valueOf(quantity)), RoundingMode.HALF_EVEN);
+        settlementBatcher.submit(new TradeSettlement(tradeId, buyerUserId, sellerUserId, assetId, quantity,
+                                                     pricePerShare, tradeValue, buyOrderId, sellOrderId));
+    }
+    
+    /**
+     * @return future completed once every settlement and release submitted so far is applied to the ledger and
+     *         the settled trades are committed to the database (with their balance changes); fails with a
+     *         TimeoutException after trading.wallet.durable-timeout-ms
+     */
+    public CompletableFuture<Void> flushSettlements() {
+        return settlementBatcher.flush()
+            .thenCompose(applied -> writeBehind.awaitPersisted(ledger.getAuditedTradeCount()))
+            .orTimeout(durableTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Credit cash to a user's available balance (funding)
+     */
+    public void depositCash(Long userId, BigDecimal amount) {
+        ledger.credit(userId, WalletLedger.CASH, cashUnits(amount, RoundingMode.DOWN), WalletLedger.DEPOSIT);
+    }
+    
+    /**
+     * Credit shares to a user's available position (transfers in)
+     */
+    public void depositAsset(Long userId, Long assetId, int quantity) {
+        ledger.credit(userId, assetId, quantity, WalletLedger.DEPOSIT);
     }
     
     /**
@@ -144,11 +253,14 @@ public class WalletService {
      * @return Available cash balance (excluding reserved funds)
      */
     public BigDecimal getAvailableCashBalance(Long userId) {
-        
-        // TODO: Implement balance query
-        // Query user's cash balance minus any reserved amounts
-        
-        return BigDecimal.ZERO; // TODO: Implement
+        return BigDecimal.valueOf(ledger.available(userId, WalletLedger.CASH), WalletLedger.CASH_SCALE);
+    }
+    
+    /**
+     * Get user's current reserved cash balance
+     */
+    public BigDecimal getReservedCashBalance(Long userId) {
+        return BigDecimal.valueOf(ledger.reserved(userId, WalletLedger.CASH), WalletLedger.CASH_SCALE);
     }
     
     /**
@@ -159,11 +271,28 @@ public class WalletService {
      * @return Available asset quantity (excluding reserved shares)
      */
     public int getAvailableAssetQuantity(Long userId, Long assetId) {
-        
-        // TODO: Implement position query
-        // Query user's asset holdings minus any reserved quantities
-        
-        return 0; // TODO: Implement
+        return (int) ledger.available(userId, assetId);
+    }
+    
+    public long getUnpersistedJournalEntries() {
+        return ledger.getJournalBacklog();
+    }
+    
+    public long getQuarantinedLedgerBatchCount() {
+        return writeBehind.getQuarantinedBatchCount();
+    }
+    
+    /**
+     * @return settlements that left an available balance negative (a trade settled beyond its reservation)
+     */
+    public long getNegativeBalanceCount() {
+        return ledger.getNegativeBalanceCount();
+    }
+    
+    // helpers
+    
+    private static long cashUnits(BigDecimal amount, RoundingMode rounding) {
+        return amount.setScale(WalletLedger.CASH_SCALE, rounding).unscaledValue().longValueExact();
     }
     
     // TODO: Create inner class or separate file for ReservationResult
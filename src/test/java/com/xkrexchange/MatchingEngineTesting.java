@@ -0,0 +1,351 @@
+package com.xkrexchange;
+
+import com.xkrexchange.common.model.Asset;
+import com.xkrexchange.common.model.CompletedTrade;
+import com.xkrexchange.common.model.Order;
+import com.xkrexchange.common.model.OrderType;
+import com.xkrexchange.common.model.Price;
+import com.xkrexchange.gateway.MarketOrderCostEstimator;
+import com.xkrexchange.matching.AssetRegistry;
+import com.xkrexchange.matching.ClientOrderIdWindow;
+import com.xkrexchange.matching.DepthSnapshot;
+import com.xkrexchange.matching.ExecutionListener;
+import com.xkrexchange.matching.MatchingEngine;
+import com.xkrexchange.matching.OrderRingBuffer;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for MatchingEngine routing, the in-process ring buffer, order cancellation, duplicate suppression,
+ * the asset registry and depth snapshots
+ */
+class MatchingEngineTesting {
+
+    private MatchingEngine engine;
+    private Asset testAsset;
+
+    @BeforeEach
+    void setUp() {
+        engine = new MatchingEngine(1024, 60_000);
+        testAsset = new Asset("Apple Inc", "AAPL", 150, 1000000, new BigDecimal("0.01"));
+        engine.registerAsset(testAsset);
+    }
+
+    @AfterEach
+    void tearDown() {
+        engine.shutdown();
+    }
+
+    @Test
+    @DisplayName("Test ring buffer FIFO order and full detection")
+    void testRingBuffer() {
+        OrderRingBuffer ring = new OrderRingBuffer(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(i));
+        }
+        assertFalse(ring.offer(99)); // full
+
+        assertEquals(0, ring.poll());
+        assertTrue(ring.offer(4)); // slot freed for the next lap
+        assertEquals(1, ring.poll());
+        assertEquals(2, ring.poll());
+        assertEquals(3, ring.poll());
+        assertEquals(4, ring.poll());
+        assertNull(ring.poll());
+    }
+
+    @Test
+    @DisplayName("Test ring buffer rejects non power of two capacity")
+    void testRingBufferCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new OrderRingBuffer(100));
+    }
+
+    @Test
+    @DisplayName("Test in-process orders reach the OrderBook and match")
+    void testInProcessMatching() throws InterruptedException {
+        Price price = new Price(new BigDecimal("150.00"));
+
+        assertTrue(engine.enqueueOrder(Order.newLimitOrder(1001L, OrderType.LIMIT, false, 100, testAsset, price)));
+        assertTrue(engine.enqueueOrder(Order.newLimitOrder(1002L, OrderType.LIMIT, true, 40, testAsset, price)));
+
+        Thread.sleep(200);
+
+        assertEquals(1, testAsset.getOrderBook().getTradeHistory().size());
+        assertEquals(40, testAsset.getOrderBook().getTradeHistory().get(0).getQuantity());
+    }
+
+    @Test
+    @DisplayName("Test cancel removes a resting order from the book")
+    void testCancelRestingOrder() throws InterruptedException {
+        Price price = new Price(new BigDecimal("149.50"));
+        Order resting = Order.newLimitOrder(1001L, OrderType.LIMIT, true, 100, testAsset, price);
+
+        engine.enqueueOrder(resting);
+        engine.enqueueCancel(resting.getOrderId(), testAsset.getAssetId());
+
+        Thread.sleep(200);
+
+        assertTrue(resting.isCancelled());
+        assertNull(testAsset.getOrderBook().getNationalBestBidPrice());
+    }
+
+    @Test
+    @DisplayName("Test restored orders keep their id and advance the id counter")
+    void testRestoredOrderId() {
+        Price price = new Price(new BigDecimal("150.00"));
+        Order original = Order.newLimitOrder(1001L, OrderType.LIMIT, true, 10, testAsset, price);
+        long farId = original.getOrderId() + 1000;
+
+        Order restored = Order.restore(farId, 1001L, OrderType.LIMIT, true, 10, testAsset, price, null);
+        Order next = Order.newLimitOrder(1001L, OrderType.LIMIT, true, 10, testAsset, price);
+
+        assertEquals(farId, restored.getOrderId());
+        assertTrue(next.getOrderId() > farId);
+    }
+
+    @Test
+    @DisplayName("Test applied completes once the book has processed everything routed before it")
+    void testAppliedBarrier() throws Exception {
+        Price price = new Price(new BigDecimal("150.00"));
+        engine.route(Order.newLimitOrder(1001L, OrderType.LIMIT, false, 100, testAsset, price));
+        engine.route(Order.newLimitOrder(1002L, OrderType.LIMIT, true, 40, testAsset, price));
+
+        engine.applied(testAsset.getAssetId()).get(5, TimeUnit.SECONDS);
+        assertEquals(1, testAsset.getOrderBook().getTradeHistory().size());
+
+        testAsset.getOrderBook().stopMatchingEngine();
+        assertTrue(engine.applied(testAsset.getAssetId()).isCompletedExceptionally());
+    }
+
+    @Test
+    @DisplayName("Test routing to an unknown asset fails")
+    void testUnknownAsset() {
+        assertThrows(IllegalArgumentException.class, () -> engine.cancel(1L, 987654L));
+    }
+
+    // === DEDUPLICATION TESTS ===
+
+    @Test
+    @DisplayName("Test dedup window detects duplicates per client and expires them")
+    void testClientOrderIdWindow() {
+        ClientOrderIdWindow window = new ClientOrderIdWindow(1_000);
+
+        assertEquals(ClientOrderIdWindow.ABSENT, window.recordIfAbsent(1001L, "abc-1", 11L, 0));
+        assertEquals(11L, window.recordIfAbsent(1001L, "abc-1", 12L, 500)); // duplicate inside window
+        assertEquals(ClientOrderIdWindow.ABSENT, window.recordIfAbsent(1002L, "abc-1", 13L, 500)); // different client
+        assertEquals(ClientOrderIdWindow.ABSENT, window.recordIfAbsent(1001L, "abc-1", 14L, 1_500)); // window elapsed
+    }
+
+    @Test
+    @DisplayName("Test dedup window keeps all entries while growing")
+    void testClientOrderIdWindowGrowth() {
+        ClientOrderIdWindow window = new ClientOrderIdWindow(60_000);
+        for (int i = 1; i <= 10_000; i++) {
+            assertEquals(ClientOrderIdWindow.ABSENT, window.recordIfAbsent(7L, "order-" + i, i, i));
+        }
+        for (int i = 1; i <= 10_000; i++) {
+            assertEquals(i, window.recordIfAbsent(7L, "order-" + i, 0, 20_000));
+        }
+    }
+
+    @Test
+    @DisplayName("Test engine drops a resubmitted client order id and a redelivered resting order before matching")
+    void testDuplicateOrderDropped() throws InterruptedException {
+        Price price = new Price(new BigDecimal("150.00"));
+        Order resting = Order.newLimitOrder(1001L, OrderType.LIMIT, false, 100, testAsset, price);
+        Order first = Order.newLimitOrder(1002L, OrderType.LIMIT, true, 10, testAsset, price);
+        Order retry = Order.newLimitOrder(1002L, OrderType.LIMIT, true, 10, testAsset, price);
+        first.setClientOrderId("client-42");
+        retry.setClientOrderId("client-42");
+
+        Order redelivered = Order.restore(resting.getOrderId(), 1001L, OrderType.LIMIT, false, 100, testAsset, price, null);
+
+        engine.enqueueOrder(resting);
+        engine.enqueueOrder(first);
+        engine.enqueueOrder(retry);
+        engine.enqueueOrder(redelivered); // no client order id, still resting on the book
+
+        Thread.sleep(200);
+        testAsset.getOrderBook().sync().join(); // publishes the depth
+
+        assertEquals(1, testAsset.getOrderBook().getTradeHistory().size());
+        assertEquals(2, testAsset.getOrderBook().getDuplicateOrderCount());
+        assertEquals(90, testAsset.getOrderBook().getDepthSnapshot().getAskQuantity(0)); // not resting twice
+    }
+
+    // === EXECUTION REPORT TESTS ===
+
+    @Test
+    @DisplayName("Test book reports posts, fills, cancels and rejections in order")
+    void testExecutionEvents() throws InterruptedException {
+        List<String> events = new CopyOnWriteArrayList<>();
+        engine.setExecutionListener(new ExecutionListener() {
+            @Override public void onOrderAccepted(Order order) { events.add("ACCEPTED " + order.getOrderId()); }
+            @Override public void onTrade(CompletedTrade trade, Order buyOrder, Order sellOrder) {
+                events.add("TRADE " + trade.getQuantity() + " " + sellOrder.getRemainingQuantity());
+            }
+            @Override public void onOrderCancelled(Order order, int cancelledQuantity, String reason) {
+                events.add("CANCELLED " + order.getOrderId() + " " + cancelledQuantity);
+            }
+            @Override public void onOrderRejected(Order order, String reason) { events.add("REJECTED " + order.getOrderId()); }
+        });
+
+        Price price = new Price(new BigDecimal("150.00"));
+        Order resting = Order.newLimitOrder(1001L, OrderType.LIMIT, false, 100, testAsset, price);
+        Order buy = Order.newLimitOrder(1002L, OrderType.LIMIT, true, 40, testAsset, price);
+        Order reused = Order.newLimitOrder(1002L, OrderType.LIMIT, true, 40, testAsset, price);
+        buy.setClientOrderId("client-7");
+        reused.setClientOrderId("client-7");
+
+        engine.enqueueOrder(resting);
+        engine.enqueueOrder(buy);
+        engine.enqueueOrder(reused);
+        engine.enqueueCancel(resting.getOrderId(), testAsset.getAssetId());
+        Asset unlisted = new Asset("Tesla", "TSLA", 200, 1000, new BigDecimal("0.05"));
+        Order nowhere = Order.newLimitOrder(1003L, OrderType.LIMIT, true, 1, unlisted, price);
+        engine.enqueueOrder(nowhere);
+
+        Thread.sleep(200);
+
+        assertTrue(events.remove("REJECTED " + nowhere.getOrderId())); // reported by the dispatcher, not the book
+        assertEquals(List.of(
+            "ACCEPTED " + resting.getOrderId(),
+            "TRADE 40 60",
+            "REJECTED " + reused.getOrderId(),
+            "CANCELLED " + resting.getOrderId() + " 60"
+        ), events);
+    }
+
+    @Test
+    @DisplayName("Test mass cancel removes only the user's orders on the requested side")
+    void testMassCancel() throws InterruptedException {
+        List<Long> cancelled = new CopyOnWriteArrayList<>();
+        engine.setExecutionListener(new ExecutionListener() {
+            @Override public void onOrderAccepted(Order order) { }
+            @Override public void onTrade(CompletedTrade trade, Order buyOrder, Order sellOrder) { }
+            @Override public void onOrderCancelled(Order order, int cancelledQuantity, String reason) {
+                cancelled.add(order.getOrderId());
+            }
+            @Override public void onOrderRejected(Order order, String reason) { }
+        });
+
+        Order bid1 = Order.newLimitOrder(1001L, OrderType.LIMIT, true, 10, testAsset, new Price(new BigDecimal("149.00")));
+        Order bid2 = Order.newLimitOrder(1001L, OrderType.LIMIT, true, 10, testAsset, new Price(new BigDecimal("148.00")));
+        Order ask = Order.newLimitOrder(1001L, OrderType.LIMIT, false, 10, testAsset, new Price(new BigDecimal("151.00")));
+        Order otherUser = Order.newLimitOrder(1002L, OrderType.LIMIT, true, 10, testAsset, new Price(new BigDecimal("149.00")));
+        engine.enqueueOrder(bid1);
+        engine.enqueueOrder(bid2);
+        engine.enqueueOrder(ask);
+        engine.enqueueOrder(otherUser);
+        engine.enqueueMassCancel(1001L, testAsset.getAssetId(), true);
+
+        Thread.sleep(200);
+
+        assertEquals(2, cancelled.size());
+        assertTrue(cancelled.containsAll(List.of(bid1.getOrderId(), bid2.getOrderId())));
+        assertEquals(otherUser.getOrderId(), testAsset.getOrderBook().getNationalBestBids().peek().getOrderId());
+        assertEquals(ask.getOrderId(), testAsset.getOrderBook().getNationalBestOffers().peek().getOrderId());
+    }
+
+    @Test
+    @DisplayName("Test the published depth snapshot aggregates levels and prices market buys by walking the asks")
+    void testDepthSnapshotCost() throws InterruptedException {
+        engine.enqueueOrder(Order.newLimitOrder(1001L, OrderType.LIMIT, false, 60, testAsset, new Price(new BigDecimal("150.00"))));
+        engine.enqueueOrder(Order.newLimitOrder(1002L, OrderType.LIMIT, false, 40, testAsset, new Price(new BigDecimal("150.00"))));
+        engine.enqueueOrder(Order.newLimitOrder(1001L, OrderType.LIMIT, false, 50, testAsset, new Price(new BigDecimal("150.05"))));
+        engine.enqueueOrder(Order.newLimitOrder(1001L, OrderType.LIMIT, false, 30, testAsset, new Price(new BigDecimal("151.00"))));
+        engine.enqueueOrder(Order.newLimitOrder(1003L, OrderType.LIMIT, true, 25, testAsset, new Price(new BigDecimal("149.50"))));
+
+        Thread.sleep(200);
+
+        DepthSnapshot depth = testAsset.getOrderBook().getDepthSnapshot();
+        assertEquals(3, depth.getAskLevels());
+        assertEquals(100, depth.getAskQuantity(0));
+        assertEquals(1, depth.getBidLevels());
+        assertEquals(0, new BigDecimal("149.50").compareTo(depth.getBidPrice(0)));
+        // 100 @ 150.00 + 50 @ 150.05 + 20 @ 151.00
+        assertEquals(0, new BigDecimal("25522.50").compareTo(depth.costToBuy(170)));
+        // beyond the visible depth, the rest is priced at the worst ask
+        assertEquals(0, new BigDecimal("30052.50").compareTo(depth.costToBuy(200)));
+        assertEquals(0, new BigDecimal("26798.63").compareTo(
+            new MarketOrderCostEstimator(new BigDecimal("5")).estimateBuyCost(depth, 170)));
+        assertEquals(180, depth.getVisibleAskQuantity());
+        // a market buy the visible asks can't fill has no worst case to reserve for
+        assertNull(new MarketOrderCostEstimator(new BigDecimal("5")).estimateBuyCost(depth, 181));
+        assertNull(DepthSnapshot.EMPTY.costToBuy(1));
+        // STOP buys execute at market once triggered: never priced below the trigger, priced off it without offers
+        MarketOrderCostEstimator estimator = new MarketOrderCostEstimator(new BigDecimal("5"));
+        assertEquals(0, new BigDecimal("26798.63").compareTo(
+            estimator.estimateStopBuyCost(depth, 170, new Price(new BigDecimal("140.00")))));
+        assertEquals(0, new BigDecimal("28560.00").compareTo(
+            estimator.estimateStopBuyCost(depth, 170, new Price(new BigDecimal("160.00")))));
+        assertEquals(0, new BigDecimal("1680.00").compareTo(
+            estimator.estimateStopBuyCost(DepthSnapshot.EMPTY, 10, new Price(new BigDecimal("160.00")))));
+    }
+
+    @Test
+    @DisplayName("Test asset registry lookups by id, ticker string and ticker chars")
+    void testAssetRegistryLookup() {
+        AssetRegistry registry = new AssetRegistry();
+        String[] tickers = { "AAPL", "MSFT", "TSLA", "GOOG", "AMZN", "NVDA", "META", "BRK.B", "JPM", "V" };
+        for (int i = 0; i < tickers.length; i++) {
+            registry.register(new Asset(100 + i, tickers[i], tickers[i], 100, 1000, new BigDecimal("0.01")));
+        }
+
+        for (int i = 0; i < tickers.length; i++) {
+            Asset asset = registry.byId(100 + i);
+            assertEquals(tickers[i], asset.getTicker());
+            assertSame(asset, registry.byTicker(tickers[i]));
+            char[] buffer = ("{\"t\":\"" + tickers[i] + "\"}").toCharArray();
+            assertSame(asset, registry.byTicker(buffer, 6, tickers[i].length()));
+        }
+        assertNull(registry.byTicker("IBM"));
+        assertNull(registry.byId(99));
+        assertNull(registry.byId(-1));
+        assertThrows(IllegalArgumentException.class,
+                     () -> registry.register(new Asset(500, "Apple again", "AAPL", 100, 1000, new BigDecimal("0.01"))));
+        assertEquals(tickers.length, registry.size());
+    }
+
+    @Test
+    @DisplayName("Test reload swaps the listing and stops delisted books")
+    void testAssetReload() {
+        Asset tesla = new Asset("Tesla", "TSLA", 200, 1000, new BigDecimal("0.05"));
+        Asset previous = engine.getAssetByTicker("AAPL");
+        engine.reloadAssets(List.of(testAsset, tesla));
+
+        assertSame(previous, engine.getAssetByTicker("AAPL")); // kept, same book
+        assertSame(tesla, engine.getAsset(tesla.getAssetId()));
+        assertEquals(2, engine.getAssets().size());
+
+        // a listing re-read from config carries new instances: matched by id, the live book stays
+        Asset reread = new Asset(testAsset.getAssetId(), "Apple Inc", "AAPL", 150, 1000000, testAsset.getTickSize());
+        engine.reloadAssets(List.of(reread, tesla));
+        assertSame(previous, engine.getAsset(testAsset.getAssetId()));
+        Asset renamed = new Asset(testAsset.getAssetId(), "Other", "OTHR", 10, 100, testAsset.getTickSize());
+        assertThrows(IllegalArgumentException.class, () -> engine.reloadAssets(List.of(renamed, tesla)));
+        assertSame(previous, engine.getAssetByTicker("AAPL"));
+
+        engine.reloadAssets(List.of(tesla));
+        assertNull(engine.getAssetByTicker("AAPL"));
+        assertThrows(IllegalArgumentException.class, () -> engine.cancel(1L, testAsset.getAssetId()));
+    }
+
+    @Test
+    @DisplayName("Test prices must be a multiple of the asset's tick size")
+    void testTickSizeEnforcement() {
+        Asset tesla = new Asset("Tesla", "TSLA", 200, 1000, new BigDecimal("0.05"));
+
+        assertEquals(new BigDecimal("200.15"), tesla.priceOf(new BigDecimal("200.15")).getValue());
+        assertNotNull(tesla.priceOf(new BigDecimal("200.10000000"))); // scale doesn't matter
+        assertThrows(IllegalArgumentException.class, () -> tesla.priceOf(new BigDecimal("200.13")));
+        assertThrows(IllegalArgumentException.class, () -> tesla.priceOf(BigDecimal.ZERO));
+        assertEquals(Asset.DEFAULT_TICK_SIZE, new Asset("Legacy", "OLD", 10, 100).getTickSize());
+    }
+}
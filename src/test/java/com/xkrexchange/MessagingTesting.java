@@ -0,0 +1,264 @@
+package com.xkrexchange;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xkrexchange.common.model.Asset;
+import com.xkrexchange.common.model.Order;
+import com.xkrexchange.common.model.OrderType;
+import com.xkrexchange.common.model.Price;
+import com.xkrexchange.gateway.OrderStateCache;
+import com.xkrexchange.gateway.PreTradeRiskService;
+import com.xkrexchange.messaging.ExecutionReportPublisher;
+import com.xkrexchange.messaging.MessageQueueConsumer;
+import com.xkrexchange.messaging.MessageQueueConsumer.OrderRejectionReport;
+import com.xkrexchange.messaging.MessageQueueConsumer.SequencedReport;
+import com.xkrexchange.messaging.MessageQueueProducer;
+import com.xkrexchange.messaging.MessageQueueProducer.CancellationMessage;
+import com.xkrexchange.messaging.MessageQueueProducer.MassCancellationMessage;
+import com.xkrexchange.messaging.OrderMessage;
+import com.xkrexchange.security.EntitlementSource;
+import com.xkrexchange.security.EntitlementStore;
+import com.xkrexchange.service.OrderPersistenceService;
+import com.xkrexchange.service.history.OrderHistoryService;
+import com.xkrexchange.wallet.WalletService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.*;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Unit tests for the Kafka messaging layer: order publishing, execution report publishing and the report
+ * consumer's sequencing and redelivery
+ */
+class MessagingTesting {
+
+    private MockProducer<String, Object> producer;
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @BeforeEach
+    void setUp() {
+        producer = new MockProducer<>(true, new StringSerializer(), new JsonSerializer<>()) {
+            @Override
+            public void close(Duration timeout) {
+                // the template closes its producer after every send, the real factory hands out a shared one
+            }
+        };
+        kafkaTemplate = new KafkaTemplate<>(() -> producer);
+    }
+
+    @Test
+    @DisplayName("Test a failed report send stops its asset's stream and is resent in order")
+    void testFailedReportResent() throws InterruptedException {
+        ExecutionReportPublisher publisher =
+            new ExecutionReportPublisher(kafkaTemplate, null, "kafka", "executions", 512, new SimpleMeterRegistry());
+        publisher.start();
+        try {
+            producer.sendException = new KafkaException("broker down");
+            publisher.onOrderRejected(1L, 7L, 1L, "first");
+            publisher.onOrderRejected(2L, 7L, 1L, "second");
+            awaitTrue(() -> publisher.getStoppedStreamCount() == 1);
+            publisher.onOrderRejected(3L, 7L, 1L, "queued behind the failure");
+            assertTrue(producer.history().isEmpty());
+
+            producer.sendException = null;
+            awaitTrue(() -> producer.history().size() == 3);
+            List<ProducerRecord<String, Object>> sent = producer.history();
+            for (int i = 0; i < sent.size(); i++) {
+                OrderRejectionReport report = (OrderRejectionReport) sent.get(i).value();
+                assertEquals(i + 1L, report.getOrderId());
+                assertEquals(i + 1L, report.getSequenceNumber());
+                assertTrue(report.getSequenceEpoch() > 0);
+                assertEquals("1", sent.get(i).key());
+            }
+            assertEquals(0, publisher.getStoppedStreamCount());
+        } finally {
+            publisher.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Test the consumer starts over on a new publisher epoch and skips stale reports")
+    void testSequenceEpochs() {
+        MessageQueueConsumer consumer = newConsumer();
+        try {
+            consumer.applyReports(List.of(rejection(11, 100, 1), rejection(12, 100, 2)));
+            assertEquals(0, consumer.getSequenceGapCount());
+
+            consumer.applyReports(List.of(rejection(13, 200, 1))); // publisher restarted
+            assertEquals(0, consumer.getSequenceGapCount());
+
+            consumer.applyReports(List.of(rejection(14, 100, 3), rejection(15, 200, 1))); // stale run, redelivery
+            assertEquals(0, consumer.getSequenceGapCount());
+
+            consumer.applyReports(List.of(rejection(16, 200, 3)));
+            assertEquals(1, consumer.getSequenceGapCount());
+        } finally {
+            consumer.shutdown();
+        }
+    }
+
+    // === ORDER PRODUCER TESTS ===
+
+    @Test
+    @DisplayName("Test every message about a book is keyed by its asset and a batch is grouped by asset")
+    void testOrdersKeyedByAsset() {
+        MessageQueueProducer orderProducer = new MessageQueueProducer(kafkaTemplate, "orders", 10, new SimpleMeterRegistry());
+        Asset apple = new Asset("Apple Inc", "AAPL", 150, 1000000, new BigDecimal("0.01"));
+        Asset tesla = new Asset("Tesla", "TSLA", 200, 1000000, new BigDecimal("0.01"));
+        List<Order> orders = List.of(limitOrder(apple), limitOrder(tesla), limitOrder(apple));
+
+        List<CompletableFuture<Long>> published = orderProducer.publishOrderBatch(orders);
+        for (int i = 0; i < orders.size(); i++) {
+            assertEquals(orders.get(i).getOrderId(), published.get(i).join()); // futures in input order
+        }
+        orderProducer.publishCancellation(orders.get(1).getOrderId(), tesla.getAssetId()).join();
+        orderProducer.publishMassCancellation(7L, apple.getAssetId(), null).join();
+
+        List<ProducerRecord<String, Object>> sent = producer.history();
+        String appleKey = String.valueOf(apple.getAssetId());
+        String teslaKey = String.valueOf(tesla.getAssetId());
+        assertEquals(List.of(appleKey, appleKey, teslaKey, teslaKey, appleKey),
+                     sent.stream().map(ProducerRecord::key).toList());
+        assertEquals(orders.get(2).getOrderId(), ((OrderMessage) sent.get(1).value()).getOrderId());
+        assertInstanceOf(CancellationMessage.class, sent.get(3).value());
+        assertInstanceOf(MassCancellationMessage.class, sent.get(4).value());
+        assertTrue(sent.stream().allMatch(record -> record.topic().equals("orders")));
+        assertEquals(0, orderProducer.getInFlightCount());
+    }
+
+    @Test
+    @DisplayName("Test sends beyond the in-flight cap are rejected until the broker acknowledges earlier ones")
+    void testProducerBackpressure() {
+        MockProducer<String, Object> slowBroker = new MockProducer<>(false, new StringSerializer(), new JsonSerializer<>()) {
+            @Override
+            public void close(Duration timeout) {
+            }
+        };
+        MessageQueueProducer orderProducer =
+            new MessageQueueProducer(new KafkaTemplate<>(() -> slowBroker), "orders", 2, new SimpleMeterRegistry());
+        Asset apple = new Asset("Apple Inc", "AAPL", 150, 1000000, new BigDecimal("0.01"));
+
+        CompletableFuture<Long> first = orderProducer.publishOrder(limitOrder(apple));
+        CompletableFuture<Long> second = orderProducer.publishOrder(limitOrder(apple));
+        CompletableFuture<Long> rejected = orderProducer.publishOrder(limitOrder(apple));
+        assertFalse(first.isDone());
+        assertEquals(2, orderProducer.getInFlightCount());
+        assertEquals(0, orderProducer.getRemainingCapacity());
+        assertFalse(orderProducer.isQueueHealthy());
+        CompletionException saturated = assertThrows(CompletionException.class, rejected::join);
+        assertInstanceOf(RejectedExecutionException.class, saturated.getCause());
+        assertEquals(2, slowBroker.history().size()); // the rejected order never reached the producer
+
+        assertTrue(slowBroker.completeNext());
+        assertNotNull(first.join());
+        assertEquals(1, orderProducer.getRemainingCapacity());
+        CompletableFuture<Long> third = orderProducer.publishOrder(limitOrder(apple));
+        assertFalse(third.isCompletedExceptionally());
+
+        assertTrue(slowBroker.errorNext(new KafkaException("broker down"))); // a failed send frees its permit too
+        assertThrows(CompletionException.class, second::join);
+        assertEquals(1, orderProducer.getInFlightCount());
+        assertEquals(1, orderProducer.getRemainingCapacity());
+    }
+
+    // === REPORT CONSUMER TESTS ===
+
+    @Test
+    @DisplayName("Test a poll is committed up to its first failed report and the redelivery is then committed")
+    void testConsumerRedelivery() {
+        MessageQueueConsumer consumer = newConsumer();
+        try {
+            List<ConsumerRecord<String, SequencedReport>> poll = List.of(
+                record(0, 10, rejection(11, 100, 1)),
+                record(0, 11, rejection(null, 100, 2, 1L)), // no order id: fails to apply
+                record(0, 12, rejection(13L, 100, 3)),
+                record(1, 20, rejection(21L, 100, 1, 2L)));
+            FakeAcknowledgment ack = new FakeAcknowledgment();
+            consumer.handleTradeExecutions(poll, ack);
+            assertFalse(ack.acknowledged);
+            assertEquals(1, ack.nackIndex); // partition 0 stops at the failure, partition 1 is done
+
+            // the container redelivers from the failed record on, the other partition included
+            FakeAcknowledgment redelivery = new FakeAcknowledgment();
+            consumer.handleTradeExecutions(List.of(
+                record(0, 11, rejection(12L, 100, 2)),
+                record(0, 12, rejection(13L, 100, 3)),
+                record(1, 20, rejection(21L, 100, 1, 2L))), redelivery);
+            assertTrue(redelivery.acknowledged);
+            assertEquals(-1, redelivery.nackIndex);
+            assertEquals(0, consumer.getSequenceGapCount());
+        } finally {
+            consumer.shutdown();
+        }
+    }
+
+    // helpers
+
+    private static Order limitOrder(Asset asset) {
+        return Order.newLimitOrder(1001L, OrderType.LIMIT, true, 10, asset, new Price(new BigDecimal("150.00")));
+    }
+
+    private static ConsumerRecord<String, SequencedReport> record(int partition, long offset, SequencedReport report) {
+        return new ConsumerRecord<>("executions", partition, offset, String.valueOf(report.getAssetId()), report);
+    }
+
+    /**
+     * Records what the consumer told the listener container
+     */
+    private static final class FakeAcknowledgment implements Acknowledgment {
+        boolean acknowledged;
+        int nackIndex = -1;
+
+        @Override
+        public void acknowledge() {
+            acknowledged = true;
+        }
+
+        @Override
+        public void nack(int index, Duration sleep) {
+            nackIndex = index;
+        }
+    }
+
+    private static MessageQueueConsumer newConsumer() {
+        return new MessageQueueConsumer(new WalletService(), new OrderPersistenceService(),
+            new PreTradeRiskService(1_000_000, new BigDecimal("10000000"), BigDecimal.TEN, 500, 5_000_000),
+            new EntitlementStore((EntitlementSource) null, "all"), new OrderStateCache(60_000),
+            new OrderHistoryService(), 2);
+    }
+
+    private static SequencedReport rejection(long orderId, long epoch, long sequence) {
+        return rejection(orderId, epoch, sequence, 1L);
+    }
+
+    private static SequencedReport rejection(Long orderId, long epoch, long sequence, long assetId) {
+        Map<String, Object> report = new HashMap<>(Map.of("userId", 7L, "assetId", assetId, "rejectionReason", "test",
+            "rejectionTimestamp", 0L, "sequenceNumber", sequence, "sequenceEpoch", epoch));
+        report.put("orderId", orderId); // null allowed
+        return new ObjectMapper().convertValue(report, OrderRejectionReport.class);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met in time");
+            Thread.sleep(10);
+        }
+    }
+}
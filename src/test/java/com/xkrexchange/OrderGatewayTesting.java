@@ -0,0 +1,674 @@
+package com.xkrexchange;
+
+import com.xkrexchange.common.dto.OrderRequestDto;
+import com.xkrexchange.common.dto.OrderResponseDto;
+import com.xkrexchange.common.model.Asset;
+import com.xkrexchange.common.model.Order;
+import com.xkrexchange.common.model.OrderType;
+import com.xkrexchange.common.model.Price;
+import com.xkrexchange.gateway.MarketOrderCostEstimator;
+import com.xkrexchange.gateway.OrderCommand;
+import com.xkrexchange.gateway.OrderCommandParser;
+import com.xkrexchange.gateway.OrderGatewayService;
+import com.xkrexchange.gateway.OrderStateCache;
+import com.xkrexchange.gateway.PreTradeRiskService;
+import com.xkrexchange.gateway.RateLimiter;
+import com.xkrexchange.gateway.TokenBucketRateLimiter;
+import com.xkrexchange.gateway.binary.BinaryOrderEntryServer;
+import com.xkrexchange.gateway.binary.BinaryProtocol;
+import com.xkrexchange.matching.MatchingEngine;
+import com.xkrexchange.messaging.InProcessOrderTransport;
+import com.xkrexchange.security.AuthenticatedPrincipal;
+import com.xkrexchange.security.AssetBitmap;
+import com.xkrexchange.security.AuthenticationService;
+import com.xkrexchange.security.EntitlementChangedEvent;
+import com.xkrexchange.security.EntitlementSource;
+import com.xkrexchange.security.EntitlementStore;
+import com.xkrexchange.security.UserEntitlements;
+import com.xkrexchange.service.OrderPersistenceService;
+import com.xkrexchange.service.history.OrderHistoryService;
+import com.xkrexchange.wallet.WalletService;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unit tests for the OrderGatewayService pipeline (authentication, validation, reservation, routing)
+ */
+class OrderGatewayTesting {
+
+    private static final String JWT_SECRET = "test-secret-for-order-gateway-testing-0123456789";
+
+    private MatchingEngine engine;
+    private Asset testAsset;
+    private ExecutorService executor;
+    private StubWallet wallet;
+    private PreTradeRiskService riskService;
+    private EntitlementStore entitlementStore;
+    private OrderStateCache orderStateCache;
+    private OrderHistoryService historyService;
+    private OrderGatewayService gateway;
+
+    @BeforeEach
+    void setUp() {
+        engine = new MatchingEngine(1024, 60_000);
+        testAsset = new Asset("Apple Inc", "AAPL", 150, 1000000, new BigDecimal("0.01"));
+        engine.registerAsset(testAsset);
+        executor = Executors.newFixedThreadPool(8);
+        wallet = new StubWallet();
+        entitlementStore = new EntitlementStore((EntitlementSource) null, "all");
+        orderStateCache = new OrderStateCache(60_000);
+        historyService = new OrderHistoryService();
+        riskService = new PreTradeRiskService(1_000_000, new BigDecimal("10000000.00"), new BigDecimal("10"), 3, 1_000);
+        gateway = new OrderGatewayService(new AuthenticationService(JWT_SECRET, 1024, 60_000, entitlementStore), wallet,
+            new OrderPersistenceService(), new InProcessOrderTransport(engine), engine, riskService, RateLimiter.UNLIMITED,
+            entitlementStore, orderStateCache, historyService, new MarketOrderCostEstimator(new BigDecimal("5")), executor, 5_000, 100, 1_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+        engine.shutdown();
+    }
+
+    @Test
+    @DisplayName("Test valid order is reserved and routed")
+    void testOrderRouted() {
+        OrderResponseDto response = gateway.processOrder(limitOrder(true, 10, "150.00"), tokenFor(1001L));
+
+        assertTrue(response.isSuccess(), response.getMessage());
+        assertNotNull(response.getOrderId());
+        assertEquals(1, wallet.reservations.get());
+    }
+
+    @Test
+    @DisplayName("Test invalid token is rejected before reservation")
+    void testInvalidToken() {
+        OrderResponseDto response = gateway.processOrder(limitOrder(true, 10, "150.00"), "Bearer not-a-jwt");
+
+        assertFalse(response.isSuccess());
+        assertEquals(0, wallet.reservations.get());
+    }
+
+    @Test
+    @DisplayName("Test failed reservation rejects the order")
+    void testReservationFailure() {
+        wallet.approve = false;
+        OrderResponseDto response = gateway.processOrder(limitOrder(false, 10, "150.00"), tokenFor(1001L));
+
+        assertFalse(response.isSuccess());
+        assertEquals(0, testAsset.getOrderBook().getPendingOrderCount());
+    }
+
+    @Test
+    @DisplayName("Test orders over the size limit are rejected")
+    void testOrderSizeLimit() {
+        OrderResponseDto response = gateway.processOrder(limitOrder(true, 2_000_000, "1.00"), tokenFor(1001L));
+
+        assertFalse(response.isSuccess());
+        assertEquals(0, wallet.reservations.get());
+    }
+
+    @Test
+    @DisplayName("Test concurrent submissions all complete")
+    void testConcurrentSubmissions() {
+        List<CompletableFuture<OrderResponseDto>> responses = new ArrayList<>();
+        for (int i = 0; i < 500; i++) { // distinct users: each may only have 3 open orders
+            responses.add(gateway.submitOrder(limitOrder(i % 2 == 0, 1, "150.00"), tokenFor(1000 + i)));
+        }
+        for (CompletableFuture<OrderResponseDto> response : responses) {
+            assertTrue(response.join().isSuccess());
+        }
+        assertEquals(500, wallet.reservations.get());
+    }
+
+    // === PRE-TRADE RISK TESTS ===
+
+    @Test
+    @DisplayName("Test risk rejects limit prices outside the collar")
+    void testPriceCollar() throws InterruptedException {
+        Price mid = new Price(new BigDecimal("100.00"));
+        engine.enqueueOrder(Order.newLimitOrder(1L, OrderType.LIMIT, true, 10, testAsset, mid));
+        engine.enqueueOrder(Order.newLimitOrder(2L, OrderType.LIMIT, false, 10, testAsset, new Price(new BigDecimal("100.20"))));
+        Thread.sleep(100);
+
+        Order inside = Order.newLimitOrder(1001L, OrderType.LIMIT, true, 1, testAsset, new Price(new BigDecimal("105.00")));
+        Order outside = Order.newLimitOrder(1001L, OrderType.LIMIT, true, 1, testAsset, new Price(new BigDecimal("115.00")));
+
+        assertNull(riskService.checkAndReserve(inside));
+        assertNotNull(riskService.checkAndReserve(outside));
+    }
+
+    @Test
+    @DisplayName("Test open order and net position limits follow fills and cancels")
+    void testExposureLimits() {
+        Price price = new Price(new BigDecimal("150.00"));
+        Order first = Order.newLimitOrder(1001L, OrderType.LIMIT, true, 600, testAsset, price);
+        Order second = Order.newLimitOrder(1001L, OrderType.LIMIT, true, 600, testAsset, price);
+
+        assertNull(riskService.checkAndReserve(first));
+        assertNotNull(riskService.checkAndReserve(second)); // 1200 > max net position of 1000
+
+        riskService.onFill(first.getOrderId(), 200);
+        assertEquals(200, riskService.getNetPosition(1001L, testAsset.getAssetId()));
+        riskService.onOrderClosed(first.getOrderId()); // remaining 400 released
+        assertEquals(0, riskService.getOpenOrderCount(1001L));
+
+        assertNull(riskService.checkAndReserve(second)); // 200 + 600 fits now
+        assertNull(riskService.checkAndReserve(Order.newLimitOrder(1001L, OrderType.LIMIT, false, 1, testAsset, price)));
+        assertNull(riskService.checkAndReserve(Order.newLimitOrder(1001L, OrderType.LIMIT, false, 1, testAsset, price)));
+        assertNotNull(riskService.checkAndReserve(Order.newLimitOrder(1001L, OrderType.LIMIT, false, 1, testAsset, price))); // 4th open order
+    }
+
+    // === AUTHENTICATION TESTS ===
+
+    @Test
+    @DisplayName("Test token is verified once then served from the cache")
+    void testTokenCache() {
+        AuthenticationService auth = new AuthenticationService(JWT_SECRET, 1024, 60_000, entitlementStore);
+        String token = tokenFor(1001L);
+
+        AuthenticatedPrincipal principal = auth.authenticate(token);
+        assertEquals(1001L, principal.getUserId());
+        assertTrue(principal.hasPermission(AuthenticatedPrincipal.PERMISSION_TRADE));
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(1001L, auth.validateTokenAndGetUserId(token));
+        }
+        assertEquals(1, auth.getCacheMissCount());
+        assertEquals(100, auth.getCacheHitCount());
+    }
+
+    @Test
+    @DisplayName("Test revoked, forged, expired and role-less tokens are rejected")
+    void testTokenRejections() {
+        AuthenticationService auth = new AuthenticationService(JWT_SECRET, 1024, 60_000, entitlementStore);
+        String token = tokenFor(1001L);
+        auth.authenticate(token);
+
+        auth.logoutUser(token);
+        assertThrows(AuthenticationService.AuthenticationException.class, () -> auth.authenticate(token));
+
+        String forged = "Bearer " + Jwts.builder().subject("1001")
+            .expiration(new Date(System.currentTimeMillis() + 60_000))
+            .signWith(Keys.hmacShaKeyFor("some-other-secret-that-is-long-enough-0123456789".getBytes(StandardCharsets.UTF_8)))
+            .compact();
+        assertThrows(AuthenticationService.AuthenticationException.class, () -> auth.authenticate(forged));
+
+        String expired = "Bearer " + Jwts.builder().subject("1001")
+            .expiration(new Date(System.currentTimeMillis() - 60_000))
+            .signWith(Keys.hmacShaKeyFor(JWT_SECRET.getBytes(StandardCharsets.UTF_8)))
+            .compact();
+        assertThrows(AuthenticationService.AuthenticationException.class, () -> auth.authenticate(expired));
+
+        String roleless = "Bearer " + Jwts.builder().subject("1001")
+            .expiration(new Date(System.currentTimeMillis() + 60_000))
+            .signWith(Keys.hmacShaKeyFor(JWT_SECRET.getBytes(StandardCharsets.UTF_8)))
+            .compact();
+        assertThrows(AuthenticationService.AuthenticationException.class, () -> auth.authenticate(roleless));
+    }
+
+    // === ORDER PARSING TESTS ===
+
+    @Test
+    @DisplayName("Test streaming parser resolves the asset and converts prices to ticks")
+    void testOrderCommandParsing() {
+        OrderCommandParser parser = new OrderCommandParser(engine);
+        OrderCommand command = new OrderCommand();
+        String json = "{\"orderType\":\"STOP_LIMIT\",\"buyOrder\":false,\"assetTicker\":\"AAPL\",\"quantity\":25,"
+            + "\"limitPrice\":149.5,\"triggerPrice\":\"150.10\",\"clientOrderId\":\"mm-1\",\"note\":{\"ignored\":[1,2]}}";
+
+        assertEquals(OrderCommand.VALID, parser.parse(json.getBytes(StandardCharsets.UTF_8), command));
+        assertEquals(testAsset.getAssetId(), command.getAssetId());
+        assertEquals(OrderType.STOP_LIMIT, command.getOrderType());
+        assertFalse(command.isBuyOrder());
+        assertEquals(14950, command.getLimitPriceTicks());
+        assertEquals(15010, command.getTriggerPriceTicks());
+        assertEquals("mm-1", command.clientOrderIdString());
+
+        OrderRequestDto request = command.toRequestDto();
+        assertNull(request.validate());
+        assertEquals(0, new BigDecimal("149.5").compareTo(request.getLimitPrice()));
+    }
+
+    @Test
+    @DisplayName("Test streaming parser reports validation codes")
+    void testOrderCommandValidationCodes() {
+        OrderCommandParser parser = new OrderCommandParser(engine);
+        OrderCommand command = new OrderCommand();
+        long assetId = testAsset.getAssetId();
+
+        assertEquals(OrderCommand.PRICE_OFF_TICK, parser.parse(bytes(
+            "{\"orderType\":\"LIMIT\",\"assetId\":" + assetId + ",\"quantity\":1,\"limitPrice\":150.005}"), command));
+        assertEquals(OrderCommand.NON_POSITIVE_QUANTITY, parser.parse(bytes(
+            "{\"orderType\":\"LIMIT\",\"assetId\":" + assetId + ",\"quantity\":0,\"limitPrice\":150}"), command));
+        assertEquals(OrderCommand.MISSING_LIMIT_PRICE, parser.parse(bytes(
+            "{\"orderType\":\"LIMIT\",\"assetId\":" + assetId + ",\"quantity\":1}"), command));
+        assertEquals(OrderCommand.UNKNOWN_ASSET, parser.parse(bytes(
+            "{\"orderType\":\"MARKET\",\"assetTicker\":\"NOPE\",\"quantity\":1}"), command));
+        assertEquals(OrderCommand.MALFORMED, parser.parse(bytes("{\"orderType\":\"LIMIT\","), command));
+        assertEquals(OrderCommand.MALFORMED, parser.parse(bytes("{\"orderType\":\"ICEBERG\"}"), command));
+        assertEquals(OrderCommand.MALFORMED, parser.parse(bytes(
+            "{\"orderType\":\"MARKET\",\"buyOrder\":\"true\",\"assetId\":" + assetId + ",\"quantity\":1}"), command));
+        assertEquals(OrderCommand.PRICE_OFF_TICK, parser.parse(bytes(
+            "{\"orderType\":\"LIMIT\",\"assetId\":" + assetId + ",\"quantity\":1,\"limitPrice\":150.000000001}"), command));
+        assertEquals("Quantity must be positive", OrderCommand.describe(OrderCommand.NON_POSITIVE_QUANTITY));
+    }
+
+    @Test
+    @DisplayName("Test batch orders rejected while decoding are answered in place")
+    void testDecodedBatchSubmission() {
+        OrderCommandParser parser = new OrderCommandParser(engine);
+        long assetId = testAsset.getAssetId();
+        String order = "{\"orderType\":\"LIMIT\",\"buyOrder\":true,\"assetId\":" + assetId + ",\"quantity\":10,"
+            + "\"limitPrice\":150}";
+        String badSide = "{\"orderType\":\"LIMIT\",\"buyOrder\":\"true\",\"assetId\":" + assetId + ",\"quantity\":10,"
+            + "\"limitPrice\":150}";
+        List<OrderRequestDto> requests = new ArrayList<>();
+        List<String> rejections = new ArrayList<>();
+        assertTrue(parser.parseEach(bytes("[" + order + "," + badSide + "," + order + "]"), new OrderCommand(), command -> {
+            requests.add(command.isValid() ? command.toRequestDto() : null);
+            rejections.add(OrderCommand.describe(command.getErrorCode()));
+        }));
+        assertFalse(parser.parseEach(bytes("[" + order + ","), new OrderCommand(), command -> { }));
+
+        List<OrderResponseDto> responses = gateway.submitOrders(requests, rejections, tokenFor(1001L)).join();
+        assertEquals(3, responses.size());
+        assertTrue(responses.get(0).isSuccess());
+        assertEquals("Malformed order request", responses.get(1).getMessage());
+        assertTrue(responses.get(2).isSuccess());
+        assertEquals(2, wallet.reservations.get());
+    }
+
+    // === BATCH TESTS ===
+
+    @Test
+    @DisplayName("Test batch submission returns one result per order and rejects only the bad ones")
+    void testBatchSubmission() {
+        OrderRequestDto invalid = limitOrder(true, 0, "150.00");
+        List<OrderResponseDto> responses = gateway.submitOrders(
+            List.of(limitOrder(true, 10, "150.00"), invalid, limitOrder(false, 5, "151.00")), tokenFor(1001L)).join();
+
+        assertEquals(3, responses.size());
+        assertTrue(responses.get(0).isSuccess());
+        assertFalse(responses.get(1).isSuccess());
+        assertEquals("Quantity must be positive", responses.get(1).getMessage());
+        assertTrue(responses.get(2).isSuccess());
+        assertEquals(2, wallet.reservations.get());
+        assertEquals(2, riskService.getOpenOrderCount(1001L));
+    }
+
+    @Test
+    @DisplayName("Test a reservation that throws fails only its own order of the batch")
+    void testBatchReservationFailure() {
+        wallet.failAssetReservations = true;
+        List<OrderResponseDto> responses = gateway.submitOrders(
+            List.of(limitOrder(true, 10, "150.00"), limitOrder(false, 5, "151.00"), limitOrder(true, 5, "150.00")),
+            tokenFor(1001L)).join();
+
+        assertTrue(responses.get(0).isSuccess(), responses.get(0).getMessage());
+        assertFalse(responses.get(1).isSuccess());
+        assertEquals("Internal error while reserving funds", responses.get(1).getMessage());
+        assertTrue(responses.get(2).isSuccess(), responses.get(2).getMessage());
+        assertEquals(2, wallet.reservations.get());
+        assertEquals(2, riskService.getOpenOrderCount(1001L));
+    }
+
+    @Test
+    @DisplayName("Test batch over the size limit is refused as a whole")
+    void testBatchTooLarge() {
+        List<OrderRequestDto> requests = new ArrayList<>();
+        for (int i = 0; i < 101; i++) {
+            requests.add(limitOrder(true, 1, "150.00"));
+        }
+        List<OrderResponseDto> responses = gateway.submitOrders(requests, tokenFor(1001L)).join();
+
+        assertTrue(responses.stream().noneMatch(OrderResponseDto::isSuccess));
+        assertEquals(0, wallet.reservations.get());
+    }
+
+    // === BINARY ORDER ENTRY TESTS ===
+
+    @Test
+    @DisplayName("Test binary session logs on, routes an order and resends it after a reconnect")
+    void testBinaryOrderEntry() throws Exception {
+        BinaryOrderEntryServer server = new BinaryOrderEntryServer(gateway,
+            new AuthenticationService(JWT_SECRET, 1024, 60_000, entitlementStore), "127.0.0.1", 0, 30, 64, 65_536);
+        server.start();
+        try {
+            String token = tokenFor(1001L).substring("Bearer ".length());
+            try (SocketChannel client = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.getLocalPort()))) {
+                client.write(logonFrame(1, true, token));
+                ByteBuffer logonAck = readFrame(client);
+                assertEquals(BinaryProtocol.LOGON, BinaryProtocol.msgType(logonAck));
+                assertEquals(2, logonAck.getLong(BinaryProtocol.HEADER_LENGTH + 2)); // next expected inbound
+
+                client.write(newOrderFrame(2, "bin-1"));
+                ByteBuffer ack = readFrame(client);
+                assertEquals(BinaryProtocol.ORDER_ACK, BinaryProtocol.msgType(ack));
+                assertEquals(2, BinaryProtocol.seqNum(ack));
+            }
+
+            // reconnect without reset: same session, the ack can be resent
+            try (SocketChannel client = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.getLocalPort()))) {
+                client.write(logonFrame(3, false, token));
+                ByteBuffer logonAck = readFrame(client);
+                assertEquals(3, BinaryProtocol.seqNum(logonAck));
+                assertEquals(4, logonAck.getLong(BinaryProtocol.HEADER_LENGTH + 2));
+
+                ByteBuffer resendRequest = ByteBuffer.allocate(BinaryProtocol.HEADER_LENGTH + 16);
+                int start = BinaryProtocol.beginFrame(resendRequest, BinaryProtocol.RESEND_REQUEST, 4);
+                resendRequest.putLong(1).putLong(2);
+                BinaryProtocol.endFrame(resendRequest, start);
+                client.write(resendRequest.flip());
+
+                ByteBuffer gapFill = readFrame(client); // the old logon ack is a session message
+                assertEquals(BinaryProtocol.SEQUENCE_RESET, BinaryProtocol.msgType(gapFill));
+                assertEquals(2, gapFill.getLong(BinaryProtocol.HEADER_LENGTH));
+                ByteBuffer resent = readFrame(client);
+                assertEquals(BinaryProtocol.ORDER_ACK, BinaryProtocol.msgType(resent));
+                assertEquals(BinaryProtocol.FLAG_POSS_DUP, BinaryProtocol.flags(resent));
+            }
+            assertEquals(1, wallet.reservations.get());
+        } finally {
+            server.stop();
+        }
+    }
+
+    // === ENTITLEMENT TESTS ===
+
+    @Test
+    @DisplayName("Test asset bitmap stays sorted and compact through adds and removes")
+    void testAssetBitmap() {
+        AssetBitmap bitmap = AssetBitmap.of(3, 70, 5_000_000, 64);
+
+        assertTrue(bitmap.contains(3));
+        assertTrue(bitmap.contains(64));
+        assertTrue(bitmap.contains(70));
+        assertTrue(bitmap.contains(5_000_000));
+        assertFalse(bitmap.contains(4));
+        assertFalse(bitmap.contains(4_999_999));
+        assertEquals(4, bitmap.cardinality());
+
+        AssetBitmap smaller = bitmap.without(5_000_000).without(64);
+        assertFalse(smaller.contains(5_000_000));
+        assertTrue(smaller.contains(70));
+        assertTrue(bitmap.contains(5_000_000)); // original unchanged
+    }
+
+    @Test
+    @DisplayName("Test entitlements are reloaded from the source after an invalidation event")
+    void testEntitlementInvalidation() {
+        Map<Long, UserEntitlements> database = new HashMap<>();
+        database.put(1001L, new UserEntitlements(true, false, false, AssetBitmap.of(testAsset.getAssetId())));
+        EntitlementStore store = new EntitlementStore(database::get, "none");
+
+        assertTrue(store.canTrade(1001L, testAsset.getAssetId()));
+        assertFalse(store.canTrade(1001L, testAsset.getAssetId() + 1));
+        assertFalse(store.canTrade(2002L, testAsset.getAssetId())); // unknown user, default none
+
+        database.put(1001L, UserEntitlements.NONE);
+        assertTrue(store.canTrade(1001L, testAsset.getAssetId())); // still cached
+        store.onEntitlementChanged(new EntitlementChangedEvent(this, 1001L));
+        assertFalse(store.canTrade(1001L, testAsset.getAssetId()));
+    }
+
+    @Test
+    @DisplayName("Test grants and revocations start from the user's current entitlements")
+    void testEntitlementUpdatesOfUncachedUsers() {
+        long assetId = testAsset.getAssetId();
+        EntitlementStore allByDefault = new EntitlementStore((EntitlementSource) null, "all");
+        allByDefault.revokeAsset(1001L, assetId);
+        assertFalse(allByDefault.canTrade(1001L, assetId));
+        assertTrue(allByDefault.canTrade(1001L, assetId + 1));
+        allByDefault.grantAsset(1002L, assetId);
+        assertTrue(allByDefault.canTrade(1002L, assetId + 1)); // still every asset
+
+        EntitlementStore noneByDefault = new EntitlementStore((EntitlementSource) null, "none");
+        noneByDefault.grantAsset(1001L, assetId);
+        assertTrue(noneByDefault.canTrade(1001L, assetId));
+        assertFalse(noneByDefault.canTrade(1001L, assetId + 1));
+        assertFalse(noneByDefault.canTrade(1002L, assetId));
+    }
+
+    @Test
+    @DisplayName("Test entitlements loaded across an invalidation are not cached")
+    void testEntitlementLoadRacingInvalidation() {
+        Map<Long, UserEntitlements> database = new HashMap<>();
+        database.put(1001L, UserEntitlements.ALL_ASSETS);
+        EntitlementStore[] store = new EntitlementStore[1];
+        store[0] = new EntitlementStore(userId -> {
+            UserEntitlements stale = database.get(userId);
+            database.put(userId, UserEntitlements.NONE); // changed while this load was running
+            store[0].onEntitlementChanged(new EntitlementChangedEvent(this, userId));
+            return stale;
+        }, "none");
+
+        assertTrue(store[0].canTrade(1001L, testAsset.getAssetId()));
+        assertFalse(store[0].canTrade(1001L, testAsset.getAssetId())); // loaded again, not the stale entry
+    }
+
+    @Test
+    @DisplayName("Test order ownership follows routed orders")
+    void testOrderOwnership() {
+        AuthenticationService auth = new AuthenticationService(JWT_SECRET, 1024, 60_000, entitlementStore);
+        OrderResponseDto response = gateway.processOrder(limitOrder(true, 10, "150.00"), tokenFor(1001L));
+
+        assertTrue(auth.canUserAccessOrder(1001L, response.getOrderId()));
+        assertFalse(auth.canUserAccessOrder(1002L, response.getOrderId()));
+        entitlementStore.forgetOrder(response.getOrderId());
+        assertFalse(auth.canUserAccessOrder(1001L, response.getOrderId()));
+    }
+
+    // === ORDER STATE TESTS ===
+
+    @Test
+    @DisplayName("Test order state follows engine reports and computes the average fill price")
+    void testOrderStateCache() {
+        OrderStateCache cache = new OrderStateCache(60_000);
+        Order order = Order.newLimitOrder(1001L, OrderType.LIMIT, true, 30, testAsset, new Price(new BigDecimal("150.00")));
+        cache.recordSubmitted(order);
+        long orderId = order.getOrderId();
+
+        CompletableFuture<OrderStateCache.OrderState> ack = cache.awaitAck(orderId, 5_000);
+        assertFalse(ack.isDone());
+        cache.onAccepted(orderId, 1001L, testAsset.getAssetId(), 0);
+        assertEquals(OrderStateCache.POSTED, ack.join().getStatus());
+
+        cache.onFill(orderId, 1001L, testAsset.getAssetId(), 10, new BigDecimal("150.00"), 10, 20);
+        cache.onFill(orderId, 1001L, testAsset.getAssetId(), 20, new BigDecimal("149.70"), 30, 0);
+        OrderStateCache.OrderState state = cache.get(orderId);
+        assertEquals(OrderStateCache.FILLED, state.getStatus());
+        assertEquals(30, state.getFilledQuantity());
+        assertEquals(0, new BigDecimal("149.80").compareTo(state.getAveragePrice()));
+
+        cache.onCancelled(orderId, 1001L, testAsset.getAssetId(), 30, "late cancel"); // closed orders stay closed
+        assertEquals(OrderStateCache.FILLED, cache.get(orderId).getStatus());
+
+        assertNull(cache.awaitAck(-1L, 10).join()); // unknown order times out quietly
+    }
+
+    @Test
+    @DisplayName("Test order status is served from the cache to the owner only, and submit can await the ack")
+    void testOrderStatusAndAwaitAck() {
+        CompletableFuture<OrderResponseDto> submitted = gateway.submitOrder(limitOrder(true, 10, "150.00"), tokenFor(1001L), true);
+        OrderResponseDto pending = submitted.join(); // nothing reports back in this test: answered at the ack timeout
+        assertTrue(pending.isSuccess(), pending.getMessage());
+        assertEquals(OrderStateCache.PENDING, pending.getOrderStatus());
+
+        long orderId = pending.getOrderId();
+        orderStateCache.onAccepted(orderId, 1001L, testAsset.getAssetId(), 0);
+        assertEquals(OrderStateCache.POSTED, gateway.getOrderStatus(orderId, tokenFor(1001L)).getOrderStatus());
+        assertFalse(gateway.getOrderStatus(orderId, tokenFor(1002L)).isSuccess());
+        assertNull(gateway.getOrderStatus(orderId, tokenFor(1002L)).getOrderId());
+    }
+
+    @Test
+    @DisplayName("Test order status falls back to the order history and rejects invalid tokens")
+    void testOrderStatusFromHistory() {
+        Order restored = Order.newLimitOrder(1001L, OrderType.LIMIT, true, 10, testAsset, new Price(new BigDecimal("150.00")));
+        historyService.recordSubmitted(restored); // never seen by the order state cache
+        historyService.onFill(restored.getOrderId(), 1001L, 4, 6);
+
+        OrderResponseDto status = gateway.getOrderStatus(restored.getOrderId(), tokenFor(1001L));
+        assertEquals("PARTIALLY_FILLED", status.getOrderStatus());
+        assertEquals(4, status.getExecutedQuantity());
+        assertNull(gateway.getOrderStatus(restored.getOrderId(), tokenFor(1002L)).getOrderId());
+        assertNull(gateway.getOrderStatus(-1L, tokenFor(1001L)).getOrderId());
+        assertThrows(AuthenticationService.AuthenticationException.class,
+                     () -> gateway.getOrderStatus(restored.getOrderId(), "Bearer not-a-jwt"));
+    }
+
+    // === RATE LIMIT TESTS ===
+
+    @Test
+    @DisplayName("Test token bucket allows a burst then refills over time")
+    void testTokenBucket() {
+        AtomicLong clock = new AtomicLong(1_000_000);
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(60, 4, clock::get);
+
+        for (int i = 0; i < 60; i++) {
+            assertTrue(limiter.tryAcquire(42L));
+        }
+        assertFalse(limiter.tryAcquire(42L));
+        assertTrue(limiter.tryAcquire(43L)); // other keys have their own bucket
+
+        clock.addAndGet(999);
+        assertFalse(limiter.tryAcquire(42L));
+        clock.addAndGet(1);
+        assertTrue(limiter.tryAcquire(42L)); // one permit per second
+        assertFalse(limiter.tryAcquire(42L));
+    }
+
+    @Test
+    @DisplayName("Test token bucket evicts idle keys as it grows")
+    void testTokenBucketEviction() {
+        AtomicLong clock = new AtomicLong(0);
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(60, 1, clock::get);
+
+        for (long key = 1; key <= 10_000; key++) {
+            assertTrue(limiter.tryAcquire(key));
+            clock.addAndGet(10); // buckets refill within a second, so most keys go idle
+        }
+        assertTrue(limiter.size() < 1_000);
+    }
+
+    @Test
+    @DisplayName("Test gateway rejects users over their order rate")
+    void testGatewayRateLimit() {
+        gateway = new OrderGatewayService(new AuthenticationService(JWT_SECRET, 1024, 60_000, entitlementStore), wallet,
+            new OrderPersistenceService(), new InProcessOrderTransport(engine), engine, riskService, new TokenBucketRateLimiter(2),
+            entitlementStore, orderStateCache, new OrderHistoryService(), new MarketOrderCostEstimator(new BigDecimal("5")), executor, 5_000, 100, 1_000);
+
+        assertTrue(gateway.processOrder(limitOrder(true, 1, "150.00"), tokenFor(1001L)).isSuccess());
+        assertTrue(gateway.processOrder(limitOrder(true, 1, "150.00"), tokenFor(1001L)).isSuccess());
+        OrderResponseDto limited = gateway.processOrder(limitOrder(true, 1, "150.00"), tokenFor(1001L));
+
+        assertTrue(limited.isRateLimited());
+        assertEquals(2, wallet.reservations.get());
+    }
+
+    // helpers
+
+    private OrderRequestDto limitOrder(boolean buy, int quantity, String price) {
+        OrderRequestDto request = new OrderRequestDto();
+        request.setOrderType(OrderType.LIMIT);
+        request.setBuyOrder(buy);
+        request.setAssetId(testAsset.getAssetId());
+        request.setAssetTicker(testAsset.getTicker());
+        request.setQuantity(quantity);
+        request.setLimitPrice(new BigDecimal(price));
+        return request;
+    }
+
+    private ByteBuffer logonFrame(long seqNum, boolean reset, String token) {
+        ByteBuffer frame = ByteBuffer.allocate(BinaryProtocol.MAX_FRAME_LENGTH);
+        int start = BinaryProtocol.beginFrame(frame, BinaryProtocol.LOGON, seqNum);
+        frame.put((byte) (reset ? 1 : 0)).putShort((short) 30);
+        BinaryProtocol.putText(frame, token);
+        BinaryProtocol.endFrame(frame, start);
+        return frame.flip();
+    }
+
+    private ByteBuffer newOrderFrame(long seqNum, String clientOrderId) {
+        ByteBuffer frame = ByteBuffer.allocate(BinaryProtocol.MAX_FRAME_LENGTH);
+        int start = BinaryProtocol.beginFrame(frame, BinaryProtocol.NEW_ORDER, seqNum);
+        frame.putLong(testAsset.getAssetId()).put(BinaryProtocol.SIDE_BUY).put((byte) OrderType.LIMIT.ordinal()).putInt(10);
+        frame.putLong(BinaryProtocol.toScaledPrice(new BigDecimal("150.00"))).putLong(0);
+        BinaryProtocol.putShortString(frame, clientOrderId);
+        BinaryProtocol.endFrame(frame, start);
+        return frame.flip();
+    }
+
+    private static ByteBuffer readFrame(SocketChannel client) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(2);
+        while (length.hasRemaining()) {
+            if (client.read(length) < 0) throw new IOException("Connection closed");
+        }
+        ByteBuffer frame = ByteBuffer.allocate(Short.toUnsignedInt(length.getShort(0)));
+        frame.put(length.flip());
+        while (frame.hasRemaining()) {
+            if (client.read(frame) < 0) throw new IOException("Connection closed");
+        }
+        return frame.flip();
+    }
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String tokenFor(long userId) {
+        return "Bearer " + Jwts.builder()
+            .subject(String.valueOf(userId))
+            .claim("roles", List.of("TRADER"))
+            .expiration(new Date(System.currentTimeMillis() + 60_000))
+            .signWith(Keys.hmacShaKeyFor(JWT_SECRET.getBytes(StandardCharsets.UTF_8)))
+            .compact();
+    }
+
+    private static class StubWallet extends WalletService {
+        private final AtomicInteger reservations = new AtomicInteger();
+        private volatile boolean approve = true;
+        private volatile boolean failAssetReservations = false;
+
+        @Override
+        public ReservationResult reserveCash(Long userId, BigDecimal amount, Long orderId) {
+            return reserve();
+        }
+
+        @Override
+        public ReservationResult reserveAsset(Long userId, Long assetId, int quantity, Long orderId) {
+            if (failAssetReservations) {
+                throw new IllegalStateException("ledger shard unavailable");
+            }
+            return reserve();
+        }
+
+        private ReservationResult reserve() {
+            if (!approve) {
+                return new ReservationResult(false, "Insufficient funds");
+            }
+            reservations.incrementAndGet();
+            return new ReservationResult(true, "Reserved");
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.xkrexchange;
+
+import com.xkrexchange.common.model.Asset;
+import com.xkrexchange.common.model.CompletedTrade;
+import com.xkrexchange.common.model.Identifiable;
+import com.xkrexchange.common.model.Order;
+import com.xkrexchange.common.model.OrderType;
+import com.xkrexchange.common.model.Price;
+import com.xkrexchange.matching.DepthSnapshot;
+import com.xkrexchange.matching.MatchingEngine;
+import com.xkrexchange.service.OrderPersistenceService;
+import com.xkrexchange.service.archive.ArchivedTrade;
+import com.xkrexchange.service.archive.TradeArchiveFormat.Column;
+import com.xkrexchange.service.archive.TradeArchiveReader;
+import com.xkrexchange.service.archive.TradeArchiveService;
+import com.xkrexchange.service.archive.TradeArchiveWriter;
+import com.xkrexchange.service.history.HistoryPage;
+import com.xkrexchange.service.history.OrderHistoryEntry;
+import com.xkrexchange.service.history.OrderHistoryService;
+import com.xkrexchange.service.history.TradeHistoryEntry;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Unit tests for order and trade persistence: the batched writer, spilling and replay, status coalescing,
+ * order book recovery, the order history read model and the columnar trade archive
+ */
+class PersistenceTesting {
+
+    private static final String CREATE_ORDERS =
+        "CREATE TABLE orders (id BIGSERIAL PRIMARY KEY, user_id BIGINT, asset_id BIGINT, order_type VARCHAR(20) NOT NULL,"
+        + " side VARCHAR(4) NOT NULL, quantity INTEGER NOT NULL, price DECIMAL(15,6), stop_price DECIMAL(15,6),"
+        + " filled_quantity INTEGER DEFAULT 0, status VARCHAR(20) DEFAULT 'PENDING', created_at TIMESTAMP, updated_at TIMESTAMP)";
+    private static final String CREATE_TRADES =
+        "CREATE TABLE trades (id BIGSERIAL PRIMARY KEY, buy_order_id BIGINT, sell_order_id BIGINT, asset_id BIGINT,"
+        + " quantity INTEGER NOT NULL, price DECIMAL(15,6) NOT NULL, buyer_id BIGINT, seller_id BIGINT, executed_at TIMESTAMP)";
+
+    private Asset asset;
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setUp(TestInfo test) {
+        asset = new Asset("Apple Inc", "AAPL", 150, 1000000, new BigDecimal("0.01"));
+        String name = test.getTestMethod().orElseThrow().getName();
+        jdbc = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:" + name + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1"));
+    }
+
+    @Test
+    @DisplayName("Test orders, status updates and trades are written in batches off the caller's thread")
+    void testBatchedWrites(@TempDir Path spill) throws InterruptedException {
+        jdbc.execute(CREATE_ORDERS);
+        jdbc.execute(CREATE_TRADES);
+        OrderPersistenceService persistence = new OrderPersistenceService(jdbc, "copy", 1_000, 100, 5, 500, spill, 0);
+        persistence.start();
+
+        Order buy = Order.newLimitOrder(1001L, OrderType.LIMIT, true, 10, asset, new Price(new BigDecimal("150.25")));
+        Order sell = Order.newMarketOrder(1002L, OrderType.MARKET, false, 10, asset);
+        assertEquals(List.of(buy.getOrderId(), sell.getOrderId()), persistence.saveNewOrders(List.of(buy, sell)));
+        persistence.updateOrderStatus(buy.getOrderId(), 4, "PARTIALLY_FILLED");
+        persistence.updateOrderStatus(buy.getOrderId(), 10, "FILLED");
+        persistence.updateOrderStatus(sell.getOrderId(), 10, "FILLED");
+        persistence.saveTrade(77L, buy.getOrderId(), sell.getOrderId(), asset.getAssetId(), 10, new BigDecimal("150.25"),
+                              1001L, 1002L, System.currentTimeMillis());
+        awaitTrue(() -> persistence.getWrittenRowCount() == 6);
+        persistence.shutdown();
+
+        assertEquals("FILLED", jdbc.queryForObject("SELECT status FROM orders WHERE id = ?", String.class, buy.getOrderId()));
+        assertEquals("BUY", jdbc.queryForObject("SELECT side FROM orders WHERE id = ?", String.class, buy.getOrderId()));
+        assertNull(jdbc.queryForObject("SELECT price FROM orders WHERE id = ?", BigDecimal.class, sell.getOrderId()));
+        assertEquals(0, new BigDecimal("150.25").compareTo(
+            jdbc.queryForObject("SELECT price FROM trades WHERE id = 77", BigDecimal.class)));
+        assertEquals(0, persistence.getSpilledSegmentCount());
+    }
+
+    @Test
+    @DisplayName("Test batches spill to disk while the database fails and replay in order once it recovers")
+    void testSpillAndReplay(@TempDir Path spill) throws InterruptedException {
+        OrderPersistenceService persistence = new OrderPersistenceService(jdbc, "batch", 1_000, 1, 5, 500, spill, 0);
+        persistence.start();
+
+        Order order = Order.newLimitOrder(1001L, OrderType.LIMIT, true, 10, asset, new Price(new BigDecimal("150")));
+        persistence.saveNewOrder(order); // no orders table yet: spilled
+        awaitTrue(() -> persistence.getSpilledSegmentCount() == 1);
+        persistence.updateOrderStatus(order.getOrderId(), 10, "FILLED"); // queued behind the spill
+        awaitTrue(() -> persistence.getSpilledSegmentCount() == 2);
+
+        jdbc.execute(CREATE_ORDERS);
+        awaitTrue(() -> persistence.getSpilledSegmentCount() == 0);
+        persistence.shutdown();
+
+        assertEquals(2, persistence.getWrittenRowCount());
+        assertEquals("FILLED", jdbc.queryForObject("SELECT status FROM orders WHERE id = ?", String.class, order.getOrderId()));
+        assertEquals(10, jdbc.queryForObject("SELECT filled_quantity FROM orders WHERE id = ?", Integer.class, order.getOrderId()));
+    }
+
+    @Test
+    @DisplayName("Test only the rows the database keeps rejecting are quarantined, replayed inserts are skipped")
+    void testPoisonRowsQuarantined(@TempDir Path spill) throws Exception {
+        jdbc.execute(CREATE_ORDERS);
+        jdbc.execute("ALTER TABLE orders ADD CONSTRAINT max_quantity CHECK (quantity < 100)");
+        OrderPersistenceService persistence = new OrderPersistenceService(jdbc, "batch", 1_000, 100, 5, 500, spill, 0);
+
+        Price price = new Price(new BigDecimal("150"));
+        Order replayed = Order.newLimitOrder(1001L, OrderType.LIMIT, true, 10, asset, price);
+        insertOrder(replayed.getOrderId(), "POSTED"); // written before a crash, then replayed
+        Order before = Order.newLimitOrder(1002L, OrderType.LIMIT, true, 5, asset, price);
+        Order poison = Order.newLimitOrder(1003L, OrderType.LIMIT, true, 500, asset, price); // check violation
+        Order after = Order.newLimitOrder(1004L, OrderType.LIMIT, false, 5, asset, price);
+        persistence.saveNewOrders(List.of(replayed, before, poison, after));
+        persistence.start();
+        awaitTrue(persistence::isCaughtUp);
+        persistence.shutdown();
+
+        assertEquals(1, persistence.getQuarantinedSegmentCount());
+        assertTrue(Files.list(spill.resolve("quarantine")).findAny().isPresent());
+        assertEquals(3, jdbc.queryForObject("SELECT COUNT(*) FROM orders WHERE id IN (?, ?, ?)", Integer.class,
+                                            replayed.getOrderId(), before.getOrderId(), after.getOrderId()));
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM orders WHERE id = ?", Integer.class, poison.getOrderId()));
+    }
+
+    @Test
+    @DisplayName("Test partial fills coalesce into one status write and a terminal status is written at once")
+    void testStatusCoalescing(@TempDir Path spill) throws InterruptedException {
+        jdbc.execute(CREATE_ORDERS);
+        OrderPersistenceService persistence = new OrderPersistenceService(jdbc, "batch", 1_000, 100, 5, 500, spill, 60_000);
+        persistence.start();
+
+        Order order = Order.newLimitOrder(1001L, OrderType.LIMIT, true, 50, asset, new Price(new BigDecimal("150")));
+        persistence.saveNewOrder(order);
+        persistence.updateOrderStatus(order.getOrderId(), 0, "POSTED");
+        for (int filled = 1; filled < 50; filled++) {
+            persistence.updateOrderStatus(order.getOrderId(), filled, "PARTIALLY_FILLED");
+        }
+        persistence.updateOrderStatus(order.getOrderId(), 50, "FILLED"); // flushed without waiting out the window
+        awaitTrue(() -> persistence.getWrittenRowCount() == 2);
+
+        assertEquals(50, persistence.getCoalescedStatusUpdateCount());
+        assertEquals("FILLED", jdbc.queryForObject("SELECT status FROM orders WHERE id = ?", String.class, order.getOrderId()));
+        assertEquals(50, jdbc.queryForObject("SELECT filled_quantity FROM orders WHERE id = ?", Integer.class, order.getOrderId()));
+        persistence.shutdown();
+    }
+
+    @Test
+    @DisplayName("Test a book is restored from its active orders with fills, last trade price and id counters")
+    void testBookRecovery(@TempDir Path spill) throws InterruptedException {
+        jdbc.execute(CREATE_ORDERS);
+        jdbc.execute(CREATE_TRADES);
+        OrderPersistenceService persistence = new OrderPersistenceService(jdbc, "batch", 1_000, 100, 5, 500, spill, 0);
+        persistence.start();
+        Order bid = Order.newLimitOrder(1001L, OrderType.LIMIT, true, 10, asset, new Price(new BigDecimal("149.50")));
+        Order laterBid = Order.newLimitOrder(1002L, OrderType.LIMIT, true, 5, asset, new Price(new BigDecimal("149.50")));
+        Order ask = Order.newLimitOrder(1003L, OrderType.LIMIT, false, 20, asset, new Price(new BigDecimal("151")));
+        Order filled = Order.newLimitOrder(1004L, OrderType.LIMIT, false, 4, asset, new Price(new BigDecimal("149.50")));
+        persistence.saveNewOrders(List.of(bid, laterBid, ask, filled));
+        persistence.updateOrderStatus(bid.getOrderId(), 4, "PARTIALLY_FILLED");
+        persistence.updateOrderStatus(laterBid.getOrderId(), 0, "POSTED");
+        persistence.updateOrderStatus(ask.getOrderId(), 0, "POSTED");
+        persistence.updateOrderStatus(filled.getOrderId(), 4, "FILLED");
+        persistence.saveTrade(9_000_000L, bid.getOrderId(), filled.getOrderId(), asset.getAssetId(), 4,
+                              new BigDecimal("149.50"), 1001L, 1004L, System.currentTimeMillis());
+        awaitTrue(persistence::isCaughtUp);
+
+        List<Order> active = persistence.getActiveOrdersByAsset(asset);
+        assertEquals(List.of(bid.getOrderId(), laterBid.getOrderId(), ask.getOrderId()),
+                     active.stream().map(Order::getOrderId).toList());
+        assertEquals(6, active.get(0).getRemainingQuantity());
+
+        MatchingEngine engine = new MatchingEngine(1024, 60_000);
+        engine.registerAsset(asset);
+        try {
+            asset.getOrderBook().restore(active, persistence.getLastTradePriceForAsset(asset.getAssetId())).join();
+            DepthSnapshot depth = asset.getOrderBook().getDepthSnapshot();
+            assertEquals(1, depth.getBidLevels());
+            assertEquals(11, depth.getBidQuantity(0));
+            assertEquals(20, depth.getAskQuantity(0));
+            assertEquals(0, new BigDecimal("149.50").compareTo(asset.getOrderBook().getLastTradePrice().getValue()));
+        } finally {
+            engine.shutdown();
+            persistence.shutdown();
+        }
+
+        Identifiable.advanceCounter(CompletedTrade.class, persistence.getHighestTradeId());
+        assertTrue(new CompletedTrade(bid, filled, new Price(new BigDecimal("149.50")), 1).getTradeId() > 9_000_000L);
+    }
+
+    @Test
+    @DisplayName("Test ids are covered by the persisted high-water mark before they are handed out")
+    void testIdHighWaterMark(@TempDir Path spill) throws InterruptedException {
+        OrderPersistenceService persistence = new OrderPersistenceService(jdbc, "batch", 1_000, 100, 5, 500, spill, 0);
+        persistence.start();
+        try {
+            assertEquals(0, persistence.getIdHighWaterMark("tickets"));
+            Identifiable.reserveIdsInBlocks(Ticket.class, 10, id -> persistence.raiseIdHighWaterMark("tickets", id));
+            long highest = 0;
+            for (int i = 0; i < 35; i++) {
+                highest = new Ticket().getId();
+                assertTrue(persistence.getIdHighWaterMark("tickets") >= highest);
+            }
+            long last = highest;
+            awaitTrue(() -> persistence.getIdHighWaterMark("tickets") >= last + 5); // next block reserved ahead
+            persistence.raiseIdHighWaterMark("tickets", 1); // never lowered
+            assertTrue(persistence.getIdHighWaterMark("tickets") > last);
+        } finally {
+            Identifiable.reserveIdsInBlocks(Ticket.class, 0, null);
+            persistence.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Test history pages come from memory first, then continue on the replica without gaps or repeats")
+    void testHistoryPagination() {
+        jdbc.execute(CREATE_ORDERS);
+        jdbc.execute(CREATE_TRADES);
+        for (long id = 1; id <= 5; id++) { // before the window: only in the database
+            insertOrder(id, "FILLED");
+            jdbc.update("INSERT INTO trades (id, buy_order_id, sell_order_id, asset_id, quantity, price, buyer_id, seller_id,"
+                        + " executed_at) VALUES (?, ?, ?, 1, 1, 150, ?, ?, CURRENT_TIMESTAMP)",
+                        id, id, id, id % 2 == 0 ? 2001L : 2002L, id % 2 == 0 ? 2002L : 2001L);
+        }
+        Identifiable.advanceCounter(Order.class, 20_000_000L);
+        OrderHistoryService history = new OrderHistoryService(jdbc, 3_600_000, 3, 0, 500);
+        List<Long> submitted = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Order order = Order.newLimitOrder(2001L, OrderType.LIMIT, true, 10, asset, new Price(new BigDecimal("150")));
+            history.recordSubmitted(order); // the fourth pushes the first out of memory (max 3 per user)
+            insertOrder(order.getOrderId(), "PENDING");
+            submitted.add(0, order.getOrderId());
+        }
+        history.onAccepted(submitted.get(0), 2001L, 0);
+        history.onFill(submitted.get(0), 2001L, 4, 6);
+
+        HistoryPage<OrderHistoryEntry> first = history.getOrders(2001L, null, 2);
+        assertEquals("PARTIALLY_FILLED", first.items().get(0).status());
+        assertEquals(4, first.items().get(0).filledQuantity());
+        assertEquals(0, history.getReplicaQueryCount());
+
+        List<Long> ids = new ArrayList<>();
+        HistoryPage<OrderHistoryEntry> page = first;
+        while (true) {
+            page.items().forEach(order -> ids.add(order.orderId()));
+            if (page.nextCursor() == null) break;
+            page = history.getOrders(2001L, page.nextCursor(), 2);
+        }
+        List<Long> expected = new ArrayList<>(submitted);
+        expected.addAll(List.of(5L, 4L, 3L, 2L, 1L));
+        assertEquals(expected, ids);
+
+        history.onTrade(50_000_000L, submitted.get(0), 99L, 1L, 4, new BigDecimal("150"), 2001L, 2002L,
+                        System.currentTimeMillis());
+        assertEquals(List.of(50_000_000L, 5L, 4L, 3L, 2L, 1L),
+                     history.getTrades(2001L, null, 10).items().stream().map(TradeHistoryEntry::tradeId).toList());
+        assertEquals(List.of(4L, 3L), history.getTrades(2002L, 5L, 2).items().stream().map(TradeHistoryEntry::tradeId).toList());
+
+        history.evictOlderThan(Long.MAX_VALUE); // window passed: everything from the replica
+        assertEquals(0, history.getUserCount());
+        assertEquals(expected, history.getOrders(2001L, null, 100).items().stream().map(OrderHistoryEntry::orderId).toList());
+
+        OrderHistoryService unreplicated = new OrderHistoryService(jdbc, 3_600_000, 3, 60_000, 500);
+        for (int i = 0; i < 4; i++) { // too young to evict: the replica may not have them yet
+            unreplicated.recordSubmitted(Order.newLimitOrder(2003L, OrderType.LIMIT, true, 10, asset,
+                                                             new Price(new BigDecimal("150"))));
+        }
+        unreplicated.evictOlderThan(0);
+        assertEquals(4, unreplicated.getOrders(2003L, null, 4).items().size());
+        assertEquals(0, unreplicated.getReplicaQueryCount());
+    }
+
+    @Test
+    @DisplayName("Test a day of trades exports to a columnar archive that scans back by asset with column stats")
+    void testTradeArchive(@TempDir Path archiveDirectory) throws Exception {
+        jdbc.execute(CREATE_TRADES);
+        LocalDate day = LocalDate.of(2026, 3, 2);
+        long start = Timestamp.valueOf(day.atStartOfDay()).getTime();
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            rows.add(new Object[] { i + 1, 2L * i, 2L * i + 1, i % 2 + 1, 10,
+                                    new BigDecimal("150.25").add(BigDecimal.valueOf(i % 7)), 1001L, 1002L,
+                                    new Timestamp(start + i * 100L) });
+        }
+        rows.add(new Object[] { 99, 1L, 2L, 1, 10, BigDecimal.ONE, 1001L, 1002L, new Timestamp(start - 1) }); // day before
+        jdbc.batchUpdate("INSERT INTO trades (id, buy_order_id, sell_order_id, asset_id, quantity, price, buyer_id,"
+                         + " seller_id, executed_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)", rows);
+
+        TradeArchiveService archive = new TradeArchiveService(jdbc, archiveDirectory, 7, 3, 60_000);
+        try (TradeArchiveReader reader = new TradeArchiveReader(archive.exportDay(day))) {
+            assertEquals(10, reader.getRowCount());
+            assertEquals(150_250_000L, reader.getMin(Column.PRICE));
+            assertEquals(156_250_000L, reader.getMax(Column.PRICE));
+            assertEquals(1, reader.getMin(Column.ID));
+            assertEquals(100L, Arrays.stream(reader.readColumn(Column.QUANTITY)).sum());
+        }
+
+        List<ArchivedTrade> trades = new ArrayList<>();
+        assertEquals(5, archive.scan(2L, day, day, trades::add));
+        assertEquals(2L, trades.get(0).tradeId());
+        assertEquals(0, new BigDecimal("151.25").compareTo(trades.get(0).price()));
+        assertEquals(start + 100L, trades.get(0).executedAt());
+        assertEquals(0, archive.scan(1L, day.plusDays(1), day.plusDays(1), trades::add));
+
+        Path grouped = archiveDirectory.resolve("grouped.tca"); // row groups of 4: asset 2 only in some of them
+        try (TradeArchiveWriter writer = new TradeArchiveWriter(grouped, 4)) {
+            for (ArchivedTrade trade : trades) {
+                writer.append(trade);
+            }
+            writer.append(new ArchivedTrade(100, 1, 2, 3, 1, BigDecimal.TEN, 1001, 1002, start));
+        }
+        try (TradeArchiveReader reader = new TradeArchiveReader(grouped)) {
+            List<ArchivedTrade> reread = new ArrayList<>();
+            reader.scan(2L, start, start + 1_000, reread::add);
+            assertEquals(trades, reread);
+            assertEquals(3, reader.getMax(Column.ASSET_ID));
+        }
+    }
+
+    // helpers
+
+    private static final class Ticket extends Identifiable<Ticket> {
+    }
+
+    private void insertOrder(long id, String status) {
+        jdbc.update("INSERT INTO orders (id, user_id, asset_id, order_type, side, quantity, price, status, created_at)"
+                    + " VALUES (?, 2001, 1, 'LIMIT', 'BUY', 10, 150, ?, CURRENT_TIMESTAMP)", id, status);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
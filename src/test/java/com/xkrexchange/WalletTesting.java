@@ -0,0 +1,250 @@
+package com.xkrexchange;
+
+import com.xkrexchange.wallet.LedgerWriteBehind;
+import com.xkrexchange.wallet.TradeSettlement;
+import com.xkrexchange.wallet.WalletLedger;
+import com.xkrexchange.wallet.WalletService;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Unit tests for the wallet: the sharded in-memory ledger, settlement and write-behind persistence
+ */
+class WalletTesting {
+
+    private static final long BUYER = 1001L;
+    private static final long SELLER = 1002L;
+    private static final long ASSET = 7L;
+
+    private WalletService wallet;
+
+    @BeforeEach
+    void setUp() {
+        wallet = new WalletService();
+    }
+
+    @AfterEach
+    void tearDown() {
+        wallet.shutdown();
+    }
+
+    @Test
+    @DisplayName("Test reserve, settle and release move funds between the right buckets")
+    void testReserveSettleRelease() {
+        wallet.depositCash(BUYER, new BigDecimal("10000"));
+        wallet.depositAsset(SELLER, ASSET, 100);
+
+        assertTrue(wallet.reserveCash(BUYER, new BigDecimal("1510.00"), 1L).isSuccessful()); // 10 @ 151.00
+        assertTrue(wallet.reserveAsset(SELLER, ASSET, 10, 2L).isSuccessful());
+        assertFalse(wallet.reserveAsset(SELLER, ASSET, 91, 3L).isSuccessful());
+        assertEquals(0, new BigDecimal("8490").compareTo(wallet.getAvailableCashBalance(BUYER)));
+
+        wallet.executeSettlement(BUYER, SELLER, ASSET, 10, new BigDecimal("150.00"), 1L, 2L); // price improvement
+        wallet.flushSettlements().join();
+        assertEquals(10, wallet.getAvailableAssetQuantity(BUYER, ASSET));
+        assertEquals(90, wallet.getAvailableAssetQuantity(SELLER, ASSET));
+        assertEquals(0, new BigDecimal("1500").compareTo(wallet.getAvailableCashBalance(SELLER)));
+        assertEquals(0, new BigDecimal("10").compareTo(wallet.getReservedCashBalance(BUYER)));
+
+        assertTrue(wallet.releaseReservations(1L)); // filled: the 10.00 left over goes back
+        assertFalse(wallet.releaseReservations(1L));
+        assertEquals(0, new BigDecimal("8500").compareTo(wallet.getAvailableCashBalance(BUYER)));
+        assertEquals(0, wallet.getReservedCashBalance(BUYER).signum());
+    }
+
+    @Test
+    @DisplayName("Test a settlement batch nets every trade into one journal entry per user and asset")
+    void testNettedSettlementBatch() {
+        wallet.depositCash(BUYER, new BigDecimal("10000"));
+        wallet.depositAsset(SELLER, ASSET, 100);
+        assertTrue(wallet.reserveCash(BUYER, new BigDecimal("5000"), 1L).isSuccessful());
+        assertTrue(wallet.reserveAsset(SELLER, ASSET, 50, 2L).isSuccessful());
+
+        for (int i = 0; i < 50; i++) {
+            wallet.executeSettlement((long) i, BUYER, SELLER, ASSET, 1, new BigDecimal("100.00"), 1L, 2L);
+        }
+        wallet.releaseAfterSettlement(1L);
+        wallet.releaseAfterSettlement(2L);
+        wallet.flushSettlements().join();
+
+        assertEquals(50, wallet.getAvailableAssetQuantity(BUYER, ASSET));
+        assertEquals(50, wallet.getAvailableAssetQuantity(SELLER, ASSET));
+        assertEquals(0, new BigDecimal("5000").compareTo(wallet.getAvailableCashBalance(BUYER)));
+        assertEquals(0, new BigDecimal("5000").compareTo(wallet.getAvailableCashBalance(SELLER)));
+        // 2 deposits, 2 reservations, then 50 trades settle as 4 netted entries (buyer cash + asset, seller
+        // asset + cash); no leftover to release
+        assertEquals(8, wallet.getUnpersistedJournalEntries());
+    }
+
+    @Test
+    @DisplayName("Test a trade settled again (redelivered report) moves funds only once")
+    void testDuplicateTradeSettledOnce() {
+        wallet.depositCash(BUYER, new BigDecimal("1000"));
+        wallet.depositAsset(SELLER, ASSET, 10);
+        assertTrue(wallet.reserveCash(BUYER, new BigDecimal("1000"), 1L).isSuccessful());
+        assertTrue(wallet.reserveAsset(SELLER, ASSET, 10, 2L).isSuccessful());
+
+        wallet.executeSettlement(5L, BUYER, SELLER, ASSET, 2, new BigDecimal("100"), 1L, 2L);
+        wallet.executeSettlement(5L, BUYER, SELLER, ASSET, 2, new BigDecimal("100"), 1L, 2L); // same batch
+        wallet.flushSettlements().join();
+        wallet.executeSettlement(5L, BUYER, SELLER, ASSET, 2, new BigDecimal("100"), 1L, 2L); // later batch
+        wallet.flushSettlements().join();
+
+        assertEquals(2, wallet.getAvailableAssetQuantity(BUYER, ASSET));
+        assertEquals(0, new BigDecimal("200").compareTo(wallet.getAvailableCashBalance(SELLER)));
+        assertEquals(0, new BigDecimal("800").compareTo(wallet.getReservedCashBalance(BUYER)));
+    }
+
+    @Test
+    @DisplayName("Test a settlement beyond the reservation and the available balance is applied and counted")
+    void testNegativeAvailableIsCounted() {
+        wallet.depositCash(BUYER, new BigDecimal("100"));
+        wallet.depositAsset(SELLER, ASSET, 1);
+        assertTrue(wallet.reserveCash(BUYER, new BigDecimal("50"), 1L).isSuccessful());
+        assertTrue(wallet.reserveAsset(SELLER, ASSET, 1, 2L).isSuccessful());
+
+        wallet.executeSettlement(3L, BUYER, SELLER, ASSET, 1, new BigDecimal("120"), 1L, 2L);
+        wallet.flushSettlements().join();
+
+        assertEquals(1, wallet.getNegativeBalanceCount());
+        assertEquals(0, new BigDecimal("-20").compareTo(wallet.getAvailableCashBalance(BUYER)));
+        assertEquals(0, new BigDecimal("120").compareTo(wallet.getAvailableCashBalance(SELLER)));
+    }
+
+    @Test
+    @DisplayName("Test reservations expire on the timing wheel unless acknowledged, and are indexed by user")
+    void testReservationExpiry() {
+        WalletLedger ledger = new WalletLedger(2, 1_000, 2_000);
+        ledger.credit(BUYER, WalletLedger.CASH, 1_000, WalletLedger.DEPOSIT);
+        long now = System.currentTimeMillis();
+        assertTrue(ledger.reserve(BUYER, WalletLedger.CASH, 100, 1L)); // never acknowledged: leaks
+        assertTrue(ledger.reserve(BUYER, WalletLedger.CASH, 200, 2L));
+        assertTrue(ledger.reserve(BUYER, WalletLedger.CASH, 300, 3L));
+        ledger.confirm(2L); // resting on the book: held until it closes
+        assertEquals(List.of(1L, 2L, 3L), new ArrayList<>(ledger.openReservations(BUYER).keySet()));
+
+        assertEquals(0, ledger.expireReservations(now + 500));
+        ledger.markClosed(3L); // closed, but its release never arrives
+        assertEquals(1, ledger.expireReservations(now + 1_200));
+        assertEquals(List.of(2L, 3L), new ArrayList<>(ledger.openReservations(BUYER).keySet()));
+        assertEquals(1, ledger.expireReservations(now + 5_000)); // order 3, settlement timeout
+        assertEquals(800, ledger.available(BUYER, WalletLedger.CASH));
+        assertEquals(200, ledger.reserved(BUYER, WalletLedger.CASH));
+        assertEquals(0, ledger.expireReservations(now + 3_600_000)); // far beyond a wheel revolution
+        assertFalse(ledger.release(1L));
+        assertTrue(ledger.release(2L));
+        assertEquals(2, ledger.getExpiredReservationCount());
+        ledger.shutdown();
+    }
+
+    @Test
+    @DisplayName("Test concurrent reservations never overdraw a balance")
+    void testConcurrentReservations() {
+        wallet.depositCash(BUYER, new BigDecimal("1000"));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AtomicInteger reserved = new AtomicInteger();
+        List<CompletableFuture<Void>> attempts = new ArrayList<>();
+        for (long orderId = 1; orderId <= 200; orderId++) {
+            long id = orderId;
+            attempts.add(CompletableFuture.runAsync(() -> {
+                if (wallet.reserveCash(BUYER, new BigDecimal("10"), id).isSuccessful()) reserved.incrementAndGet();
+            }, executor));
+        }
+        CompletableFuture.allOf(attempts.toArray(new CompletableFuture[0])).join();
+        executor.shutdown();
+
+        assertEquals(100, reserved.get());
+        assertEquals(0, wallet.getAvailableCashBalance(BUYER).signum());
+        assertEquals(0, new BigDecimal("1000").compareTo(wallet.getReservedCashBalance(BUYER)));
+    }
+
+    @Test
+    @DisplayName("Test write-behind persists the journal and balances, and balances load back")
+    void testWriteBehind(@TempDir Path quarantine) throws InterruptedException {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:ledger;MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        createLedgerTables(jdbc);
+
+        WalletService persisted = new WalletService(2, jdbc, 10, 100, 2, 100, 0, 0, 5_000, quarantine);
+        persisted.start();
+        persisted.depositCash(BUYER, new BigDecimal("500.25"));
+        persisted.reserveCash(BUYER, new BigDecimal("100"), 1L);
+        persisted.depositAsset(BUYER, ASSET, 3);
+        persisted.depositAsset(SELLER, ASSET, 1);
+        persisted.reserveAsset(SELLER, ASSET, 1, 2L);
+        persisted.executeSettlement(9L, BUYER, SELLER, ASSET, 1, new BigDecimal("100"), 1L, 2L);
+        persisted.flushSettlements().join();
+        assertEquals(9L, jdbc.queryForObject("SELECT trade_id FROM settlement_trades", Long.class)); // durable on flush
+        for (int i = 0; i < 100 && persisted.getUnpersistedJournalEntries() > 0; i++) {
+            Thread.sleep(10);
+        }
+        persisted.shutdown();
+
+        assertEquals(9, jdbc.queryForObject("SELECT COUNT(*) FROM ledger_journal", Integer.class));
+        assertEquals(0, new BigDecimal("400.25").compareTo(jdbc.queryForObject(
+            "SELECT available_balance FROM user_balances WHERE user_id = ? AND asset_id IS NULL", BigDecimal.class, BUYER)));
+
+        WalletLedger reloaded = new WalletLedger(4);
+        assertEquals(4, new LedgerWriteBehind(reloaded, jdbc, 10, 100, quarantine).loadBalances());
+        assertEquals(400_250_000L, reloaded.available(BUYER, WalletLedger.CASH)); // open reservation returned
+        assertEquals(4, reloaded.available(BUYER, ASSET));
+        assertEquals(100_000_000L, reloaded.available(SELLER, WalletLedger.CASH));
+        reloaded.settle(List.of(new TradeSettlement(9L, BUYER, SELLER, ASSET, 1, new BigDecimal("100"), 100_000_000L, 1L, 2L)));
+        assertEquals(2, reloaded.getDuplicateSettlementCount()); // settled before the restart
+        assertEquals(4, reloaded.available(BUYER, ASSET));
+        reloaded.shutdown();
+    }
+
+    @Test
+    @DisplayName("Test a ledger batch the database keeps rejecting is quarantined instead of blocking later writes")
+    void testPoisonLedgerBatchQuarantined(@TempDir Path quarantine) throws Exception {
+        JdbcTemplate jdbc = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:poison-ledger;MODE=PostgreSQL;DB_CLOSE_DELAY=-1"));
+        createLedgerTables(jdbc);
+        jdbc.execute("ALTER TABLE ledger_journal ADD CONSTRAINT max_delta CHECK (available_delta < 1000)");
+
+        WalletService persisted = new WalletService(2, jdbc, 10, 100, 2, 100, 0, 0, 5_000, quarantine);
+        persisted.start();
+        persisted.depositAsset(BUYER, ASSET, 5_000); // check violation: no retry will ever write it
+        for (int i = 0; i < 500 && persisted.getQuarantinedLedgerBatchCount() == 0; i++) {
+            Thread.sleep(10);
+        }
+        persisted.depositAsset(SELLER, ASSET, 5);
+        for (int i = 0; i < 100 && jdbc.queryForObject("SELECT COUNT(*) FROM ledger_journal", Integer.class) == 0; i++) {
+            Thread.sleep(10);
+        }
+        persisted.shutdown();
+
+        assertEquals(1, persisted.getQuarantinedLedgerBatchCount());
+        try (Stream<Path> files = Files.list(quarantine)) {
+            assertEquals(1, files.count());
+        }
+        assertEquals(SELLER, jdbc.queryForObject("SELECT user_id FROM ledger_journal", Long.class));
+    }
+
+    // helpers
+
+    private static void createLedgerTables(JdbcTemplate jdbc) {
+        jdbc.execute("CREATE TABLE user_balances (id BIGSERIAL PRIMARY KEY, user_id BIGINT, asset_id BIGINT,"
+                     + " available_balance DECIMAL(15,6) DEFAULT 0, reserved_balance DECIMAL(15,6) DEFAULT 0, updated_at TIMESTAMP)");
+        jdbc.execute("CREATE TABLE settlement_trades (id BIGSERIAL PRIMARY KEY, trade_id BIGINT, buyer_user_id BIGINT,"
+                     + " seller_user_id BIGINT, asset_id BIGINT, quantity INTEGER, price DECIMAL(15,6), trade_value DECIMAL(21,6),"
+                     + " buy_order_id BIGINT, sell_order_id BIGINT, settled_at TIMESTAMP)");
+        jdbc.execute("CREATE TABLE ledger_journal (id BIGSERIAL PRIMARY KEY, user_id BIGINT, asset_id BIGINT,"
+                     + " entry_type VARCHAR(16), order_id BIGINT, available_delta DECIMAL(21,6), reserved_delta DECIMAL(21,6),"
+                     + " created_at TIMESTAMP)");
+    }
+}
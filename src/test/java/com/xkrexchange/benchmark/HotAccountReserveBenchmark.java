@@ -0,0 +1,87 @@
+package com.xkrexchange.benchmark;
+
+import com.xkrexchange.wallet.WalletLedger;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Check-and-reserve throughput with many threads reserving against ONE account (a market maker quoting from
+ * every gateway thread):
+ * - casReserve: WalletLedger.reserve, a CAS on the account's balance cell, bookkeeping queued to the shard
+ * - waitForShard: the same, but waiting for the shard to book every reservation (a round trip per order, as
+ *   when the shard thread did the check itself)
+ * - insufficientFunds: WalletLedger.reserve against an account that is short, which must fail without writing
+ *
+ * Each thread reserves for its own order id, so the ledger's reservation count stays flat; every 1024 reserves
+ * the thread waits for the shard to catch up so queued bookkeeping can't grow without bound.
+ *
+ * Run: mvn -B test-compile exec:java -Dexec.classpathScope=test
+ *        -Dexec.mainClass=com.xkrexchange.benchmark.HotAccountReserveBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class HotAccountReserveBenchmark {
+
+    private static final long HOT_USER = 1L;
+    private static final long EMPTY_USER = 2L;
+    private static final int CATCH_UP_EVERY = 1024;
+
+    private WalletLedger ledger;
+    private final AtomicLong nextOrderId = new AtomicLong(1);
+
+    @State(Scope.Thread)
+    public static class Caller {
+        long orderId;
+        int reserves;
+
+        @Setup
+        public void setUp(HotAccountReserveBenchmark benchmark) {
+            orderId = benchmark.nextOrderId.getAndIncrement();
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        ledger = new WalletLedger(8);
+        ledger.credit(HOT_USER, WalletLedger.CASH, Long.MAX_VALUE / 4, WalletLedger.DEPOSIT);
+    }
+
+    @TearDown
+    public void tearDown() {
+        ledger.shutdown();
+    }
+
+    @Benchmark
+    public boolean casReserve(Caller caller) {
+        boolean reserved = ledger.reserve(HOT_USER, WalletLedger.CASH, 100, caller.orderId);
+        if (++caller.reserves % CATCH_UP_EVERY == 0) {
+            ledger.reserved(HOT_USER, WalletLedger.CASH);
+        }
+        return reserved;
+    }
+
+    @Benchmark
+    public long waitForShard(Caller caller) {
+        ledger.reserve(HOT_USER, WalletLedger.CASH, 100, caller.orderId);
+        return ledger.reserved(HOT_USER, WalletLedger.CASH);
+    }
+
+    @Benchmark
+    public boolean insufficientFunds(Caller caller) {
+        return ledger.reserve(EMPTY_USER, WalletLedger.CASH, 100, caller.orderId);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(HotAccountReserveBenchmark.class.getSimpleName()).build()).run();
+    }
+}
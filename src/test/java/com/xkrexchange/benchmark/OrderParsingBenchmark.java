@@ -0,0 +1,74 @@
+package com.xkrexchange.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xkrexchange.common.dto.OrderRequestDto;
+import com.xkrexchange.common.model.Asset;
+import com.xkrexchange.gateway.OrderCommand;
+import com.xkrexchange.gateway.OrderCommandParser;
+import com.xkrexchange.matching.MatchingEngine;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-order cost of turning a JSON order into something the gateway can check:
+ * - bindThenValidate: what Spring MVC does today (ObjectMapper bind into OrderRequestDto, then validate())
+ * - streamingParse: OrderCommandParser into a reused OrderCommand (asset resolved, prices in ticks, int codes)
+ *
+ * Run: mvn -B test-compile exec:java -Dexec.classpathScope=test
+ *        -Dexec.mainClass=com.xkrexchange.benchmark.OrderParsingBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OrderParsingBenchmark {
+
+    private static final String ORDER_JSON = "{\"orderType\":\"LIMIT\",\"buyOrder\":true,\"assetTicker\":\"AAPL\","
+        + "\"assetId\":%d,\"quantity\":250,\"limitPrice\":150.25,\"clientOrderId\":\"mm-quote-000042\"}";
+
+    private MatchingEngine engine;
+    private ObjectMapper objectMapper;
+    private OrderCommandParser parser;
+    private OrderCommand command;
+    private byte[] json;
+
+    @Setup
+    public void setUp() {
+        engine = new MatchingEngine(1024, 60_000);
+        Asset asset = new Asset("Apple Inc", "AAPL", 150, 1000000, new BigDecimal("0.01"));
+        engine.registerAsset(asset);
+        objectMapper = new ObjectMapper();
+        parser = new OrderCommandParser(engine);
+        command = new OrderCommand();
+        json = String.format(ORDER_JSON, asset.getAssetId()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Benchmark
+    public String bindThenValidate() throws IOException {
+        OrderRequestDto request = objectMapper.readValue(json, OrderRequestDto.class);
+        return request.validate();
+    }
+
+    @Benchmark
+    public int streamingParse() {
+        return parser.parse(json, command);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(OrderParsingBenchmark.class.getSimpleName()).build()).run();
+    }
+}